@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import static com.github.horrorho.ragingmoose.LZFSEConstants.COMPRESSEDLZVN_BLOCK_MAGIC;
+import static com.github.horrorho.ragingmoose.LZFSEConstants.COMPRESSEDV1_BLOCK_MAGIC;
+import static com.github.horrorho.ragingmoose.LZFSEConstants.COMPRESSEDV2_BLOCK_MAGIC;
+import static com.github.horrorho.ragingmoose.LZFSEConstants.ENDOFSTREAM_BLOCK_MAGIC;
+import static com.github.horrorho.ragingmoose.LZFSEConstants.UNCOMPRESSED_BLOCK_MAGIC;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Benchmark block formats. Streams are produced by {@link LZFSEOutputStream}, or its block encoders, and restricted
+ * to a single compressed block type with raw blocks as the incompressible fallback.
+ *
+ * @author Ayesha
+ */
+@Immutable
+public enum BlockFormat {
+
+    /**
+     * bvx1 blocks, bvx2 blocks transcoded to the uncompressed v1 header.
+     */
+    V1 {
+        @Override
+        byte[] encode(byte[] data) throws IOException {
+            return transcode(V2.encode(data));
+        }
+    },
+    /**
+     * bvx2 blocks.
+     */
+    V2 {
+        @Override
+        byte[] encode(byte[] data) throws IOException {
+            return LZFSEOutputStreamTest.encode(data);
+        }
+    },
+    /**
+     * bvxn blocks.
+     */
+    LZVN {
+        @Override
+        byte[] encode(byte[] data) throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            WritableByteChannel ch = Channels.newChannel(baos);
+            LZVNBlockEncoder encoder = new LZVNBlockEncoder(new LZFSEMatchFinder());
+            for (int from = 0; from < data.length; from += LZVN_BLOCK_SIZE) {
+                int to = Math.min(from + LZVN_BLOCK_SIZE, data.length);
+                if (encoder.encode(data, from, to, to - from + 8)) {
+                    encoder.write(ch);
+                } else {
+                    raw(ch, data, from, to);
+                }
+            }
+            eos(ch);
+            return baos.toByteArray();
+        }
+    },
+    /**
+     * bvx- blocks.
+     */
+    RAW {
+        @Override
+        byte[] encode(byte[] data) throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            WritableByteChannel ch = Channels.newChannel(baos);
+            for (int from = 0; from < data.length; from += RAW_BLOCK_SIZE) {
+                raw(ch, data, from, Math.min(from + RAW_BLOCK_SIZE, data.length));
+            }
+            eos(ch);
+            return baos.toByteArray();
+        }
+    };
+
+    static final int LZVN_BLOCK_SIZE = 65536;
+
+    static final int RAW_BLOCK_SIZE = 1 << 20;
+
+    static final int V1_SIZE = 48 + LZFSEConstants.ENCODE_SYMBOLS * 2;
+
+    static void raw(WritableByteChannel ch, byte[] data, int from, int to) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(8).order(LITTLE_ENDIAN);
+        bb.putInt(UNCOMPRESSED_BLOCK_MAGIC)
+                .putInt(to - from)
+                .flip();
+        IO.writeFully(ch, bb);
+        IO.writeFully(ch, ByteBuffer.wrap(data, from, to - from));
+    }
+
+    static void eos(WritableByteChannel ch) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(4).order(LITTLE_ENDIAN);
+        bb.putInt(ENDOFSTREAM_BLOCK_MAGIC)
+                .flip();
+        IO.writeFully(ch, bb);
+    }
+
+    @Nonnull
+    static byte[] transcode(byte[] v2) throws IOException {
+        ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(v2));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        WritableByteChannel out = Channels.newChannel(baos);
+        LZFSEBlockHeader header = new LZFSEBlockHeader();
+        ByteBuffer word = ByteBuffer.allocate(8).order(LITTLE_ENDIAN);
+        while (true) {
+            word.clear().limit(4);
+            IO.readFully(in, word).flip();
+            int magic = word.getInt(0);
+            switch (magic) {
+                case COMPRESSEDV2_BLOCK_MAGIC:
+                    header.loadV2(in);
+                    IO.writeFully(out, v1Header(header));
+                    copy(in, out, header.nPayloadBytes());
+                    break;
+                case UNCOMPRESSED_BLOCK_MAGIC:
+                    IO.writeFully(out, word);
+                    word.clear().limit(4);
+                    IO.readFully(in, word).flip();
+                    IO.writeFully(out, word);
+                    copy(in, out, word.getInt(0));
+                    break;
+                case COMPRESSEDLZVN_BLOCK_MAGIC:
+                    IO.writeFully(out, word);
+                    word.clear();
+                    IO.readFully(in, word).flip();
+                    IO.writeFully(out, word);
+                    copy(in, out, word.getInt(4));
+                    break;
+                case ENDOFSTREAM_BLOCK_MAGIC:
+                    IO.writeFully(out, word);
+                    return baos.toByteArray();
+                default:
+                    throw new IllegalStateException("bad block: 0x" + Integer.toHexString(magic));
+            }
+        }
+    }
+
+    @Nonnull
+    static ByteBuffer v1Header(LZFSEBlockHeader header) {
+        ByteBuffer bb = ByteBuffer.allocate(4 + V1_SIZE).order(LITTLE_ENDIAN);
+        bb.putInt(COMPRESSEDV1_BLOCK_MAGIC)
+                .putInt(header.nRawBytes())
+                .putInt(header.nPayloadBytes())
+                .putInt(header.nLiterals())
+                .putInt(header.nMatches())
+                .putInt(header.nLiteralPayloadBytes())
+                .putInt(header.nLmdPayloadBytes())
+                .putInt(header.literalBits())
+                .putShort((short) header.literalState0())
+                .putShort((short) header.literalState1())
+                .putShort((short) header.literalState2())
+                .putShort((short) header.literalState3())
+                .putInt(header.lmdBits())
+                .putShort((short) header.lState())
+                .putShort((short) header.mState())
+                .putShort((short) header.dState());
+        for (short[] freq : new short[][]{header.lFreq(), header.mFreq(), header.dFreq(), header.literalFreq()}) {
+            for (short f : freq) {
+                bb.putShort(f);
+            }
+        }
+        bb.rewind();
+        return bb;
+    }
+
+    static void copy(ReadableByteChannel in, WritableByteChannel out, int n) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(n);
+        IO.readFully(in, bb).flip();
+        IO.writeFully(out, bb);
+    }
+
+    abstract byte[] encode(byte[] data) throws IOException;
+}
@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import com.dd.plist.BinaryPropertyListWriter;
+import com.dd.plist.NSArray;
+import com.dd.plist.NSData;
+import com.dd.plist.NSDate;
+import com.dd.plist.NSDictionary;
+import com.dd.plist.NSNumber;
+import com.dd.plist.NSString;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.zip.Deflater;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Synthetic benchmark corpora, approximating the content of typical backup assets.
+ *
+ * @author Ayesha
+ */
+@Immutable
+public enum Corpus {
+
+    /**
+     * Random words.
+     */
+    TEXT {
+        @Override
+        byte[] generate(Random random, int length) {
+            byte[] bs = new byte[length];
+            LZFSEOutputStreamTest.words(random, bs, 0, length);
+            return bs;
+        }
+    },
+    /**
+     * SQLite table b-tree leaf pages, rows of integers and short text columns with unused space zeroed.
+     */
+    SQLITE {
+        @Override
+        byte[] generate(Random random, int length) {
+            ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+            byte[] bs = new byte[length];
+            long rowid = 1;
+            for (int off = 0; off < length; off += PAGE_SIZE) {
+                Arrays.fill(page.array(), (byte) 0);
+                rowid = page(random, page, rowid);
+                System.arraycopy(page.array(), 0, bs, off, Math.min(PAGE_SIZE, length - off));
+            }
+            return bs;
+        }
+    },
+    /**
+     * Concatenated binary property lists, dictionaries of strings, numbers, dates and short data.
+     */
+    BPLIST {
+        @Override
+        byte[] generate(Random random, int length) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(length);
+            try {
+                while (baos.size() < length) {
+                    baos.write(BinaryPropertyListWriter.writeToArray(plist(random)));
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            byte[] bs = new byte[length];
+            System.arraycopy(baos.toByteArray(), 0, bs, 0, length);
+            return bs;
+        }
+    },
+    /**
+     * Deflated text, incompressible in the same way as already compressed media.
+     */
+    MEDIA {
+        @Override
+        byte[] generate(Random random, int length) {
+            byte[] text = TEXT.generate(random, 1 << 20);
+            byte[] bs = new byte[length];
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            for (int off = 0; off < length;) {
+                if (deflater.needsInput()) {
+                    deflater.setInput(text);
+                    text = TEXT.generate(random, 1 << 20);
+                }
+                off += deflater.deflate(bs, off, length - off);
+            }
+            deflater.end();
+            return bs;
+        }
+    };
+
+    static final int PAGE_SIZE = 4096;
+
+    static final String[] WORDS = {
+        "com.apple", "Library", "Preferences", "Caches", "Documents", "image", "jpeg", "message", "chat", "contact",
+        "address", "phone", "email", "note", "calendar", "event", "photo", "video", "mobile", "sync"
+    };
+
+    static long page(Random random, ByteBuffer page, long rowid) {
+        // Cell content is written downwards from the end of the page, cell pointers upwards after the header.
+        int content = PAGE_SIZE;
+        int nCells = 0;
+        byte[] cell = new byte[256];
+        while (true) {
+            int n = cell(random, cell, rowid);
+            if (content - n < 8 + 2 * (nCells + 1)) {
+                break;
+            }
+            content -= n;
+            page.position(content);
+            page.put(cell, 0, n);
+            page.putShort(8 + 2 * nCells, (short) content);
+            nCells++;
+            rowid++;
+        }
+        page.put(0, (byte) 0x0D);
+        page.putShort(1, (short) 0);
+        page.putShort(3, (short) nCells);
+        page.putShort(5, (short) content);
+        page.put(7, (byte) 0);
+        return rowid;
+    }
+
+    static int cell(Random random, byte[] cell, long rowid) {
+        // Record: header (header length, serial types) followed by the column values.
+        String text = WORDS[random.nextInt(WORDS.length)] + "." + WORDS[random.nextInt(WORDS.length)];
+        int flags = random.nextInt(4);
+        long timestamp = 500000000L + rowid * 37 + random.nextInt(1000);
+        ByteBuffer record = ByteBuffer.allocate(cell.length - 16);
+        record.put((byte) 5);
+        record.put((byte) 1);
+        record.put((byte) 6);
+        record.put((byte) (text.length() * 2 + 13));
+        record.put((byte) (flags == 0 ? 8 : 9));
+        record.put((byte) 0);
+        record.put((byte) random.nextInt(100));
+        record.putLong(timestamp);
+        for (int i = 0; i < text.length(); i++) {
+            record.put((byte) text.charAt(i));
+        }
+        int payload = record.position();
+
+        int n = varint(cell, 0, payload);
+        n += varint(cell, n, rowid);
+        System.arraycopy(record.array(), 0, cell, n, payload);
+        return n + payload;
+    }
+
+    static int varint(byte[] bs, int off, long value) {
+        int n = 1;
+        while (value >>> 7 * n != 0 && n < 9) {
+            n++;
+        }
+        for (int i = 0; i < n; i++) {
+            bs[off + i] = (byte) ((value >>> 7 * (n - 1 - i) & 0x7F) | (i < n - 1 ? 0x80 : 0));
+        }
+        return n;
+    }
+
+    @Nonnull
+    static NSDictionary plist(Random random) {
+        NSDictionary dictionary = new NSDictionary();
+        dictionary.put("$version", new NSNumber(100000));
+        dictionary.put("Domain", new NSString(WORDS[random.nextInt(WORDS.length)]));
+        dictionary.put("RelativePath", new NSString(
+                WORDS[random.nextInt(WORDS.length)] + "/" + WORDS[random.nextInt(WORDS.length)] + ".plist"));
+        dictionary.put("Size", new NSNumber(random.nextInt(1 << 24)));
+        dictionary.put("LastModified", new NSDate(new Date(1500000000000L + random.nextInt(1 << 30))));
+        byte[] digest = new byte[20];
+        random.nextBytes(digest);
+        dictionary.put("Digest", new NSData(digest));
+        NSArray flags = new NSArray(1 + random.nextInt(4));
+        for (int i = 0; i < flags.count(); i++) {
+            flags.setValue(i, new NSNumber(random.nextBoolean()));
+        }
+        dictionary.put("Flags", flags);
+        return dictionary;
+    }
+
+    abstract byte[] generate(Random random, int length);
+
+    @Nonnull
+    byte[] generate(int length) {
+        return generate(new Random(length), length);
+    }
+}
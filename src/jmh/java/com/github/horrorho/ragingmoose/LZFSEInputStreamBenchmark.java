@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LZFSEInputStream decoding throughput.
+ * <p>
+ * The {@code megabytes} secondary metric reports decoded MB/s, the {@code ratio} secondary metric the compression
+ * ratio of the decoded stream. Run with {@code -prof gc} for allocation rates,
+ * {@code gc.alloc.rate.norm} being bytes allocated per decoded stream.
+ *
+ * @author Ayesha
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LZFSEInputStreamBenchmark {
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            megabytes = 0;
+        }
+    }
+
+    @Param({"V1", "V2", "LZVN", "RAW"})
+    public BlockFormat format;
+
+    @Param({"TEXT", "SQLITE", "BPLIST", "MEDIA"})
+    public Corpus corpus;
+
+    @Param({"4194304"})
+    public int length;
+
+    private final byte[] buffer = new byte[16384];
+
+    private byte[] encoded;
+
+    private double compressionRatio;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        byte[] data = corpus.generate(length);
+        encoded = format.encode(data);
+
+        byte[] decoded = new byte[data.length];
+        try (InputStream is = new LZFSEInputStream(new ByteArrayInputStream(encoded))) {
+            for (int off = 0, n; off < decoded.length; off += n) {
+                n = is.read(decoded, off, decoded.length - off);
+                if (n == -1) {
+                    throw new IllegalStateException("truncated: " + format + " " + corpus);
+                }
+            }
+        }
+        if (!Arrays.equals(data, decoded)) {
+            throw new IllegalStateException("round trip failure: " + format + " " + corpus);
+        }
+        compressionRatio = (double) encoded.length / data.length;
+    }
+
+    @Benchmark
+    public long readArray(Counters counters, CompressionRatio ratio) throws IOException {
+        long n = 0;
+        try (InputStream is = new LZFSEInputStream(new ByteArrayInputStream(encoded))) {
+            for (int r; (r = is.read(buffer)) != -1;) {
+                n += r;
+            }
+        }
+        counters.megabytes += n / 1e6;
+        ratio.ratio = compressionRatio;
+        return n;
+    }
+
+    @Benchmark
+    public long readByte(Counters counters, CompressionRatio ratio) throws IOException {
+        long n = 0;
+        try (InputStream is = new LZFSEInputStream(new ByteArrayInputStream(encoded))) {
+            for (int b; (b = is.read()) != -1;) {
+                n += b;
+            }
+        }
+        counters.megabytes += length / 1e6;
+        ratio.ratio = compressionRatio;
+        return n;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LZFSEOutputStream encoding throughput.
+ * <p>
+ * The {@code megabytes} secondary metric reports encoded (input) MB/s, the {@code ratio} secondary metric the
+ * {@link CompressionRatio}. Run with {@code -prof gc} for allocation rates.
+ *
+ * @author Ayesha
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LZFSEOutputStreamBenchmark {
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            megabytes = 0;
+        }
+    }
+
+    @Param({"TEXT", "SQLITE", "BPLIST", "MEDIA"})
+    public Corpus corpus;
+
+    @Param({"4194304"})
+    public int length;
+
+    private byte[] data;
+
+    private ByteArrayOutputStream baos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = corpus.generate(length);
+        baos = new ByteArrayOutputStream(length + 4096);
+    }
+
+    @Benchmark
+    public int write(Counters counters, CompressionRatio ratio) throws IOException {
+        baos.reset();
+        try (OutputStream os = new LZFSEOutputStream(baos)) {
+            os.write(data);
+        }
+        counters.megabytes += length / 1e6;
+        ratio.ratio = (double) baos.size() / length;
+        return baos.size();
+    }
+}
@@ -23,12 +23,15 @@
  */
 package com.github.horrorho.inflatabledonkey;
 
+import com.github.horrorho.inflatabledonkey.args.filter.FilterPlan;
 import com.github.horrorho.inflatabledonkey.data.backup.Asset;
 import com.github.horrorho.inflatabledonkey.data.backup.AssetID;
 import com.github.horrorho.inflatabledonkey.data.backup.Assets;
 import com.github.horrorho.inflatabledonkey.data.backup.BackupAccount;
 import com.github.horrorho.inflatabledonkey.data.backup.Device;
 import com.github.horrorho.inflatabledonkey.data.backup.Snapshot;
+import com.github.horrorho.inflatabledonkey.governor.Governor;
+import com.github.horrorho.inflatabledonkey.journal.RunJournal;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -44,7 +47,6 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import static java.util.stream.Collectors.toMap;
@@ -65,10 +67,23 @@ public final class Backup {
 
     private final BackupAssistant backupAssistant;
     private final DownloadAssistant downloadAssistant;
+    private final Optional<Governor> governor;
+    private final Optional<RunJournal> journal;
 
-    public Backup(BackupAssistant backupAssistant, DownloadAssistant downloadAssistant) {
+    public Backup(BackupAssistant backupAssistant, DownloadAssistant downloadAssistant, Optional<Governor> governor,
+            Optional<RunJournal> journal) {
         this.backupAssistant = Objects.requireNonNull(backupAssistant);
         this.downloadAssistant = Objects.requireNonNull(downloadAssistant);
+        this.governor = Objects.requireNonNull(governor);
+        this.journal = Objects.requireNonNull(journal);
+    }
+
+    public Backup(BackupAssistant backupAssistant, DownloadAssistant downloadAssistant, Optional<Governor> governor) {
+        this(backupAssistant, downloadAssistant, governor, Optional.empty());
+    }
+
+    public Backup(BackupAssistant backupAssistant, DownloadAssistant downloadAssistant) {
+        this(backupAssistant, downloadAssistant, Optional.empty());
     }
 
     public Map<Device, List<Snapshot>> snapshots(HttpClient httpClient) throws IOException {
@@ -95,13 +110,22 @@ public final class Backup {
             Predicate<Assets> assetsFilter,
             Predicate<Asset> assetFilter
     ) throws IOException {
+        download(httpClient, snapshots, snapshotFilter, new FilterPlan(assetsFilter, u -> true, assetFilter));
+    }
+
+    public void download(
+            HttpClient httpClient,
+            Map<Device, ? extends Collection<Snapshot>> snapshots,
+            Predicate<Snapshot> snapshotFilter,
+            FilterPlan filterPlan
+    ) throws IOException {
 
         for (Map.Entry<Device, ? extends Collection<Snapshot>> deviceSnapshot : snapshots.entrySet()) {
             Device device = deviceSnapshot.getKey();
 
             for (Snapshot snapshot : deviceSnapshot.getValue()) {
                 if (snapshotFilter.test(snapshot)) {
-                    downloadSnapshot(httpClient, device, snapshot, assetsFilter, assetFilter);
+                    downloadSnapshot(httpClient, device, snapshot, filterPlan);
                 } else {
                     logger.info("-- download() - skipping snapshot: {}", snapshot.info());
                 }
@@ -111,35 +135,75 @@ public final class Backup {
 
     public void downloadSnapshot(HttpClient httpClient, Device device, Snapshot snapshot,
             Predicate<Assets> assetsFilter, Predicate<Asset> assetFilter) throws IOException {
+        downloadSnapshot(httpClient, device, snapshot, new FilterPlan(assetsFilter, u -> true, assetFilter));
+    }
+
+    public void downloadSnapshot(HttpClient httpClient, Device device, Snapshot snapshot, FilterPlan filterPlan)
+            throws IOException {
         System.out.println("Retrieving snapshot: " + snapshot.info());
         System.out.println("");
+        // Output folders.
+        Path relativePath = deviceSnapshotDateSubPath(device, snapshot);
+        logger.info("-- download() - snapshot relative path: {}", relativePath);
+
+        // Each snapshot is a governor lane, sharing bandwidth and request budgets fairly with other snapshots.
+        String key = relativePath.toString();
+        HttpClient laneClient = governor.map(u -> u.client(httpClient, key))
+                .orElse(httpClient);
+
+        // Interrupted run, resume without re-walking the snapshot.
+        Optional<RunJournal.Resume> resume = journal.flatMap(u -> u.resume(key));
+        if (resume.isPresent()) {
+            resumeSnapshot(laneClient, relativePath, resume.get(), filterPlan);
+            return;
+        }
+
         // Asset list.
-        List<Assets> assetsList = backupAssistant.assetsList(httpClient, snapshot);
+        List<Assets> assetsList = backupAssistant.assetsList(laneClient, snapshot);
         logger.debug("-- download() - assets count: {}", assetsList.size());
 
         // Assets filter
-        // TODO should filter out asset size here.
         List<Assets> assets = assetsList.stream()
-                .filter(assetsFilter)
+                .filter(filterPlan.assetsFilter())
                 .collect(Collectors.toList());
         logger.debug("-- download() - assets/ domain filtered count: {}", assets.size());
 
-        // Output folders.
-        Path relativePath = deviceSnapshotDateSubPath(device, snapshot);
-        logger.info("-- download() - snapshot relative path: {}", relativePath);
-
         // AssetIDs
         Map<AssetID, String> assetIDDomains = assets.stream()
                 .map(u -> u.nonEmptyMap()) // TODO handle empty assets at some point
                 .flatMap(u -> u.entrySet().stream())
+                .filter(u -> filterPlan.assetIDFilter().test(u.getKey()))
                 .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (l, r) -> l));
+        logger.debug("-- download() - asset id filtered count: {}", assetIDDomains.size());
+        journal.ifPresent(u -> u.pending(key, assetIDDomains));
+
+        // Asset pages are filtered, batched and downloaded as they arrive, whilst later pages are still being fetched.
+        DownloadAssistant.Session session = downloadAssistant.session(laneClient, relativePath);
+        backupAssistant.assets(laneClient, assetIDDomains, u -> session.accept(u
+                .stream()
+                .filter(filterPlan.assetFilter())
+                .collect(Collectors.toList())));
+        session.await();
+        journal.ifPresent(u -> u.snapshotDone(key));
+    }
 
-        Set<Asset> assetList = backupAssistant.assets(httpClient, assetIDDomains)
+    void resumeSnapshot(HttpClient httpClient, Path relativePath, RunJournal.Resume resume, FilterPlan filterPlan)
+            throws IOException {
+        logger.info("-- resumeSnapshot() - snapshot: {} resume: {}", relativePath, resume);
+        if (resume.isDone()) {
+            System.out.println("Snapshot already completed.");
+            return;
+        }
+        System.out.println("Resuming snapshot, outstanding assets: " + resume.outstanding().size());
+        List<Asset> assets = backupAssistant.assets(httpClient, resume.outstanding())
                 .stream()
-                .filter(assetFilter::test)
-                .collect(Collectors.toSet());
+                .filter(filterPlan.assetFilter())
+                .collect(Collectors.toList());
 
-        downloadAssistant.download(httpClient, assetList, relativePath);
+        DownloadAssistant.Session session = downloadAssistant.session(httpClient, relativePath);
+        session.resume(assets, resume.batches());
+        session.await();
+        journal.ifPresent(u -> u.snapshotDone(relativePath.toString()));
     }
 
     public Path deviceSnapshotDateSubPath(Device device, Snapshot snapshot) {
@@ -24,6 +24,7 @@
 package com.github.horrorho.inflatabledonkey;
 
 import com.github.horrorho.inflatabledonkey.cloud.accounts.Account;
+import com.github.horrorho.inflatabledonkey.cache.RecordCache;
 import com.github.horrorho.inflatabledonkey.cloud.clients.AssetTokenClient;
 import com.github.horrorho.inflatabledonkey.cloud.clients.AssetsClient;
 import com.github.horrorho.inflatabledonkey.cloud.clients.BackupAccountClient;
@@ -54,6 +55,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.http.client.HttpClient;
@@ -70,20 +72,35 @@ public final class BackupAssistant {
     public static BackupAssistant
             create(HttpClient httpClient, ForkJoinPool forkJoinPool, Account account,
                     ServiceKeySet escrowServiceKeySet, UUID deviceID, String deviceHardwareID) throws IOException {
+        return create(httpClient, forkJoinPool, account, escrowServiceKeySet, deviceID, deviceHardwareID,
+                RecordCache.disabled());
+    }
+
+    public static BackupAssistant
+            create(HttpClient httpClient, ForkJoinPool forkJoinPool, Account account,
+                    ServiceKeySet escrowServiceKeySet, UUID deviceID, String deviceHardwareID, RecordCache recordCache)
+            throws IOException {
         CKInit ckInit = CKInits.ckInitBackupd(httpClient, account);
         CloudKitty kitty = CloudKitties.backupd(forkJoinPool, ckInit, account, deviceID, deviceHardwareID);
         ProtectionZone mbksync = MBKSyncClient.apply(httpClient, kitty, escrowServiceKeySet.keys());
-        return new BackupAssistant(kitty, mbksync);
+        return new BackupAssistant(kitty, mbksync, KeyBagManager.defaults(kitty, mbksync), recordCache);
     }
 
     private static final Logger logger = LoggerFactory.getLogger(BackupAssistant.class);
 
     private final CloudKitty kitty;
     private final ProtectionZone mbksync;
+    private final RecordCache recordCache;
 
-    public BackupAssistant(CloudKitty kitty, ProtectionZone mbksync, KeyBagManager keyBagManager) {
+    public BackupAssistant(CloudKitty kitty, ProtectionZone mbksync, KeyBagManager keyBagManager,
+            RecordCache recordCache) {
         this.kitty = Objects.requireNonNull(kitty, "kitty");
         this.mbksync = Objects.requireNonNull(mbksync, "mbksync");
+        this.recordCache = Objects.requireNonNull(recordCache, "recordCache");
+    }
+
+    public BackupAssistant(CloudKitty kitty, ProtectionZone mbksync, KeyBagManager keyBagManager) {
+        this(kitty, mbksync, keyBagManager, RecordCache.disabled());
     }
 
     public BackupAssistant(CloudKitty kitty, ProtectionZone mbksync) {
@@ -100,7 +117,7 @@ public final class BackupAssistant {
 
     public List<Snapshot>
             snapshots(HttpClient httpClient, Collection<SnapshotID> snapshotIDs) throws IOException {
-        return SnapshotClient.snapshots(httpClient, kitty, mbksync, snapshotIDs);
+        return SnapshotClient.snapshots(httpClient, kitty, mbksync, snapshotIDs, recordCache);
     }
 
     public Map<Device, List<Snapshot>>
@@ -132,11 +149,16 @@ public final class BackupAssistant {
                 .stream()
                 .filter(u -> u.count() != 0)
                 .collect(Collectors.toList());
-        return AssetsClient.apply(httpClient, kitty, mbksync, manifests);
+        return AssetsClient.apply(httpClient, kitty, mbksync, manifests, recordCache);
     }
 
     public List<Asset> assets(HttpClient httpClient, Map<AssetID, String> assetIDs) throws IOException {
-        return AssetTokenClient.apply(httpClient, kitty, mbksync, assetIDs);
+        return AssetTokenClient.apply(httpClient, kitty, mbksync, assetIDs, recordCache);
+    }
+
+    public void assets(HttpClient httpClient, Map<AssetID, String> assetIDs, Consumer<List<Asset>> consumer)
+            throws IOException {
+        AssetTokenClient.stream(httpClient, kitty, mbksync, assetIDs, recordCache, consumer);
     }
 
     public KeyBagManager newKeyBagManager() {
@@ -24,17 +24,36 @@
 package com.github.horrorho.inflatabledonkey;
 
 import com.github.horrorho.inflatabledonkey.cloud.Donkey;
+import com.github.horrorho.inflatabledonkey.cloud.DownloadEngine;
 import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.data.backup.AssetID;
+import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
 import com.github.horrorho.inflatabledonkey.file.FileAssembler;
+import com.github.horrorho.inflatabledonkey.file.FilePath;
 import com.github.horrorho.inflatabledonkey.file.XFileKeyFactory;
+import com.github.horrorho.inflatabledonkey.journal.RunJournal;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
-import java.util.function.Function;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
@@ -50,38 +69,76 @@ public final class DownloadAssistant {
 
     private static final Logger logger = LoggerFactory.getLogger(DownloadAssistant.class);
 
-    private final Function<Set<Asset>, List<Set<Asset>>> batchFunction;
+    private final BiFunction<HttpClient, Set<Asset>, List<Set<Asset>>> batchFunction;
     private final KeyBagManager keyBagManager;
     private final ForkJoinPool forkJoinPool;
-    private final Optional<ForkJoinPool> forkJoinPoolAux;
-    private final Donkey donkey;
+    private final DownloadEngine engine;
     private final Path folder;
+    private final Optional<RunJournal> journal;
+    private final Optional<ExecutorService> decompression;
 
     public DownloadAssistant(
-            Function<Set<Asset>, List<Set<Asset>>> batchFunction,
+            BiFunction<HttpClient, Set<Asset>, List<Set<Asset>>> batchFunction,
             KeyBagManager keyBagManager,
             ForkJoinPool forkJoinPool,
-            Optional<ForkJoinPool> forkJoinPoolAux,
-            Donkey donkey,
-            Path folder) {
+            DownloadEngine engine,
+            Path folder,
+            Optional<RunJournal> journal,
+            Optional<ExecutorService> decompression) {
 
         this.batchFunction = Objects.requireNonNull(batchFunction);
         this.keyBagManager = Objects.requireNonNull(keyBagManager);
         this.forkJoinPool = Objects.requireNonNull(forkJoinPool);
-        this.forkJoinPoolAux = Objects.requireNonNull(forkJoinPoolAux);
-        this.donkey = Objects.requireNonNull(donkey);
+        this.engine = Objects.requireNonNull(engine);
         this.folder = Objects.requireNonNull(folder);
+        this.journal = Objects.requireNonNull(journal);
+        this.decompression = Objects.requireNonNull(decompression);
+    }
+
+    public DownloadAssistant(
+            BiFunction<HttpClient, Set<Asset>, List<Set<Asset>>> batchFunction,
+            KeyBagManager keyBagManager,
+            ForkJoinPool forkJoinPool,
+            DownloadEngine engine,
+            Path folder) {
+
+        this(batchFunction, keyBagManager, forkJoinPool, engine, folder, Optional.empty(), Optional.empty());
+    }
+
+    public DownloadAssistant(
+            BiFunction<HttpClient, Set<Asset>, List<Set<Asset>>> batchFunction,
+            KeyBagManager keyBagManager,
+            ForkJoinPool forkJoinPool,
+            Optional<ForkJoinPool> forkJoinPoolAux,
+            Donkey donkey,
+            Path folder) {
+
+        this(batchFunction, keyBagManager, forkJoinPool, donkey.engine(forkJoinPoolAux), folder);
     }
 
     public void download(HttpClient httpClient, Set<Asset> assets, Path relativePath) {
         logger.trace("<< download() - assets: {}", assets.size());
+        Session session = session(httpClient, relativePath);
+        session.accept(assets);
+        session.await();
+        logger.trace(">> download()");
+    }
+
+    /**
+     * Returns a new incremental download session. Assets may be accepted as they become available, with downloads
+     * commencing immediately.
+     *
+     * @param httpClient http client
+     * @param relativePath output path, relative to our output folder
+     * @return new session
+     */
+    public Session session(HttpClient httpClient, Path relativePath) {
         Path outputFolder = folder.resolve(relativePath);
-        keyBagManager.update(httpClient, assets);
+        String key = relativePath.toString();
         XFileKeyFactory fileKeys = new XFileKeyFactory(keyBagManager::keyBag);
-        FileAssembler fileAssembler = new FileAssembler(fileKeys, outputFolder);
-        List<Set<Asset>> batchedAssets = batchFunction.apply(assets);
-        execute(httpClient, fileAssembler, batchedAssets);
-        logger.trace(">> download()");
+        FileAssembler fileAssembler = FileAssembler.create(fileKeys, outputFolder, decompression, (asset, path)
+                -> journal.ifPresent(u -> u.written(key, asset, outputFolder.relativize(path).toString())));
+        return new Session(httpClient, fileAssembler, key, outputFolder);
     }
 
     public void execute(HttpClient httpClient, FileAssembler fileAssembler, List<Set<Asset>> batchedAssets) {
@@ -89,7 +146,7 @@ public final class DownloadAssistant {
         try {
             forkJoinPool.submit(() -> batchedAssets
                     .parallelStream()
-                    .forEach(u -> donkey.apply(httpClient, forkJoinPoolAux, u, fileAssembler)))
+                    .forEach(u -> engine.apply(httpClient, u, fileAssembler)))
                     .get();
 
         } catch (InterruptedException ex) {
@@ -100,4 +157,178 @@ public final class DownloadAssistant {
             throw new RuntimeException(ex);
         }
     }
+
+    /**
+     * Incremental download session. Each accepted asset page is handed off to our pool, where it is key bag resolved,
+     * batched and its batches downloaded. The number of pages in progress is bounded, {@link #accept(Collection)}
+     * blocking whilst at the limit. Pages are typically accepted on our own pool's workers, so the wait is a managed
+     * block, allowing the pool to compensate with a spare worker that runs the page tasks releasing the slots.
+     */
+    @ThreadSafe
+    public final class Session implements Consumer<Collection<Asset>> {
+
+        private final Queue<ForkJoinTask<?>> tasks = new ConcurrentLinkedQueue<>();
+        private final Semaphore pages = new Semaphore(Math.max(2, forkJoinPool.getParallelism() * 2));
+        private volatile boolean aborted;
+        private final HttpClient httpClient;
+        private final FileAssembler fileAssembler;
+        private final String key;
+        private final Path outputFolder;
+        private final FilePath filePath;
+
+        Session(HttpClient httpClient, FileAssembler fileAssembler, String key, Path outputFolder) {
+            this.httpClient = Objects.requireNonNull(httpClient);
+            this.fileAssembler = Objects.requireNonNull(fileAssembler);
+            this.key = Objects.requireNonNull(key);
+            this.outputFolder = Objects.requireNonNull(outputFolder);
+            this.filePath = new FilePath(outputFolder);
+        }
+
+        /**
+         * Accepts an asset page, blocking whilst the page limit is reached. Key bag resolution, batching and
+         * downloads run on our pool.
+         *
+         * @param assets asset page
+         * @throws UncheckedInterruptedException if interrupted whilst waiting for a page slot
+         */
+        @Override
+        public void accept(Collection<Asset> assets) {
+            if (assets.isEmpty()) {
+                return;
+            }
+            Set<Asset> page = new HashSet<>(assets);
+            submit(() -> {
+                keyBagManager.update(httpClient, page);
+                List<Set<Asset>> batchedAssets = batchFunction.apply(httpClient, page);
+                logger.debug("-- accept() - assets: {} batch count: {}", page.size(), batchedAssets.size());
+                return batchedAssets;
+            });
+        }
+
+        /**
+         * Accepts the assets of an interrupted run. Assets already written are skipped. Assets of an interrupted
+         * batch are re-submitted together, the remainder are batched as usual.
+         *
+         * @param assets outstanding assets
+         * @param batches outstanding asset IDs of each interrupted batch
+         */
+        public void resume(Collection<Asset> assets, List<Set<AssetID>> batches) {
+            Set<Asset> outstanding = assets.stream()
+                    .filter(u -> !isWritten(u))
+                    .collect(toSet());
+            logger.debug("-- resume() - assets: {} outstanding: {}", assets.size(), outstanding.size());
+            if (outstanding.isEmpty()) {
+                return;
+            }
+            submit(() -> {
+                keyBagManager.update(httpClient, outstanding);
+                List<Set<Asset>> batchedAssets = new ArrayList<>();
+                for (Set<AssetID> batch : batches) {
+                    Set<Asset> assetBatch = outstanding.stream()
+                            .filter(u -> batch.contains(u.assetID()))
+                            .collect(toSet());
+                    outstanding.removeAll(assetBatch);
+                    if (!assetBatch.isEmpty()) {
+                        batchedAssets.add(assetBatch);
+                    }
+                }
+                if (!outstanding.isEmpty()) {
+                    batchedAssets.addAll(batchFunction.apply(httpClient, outstanding));
+                }
+                return batchedAssets;
+            });
+        }
+
+        boolean isWritten(Asset asset) {
+            return journal.isPresent() && filePath.apply(asset)
+                    .map(u -> journal.get().isWritten(key, asset, outputFolder.relativize(u).toString()))
+                    .orElse(false);
+        }
+
+        /**
+         * Submits a page task, holding a page slot until all of the page's batches have completed.
+         *
+         * @param page batches supplier, run on our pool
+         */
+        void submit(Supplier<List<Set<Asset>>> page) {
+            try {
+                ForkJoinPool.managedBlock(new PageSlot());
+            } catch (InterruptedException ex) {
+                throw new UncheckedInterruptedException(ex);
+            }
+            tasks.add(forkJoinPool.submit(() -> {
+                try {
+                    if (!aborted) {
+                        ForkJoinTask.invokeAll(page.get()
+                                .stream()
+                                .map(this::batch)
+                                .collect(toList()));
+                    }
+                } finally {
+                    pages.release();
+                }
+            }));
+        }
+
+        @NotThreadSafe
+        final class PageSlot implements ForkJoinPool.ManagedBlocker {
+
+            private boolean acquired;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!acquired) {
+                    pages.acquire();
+                    acquired = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return acquired || (acquired = pages.tryAcquire());
+            }
+        }
+
+        ForkJoinTask<?> batch(Set<Asset> batch) {
+            OptionalInt id = journal.map(u -> OptionalInt.of(u.batch(key, batch))).orElse(OptionalInt.empty());
+            return ForkJoinTask.adapt(() -> {
+                if (aborted) {
+                    return;
+                }
+                engine.apply(httpClient, batch, fileAssembler);
+                id.ifPresent(u -> journal.get().batchDone(key, u));
+            });
+        }
+
+        /**
+         * Waits for all submitted downloads to complete. On failure, batches not yet started are skipped and
+         * those in progress are allowed to complete before the failure is rethrown.
+         *
+         * @throws UncheckedInterruptedException if interrupted, batches not yet started are skipped
+         */
+        public void await() {
+            try {
+                for (ForkJoinTask<?> task = tasks.poll(); task != null; task = tasks.poll()) {
+                    task.get();
+                }
+
+            } catch (InterruptedException ex) {
+                // Incomplete, the caller must not treat the session as done.
+                aborted = true;
+                throw new UncheckedInterruptedException(ex);
+
+            } catch (ExecutionException ex) {
+                drain();
+                throw new RuntimeException(ex);
+            }
+        }
+
+        void drain() {
+            aborted = true;
+            for (ForkJoinTask<?> task = tasks.poll(); task != null; task = tasks.poll()) {
+                task.quietlyJoin();
+            }
+        }
+    }
 }
@@ -31,6 +31,8 @@ import com.github.horrorho.inflatabledonkey.data.backup.KeyBag;
 import com.github.horrorho.inflatabledonkey.data.backup.KeyBagID;
 import com.github.horrorho.inflatabledonkey.data.backup.KeyBagType;
 import com.github.horrorho.inflatabledonkey.pcs.zone.ProtectionZone;
+import com.github.horrorho.inflatabledonkey.trace.KeyBagFetchEvent;
+import com.github.horrorho.inflatabledonkey.trace.Tracing;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
@@ -111,12 +113,21 @@ public final class KeyBagManager {
     }
 
     KeyBag fetchKeyBag(HttpClient httpClient, KeyBagID keyBagID) {
+        KeyBagFetchEvent event = Tracing.AVAILABLE ? new KeyBagFetchEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        Optional<KeyBag> keyBag = keyBagClient.apply(httpClient, keyBagID);
+        if (event != null && event.shouldCommit()) {
+            event.keyBagID = keyBagID.toString();
+            event.success = keyBag.isPresent();
+            event.commit();
+        }
         // FAIL used to limit recurrent fetches on unavailable key bags.
-        return keyBagClient.apply(httpClient, keyBagID)
-                .orElseGet(() -> {
-                    logger.warn(" --fetchKeyBag() - failed to fetch key bag: {}", keyBagID);
-                    return FAIL;
-                });
+        return keyBag.orElseGet(() -> {
+            logger.warn(" --fetchKeyBag() - failed to fetch key bag: {}", keyBagID);
+            return FAIL;
+        });
     }
 
     @Override
@@ -29,45 +29,71 @@ import com.github.horrorho.inflatabledonkey.args.PropertyLoader;
 import com.github.horrorho.inflatabledonkey.args.filter.ArgsSelector;
 import com.github.horrorho.inflatabledonkey.args.filter.AssetFilter;
 import com.github.horrorho.inflatabledonkey.args.filter.AssetsFilter;
+import com.github.horrorho.inflatabledonkey.args.filter.FilterPlan;
 import com.github.horrorho.inflatabledonkey.args.filter.SnapshotFilter;
 import com.github.horrorho.inflatabledonkey.args.filter.UserSelector;
 import com.github.horrorho.inflatabledonkey.cache.FileCache;
+import com.github.horrorho.inflatabledonkey.cache.RecordCache;
 import com.github.horrorho.inflatabledonkey.cache.InflatableData;
 import com.github.horrorho.inflatabledonkey.chunk.engine.ChunkClient;
+import com.github.horrorho.inflatabledonkey.chunk.engine.Hedger;
 import com.github.horrorho.inflatabledonkey.chunk.store.ChunkDigest;
 import com.github.horrorho.inflatabledonkey.chunk.store.ChunkDigests;
 import com.github.horrorho.inflatabledonkey.chunk.store.disk.DiskChunkStore;
+import com.github.horrorho.inflatabledonkey.cloud.AuthorizeAssetsClient;
 import com.github.horrorho.inflatabledonkey.cloud.Donkey;
+import com.github.horrorho.inflatabledonkey.cloud.DownloadEngine;
+import com.github.horrorho.inflatabledonkey.cloud.LocalityBatcher;
+import com.github.horrorho.inflatabledonkey.cloud.PreliminaryAuthorizer;
+import com.github.horrorho.inflatabledonkey.cloud.StageExecutors;
+import com.github.horrorho.inflatabledonkey.cloud.StagedDonkey;
 import com.github.horrorho.inflatabledonkey.cloud.accounts.Account;
 import com.github.horrorho.inflatabledonkey.cloud.accounts.Accounts;
 import com.github.horrorho.inflatabledonkey.cloud.auth.Auth;
 import com.github.horrorho.inflatabledonkey.cloud.auth.Authenticator;
+import com.github.horrorho.inflatabledonkey.cloud.clients.MetadataDecoder;
 import com.github.horrorho.inflatabledonkey.cloud.escrow.EscrowedKeys;
 import com.github.horrorho.inflatabledonkey.data.backup.Asset;
-import com.github.horrorho.inflatabledonkey.data.backup.Assets;
 import com.github.horrorho.inflatabledonkey.data.backup.Device;
 import com.github.horrorho.inflatabledonkey.data.backup.Snapshot;
 import com.github.horrorho.inflatabledonkey.data.der.DERUtils;
 import com.github.horrorho.inflatabledonkey.data.der.KeySet;
+import com.github.horrorho.inflatabledonkey.governor.Governor;
+import com.github.horrorho.inflatabledonkey.io.IOBiFunction;
+import com.github.horrorho.inflatabledonkey.journal.JournaledAuthorizer;
+import com.github.horrorho.inflatabledonkey.journal.RunJournal;
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
 import com.github.horrorho.inflatabledonkey.pcs.service.ServiceKeySet;
 import com.github.horrorho.inflatabledonkey.pcs.service.ServiceKeySetBuilder;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
 import com.github.horrorho.inflatabledonkey.util.BatchSetIterator;
+import com.github.horrorho.inflatabledonkey.util.RateSchedule;
+import com.github.horrorho.inflatabledonkey.util.ServerClock;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
-import java.util.function.Function;
+import java.util.function.BiFunction;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
@@ -155,6 +181,19 @@ public class Main {
         logger.info("-- main() - ForkJoinPool parallelism: {}", forkJoinPool.getParallelism());
         logger.info("-- main() - ForkJoinPool aux: {}", forkJoinPoolAux.map(ForkJoinPool::getParallelism));
         logger.info("-- main() - ForkJoinPool fragmentation threshold: {}", fragmentationThreshold);
+        logger.info("-- main() - metadata decode parallelism: {}", MetadataDecoder.instance().parallelism());
+
+        // Metrics
+        Metrics metrics = Metrics.instance();
+        metrics.gauge("http.connections.leased", () -> connManager.getTotalStats().getLeased());
+        metrics.gauge("http.connections.pending", () -> connManager.getTotalStats().getPending());
+        metrics.gauge("http.connections.available", () -> connManager.getTotalStats().getAvailable());
+        metrics.gauge("pool.queued", forkJoinPool::getQueuedSubmissionCount);
+        forkJoinPoolAux.ifPresent(u -> metrics.gauge("pool.aux.queued", u::getQueuedSubmissionCount));
+        register(metrics, Metrics.OBJECT_NAME);
+        Optional<Path> metricsDumpFile = Property.METRICS_DUMP_FILE.value().map(Paths::get);
+        metricsDumpFile.ifPresent(u -> metrics.dump(u, Property.METRICS_DUMP_PERIOD_S.asLong().orElse(60L)));
+        logger.info("-- main() - metrics dump file: {}", metricsDumpFile);
 
         // Auth
         // TODO rework when we have UncheckedIOException for Authenticator
@@ -228,27 +267,126 @@ public class Main {
 
         logger.info("-- main() - device -> hardware id: {} uuid: {}", data.deviceHardWareId(), data.deviceUuid());
 
+        // Record cache
+        RecordCache recordCache = Property.RECORD_CACHE.asBoolean().orElse(false)
+                ? RecordCache.create(chunkOutputFolder.resolve("records"), cachedPassword)
+                : RecordCache.disabled();
+        logger.info("-- main() - record cache: {}", recordCache);
+
         // Backup
         BackupAssistant assistant
-                = BackupAssistant.create(httpClient, forkJoinPool, account, escrowServiceKeySet, data.deviceUuid(), data.deviceHardWareId());
+                = BackupAssistant.create(httpClient, forkJoinPool, account, escrowServiceKeySet, data.deviceUuid(), data.deviceHardWareId(), recordCache);
 
         // TODO automatic decrypt mode
         Property.DP_MODE.value().ifPresent(u -> logger.info("-- main() - decrypt mode override: {}", u));
 
         // Download tools.
-        DiskChunkStore chunkStore = new DiskChunkStore(ChunkDigest::new, ChunkDigests::test, chunkOutputFolder, tempOutputFolder);
+        boolean chunkCompression = Property.PATH_CHUNK_STORE_COMPRESSION.asBoolean().orElse(false);
+        DiskChunkStore chunkStore = new DiskChunkStore(ChunkDigest::new, ChunkDigests::test, chunkOutputFolder,
+                tempOutputFolder, chunkCompression);
         KeyBagManager keyBagManager = assistant.newKeyBagManager();
 
-        ChunkClient chunkClient = ChunkClient.defaults();
-
-        Donkey donkey = new Donkey(chunkClient, chunkStore, fragmentationThreshold);
+        boolean staged = Property.ENGINE_STAGED.asBoolean().orElse(false);
+        Optional<StageExecutors> stages = staged
+                ? Optional.of(StageExecutors.create(
+                        Property.ENGINE_AUTHORIZE_THREADS.asInteger().orElse(4),
+                        Property.ENGINE_FETCH_THREADS.asInteger().orElse(16),
+                        Property.ENGINE_DECRYPT_THREADS.asInteger().orElse(Runtime.getRuntime().availableProcessors()),
+                        Property.ENGINE_ASSEMBLE_THREADS.asInteger().orElse(4),
+                        Property.ENGINE_STAGE_QUEUE_CAPACITY.asInteger().orElse(32),
+                        Property.ENGINE_HOST_CONCURRENCY_MAX.asInteger().orElse(8)))
+                : Optional.empty();
+
+        // Staged hedges are admitted by the fetch stage's host dispatcher.
+        boolean hedge = Property.ENGINE_HEDGE.asBoolean().orElse(false);
+        ChunkClient chunkClient = hedge
+                ? ChunkClient.hedged(new Hedger(
+                        Property.ENGINE_HEDGE_PERCENTILE.asInteger().orElse(10),
+                        Property.ENGINE_HEDGE_BUDGET_PERCENT.asInteger().orElse(5) / 100d,
+                        Property.ENGINE_HEDGE_MIN_DELAY_MS.asLong().orElse(2000L),
+                        20,
+                        256,
+                        Property.ENGINE_HEDGE_THREADS.asInteger().orElse(4),
+                        host -> stages.map(u -> u.hosts().reserve(host)).orElseGet(() -> Optional.of(() -> {
+                        }))))
+                : ChunkClient.defaults();
+        logger.info("-- main() - hedged container fetches: {}", hedge);
+
+        // Opt-in run journal, an interrupted run with the same account and filters may be resumed.
+        boolean resume = Property.JOURNAL_RESUME.asBoolean().orElse(false);
+        String fingerprint = Stream.of(Property.FILTER_DEVICE, Property.FILTER_SNAPSHOT, Property.FILTER_ASSET_DOMAIN,
+                Property.FILTER_ASSET_ITEM_TYPE, Property.FILTER_ASSET_RELATIVE_PATH, Property.FILTER_ASSET_EXTENSION,
+                Property.FILTER_ASSET_SIZE_MAX, Property.FILTER_ASSET_SIZE_MIN, Property.FILTER_ASSET_BIRTH_MAX,
+                Property.FILTER_ASSET_BIRTH_MIN, Property.FILTER_ASSET_STATUS_CHANGED_MAX,
+                Property.FILTER_ASSET_STATUS_CHANGED_MIN)
+                .map(u -> u.name() + "=" + u.value().orElse(""))
+                .collect(joining("\n", account.accountInfo().appleId() + "\n", ""));
+        Optional<RunJournal> journal = Property.JOURNAL.asBoolean().orElse(false) || resume
+                ? Optional.of(RunJournal.open(assetOutputFolder.resolve(".journal"), resume, fingerprint))
+                : Optional.empty();
+        if (resume && !journal.filter(RunJournal::isResumed).isPresent()) {
+            System.out.println("No interrupted run with the same account and filters, starting a new run.");
+        }
+        journal.filter(RunJournal::isResumed)
+                .flatMap(RunJournal::serverClockOffset)
+                .ifPresent(ServerClock.instance()::update);
+        logger.info("-- main() - journal: {}", journal);
+
+        long reauthorizeLeadMs = Property.ENGINE_REAUTHORIZE_LEAD_MS.asLong().orElse(600000L);
+        IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> journaledAuthorizeAssets = journal
+                .<IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>>>map(u
+                        -> new JournaledAuthorizer(AuthorizeAssetsClient.backupd(), u, chunkClient::expiresAt,
+                                reauthorizeLeadMs))
+                .orElseGet(AuthorizeAssetsClient::backupd);
+        // Locality batching authorizes assets up front, the download engine reuses these authorizations.
+        boolean batchLocality = Property.ENGINE_BATCH_LOCALITY.asBoolean().orElse(true);
+        PreliminaryAuthorizer preliminaryAuthorizer
+                = new PreliminaryAuthorizer(journaledAuthorizeAssets, chunkClient::expiresAt, reauthorizeLeadMs);
+        IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets = batchLocality
+                ? preliminaryAuthorizer
+                : journaledAuthorizeAssets;
+
+        Donkey donkey = new Donkey(chunkClient, chunkStore, fragmentationThreshold, authorizeAssets);
+        DownloadEngine engine;
+        if (staged) {
+            int authorizePartitionSize = Property.ENGINE_AUTHORIZE_PARTITION_SIZE.asInteger().orElse(128);
+            engine = new StagedDonkey(donkey, stages.get(), reauthorizeLeadMs, authorizePartitionSize);
+        } else {
+            engine = donkey.engine(forkJoinPoolAux);
+        }
+        logger.info("-- main() - staged download engine: {}", staged);
         int batchThreshold = Property.ENGINE_BATCH_THRESHOLD.asInteger().orElse(1048576);
 
-        Function<Set<Asset>, List<Set<Asset>>> batchFunction
-                = u -> BatchSetIterator.batchedSetList(u, a -> a.size().map(Long::intValue).orElse(0), batchThreshold);
-        DownloadAssistant downloadAssistant
-                = new DownloadAssistant(batchFunction, keyBagManager, forkJoinPool, forkJoinPoolAux, donkey, outputFolder);
-        Backup backup = new Backup(assistant, downloadAssistant);
+        ToIntFunction<Asset> assetSize = a -> a.size().map(Long::intValue).orElse(0);
+        LocalityBatcher localityBatcher
+                = new LocalityBatcher(preliminaryAuthorizer::preauthorize, assetSize, batchThreshold);
+        // Batches are planned with each session's client, preliminary authorizations are governed per lane.
+        BiFunction<HttpClient, Set<Asset>, List<Set<Asset>>> batchFunction = batchLocality
+                ? localityBatcher::apply
+                : (client, u) -> BatchSetIterator.batchedSetList(u, assetSize, batchThreshold);
+        logger.info("-- main() - container locality batching: {}", batchLocality);
+        // Large compressed assets are decompressed in parallel, on the decrypt stage if staged.
+        ExecutorService decompression = stages.map(StageExecutors::decrypt)
+                .orElseGet(() -> StageExecutors.executor("decompress",
+                        Property.FILE_DECOMPRESSION_THREADS.asInteger()
+                                .orElse(Runtime.getRuntime().availableProcessors()),
+                        Property.ENGINE_STAGE_QUEUE_CAPACITY.asInteger().orElse(32)));
+        DownloadAssistant downloadAssistant = new DownloadAssistant(batchFunction, keyBagManager, forkJoinPool, engine,
+                outputFolder, journal, Optional.of(decompression));
+
+        // Governor, schedules may be replaced at runtime via JMX.
+        Optional<String> bytesSchedule = Property.GOVERNOR_BYTES_SCHEDULE.value();
+        Optional<String> requestsSchedule = Property.GOVERNOR_REQUESTS_SCHEDULE.value();
+        Optional<Governor> governor = bytesSchedule.isPresent() || requestsSchedule.isPresent()
+                ? Optional.of(Governor.create(
+                        bytesSchedule.map(RateSchedule::parse).orElseGet(RateSchedule::unlimited),
+                        requestsSchedule.map(RateSchedule::parse).orElseGet(RateSchedule::unlimited),
+                        Property.GOVERNOR_BURST_SECONDS.asInteger().orElse(2)))
+                : Optional.empty();
+        governor.ifPresent(u -> register(u, Governor.OBJECT_NAME));
+        logger.info("-- main() - governor: {}", governor);
+
+        Backup backup = new Backup(assistant, downloadAssistant, governor, journal);
 
         // Retrieve snapshots.
         Map<Device, List<Snapshot>> deviceSnapshots = backup.snapshots(httpClient);
@@ -268,8 +406,25 @@ public class Main {
         // Filter snapshots.
         Optional<List<String>> filterDevices = Property.FILTER_DEVICE.asList();
         Optional<List<Integer>> filterSnapshots = Property.FILTER_SNAPSHOT.asList(Integer::parseInt);
+        Set<String> resumeSelection = journal.map(RunJournal::selection).orElseGet(Collections::emptySet);
+        Map<Device, List<Snapshot>> resumed = deviceSnapshots.entrySet()
+                .stream()
+                .collect(toMap(Map.Entry::getKey, u -> u.getValue()
+                        .stream()
+                        .filter(v -> resumeSelection.contains(v.snapshotID().toString()))
+                        .collect(toList()),
+                        (a, b) -> a,
+                        LinkedHashMap::new));
+        resumed.values().removeIf(List::isEmpty);
+        if (!resumeSelection.isEmpty() && resumed.isEmpty()) {
+            System.out.println("Interrupted run snapshots are no longer available, starting a new run.");
+            journal.ifPresent(RunJournal::reset);
+        }
         final Map<Device, List<Snapshot>> filtered;
-        if (filterDevices.isPresent() || filterSnapshots.isPresent()) {
+        if (!resumed.isEmpty()) {
+            System.out.println("Resuming interrupted run.");
+            filtered = resumed;
+        } else if (filterDevices.isPresent() || filterSnapshots.isPresent()) {
             System.out.println("Available:");
             print(deviceSnapshots);
 
@@ -300,6 +455,10 @@ public class Main {
             return;
         }
 
+        if (resumed.isEmpty()) {
+            journal.ifPresent(u -> filtered.forEach((device, snapshots) -> snapshots.forEach(v -> u.select(device, v))));
+        }
+
         System.out.println("\nSelected:");
         print(filtered);
         System.out.println("");
@@ -310,7 +469,7 @@ public class Main {
             return;
         }
 
-        Predicate<Assets> assetsFilter = new AssetsFilter(Property.FILTER_ASSET_DOMAIN.asList());
+        AssetsFilter assetsFilter = new AssetsFilter(Property.FILTER_ASSET_DOMAIN.asList());
 
         // For simplicity we just pass in item types as relative paths, although it could give us superfluous matches.
         List<String> filterItemTypes = Property.FILTER_ASSET_ITEM_TYPE.asList().orElse(Collections.emptyList())
@@ -328,7 +487,7 @@ public class Main {
         List<String> filterExtensions = Property.FILTER_ASSET_EXTENSION.asList().orElse(Collections.emptyList());
         logger.info("-- main() - asset filter extensions: {}", filterExtensions);
 
-        Predicate<Asset> assetFilter = new AssetFilter(
+        AssetFilter assetFilter = new AssetFilter(
                 Property.FILTER_ASSET_BIRTH_MAX.asLong(),
                 Property.FILTER_ASSET_BIRTH_MIN.asLong(),
                 filterExtensions,
@@ -348,7 +507,28 @@ public class Main {
         // Can probably optimize further with snapshot date max to skip type 1 backups.
         Predicate<Snapshot> snapshotFilter = new SnapshotFilter(snapshotDateMin);
 
-        backup.download(httpClient, filtered, snapshotFilter, assetsFilter, assetFilter);
+        // Evaluate filter criteria as early as possible, excluded AssetIDs are never retrieved.
+        FilterPlan filterPlan = FilterPlan.of(assetsFilter, assetFilter);
+        logger.info("-- main() - filter plan: {}", filterPlan);
+
+        backup.download(httpClient, filtered, snapshotFilter, filterPlan);
+        journal.ifPresent(RunJournal::runDone);
+        logger.info("-- main() - metadata decoder: {}", MetadataDecoder.instance());
+        logger.info("-- main() - chunk client: {}", chunkClient);
+        logger.info("-- main() - authorizer: {}", authorizeAssets);
+        logger.info("-- main() - journal: {}", journal);
+        logger.info("-- main() - metrics: {}", metrics.snapshot());
+        if (metricsDumpFile.isPresent()) {
+            metrics.write(metricsDumpFile.get());
+        }
+    }
+
+    static void register(Object mbean, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+        } catch (JMException ex) {
+            logger.warn("-- register() - unable to register MBean: {} {}", name, ex.getMessage());
+        }
     }
 
     static void print(Map<Device, List<Snapshot>> deviceSnapshot) {
@@ -363,6 +543,5 @@ public class Main {
     }
 }
 
-// TODO filter AssetID size rather than wait to download Asset and then filter.
 // TODO reconstruct empty files/ empty directories
 // TODO Fix zones/ excessive key unwrapping.
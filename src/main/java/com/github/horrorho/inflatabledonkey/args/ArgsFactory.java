@@ -72,6 +72,10 @@ public final class ArgsFactory {
         args.add(mode());
         args.add(threads());
         args.add(turbo());
+        args.add(compressChunks());
+        args.add(cacheRecords());
+        args.add(journal());
+        args.add(resume());
         args.add(snapshots());
         args.add(domains());
         args.add(token());
@@ -240,6 +244,24 @@ public final class ArgsFactory {
         return new Arg(Property.QUIET, option);
     }
 
+    static Arg journal() {
+        Option option = Option.builder()
+                .longOpt("journal")
+                .desc("Journal the run, allowing it to be resumed with --resume if interrupted.")
+                .hasArg(false)
+                .build();
+        return new Arg(Property.JOURNAL, option);
+    }
+
+    static Arg resume() {
+        Option option = Option.builder()
+                .longOpt("resume")
+                .desc("Resume an interrupted run with the same account and filters.")
+                .hasArg(false)
+                .build();
+        return new Arg(Property.JOURNAL_RESUME, option);
+    }
+
     static Arg snapshots() {
         Option option = Option.builder()
                 .longOpt("snapshots")
@@ -249,6 +271,24 @@ public final class ArgsFactory {
         return new Arg(Property.PRINT_SNAPSHOTS, option);
     }
 
+    static Arg compressChunks() {
+        Option option = Option.builder()
+                .longOpt("compress-chunks")
+                .desc("LZFSE compress cached chunks.")
+                .hasArg(false)
+                .build();
+        return new Arg(Property.PATH_CHUNK_STORE_COMPRESSION, option);
+    }
+
+    static Arg cacheRecords() {
+        Option option = Option.builder()
+                .longOpt("cache-records")
+                .desc("Cache snapshot, manifest and asset records on disk, encrypted.")
+                .hasArg(false)
+                .build();
+        return new Arg(Property.RECORD_CACHE, option);
+    }
+
     static Arg domains() {
         Option option = Option.builder()
                 .longOpt("domains")
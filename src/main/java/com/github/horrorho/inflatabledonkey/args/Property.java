@@ -52,12 +52,32 @@ public enum Property {
     AUTHENTICATION_APPLEID,
     AUTHENTICATION_PASSWORD,
     AUTHENTICATION_TOKEN,
+    CLOUDKIT_BATCH_SIZE_MAX("400"),
+    CLOUDKIT_BATCH_SIZE_MIN("25"),
+    CLOUDKIT_CONCURRENCY_MAX("16"),
+    CLOUDKIT_LATENCY_TARGET_MS("15000"),
+    CLOUDKIT_RESPONSE_BYTES_MAX("16777216"),
     DP_AESCBC_BLOCK_SIZE("4096"),
     DP_AESXTS_BLOCK_SIZE("4096"),
     DP_MODE("AUTO"),
+    ENGINE_ASSEMBLE_THREADS("4"),
+    ENGINE_AUTHORIZE_PARTITION_SIZE("128"),
+    ENGINE_AUTHORIZE_THREADS("4"),
+    ENGINE_BATCH_LOCALITY("true"),
     ENGINE_BATCH_THRESHOLD("1048576"),
+    ENGINE_DECRYPT_THREADS(),
+    ENGINE_FETCH_THREADS("16"),
     ENGINE_FRAGMENTATION_THRESHOLD("64"),
     ENGINE_FRAGMENTATION_POOL_MULTIPLIER("2"),
+    ENGINE_HEDGE("false"),
+    ENGINE_HEDGE_BUDGET_PERCENT("5"),
+    ENGINE_HEDGE_MIN_DELAY_MS("2000"),
+    ENGINE_HEDGE_PERCENTILE("10"),
+    ENGINE_HEDGE_THREADS("4"),
+    ENGINE_HOST_CONCURRENCY_MAX("8"),
+    ENGINE_REAUTHORIZE_LEAD_MS("600000"),
+    ENGINE_STAGED("false"),
+    ENGINE_STAGE_QUEUE_CAPACITY("32"),
     ENGINE_THREADS("4"),
     FILTER_ASSET_BIRTH_MAX(),
     FILTER_ASSET_BIRTH_MIN(),
@@ -71,17 +91,31 @@ public enum Property {
     FILTER_ASSET_STATUS_CHANGED_MIN(),
     FILTER_DEVICE(),
     FILTER_SNAPSHOT(),
+    FILE_DECOMPRESSION_PARALLEL_THRESHOLD("16777216"),
+    FILE_DECOMPRESSION_THREADS(),
     FILE_WRITER_BUFFER_LENGTH("16384"),
+    GOVERNOR_BURST_SECONDS("2"),
+    GOVERNOR_BYTES_SCHEDULE(),
+    GOVERNOR_REQUESTS_SCHEDULE(),
     HTTP_CLIENT_CONNECTIONS_MAX_TOTAL("256"),
     HTTP_CLIENT_CONNECTIONS_MAX_PER_ROUTE("32"),
     HTTP_CLIENT_TIMEOUT_MS("60000"),
+    JOURNAL("false"),
+    JOURNAL_RESUME("false"),
+    METADATA_DECODE_THREADS(),
+    METRICS_DUMP_FILE(),
+    METRICS_DUMP_PERIOD_S("60"),
     OUTPUT_FOLDER("backups"),
     PRINT_DOMAIN_LIST("false"),
     PRINT_SNAPSHOTS("false"),
     PATH_CHUNK_STORE("chunks"),
+    PATH_CHUNK_STORE_COMPRESSION("false"),
     PATH_CHUNK_STORE_SUBSPLIT("3"),
     PATH_TEMP("temp"),
+    QUERY_PARTITION_SIZE("1000"),
+    QUERY_REQUESTS_IN_FLIGHT("4"),
     QUIET(),
+    RECORD_CACHE("false"),
     SRP_REMAINING_ATTEMPTS_THRESHOLD("3"),
     PROPERTIES_RESOURCE("/inflatable_donkey.properties");
 
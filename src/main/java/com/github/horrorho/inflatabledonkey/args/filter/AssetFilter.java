@@ -24,6 +24,7 @@
 package com.github.horrorho.inflatabledonkey.args.filter;
 
 import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.data.backup.AssetID;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Locale;
@@ -82,19 +83,45 @@ public final class AssetFilter implements Predicate<Asset> {
 
     @Override
     public boolean test(Asset asset) {
-        return filterAttributeSize(asset)
+        // Cheap unencrypted criteria first, the remainder force attribute decryption.
+        return filterAssetIDSize(asset)
+                && filterAttributeSize(asset)
                 && filterBirth(asset)
                 && filterRelativePath(asset)
                 && filterStatusChanged(asset);
     }
 
+    /**
+     * Returns the criteria that can be evaluated on the AssetID alone, before the asset record is retrieved.
+     *
+     * @return AssetID predicate
+     */
+    public Predicate<AssetID> assetIDFilter() {
+        return this::filterAssetIDSize;
+    }
+
+    boolean filterAssetIDSize(Asset asset) {
+        return filterAssetIDSize(asset.assetID());
+    }
+
+    boolean filterAssetIDSize(AssetID assetID) {
+        // Size 0 is either an empty file or a directory, defer to the attribute size.
+        long size = assetID.size();
+        return size == 0 || filterSize(size);
+    }
+
     boolean filterAttributeSize(Asset asset) {
         return asset.attributeSize()
-                .map(u -> sizeMax.map(v -> u <= v * 1024).orElse(true)
-                        && sizeMin.map(v -> u >= v * 1024).orElse(true))
+                .map(this::filterSize)
                 .orElse(true);
     }
 
+    boolean filterSize(long size) {
+        // Limits are in KiB.
+        return sizeMax.map(v -> size <= v * 1024L).orElse(true)
+                && sizeMin.map(v -> size >= v * 1024L).orElse(true);
+    }
+
     boolean filterBirth(Asset asset) {
         return asset.birth().map(Instant::getEpochSecond)
                 .map(u -> birthMax.map(v -> u <= v).orElse(true)
@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.args.filter;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.data.backup.AssetID;
+import com.github.horrorho.inflatabledonkey.data.backup.Assets;
+import java.util.Objects;
+import java.util.function.Predicate;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Filter plan. Asset criteria split by the earliest level at which they can be evaluated:
+ * <ul>
+ * <li>Assets - domain, before AssetIDs are expanded.</li>
+ * <li>AssetID - size, before asset records are retrieved.</li>
+ * <li>Asset - encrypted attributes, after asset records are retrieved.</li>
+ * </ul>
+ * Criteria pushed down to a cheaper level are re-evaluated harmlessly at later levels.
+ *
+ * @author Ahseya
+ */
+@Immutable
+public final class FilterPlan {
+
+    public static FilterPlan of(AssetsFilter assetsFilter, AssetFilter assetFilter) {
+        return new FilterPlan(assetsFilter, assetFilter.assetIDFilter(), assetFilter);
+    }
+
+    private final Predicate<Assets> assetsFilter;
+    private final Predicate<AssetID> assetIDFilter;
+    private final Predicate<Asset> assetFilter;
+
+    public FilterPlan(Predicate<Assets> assetsFilter, Predicate<AssetID> assetIDFilter, Predicate<Asset> assetFilter) {
+        this.assetsFilter = Objects.requireNonNull(assetsFilter, "assetsFilter");
+        this.assetIDFilter = Objects.requireNonNull(assetIDFilter, "assetIDFilter");
+        this.assetFilter = Objects.requireNonNull(assetFilter, "assetFilter");
+    }
+
+    public Predicate<Assets> assetsFilter() {
+        return assetsFilter;
+    }
+
+    public Predicate<AssetID> assetIDFilter() {
+        return assetIDFilter;
+    }
+
+    public Predicate<Asset> assetFilter() {
+        return assetFilter;
+    }
+
+    @Override
+    public String toString() {
+        return "FilterPlan{"
+                + "assetsFilter=" + assetsFilter
+                + ", assetIDFilter=" + assetIDFilter
+                + ", assetFilter=" + assetFilter
+                + '}';
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cache;
+
+import com.github.horrorho.inflatabledonkey.io.IOFunction;
+import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.crypto.RuntimeCryptoException;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
+import org.bouncycastle.crypto.io.InvalidCipherTextIOException;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.encoders.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encrypted on disk CloudKit record cache, keyed by zone and record name.
+ * <p>
+ * Each record is stored in its own file, named by the SHA-256 digest of its zone and record name, alongside its
+ * change tag and an expiry timestamp. Records past their expiry are stale and are not returned. Snapshot and manifest
+ * records are immutable and never expire. File keys are derived with HKDF from a PBKDF2 master key, so the cost of
+ * password stretching is paid once rather than per record.
+ * <p>
+ * Cache failures are logged and treated as misses.
+ *
+ * @author Ayesha
+ */
+@ThreadSafe
+public final class RecordCache {
+
+    public static RecordCache create(Path folder, byte[] password) {
+        StreamCryptorHKDF kdf = new StreamCryptorHKDF(SHA256Digest::new, INFO, 32);
+        StreamCryptor streamCryptor = new StreamCryptor(kdf, 32, 12, 16);
+        return new RecordCache(Optional.of(folder), streamCryptor, masterKey(password));
+    }
+
+    public static RecordCache disabled() {
+        return DISABLED;
+    }
+
+    static byte[] masterKey(byte[] password) {
+        PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator(new SHA256Digest());
+        generator.init(password, INFO, 4096);
+        return ((KeyParameter) generator.generateDerivedParameters(256)).getKey();
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordCache.class);
+
+    private static final byte[] INFO = "InflatableDonkey RecordCache".getBytes(UTF_8);
+
+    private static final RecordCache DISABLED = new RecordCache(Optional.empty(), null, new byte[0]);
+
+    public static final Instant IMMUTABLE = Instant.MAX;
+
+    private final Optional<Path> folder;
+    private final StreamCryptor streamCryptor;
+    private final byte[] key;
+
+    RecordCache(Optional<Path> folder, StreamCryptor streamCryptor, byte[] key) {
+        this.folder = Objects.requireNonNull(folder);
+        this.streamCryptor = streamCryptor;
+        this.key = key.clone();
+    }
+
+    public boolean isEnabled() {
+        return folder.isPresent();
+    }
+
+    /**
+     * Returns the cached record, if present and not stale.
+     *
+     * @param zone zone
+     * @param recordName record name
+     * @return record, or empty if missing or stale
+     */
+    public Optional<CloudKit.Record> get(String zone, String recordName) {
+        return folder.flatMap(u -> load(u.resolve(path(zone, recordName))));
+    }
+
+    /**
+     * Caches the record.
+     *
+     * @param zone zone
+     * @param record record, keyed by its record identifier name
+     * @param expiry expiry, {@link #IMMUTABLE} for records that never expire
+     */
+    public void put(String zone, CloudKit.Record record, Instant expiry) {
+        if (!record.hasRecordIdentifier()) {
+            logger.debug("-- put() - no record identifier: {}", record);
+            return;
+        }
+        folder.ifPresent(u -> {
+            String recordName = record.getRecordIdentifier().getValue().getName();
+            store(u.resolve(path(zone, recordName)), record, expiry);
+        });
+    }
+
+    /**
+     * Returns the records, in no particular order. Only missing or stale records are fetched, fetched records are
+     * cached as immutable.
+     *
+     * @param zone zone
+     * @param recordNames record names
+     * @param fetch fetches the specified records
+     * @return records
+     * @throws IOException
+     */
+    public List<CloudKit.Record> immutable(String zone, Collection<String> recordNames,
+            IOFunction<List<String>, List<CloudKit.Record>> fetch) throws IOException {
+        List<CloudKit.Record> records = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String recordName : recordNames) {
+            Optional<CloudKit.Record> record = get(zone, recordName);
+            if (record.isPresent()) {
+                records.add(record.get());
+            } else {
+                missing.add(recordName);
+            }
+        }
+        logger.debug("-- immutable() - zone: {} cached: {} missing: {}", zone, records.size(), missing.size());
+        if (!missing.isEmpty()) {
+            List<CloudKit.Record> fetched = fetch.apply(missing);
+            fetched.forEach(u -> put(zone, u, IMMUTABLE));
+            records.addAll(fetched);
+        }
+        return records;
+    }
+
+    String path(String zone, String recordName) {
+        SHA256Digest digest = new SHA256Digest();
+        byte[] bs = (zone + "\u0000" + recordName).getBytes(UTF_8);
+        digest.update(bs, 0, bs.length);
+        byte[] out = new byte[digest.getDigestSize()];
+        digest.doFinal(out, 0);
+        String hex = Hex.toHexString(out);
+        return hex.substring(0, 2) + "/" + hex;
+    }
+
+    Optional<CloudKit.Record> load(Path file) {
+        try (InputStream is = streamCryptor.newCipherInputStream(Files.newInputStream(file), key)) {
+            ByteBuffer bb = ByteBuffer.wrap(IOUtils.toByteArray(is));
+            long expiry = bb.getLong();
+            if (Instant.now().getEpochSecond() > expiry) {
+                logger.debug("-- load() - stale: {} expiry: {}", file, expiry);
+                return Optional.empty();
+            }
+            byte[] etag = new byte[bb.getShort() & 0xFFFF];
+            bb.get(etag);
+            CloudKit.Record record = CloudKit.Record.parseFrom(Arrays.copyOfRange(bb.array(), bb.position(), bb.limit()));
+            logger.trace("-- load() - file: {} etag: {}", file, new String(etag, UTF_8));
+            return Optional.of(record);
+
+        } catch (NoSuchFileException ex) {
+            return Optional.empty();
+        } catch (InvalidProtocolBufferException | RuntimeCryptoException | InvalidCipherTextIOException ex) {
+            logger.debug("-- load() - bad entry: {} {}", file, ex.getMessage());
+            return Optional.empty();
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("-- load() - exception: {} {}", file, ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    void store(Path file, CloudKit.Record record, Instant expiry) {
+        try {
+            byte[] etag = record.getEtag().getBytes(UTF_8);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (DataOutputStream os = new DataOutputStream(streamCryptor.newCipherOutputStream(baos, key))) {
+                os.writeLong(expiry.getEpochSecond());
+                os.writeShort(etag.length);
+                os.write(etag);
+                record.writeTo(os);
+            }
+            AtomicWriter.write(file, baos.toByteArray());
+
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("-- store() - exception: {} {}", file, ex.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordCache{" + "folder=" + folder + ", streamCryptor=" + streamCryptor + '}';
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cache;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+import javax.annotation.concurrent.Immutable;
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.params.HKDFParameters;
+
+/**
+ * HKDF key derivation. Inexpensive per file key derivation from an already stretched master key.
+ *
+ * @author Ayesha
+ */
+@Immutable
+final class StreamCryptorHKDF implements StreamCryptor.KDF {
+
+    private final Supplier<Digest> digests;
+    private final byte[] info;
+    private final int keyLength;
+
+    StreamCryptorHKDF(Supplier<Digest> digests, byte[] info, int keyLength) {
+        this.digests = Objects.requireNonNull(digests);
+        this.info = info.clone();
+        this.keyLength = keyLength;
+    }
+
+    @Override
+    public byte[] apply(byte[] password, byte[] salt) {
+        HKDFBytesGenerator generator = new HKDFBytesGenerator(digests.get());
+        generator.init(new HKDFParameters(password, salt, info));
+        byte[] key = new byte[keyLength];
+        generator.generateBytes(key, 0, keyLength);
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamCryptorHKDF{"
+                + "digests=" + digests
+                + ", keyLength=" + keyLength
+                + '}';
+    }
+}
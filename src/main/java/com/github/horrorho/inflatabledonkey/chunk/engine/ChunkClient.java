@@ -24,71 +24,236 @@
 package com.github.horrorho.inflatabledonkey.chunk.engine;
 
 import com.github.horrorho.inflatabledonkey.chunk.store.ChunkStore;
+import com.github.horrorho.inflatabledonkey.exception.ContainerExpiredException;
 import com.github.horrorho.inflatabledonkey.io.IOFunction;
+import com.github.horrorho.inflatabledonkey.metrics.Histogram;
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.HostInfo;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
 import com.github.horrorho.inflatabledonkey.requests.ChunkListRequestFactory;
+import com.github.horrorho.inflatabledonkey.responsehandler.ByteArrayResponseHandler;
 import com.github.horrorho.inflatabledonkey.responsehandler.InputStreamResponseHandler;
+import com.github.horrorho.inflatabledonkey.trace.ContainerFetchEvent;
+import com.github.horrorho.inflatabledonkey.trace.Tracing;
+import com.github.horrorho.inflatabledonkey.util.ServerClock;
+import com.github.horrorho.inflatabledonkey.util.SingleFlight;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import static java.util.stream.Collectors.toList;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Fetches and decrypts chunk data from the server.
+ * Fetches and decrypts chunk data from the server. Concurrent requests for the same container are coalesced into a
+ * single download.
  *
  * @author Ahseya
  */
-@Immutable
+@ThreadSafe
 public final class ChunkClient {
 
     public static ChunkClient defaults() {
         return DEFAULTS;
     }
 
+    public static ChunkClient hedged(Hedger hedger) {
+        return new ChunkClient(ChunkListRequestFactory.instance(), DEFAULT_EXPIRY_TIMESTAMP_GRACE,
+                DEFAULT_FLIGHT_ATTEMPTS, Optional.of(hedger));
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(ChunkClient.class);
 
     // TODO inject
     private static final long DEFAULT_EXPIRY_TIMESTAMP_GRACE = -5 * 60 * 1000;  // Negative 5 min grace period.
+    private static final int DEFAULT_FLIGHT_ATTEMPTS = 2;
 
     private static final ChunkClient DEFAULTS
-            = new ChunkClient(ChunkListRequestFactory.instance(), DEFAULT_EXPIRY_TIMESTAMP_GRACE);
+            = new ChunkClient(ChunkListRequestFactory.instance(), DEFAULT_EXPIRY_TIMESTAMP_GRACE,
+                    DEFAULT_FLIGHT_ATTEMPTS);
     private static final ChunkListDecrypter DECRYPTER = ChunkListDecrypter.instance();
 
+    private static final Metrics METRICS = Metrics.instance();
+    private static final Histogram FETCH_MS = METRICS.histogram("chunk.fetch.ms");
+
     private final Function<HostInfo, HttpUriRequest> requestFactory;
     private final long expiryTimestampGrace;
+    private final SingleFlight<String, Void> applyFlights;
+    private final SingleFlight<String, Optional<byte[]>> fetchFlights;
+    private final Optional<Hedger> hedger;
 
-    public ChunkClient(Function<HostInfo, HttpUriRequest> requestFactory, long expiryTimestampGrace) {
+    public ChunkClient(Function<HostInfo, HttpUriRequest> requestFactory, long expiryTimestampGrace,
+            int flightAttempts, Optional<Hedger> hedger) {
         this.requestFactory = Objects.requireNonNull(requestFactory);
         this.expiryTimestampGrace = expiryTimestampGrace;
+        this.applyFlights = new SingleFlight<>(flightAttempts);
+        this.fetchFlights = new SingleFlight<>(flightAttempts);
+        this.hedger = Objects.requireNonNull(hedger, "hedger");
+    }
+
+    public ChunkClient(Function<HostInfo, HttpUriRequest> requestFactory, long expiryTimestampGrace,
+            int flightAttempts) {
+        this(requestFactory, expiryTimestampGrace, flightAttempts, Optional.empty());
+    }
+
+    public ChunkClient(Function<HostInfo, HttpUriRequest> requestFactory, long expiryTimestampGrace) {
+        this(requestFactory, expiryTimestampGrace, DEFAULT_FLIGHT_ATTEMPTS);
     }
 
     /**
+     * Fetches and decrypts the container into the store. Slow downloads are hedged if this client has a
+     * {@link Hedger}, the container data is then buffered rather than streamed into the decrypter.
      *
      * @param client
      * @param container
      * @param store
      * @throws IOException
      * @throws IllegalArgumentException on non 0x01 chunk keys
+     * @throws ContainerExpiredException if the container has expired
      */
     public void apply(HttpClient client, StorageHostChunkList container, ChunkStore store) throws IOException {
-        List<byte[]> checksums = checksums(container);
-        if (store.allChunks(checksums).isPresent()) {
+        if (isStored(container, store)) {
             logger.debug("-- apply() - all chunks are already present in the store");
             return;
         }
-        if (container.getHostInfo().getExpiry() + expiryTimestampGrace < System.currentTimeMillis()) {
-            // TOFIX more specific exception
-            throw new IllegalStateException("container has expired");
+        checkExpiry(container);
+        applyFlights.apply(key(container), () -> {
+            fetch(client, store, container);
+            return null;
+        });
+    }
+
+    /**
+     * Fetch stage. Downloads the encrypted container data without decrypting it, allowing decryption to proceed on a
+     * separate thread. Slow downloads are hedged if this client has a {@link Hedger}.
+     *
+     * @param client
+     * @param container
+     * @param store
+     * @return encrypted container data, or empty if all chunks are already present in the store
+     * @throws IOException
+     * @throws ContainerExpiredException if the container has expired
+     */
+    public Optional<byte[]> fetch(HttpClient client, StorageHostChunkList container, ChunkStore store)
+            throws IOException {
+        if (isStored(container, store)) {
+            logger.debug("-- fetch() - all chunks are already present in the store");
+            return Optional.empty();
+        }
+        checkExpiry(container);
+        return fetchFlights.apply(key(container), () -> Optional.of(download(client, container)));
+    }
+
+    byte[] download(HttpClient client, StorageHostChunkList container) throws IOException {
+        long start = System.nanoTime();
+        byte[] data = hedger.isPresent()
+                ? hedger.get().apply(container.getHostInfo().getHostname(), length(container),
+                        hook -> download(client, container, hook), u -> u.length)
+                : download(client, container, hook -> {
+                });
+        fetched(container, data.length, start);
+        return data;
+    }
+
+    byte[] download(HttpClient client, StorageHostChunkList container, Consumer<Runnable> abortHook)
+            throws IOException {
+        HttpUriRequest request = requestFactory.apply(container.getHostInfo());
+        abortHook.accept(request::abort);
+        ContainerFetchEvent event = Tracing.AVAILABLE ? new ContainerFetchEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        byte[] data = client.execute(request, traced(event, ByteArrayResponseHandler.instance()));
+        commit(event, container, data.length);
+        return data;
+    }
+
+    static <T> ResponseHandler<T> traced(ContainerFetchEvent event, ResponseHandler<T> handler) {
+        if (event == null || !event.isEnabled()) {
+            return handler;
+        }
+        long start = System.nanoTime();
+        return response -> {
+            event.timeToFirstByte = System.nanoTime() - start;
+            return handler.handleResponse(response);
+        };
+    }
+
+    static void commit(ContainerFetchEvent event, StorageHostChunkList container, long bytes) {
+        if (event != null && event.shouldCommit()) {
+            event.host = container.getHostInfo().getHostname();
+            event.bytes = bytes;
+            event.chunks = container.getChunkInfoCount();
+            event.commit();
+        }
+    }
+
+    void fetched(StorageHostChunkList container, long bytes, long startNanos) {
+        String host = container.getHostInfo().getHostname();
+        FETCH_MS.recordSince(startNanos);
+        METRICS.counter("chunk.fetch.bytes." + host).add(bytes);
+        METRICS.counter("chunk.fetch.containers." + host).increment();
+    }
+
+    static long length(StorageHostChunkList container) {
+        return container.getChunkInfoList()
+                .stream()
+                .mapToLong(ChunkInfo::getChunkLength)
+                .sum();
+    }
+
+    /**
+     * Decrypt stage. Decrypts and verifies previously fetched container data into the store.
+     *
+     * @param container
+     * @param data encrypted container data
+     * @param store
+     * @throws IOException
+     * @throws IllegalArgumentException on non 0x01 chunk keys
+     */
+    public void decrypt(StorageHostChunkList container, byte[] data, ChunkStore store) throws IOException {
+        if (isStored(container, store)) {
+            // Coalesced fetch, another requester has already decrypted this container.
+            logger.debug("-- decrypt() - all chunks are already present in the store");
+            return;
+        }
+        DECRYPTER.apply(container, new ByteArrayInputStream(data), store);
+    }
+
+    static String key(StorageHostChunkList container) {
+        HostInfo hostInfo = container.getHostInfo();
+        return hostInfo.getHostname() + "/" + hostInfo.getUri();
+    }
+
+    boolean isStored(StorageHostChunkList container, ChunkStore store) {
+        return store.allChunks(checksums(container)).isPresent();
+    }
+
+    /**
+     * Returns the time after which this client treats the container as expired. Server expiry timestamps are
+     * interpreted against the {@link ServerClock}.
+     *
+     * @param container
+     * @return expiry time, epoch milliseconds
+     */
+    public long expiresAt(StorageHostChunkList container) {
+        return ServerClock.instance().local(container.getHostInfo().getExpiry()) + expiryTimestampGrace;
+    }
+
+    void checkExpiry(StorageHostChunkList container) {
+        if (expiresAt(container) < System.currentTimeMillis()) {
+            throw new ContainerExpiredException("container has expired");
         }
-        fetch(client, store, container);
     }
 
     List<byte[]> checksums(StorageHostChunkList container) {
@@ -99,6 +264,11 @@ public final class ChunkClient {
     }
 
     void fetch(HttpClient client, ChunkStore store, StorageHostChunkList container) throws IOException {
+        if (hedger.isPresent()) {
+            // Hedged downloads can't stream into the decrypter, only the winning download is decrypted.
+            DECRYPTER.apply(container, new ByteArrayInputStream(download(client, container)), store);
+            return;
+        }
         IOFunction<InputStream, Void> decrypt
                 = is -> {
                     DECRYPTER.apply(container, is, store);
@@ -107,6 +277,23 @@ public final class ChunkClient {
 
         InputStreamResponseHandler<Void> handler = new InputStreamResponseHandler<>(decrypt);
         HttpUriRequest request = requestFactory.apply(container.getHostInfo());
-        client.execute(request, handler);
+        long start = System.nanoTime();
+        ContainerFetchEvent event = Tracing.AVAILABLE ? new ContainerFetchEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        client.execute(request, traced(event, handler));
+        commit(event, container, length(container));
+        fetched(container, length(container), start);
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkClient{"
+                + "expiryTimestampGrace=" + expiryTimestampGrace
+                + ", applyFlights=" + applyFlights
+                + ", fetchFlights=" + fetchFlights
+                + ", hedger=" + hedger
+                + '}';
     }
 }
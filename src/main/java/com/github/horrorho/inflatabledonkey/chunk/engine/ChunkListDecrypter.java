@@ -24,6 +24,9 @@
 package com.github.horrorho.inflatabledonkey.chunk.engine;
 
 import com.github.horrorho.inflatabledonkey.chunk.store.ChunkStore;
+import com.github.horrorho.inflatabledonkey.metrics.Counter;
+import com.github.horrorho.inflatabledonkey.metrics.Histogram;
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
 import java.io.IOException;
@@ -64,6 +67,9 @@ public final class ChunkListDecrypter {
 
     private static final ChunkListDecrypter INSTANCE = new ChunkListDecrypter();
 
+    private static final Counter DECRYPT_BYTES = Metrics.instance().counter("chunk.decrypt.bytes");
+    private static final Histogram DECRYPT_MS = Metrics.instance().histogram("chunk.decrypt.ms");
+
     private static final Comparator<ChunkInfo> CHUNK_OFFSET_COMPARATOR
             = Comparator.comparing(ChunkInfo::getChunkOffset);
 
@@ -87,8 +93,12 @@ public final class ChunkListDecrypter {
                 .sorted(CHUNK_OFFSET_COMPARATOR)
                 .collect(toList());
 
+        long start = System.nanoTime();
         try (CountingInputStream countingInputStream = new CountingInputStream(inputStream)) {
             streamChunks(list, countingInputStream, store);
+            // Streamed containers include their download time.
+            DECRYPT_BYTES.add(countingInputStream.getByteCount());
+            DECRYPT_MS.recordSince(start);
         } catch (UncheckedIOException ex) {
             throw ex.getCause();
         }
@@ -0,0 +1,384 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.chunk.engine;
+
+import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
+import com.github.horrorho.inflatabledonkey.io.IOFunction;
+import com.github.horrorho.inflatabledonkey.metrics.Counter;
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hedges slow transfers. Transfer rates of recent attempts are sampled. An attempt still running past the time its
+ * length would take at the specified rate percentile has fallen below that percentile, and a duplicate attempt is
+ * started. Whichever finishes first is kept and the other is aborted. Hedged bytes are capped at a fraction of the
+ * bytes transferred. Hedges run on a bounded pool and must be admitted by the host, so they count against the host's
+ * concurrency limit and are denied whilst it is backed off.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class Hedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(Hedger.class);
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private static final Counter HEDGES = Metrics.instance().counter("chunk.hedge.hedges");
+    private static final Counter WINS = Metrics.instance().counter("chunk.hedge.wins");
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "donkey-hedger-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService executor;
+    private final Function<String, Optional<Runnable>> admission;
+    private final int concurrencyMax;
+    private final int percentile;
+    private final double budget;
+    private final long minDelayMs;
+    private final int minSamples;
+    @GuardedBy("this")
+    private final double[] rates;
+    @GuardedBy("this")
+    private int samples;
+    @GuardedBy("this")
+    private long transferred;
+    @GuardedBy("this")
+    private long hedgedBytes;
+    @GuardedBy("this")
+    private int hedges;
+    @GuardedBy("this")
+    private int wins;
+    @GuardedBy("this")
+    private int denied;
+    @GuardedBy("this")
+    private int running;
+
+    /**
+     * Hedger.
+     *
+     * @param percentile rate percentile below which transfers are hedged
+     * @param budget hedged bytes, as a fraction of bytes transferred
+     * @param minDelayMs minimum delay before hedging
+     * @param minSamples minimum samples before hedging
+     * @param window sample window
+     * @param concurrencyMax maximum concurrent hedges
+     * @param admission admits a hedge to the specified host, returning its release hook, or empty if denied
+     */
+    public Hedger(int percentile, double budget, long minDelayMs, int minSamples, int window, int concurrencyMax,
+            Function<String, Optional<Runnable>> admission) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("bad percentile: " + percentile);
+        }
+        if (window < 1 || minSamples > window) {
+            throw new IllegalArgumentException("bad window: " + window + " min samples: " + minSamples);
+        }
+        if (concurrencyMax < 1) {
+            throw new IllegalArgumentException("bad concurrency max: " + concurrencyMax);
+        }
+        this.executor = Executors.newFixedThreadPool(concurrencyMax, runnable -> {
+            Thread thread = new Thread(runnable, "donkey-hedger-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.admission = Objects.requireNonNull(admission, "admission");
+        this.concurrencyMax = concurrencyMax;
+        this.percentile = percentile;
+        this.budget = budget;
+        this.minDelayMs = minDelayMs;
+        this.minSamples = Math.max(1, minSamples);
+        this.rates = new double[window];
+    }
+
+    public Hedger(int percentile, double budget, long minDelayMs, int minSamples, int window, int concurrencyMax) {
+        this(percentile, budget, minDelayMs, minSamples, window, concurrencyMax, host -> Optional.of(() -> {
+        }));
+    }
+
+    /**
+     * Runs the attempt on the calling thread, hedging it with a duplicate attempt should it fall below the rate
+     * percentile. Each attempt registers a hook that aborts it, causing it to terminate with an IOException.
+     *
+     * @param <T> result type
+     * @param host host
+     * @param length expected transfer length in bytes
+     * @param attempt attempt function, accepting the attempt's abort hook
+     * @param bytes result length function
+     * @return result of the first attempt to complete
+     * @throws IOException if all attempts failed
+     */
+    public <T> T apply(String host, long length, IOFunction<Consumer<Runnable>, T> attempt,
+            ToLongFunction<T> bytes) throws IOException {
+        long start = System.nanoTime();
+        OptionalLong delayMs = delayMs(length);
+        if (!delayMs.isPresent()) {
+            T t = attempt.apply(hook -> {
+            });
+            record(bytes.applyAsLong(t), start);
+            return t;
+        }
+        Race<T> race = new Race<>();
+        ScheduledFuture<?> timer
+                = TIMER.schedule(() -> hedge(race, host, length, attempt, bytes), delayMs.getAsLong(), TimeUnit.MILLISECONDS);
+        try {
+            T t = attempt.apply(race.primary::onAbort);
+            if (race.win(race.hedge)) {
+                timer.cancel(false);
+                record(bytes.applyAsLong(t), start);
+                return t;
+            }
+            return race.await();
+
+        } catch (IOException ex) {
+            if (!race.close()) {
+                timer.cancel(false);
+                throw ex;
+            }
+            try {
+                return race.await();
+            } catch (IOException hedgeEx) {
+                ex.addSuppressed(hedgeEx);
+                throw ex;
+            }
+        } catch (RuntimeException ex) {
+            race.close();
+            timer.cancel(false);
+            race.hedge.abort();
+            throw ex;
+        }
+    }
+
+    <T> void hedge(Race<T> race, String host, long length, IOFunction<Consumer<Runnable>, T> attempt,
+            ToLongFunction<T> bytes) {
+        Optional<Runnable> release = race.launch(() -> acquire(host, length));
+        if (!release.isPresent()) {
+            return;
+        }
+        logger.debug("-- hedge() - hedging transfer, host: {} length: {}", host, length);
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                T t = attempt.apply(race.hedge::onAbort);
+                if (race.win(race.primary)) {
+                    won();
+                    record(bytes.applyAsLong(t), start);
+                }
+                race.result.complete(t);
+            } catch (IOException | RuntimeException ex) {
+                race.result.completeExceptionally(ex);
+            } finally {
+                release.get().run();
+            }
+        });
+    }
+
+    synchronized OptionalLong delayMs(long length) {
+        if (samples < minSamples) {
+            return OptionalLong.empty();
+        }
+        int n = Math.min(samples, rates.length);
+        double[] sorted = Arrays.copyOf(rates, n);
+        Arrays.sort(sorted);
+        double rate = sorted[Math.min(n - 1, n * percentile / 100)];
+        if (rate <= 0) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(Math.max(minDelayMs, (long) (length / rate)));
+    }
+
+    synchronized Optional<Runnable> acquire(String host, long length) {
+        if (running >= concurrencyMax || hedgedBytes + length > budget * transferred) {
+            denied++;
+            return Optional.empty();
+        }
+        Optional<Runnable> admitted = admission.apply(host);
+        if (!admitted.isPresent()) {
+            denied++;
+            return Optional.empty();
+        }
+        hedgedBytes += length;
+        hedges++;
+        HEDGES.increment();
+        running++;
+        return Optional.of(() -> {
+            admitted.get().run();
+            finished();
+        });
+    }
+
+    synchronized void finished() {
+        running--;
+    }
+
+    synchronized void won() {
+        wins++;
+        WINS.increment();
+    }
+
+    synchronized void record(long length, long startNanos) {
+        long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        rates[samples++ % rates.length] = (double) length / elapsedMs;
+        transferred += length;
+    }
+
+    public synchronized int hedges() {
+        return hedges;
+    }
+
+    public synchronized int wins() {
+        return wins;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Hedger{"
+                + "percentile=" + percentile
+                + ", budget=" + budget
+                + ", transferred=" + transferred
+                + ", hedgedBytes=" + hedgedBytes
+                + ", hedges=" + hedges
+                + ", wins=" + wins
+                + ", denied=" + denied
+                + ", running=" + running
+                + '}';
+    }
+
+    @ThreadSafe
+    static final class Attempt {
+
+        private final AtomicReference<Runnable> abort = new AtomicReference<>();
+        private final AtomicBoolean aborted = new AtomicBoolean();
+
+        void onAbort(Runnable hook) {
+            abort.set(hook);
+            if (aborted.get()) {
+                hook.run();
+            }
+        }
+
+        void abort() {
+            aborted.set(true);
+            Runnable hook = abort.get();
+            if (hook != null) {
+                hook.run();
+            }
+        }
+    }
+
+    @ThreadSafe
+    static final class Race<T> {
+
+        final Attempt primary = new Attempt();
+        final Attempt hedge = new Attempt();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicBoolean won = new AtomicBoolean();
+        @GuardedBy("this")
+        private boolean closed;
+        @GuardedBy("this")
+        private boolean launched;
+
+        /**
+         * Claims the race and aborts the losing attempt.
+         *
+         * @param loser losing attempt
+         * @return true if the race was claimed, false if the other attempt had already claimed it
+         */
+        boolean win(Attempt loser) {
+            close();
+            if (!won.compareAndSet(false, true)) {
+                return false;
+            }
+            loser.abort();
+            return true;
+        }
+
+        /**
+         * Launches the hedge, unless the race is closed or the hedge is denied.
+         *
+         * @param acquire acquires the hedge, returning its release hook, or empty if denied
+         * @return release hook, or empty if not launched
+         */
+        synchronized Optional<Runnable> launch(Supplier<Optional<Runnable>> acquire) {
+            if (closed) {
+                return Optional.empty();
+            }
+            Optional<Runnable> release = acquire.get();
+            launched = release.isPresent();
+            return release;
+        }
+
+        /**
+         * Prevents further launches.
+         *
+         * @return true if the hedge was launched
+         */
+        synchronized boolean close() {
+            closed = true;
+            return launched;
+        }
+
+        T await() throws IOException {
+            try {
+                return result.get();
+            } catch (InterruptedException ex) {
+                hedge.abort();
+                throw new UncheckedInterruptedException(ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ package com.github.horrorho.inflatabledonkey.chunk.store.disk;
 import com.github.horrorho.inflatabledonkey.io.HookInputStream;
 import com.github.horrorho.inflatabledonkey.chunk.Chunk;
 import com.github.horrorho.inflatabledonkey.io.IOConsumer;
+import com.github.horrorho.ragingmoose.LZFSEInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -51,10 +52,16 @@ public final class DiskChunk implements Chunk {
 
     private final byte[] checksum;
     private final Path file;
+    private final boolean compressed;
 
-    DiskChunk(byte[] checksum, Path file) {
+    DiskChunk(byte[] checksum, Path file, boolean compressed) {
         this.file = Objects.requireNonNull(file, "file");
         this.checksum = Arrays.copyOf(checksum, checksum.length);
+        this.compressed = compressed;
+    }
+
+    DiskChunk(byte[] checksum, Path file) {
+        this(checksum, file, false);
     }
 
     @Override
@@ -72,6 +79,9 @@ public final class DiskChunk implements Chunk {
     Optional<InputStream> doInputStream() throws IOException {
         try {
             InputStream is = Files.newInputStream(file, READ);
+            if (compressed) {
+                is = new LZFSEInputStream(is);
+            }
             if (logger.isTraceEnabled()) {
                 logger.trace("-- doInputStream() - open: {}", Hex.toHexString(checksum()));
                 IOConsumer<InputStream> callback = u
@@ -124,6 +134,7 @@ public final class DiskChunk implements Chunk {
         return "DiskChunk{"
                 + "checksum=" + Hex.toHexString(checksum)
                 + ", file=" + file
+                + ", compressed=" + compressed
                 + '}';
     }
 }
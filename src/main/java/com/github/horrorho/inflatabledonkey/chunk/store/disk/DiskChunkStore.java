@@ -28,6 +28,11 @@ import com.github.horrorho.inflatabledonkey.chunk.store.ChunkStore;
 import com.github.horrorho.inflatabledonkey.io.DirectoryAssistant;
 import com.github.horrorho.inflatabledonkey.io.HookOutputStream;
 import com.github.horrorho.inflatabledonkey.io.IOConsumer;
+import com.github.horrorho.inflatabledonkey.metrics.Counter;
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
+import com.github.horrorho.inflatabledonkey.trace.ChunkCommitEvent;
+import com.github.horrorho.inflatabledonkey.trace.Tracing;
+import com.github.horrorho.ragingmoose.LZFSEOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
@@ -41,6 +46,7 @@ import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.io.DigestOutputStream;
 import org.bouncycastle.util.encoders.Hex;
@@ -50,6 +56,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Thread safe disk based chunk store.
+ * <p>
+ * Chunks may optionally be stored LZFSE compressed. Compressed and uncompressed chunks may coexist, allowing the
+ * compression setting to be changed between runs.
  *
  * @author Ahseya
  */
@@ -60,15 +69,23 @@ public final class DiskChunkStore implements ChunkStore {
 
     private static final int TEMP_FILE_RETRY = 3;   // ~ 2^190 collision risk with 4 threads
     private static final String TEMP_SUFFIX = ".tmp";
+    private static final String COMPRESSED_SUFFIX = ".lzfse";
+
+    private static final Counter HITS = Metrics.instance().counter("chunkstore.hits");
+    private static final Counter MISSES = Metrics.instance().counter("chunkstore.misses");
+    private static final Counter COMMITS = Metrics.instance().counter("chunkstore.commits");
+    private static final Counter DIGEST_BYTES = Metrics.instance().counter("chunkstore.digest.bytes");
+    private static final Counter DIGEST_FAILURES = Metrics.instance().counter("chunkstore.digest.failures");
 
     private final Object lock;
     private final Supplier<Digest> digests;
     private final BiPredicate<byte[], byte[]> testDigest;
     private final Path chunkFolder;
     private final Path tempFolder;
+    private final boolean compress;
 
     DiskChunkStore(Object lock, Supplier<Digest> digests, BiPredicate<byte[], byte[]> testDigest,
-            Path chunkFolder, Path tempFolder) throws IOException {
+            Path chunkFolder, Path tempFolder, boolean compress) throws IOException {
         if (!DirectoryAssistant.create(chunkFolder)) {
             throw new IOException("DiskChunkStore failed to create chunk folder: "
                     + chunkFolder.normalize().toAbsolutePath());
@@ -82,26 +99,37 @@ public final class DiskChunkStore implements ChunkStore {
         this.testDigest = Objects.requireNonNull(testDigest);
         this.chunkFolder = chunkFolder.normalize().toAbsolutePath();
         this.tempFolder = tempFolder.normalize().toAbsolutePath();
+        this.compress = compress;
+    }
+
+    public DiskChunkStore(Supplier<Digest> digests, BiPredicate<byte[], byte[]> testDigest, Path chunkFolder,
+            Path tempFolder, boolean compress) throws IOException {
+        this(new Object(), digests, testDigest, chunkFolder, tempFolder, compress);
     }
 
     public DiskChunkStore(Supplier<Digest> digests, BiPredicate<byte[], byte[]> testDigest, Path chunkFolder,
             Path tempFolder) throws IOException {
-        this(new Object(), digests, testDigest, chunkFolder, tempFolder);
+        this(digests, testDigest, chunkFolder, tempFolder, false);
     }
 
     @Override
     public boolean contains(byte[] checksum) {
         synchronized (lock) {
-            Path file = path(checksum);
-            return Files.exists(file);
+            boolean contains = Files.exists(compressedPath(checksum)) || Files.exists(path(checksum));
+            (contains ? HITS : MISSES).increment();
+            return contains;
         }
     }
 
     @Override
     public Optional<Chunk> chunk(byte[] checksum) {
         synchronized (lock) {
-            Path file = path(checksum);
             // DiskChunk instances are lightweight, not cached.
+            Path compressed = compressedPath(checksum);
+            if (Files.exists(compressed)) {
+                return Optional.of(new DiskChunk(checksum, compressed, true));
+            }
+            Path file = path(checksum);
             return Files.exists(file)
                     ? Optional.of(new DiskChunk(checksum, file))
                     : Optional.empty();
@@ -111,10 +139,13 @@ public final class DiskChunkStore implements ChunkStore {
     @Override
     public Optional<OutputStream> outputStream(byte[] checksum) throws IOException {
         synchronized (lock) {
-            Path to = path(checksum);
-            return Files.exists(to)
-                    ? Optional.empty()
-                    : getOutputStream(checksum, to);
+            if (Files.exists(compressedPath(checksum)) || Files.exists(path(checksum))) {
+                return Optional.empty();
+            }
+            Path to = compress
+                    ? compressedPath(checksum)
+                    : path(checksum);
+            return getOutputStream(checksum, to);
         }
     }
 
@@ -127,24 +158,37 @@ public final class DiskChunkStore implements ChunkStore {
             return Optional.empty();
         }
 
-        OutputStream os = Files.newOutputStream(temp);
+        OutputStream os = compress
+                ? new LZFSEOutputStream(Files.newOutputStream(temp))
+                : Files.newOutputStream(temp);
         DigestOutputStream dos = new DigestOutputStream(digests.get());
-        TeeOutputStream tos = new TeeOutputStream(os, dos);
+        CountingOutputStream cos = new CountingOutputStream(dos);
+        TeeOutputStream tos = new TeeOutputStream(os, cos);
 
-        HookOutputStream<OutputStream> hos = new HookOutputStream<>(tos, callback(checksum, dos, temp, to));
+        HookOutputStream<OutputStream> hos = new HookOutputStream<>(tos, callback(checksum, dos, cos, temp, to));
         return Optional.of(hos);
     }
 
-    IOConsumer<OutputStream> callback(byte[] checksum, DigestOutputStream dos, Path temp, Path to) {
-        return os -> copy(checksum, dos, os, temp, to);
+    IOConsumer<OutputStream> callback(byte[] checksum, DigestOutputStream dos, CountingOutputStream cos, Path temp,
+            Path to) {
+        return os -> {
+            DIGEST_BYTES.add(cos.getByteCount());
+            copy(checksum, dos, os, temp, to, cos.getByteCount());
+        };
     }
 
-    void copy(byte[] checksum, DigestOutputStream dos, OutputStream os, Path temp, Path to) throws IOException {
+    void copy(byte[] checksum, DigestOutputStream dos, OutputStream os, Path temp, Path to, long length)
+            throws IOException {
+        ChunkCommitEvent event = Tracing.AVAILABLE ? new ChunkCommitEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
         synchronized (lock) {
             byte[] digest = dos.getDigest();
             if (testDigest.test(digest, checksum)) {
                 logger.debug("-- copy() - positive checksum match: {}", Hex.toHexString(digest));
             } else {
+                DIGEST_FAILURES.increment();
                 Files.deleteIfExists(temp);
                 throw new IOException("DiskChunkStore copy, bad digest/ corrupt data: " + Hex.toHexString(digest));
             }
@@ -168,7 +212,14 @@ public final class DiskChunkStore implements ChunkStore {
                 logger.warn("-- copy() - IOException: {}", ex);
                 throw new IOException("DiskChunkStore copy, failed", ex);
             }
+            COMMITS.increment();
             logger.debug("-- copy() - chunk created: {}", to);
+            if (event != null && event.shouldCommit()) {
+                event.checksum = Hex.toHexString(checksum);
+                event.bytes = length;
+                event.compressed = compress;
+                event.commit();
+            }
         }
     }
 
@@ -188,10 +239,13 @@ public final class DiskChunkStore implements ChunkStore {
     @Override
     public boolean delete(byte[] checksum) throws IOException {
         synchronized (lock) {
-            Path to = path(checksum);
-            return Files.exists(to)
-                    ? doDelete(to)
-                    : false;
+            boolean deleted = false;
+            for (Path to : new Path[]{compressedPath(checksum), path(checksum)}) {
+                if (Files.exists(to)) {
+                    deleted |= doDelete(to);
+                }
+            }
+            return deleted;
         }
     }
 
@@ -212,6 +266,11 @@ public final class DiskChunkStore implements ChunkStore {
         return chunkFolder.resolve(filename);
     }
 
+    Path compressedPath(byte[] checksum) {
+        Path path = path(checksum);
+        return path.resolveSibling(path.getFileName() + COMPRESSED_SUFFIX);
+    }
+
     @Override
     public String toString() {
         return "DiskChunkStore{"
@@ -219,6 +278,7 @@ public final class DiskChunkStore implements ChunkStore {
                 + ", digests=" + digests
                 + ", chunkFolder=" + chunkFolder
                 + ", tempFolder=" + tempFolder
+                + ", compress=" + compress
                 + '}';
     }
 }
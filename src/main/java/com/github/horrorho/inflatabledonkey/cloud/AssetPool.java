@@ -24,18 +24,27 @@
 package com.github.horrorho.inflatabledonkey.cloud;
 
 import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.io.IOBiFunction;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import com.github.horrorho.inflatabledonkey.util.ListUtils;
 import com.google.protobuf.ByteString;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
@@ -68,20 +77,22 @@ public class AssetPool {
     private static final Logger logger = LoggerFactory.getLogger(AssetPool.class);
 
     private final Object lock;
-    private final AuthorizeAssetsClient authorizeAssets;
+    private final IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets;
     private final VoodooChunkEncryptionKeyMapper keyMapper;
     private Set<Asset> assets;
     private ItemElements<Asset, ByteString> assetChunks = null;
+    private Set<Asset> pending = new HashSet<>();
 
-    public AssetPool(Object lock, AuthorizeAssetsClient authorizeAssets, VoodooChunkEncryptionKeyMapper keyMapper,
-            Set<Asset> assets) {
+    public AssetPool(Object lock, IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets,
+            VoodooChunkEncryptionKeyMapper keyMapper, Set<Asset> assets) {
         this.lock = Objects.requireNonNull(lock);
         this.authorizeAssets = Objects.requireNonNull(authorizeAssets);
         this.keyMapper = Objects.requireNonNull(keyMapper);
         this.assets = validate(assets);
     }
 
-    public AssetPool(AuthorizeAssetsClient authorizeAssets, VoodooChunkEncryptionKeyMapper keyMapper, Set<Asset> assets) {
+    public AssetPool(IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets,
+            VoodooChunkEncryptionKeyMapper keyMapper, Set<Asset> assets) {
         this(new Object(), authorizeAssets, keyMapper, assets);
     }
 
@@ -92,17 +103,76 @@ public class AssetPool {
     public Collection<StorageHostChunkList> authorize(HttpClient httpClient) throws IOException {
         synchronized (lock) {
             logger.trace("<< authorize()");
-            Set<Asset> a = assets == null
-                    ? assetChunks.items()
-                    : assets;
-            Map<ByteString, Asset> fileSignatureToAsset
-                    = a.stream().collect(toMap(u -> ByteString.copyFrom(u.fileSignature().get()), Function.identity()));
+            Map<ByteString, Asset> fileSignatureToAsset = fileSignatureToAsset(remaining());
             Collection<StorageHostChunkList> containers = authorize(httpClient, fileSignatureToAsset);
+            pending = new HashSet<>();
             logger.trace(">> authorize() - containers: {}", containers.size());
             return containers;
         }
     }
 
+    /**
+     * Authorizes the remaining assets in concurrent partitions. Each partition's containers are passed to the
+     * consumer as soon as its response is parsed, and may be put into this pool immediately.
+     *
+     * @param httpClient http client
+     * @param executor authorization executor
+     * @param partitionSize maximum assets per authorization request
+     * @param consumer container consumer, may be called concurrently
+     * @return future, completed when all partitions have been authorized
+     */
+    public CompletableFuture<Void> authorize(HttpClient httpClient, Executor executor, int partitionSize,
+            Consumer<Collection<StorageHostChunkList>> consumer) {
+        List<List<Asset>> partitions;
+        synchronized (lock) {
+            Set<Asset> a = remaining();
+            partitions = ListUtils.split(new ArrayList<>(a), partitionSize);
+            logger.debug("-- authorize() - assets: {} partitions: {}", a.size(), partitions.size());
+            assetChunks = new ItemElements<>(new HashMap<>());
+            assets = null;
+            pending = a;
+        }
+        CompletableFuture<?>[] futures = partitions.stream()
+                .map(u -> CompletableFuture
+                .supplyAsync(() -> authorizePartition(httpClient, u), executor)
+                .thenAccept(consumer))
+                .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(futures);
+    }
+
+    Collection<StorageHostChunkList> authorizePartition(HttpClient httpClient, List<Asset> partition) {
+        try {
+            Map<ByteString, Asset> fileSignatureToAsset = fileSignatureToAsset(partition);
+            List<Voodoo> voodooList = voodoos(httpClient, fileSignatureToAsset);
+            Map<Asset, List<ByteString>> map = assetChunkMap(voodooList, fileSignatureToAsset);
+            synchronized (lock) {
+                assetChunks.putItems(map);
+                pending.removeAll(partition);
+            }
+            return voodooList.stream()
+                    .map(Voodoo::containers)
+                    .collect(ArrayList::new, List::addAll, List::addAll);
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @GuardedBy("lock")
+    Set<Asset> remaining() {
+        if (assets != null) {
+            return assets;
+        }
+        Set<Asset> remaining = assetChunks.items();
+        remaining.addAll(pending);
+        return remaining;
+    }
+
+    static Map<ByteString, Asset> fileSignatureToAsset(Collection<Asset> assets) {
+        return assets.stream()
+                .collect(toMap(u -> ByteString.copyFrom(u.fileSignature().get()), Function.identity()));
+    }
+
     @GuardedBy("lock")
     Collection<StorageHostChunkList>
             authorize(HttpClient httpClient, Map<ByteString, Asset> fileSignatureToAsset)
@@ -130,7 +200,11 @@ public class AssetPool {
 
     ItemElements<Asset, ByteString>
             assetChunks(List<Voodoo> voodoos, Map<ByteString, Asset> fileSignatureToAsset) {
-        Map<Asset, List<ByteString>> map = voodoos.stream()
+        return new ItemElements<>(assetChunkMap(voodoos, fileSignatureToAsset));
+    }
+
+    Map<Asset, List<ByteString>> assetChunkMap(List<Voodoo> voodoos, Map<ByteString, Asset> fileSignatureToAsset) {
+        return voodoos.stream()
                 .map(Voodoo::fileSignatureToChunkChecksumList)
                 .map(Map::entrySet)
                 .flatMap(Collection::stream)
@@ -150,7 +224,6 @@ public class AssetPool {
                             }
                             return u;
                         }));
-        return new ItemElements<>(map);
     }
 
     public Map<Asset, Optional<List<ByteString>>>
@@ -197,7 +270,7 @@ public class AssetPool {
     public boolean isEmpty() {
         synchronized (lock) {
             return assets == null
-                    ? assetChunks.isEmpty()
+                    ? assetChunks.isEmpty() && pending.isEmpty()
                     : assets.isEmpty();
         }
     }
@@ -25,9 +25,12 @@ package com.github.horrorho.inflatabledonkey.cloud;
 
 import com.github.horrorho.inflatabledonkey.data.backup.Asset;
 import com.github.horrorho.inflatabledonkey.io.IOBiFunction;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileChecksumStorageHostChunkLists;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
 import com.github.horrorho.inflatabledonkey.requests.AuthorizeGetRequestFactory;
+import com.github.horrorho.inflatabledonkey.trace.AssetAuthorizationEvent;
+import com.github.horrorho.inflatabledonkey.trace.Tracing;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.Collection;
@@ -120,10 +123,27 @@ public final class AuthorizeAssetsClient implements IOBiFunction<HttpClient, Col
 
     FileGroups fileGroups(HttpClient httpClient, String dsPrsID, String contentBaseUrl, CloudKit.FileTokens fileTokens)
             throws UncheckedIOException {
+        AssetAuthorizationEvent event = Tracing.AVAILABLE ? new AssetAuthorizationEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
         try {
             HttpUriRequest request = AuthorizeGetRequestFactory.instance()
                     .newRequest(dsPrsID, contentBaseUrl, container, zone, fileTokens);
-            return httpClient.execute(request, responseHandler);
+            FileGroups fileGroups = httpClient.execute(request, responseHandler);
+            if (event != null && event.shouldCommit()) {
+                event.assets = fileTokens.getFileTokensCount();
+                event.files = fileGroups.getFileGroupsList()
+                        .stream()
+                        .mapToInt(FileChecksumStorageHostChunkLists::getFileChecksumChunkReferencesCount)
+                        .sum();
+                event.containers = fileGroups.getFileGroupsList()
+                        .stream()
+                        .mapToInt(FileChecksumStorageHostChunkLists::getStorageHostChunkListCount)
+                        .sum();
+                event.commit();
+            }
+            return fileGroups;
 
         } catch (IOException ex) {
             throw new UncheckedIOException(ex);
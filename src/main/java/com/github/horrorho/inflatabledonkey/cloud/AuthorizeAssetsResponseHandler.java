@@ -29,11 +29,13 @@ import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.HostInfo;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
 import com.github.horrorho.inflatabledonkey.responsehandler.DonkeyResponseHandler;
+import com.github.horrorho.inflatabledonkey.util.ServerClock;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Predicate;
 import static java.util.stream.Collectors.toList;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.http.HttpEntity;
@@ -50,15 +52,18 @@ public class AuthorizeAssetsResponseHandler extends DonkeyResponseHandler<FileGr
     private static final Logger logger = LoggerFactory.getLogger(AuthorizeAssetsResponseHandler.class);
 
     private final IOFunction<InputStream, FileGroups> parser;
+    private final ServerClock serverClock;
     private final long fallbackDurationMS;
 
-    public AuthorizeAssetsResponseHandler(IOFunction<InputStream, FileGroups> parser, long fallbackDurationMS) {
+    public AuthorizeAssetsResponseHandler(IOFunction<InputStream, FileGroups> parser, ServerClock serverClock,
+            long fallbackDurationMS) {
         this.parser = Objects.requireNonNull(parser);
+        this.serverClock = Objects.requireNonNull(serverClock);
         this.fallbackDurationMS = fallbackDurationMS;
     }
 
     public AuthorizeAssetsResponseHandler(long fallbackDurationMS) {
-        this(FileGroups.PARSER::parseFrom, fallbackDurationMS);
+        this(FileGroups.PARSER::parseFrom, ServerClock.instance(), fallbackDurationMS);
     }
 
     @Override
@@ -66,7 +71,23 @@ public class AuthorizeAssetsResponseHandler extends DonkeyResponseHandler<FileGr
             handleEntityTimestampOffset(HttpEntity entity, Optional<Long> timestampOffset) throws IOException {
         logger.trace("-- handleEntityTimestampOffset() - timestamp offset: {}", timestampOffset);
         FileGroups fileGroups = handleEntity(entity);
-        return adjustExpiryTimestamp(fileGroups, timestampOffset);
+        if (!timestampOffset.isPresent()) {
+            // Probably shouldn't happen.
+            logger.debug("-- handleEntityTimestampOffset() - no timestamp offset, reverting to default");
+            return adjustExpiryTimestamp(fileGroups, u -> true);
+        }
+        // We interpret server expiry timestamps against the server/ machine clock offset, rather than rewriting them.
+        // This allows us to function with inaccurate machine clocks.
+        serverClock.update(timestampOffset.get());
+        Predicate<StorageHostChunkList> invalid = this::isInvalidExpiryTimestamp;
+        boolean adjust = fileGroups.getFileGroupsList()
+                .stream()
+                .map(FileChecksumStorageHostChunkLists::getStorageHostChunkListList)
+                .flatMap(List::stream)
+                .anyMatch(invalid);
+        return adjust
+                ? adjustExpiryTimestamp(fileGroups, invalid)
+                : fileGroups;
     }
 
     @Override
@@ -76,12 +97,26 @@ public class AuthorizeAssetsResponseHandler extends DonkeyResponseHandler<FileGr
         }
     }
 
-    FileGroups adjustExpiryTimestamp(FileGroups fileGroups, Optional<Long> timestampOffset) {
-        // We adjust the FileGroups timestamps based on machine time/ server time deltas. This allows us to function
-        // with inaccurate machine clocks. 
+    boolean isInvalidExpiryTimestamp(StorageHostChunkList container) {
+        if (!container.getHostInfo().hasExpiry()) {
+            // Shouldn't happen.
+            logger.warn("-- isInvalidExpiryTimestamp() - no expiry timestamp: {} reverting to default",
+                    container.getHostInfo().getUri());
+            return true;
+        }
+        if (serverClock.local(container.getHostInfo().getExpiry()) < System.currentTimeMillis()) {
+            // Shouldn't happen.
+            logger.warn("-- isInvalidExpiryTimestamp() - negative timestamp offset: {} reverting to default",
+                    container.getHostInfo().getUri());
+            return true;
+        }
+        return false;
+    }
+
+    FileGroups adjustExpiryTimestamp(FileGroups fileGroups, Predicate<StorageHostChunkList> adjust) {
         List<FileChecksumStorageHostChunkLists> fileGroupsList = fileGroups.getFileGroupsList()
                 .stream()
-                .map(u -> adjustExpiryTimestamp(u, timestampOffset))
+                .map(u -> adjustExpiryTimestamp(u, adjust))
                 .collect(toList());
         return fileGroups
                 .toBuilder()
@@ -91,10 +126,10 @@ public class AuthorizeAssetsResponseHandler extends DonkeyResponseHandler<FileGr
     }
 
     FileChecksumStorageHostChunkLists
-            adjustExpiryTimestamp(FileChecksumStorageHostChunkLists fileGroup, Optional<Long> timestampOffset) {
+            adjustExpiryTimestamp(FileChecksumStorageHostChunkLists fileGroup, Predicate<StorageHostChunkList> adjust) {
         List<StorageHostChunkList> list = fileGroup.getStorageHostChunkListList()
                 .stream()
-                .map(u -> adjustExpiryTimestamp(u, timestampOffset))
+                .map(u -> adjust.test(u) ? defaultExpiryTimestamp(u) : u)
                 .collect(toList());
         return fileGroup
                 .toBuilder()
@@ -103,31 +138,8 @@ public class AuthorizeAssetsResponseHandler extends DonkeyResponseHandler<FileGr
                 .build();
     }
 
-    StorageHostChunkList adjustExpiryTimestamp(StorageHostChunkList container, Optional<Long> timestampOffset) {
-        if (!container.getHostInfo().hasExpiry()) {
-            // Shouldn't happen.
-            logger.warn("-- adjustExpiryTimestamp() - no expiry timestamp: {} reverting to default",
-                    container.getHostInfo().getUri());
-            return defaultExpiryTimestamp(container);
-        }
-        if (!timestampOffset.isPresent()) {
-            // Probably shouldn't happen.
-            logger.debug("-- adjustExpiryTimestamp() - no timestamp offset: {} reverting to default",
-                    container.getHostInfo().getUri());
-            return defaultExpiryTimestamp(container);
-        }
-        long timestamp = container.getHostInfo().getExpiry() + timestampOffset.get();
-        if (timestamp < System.currentTimeMillis()) {
-            // Shouldn't happen.
-            logger.warn("-- adjustExpiryTimestamp() - negative timestamp offset: {} reverting to default",
-                    container.getHostInfo().getUri());
-            return defaultExpiryTimestamp(container);
-        }
-        return setExpiryTimestamp(container, timestamp);
-    }
-
     StorageHostChunkList defaultExpiryTimestamp(StorageHostChunkList container) {
-        return setExpiryTimestamp(container, System.currentTimeMillis() + fallbackDurationMS);
+        return setExpiryTimestamp(container, serverClock.server(System.currentTimeMillis() + fallbackDurationMS));
     }
 
     StorageHostChunkList setExpiryTimestamp(StorageHostChunkList container, long timestamp) {
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import javax.annotation.concurrent.Immutable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Container retrieval planner. Containers are fetched whole, so we select a low cost set of containers that carries
+ * every missing chunk: a weighted set cover with container byte length as cost, solved greedily by selecting the
+ * container with the most missing bytes per byte fetched. Unselected containers are redundant, their chunks are
+ * either already covered or carried by selected containers.
+ *
+ * @author Ahseya
+ */
+@Immutable
+public final class ContainerPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContainerPlanner.class);
+
+    /**
+     * Plans container retrieval.
+     *
+     * @param containers candidate containers
+     * @param covered tests whether a chunk checksum is already available or in retrieval
+     * @return plan, selected and redundant containers retain their input order
+     */
+    public static Plan plan(Collection<StorageHostChunkList> containers, Predicate<ByteString> covered) {
+        Map<ByteString, Integer> missing = new HashMap<>();
+        containers.forEach(u -> u.getChunkInfoList()
+                .stream()
+                .filter(v -> !covered.test(v.getChunkChecksum()))
+                .forEach(v -> missing.put(v.getChunkChecksum(), v.getChunkLength())));
+
+        List<StorageHostChunkList> candidates = new ArrayList<>(containers);
+        boolean[] isSelected = new boolean[candidates.size()];
+        while (!missing.isEmpty()) {
+            int best = -1;
+            double bestRatio = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                if (isSelected[i]) {
+                    continue;
+                }
+                StorageHostChunkList candidate = candidates.get(i);
+                long gain = candidate.getChunkInfoList()
+                        .stream()
+                        .mapToLong(u -> missing.getOrDefault(u.getChunkChecksum(), 0))
+                        .sum();
+                double ratio = (double) gain / Math.max(1, cost(candidate));
+                if (gain > 0 && ratio > bestRatio) {
+                    best = i;
+                    bestRatio = ratio;
+                }
+            }
+            if (best == -1) {
+                // Zero length chunks only.
+                break;
+            }
+            isSelected[best] = true;
+            candidates.get(best).getChunkInfoList().forEach(u -> missing.remove(u.getChunkChecksum()));
+        }
+
+        List<StorageHostChunkList> selected = new ArrayList<>();
+        List<StorageHostChunkList> redundant = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            (isSelected[i] ? selected : redundant).add(candidates.get(i));
+        }
+        Plan plan = new Plan(selected, redundant);
+        logger.debug("-- plan() - {}", plan);
+        return plan;
+    }
+
+    static long cost(StorageHostChunkList container) {
+        return container.getChunkInfoList()
+                .stream()
+                .mapToLong(ChunkInfo::getChunkLength)
+                .sum();
+    }
+
+    static long cost(Collection<StorageHostChunkList> containers) {
+        return containers.stream()
+                .mapToLong(ContainerPlanner::cost)
+                .sum();
+    }
+
+    private ContainerPlanner() {
+    }
+
+    /**
+     * Container retrieval plan.
+     */
+    @Immutable
+    public static final class Plan {
+
+        private final List<StorageHostChunkList> selected;
+        private final List<StorageHostChunkList> redundant;
+
+        Plan(List<StorageHostChunkList> selected, List<StorageHostChunkList> redundant) {
+            this.selected = Objects.requireNonNull(selected);
+            this.redundant = Objects.requireNonNull(redundant);
+        }
+
+        /**
+         * Returns the containers to fetch.
+         *
+         * @return selected containers
+         */
+        public List<StorageHostChunkList> selected() {
+            return new ArrayList<>(selected);
+        }
+
+        /**
+         * Returns the containers that need not be fetched. They should still be assembled once the selected
+         * containers have been stored.
+         *
+         * @return redundant containers
+         */
+        public List<StorageHostChunkList> redundant() {
+            return new ArrayList<>(redundant);
+        }
+
+        public long selectedBytes() {
+            return cost(selected);
+        }
+
+        public long redundantBytes() {
+            return cost(redundant);
+        }
+
+        @Override
+        public String toString() {
+            return "Plan{"
+                    + "selected=" + selected.size()
+                    + ", selectedBytes=" + selectedBytes()
+                    + ", redundant=" + redundant.size()
+                    + ", redundantBytes=" + redundantBytes()
+                    + '}';
+        }
+    }
+}
@@ -27,14 +27,18 @@ import com.github.horrorho.inflatabledonkey.chunk.Chunk;
 import com.github.horrorho.inflatabledonkey.chunk.engine.ChunkClient;
 import com.github.horrorho.inflatabledonkey.chunk.store.ChunkStore;
 import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.exception.ContainerExpiredException;
 import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
 import com.github.horrorho.inflatabledonkey.file.FileAssembler;
+import com.github.horrorho.inflatabledonkey.io.IOBiFunction;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
 import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
 import com.google.protobuf.ByteString;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -61,11 +65,32 @@ public final class Donkey {
     private final ChunkClient chunkClient;
     private final ChunkStore store;
     private final int fragmentationThreshold;
+    private final IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets;
 
-    public Donkey(ChunkClient chunkClient, ChunkStore store, int fragmentationThreshold) {
+    public Donkey(ChunkClient chunkClient, ChunkStore store, int fragmentationThreshold,
+            IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets) {
         this.chunkClient = Objects.requireNonNull(chunkClient);
         this.store = Objects.requireNonNull(store);
         this.fragmentationThreshold = fragmentationThreshold;
+        this.authorizeAssets = Objects.requireNonNull(authorizeAssets);
+    }
+
+    public Donkey(ChunkClient chunkClient, ChunkStore store, int fragmentationThreshold) {
+        this(chunkClient, store, fragmentationThreshold, AuthorizeAssetsClient.backupd());
+    }
+
+    /**
+     * Returns this Donkey as a download engine, processing containers concurrently on the auxiliary pool if present.
+     *
+     * @param aux auxiliary pool
+     * @return download engine
+     */
+    public DownloadEngine engine(Optional<ForkJoinPool> aux) {
+        return (httpClient, assets, consumer) -> apply(httpClient, aux, assets, consumer);
+    }
+
+    AssetPool pool(Set<Asset> assets) {
+        return new AssetPool(authorizeAssets, VoodooChunkEncryptionKeyMapper.defaultInstance(), assets);
     }
 
     public void apply(HttpClient httpClient, Optional<ForkJoinPool> aux, Set<Asset> assets, FileAssembler consumer) {
@@ -81,7 +106,7 @@ public final class Donkey {
             logger.debug("-- apply() - assets total: {} size (bytes): {}", assets.size(), bytes);
         }
 
-        AssetPool pool = new AssetPool(assets);
+        AssetPool pool = pool(assets);
 
         while (true) {
             try {
@@ -91,10 +116,9 @@ public final class Donkey {
                     process(httpClient, pool, consumer);
                 }
                 break;
-            } catch (IllegalStateException ex) {
+            } catch (ContainerExpiredException ex) {
                 // Our StorageHostChunkLists have expired.
-                // TOFIX potentially unsafe. Use a more specific exception.
-                logger.debug("-- apply() - IllegalStateException: {}", ex.getMessage());
+                logger.debug("-- apply() - ContainerExpiredException: {}", ex.getMessage());
             } catch (IllegalArgumentException | IOException ex) {
                 logger.warn("-- apply() - {} {}", ex.getClass().getCanonicalName(), ex.getMessage());
                 break;
@@ -105,7 +129,10 @@ public final class Donkey {
 
     void process(HttpClient httpClient, AssetPool pool, FileAssembler consumer) throws IOException {
         logger.trace("<< process()");
-        pool.authorize(httpClient).forEach(u -> processContainer(httpClient, u, pool, consumer));
+        ContainerPlanner.Plan plan = plan(pool.authorize(httpClient));
+        // Redundant containers are processed last, by which time their chunks should be present in the store.
+        plan.selected().forEach(u -> processContainer(httpClient, u, pool, consumer));
+        plan.redundant().forEach(u -> processContainer(httpClient, u, pool, consumer));
         logger.trace(">> process()");
     }
 
@@ -113,8 +140,14 @@ public final class Donkey {
             throws IOException {
         logger.trace("<< processConcurrent()");
         try {
-            Collection<StorageHostChunkList> containers = pool.authorize(httpClient);
-            fjp.submit(() -> containers.parallelStream().forEach(u -> processContainer(httpClient, u, pool, consumer)))
+            ContainerPlanner.Plan plan = plan(pool.authorize(httpClient));
+            fjp.submit(() -> plan.selected()
+                    .parallelStream()
+                    .forEach(u -> processContainer(httpClient, u, pool, consumer)))
+                    .get();
+            fjp.submit(() -> plan.redundant()
+                    .parallelStream()
+                    .forEach(u -> processContainer(httpClient, u, pool, consumer)))
                     .get();
 
         } catch (InterruptedException ex) {
@@ -132,8 +165,43 @@ public final class Donkey {
         logger.trace("<< processConcurrent()");
     }
 
+    /**
+     * Returns the specified containers sorted by expiry, soonest first.
+     *
+     * @param containers containers
+     * @return sorted containers
+     */
+    List<StorageHostChunkList> byExpiry(Collection<StorageHostChunkList> containers) {
+        return containers.stream()
+                .sorted(Comparator.comparingLong(chunkClient::expiresAt))
+                .collect(toList());
+    }
+
+    /**
+     * Returns the minimal byte cost retrieval plan for the specified containers, with both selected and redundant
+     * containers sorted by expiry.
+     *
+     * @param containers containers
+     * @return plan
+     */
+    ContainerPlanner.Plan plan(Collection<StorageHostChunkList> containers) {
+        return ContainerPlanner.plan(byExpiry(containers), this::isStored);
+    }
+
+    boolean isStored(ByteString checksum) {
+        return store.contains(checksum.toByteArray());
+    }
+
+    long expiresAt(StorageHostChunkList container) {
+        return chunkClient.expiresAt(container);
+    }
+
     void processContainer(HttpClient httpClient, StorageHostChunkList container, AssetPool pool, FileAssembler consumer) {
         fetchContainer(httpClient, container);
+        assemble(container, pool, consumer);
+    }
+
+    void assemble(StorageHostChunkList container, AssetPool pool, FileAssembler consumer) {
         Collection<ByteString> chunkChecksums = anyChunks(container.getChunkInfoList());
         pool.put(container, chunkChecksums)
                 .forEach((k, v) -> {
@@ -166,6 +234,25 @@ public final class Donkey {
         logger.trace(">> fetchContainer()");
     }
 
+    Optional<byte[]> fetch(HttpClient httpClient, StorageHostChunkList container) throws IOException {
+        ChunkServer.HostInfo hostInfo = container.getHostInfo();
+        logger.trace("<< fetch() - uri: {}", hostInfo.getHostname() + "/" + hostInfo.getUri());
+        Optional<byte[]> data = chunkClient.fetch(httpClient, container, store);
+        logger.trace(">> fetch() - bytes: {}", data.map(u -> u.length));
+        return data;
+    }
+
+    void decrypt(StorageHostChunkList container, byte[] data) {
+        try {
+            chunkClient.decrypt(container, data, store);
+        } catch (IOException ex) {
+            logger.warn("-- decrypt() - {} {}", ex.getClass().getCanonicalName(), ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            // Shouldn't happen unless we pass non type 0x01 keys.
+            logger.warn("-- decrypt() - internal error: {}", ex.getMessage());
+        }
+    }
+
     Set<ByteString> anyChunks(Collection<ChunkInfo> chunks) {
         return chunks.stream()
                 .map(chunkInfo -> chunkInfo.getChunkChecksum())
@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkReference;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileChecksumChunkReferences;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileChecksumStorageHostChunkLists;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+import static java.util.stream.Collectors.toList;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * File authorizations keyed by file signature. Each file maps to its file group and the containers it references, so
+ * an authorization may be reused for any subset of the files it covers.
+ *
+ * @author Ahseya
+ */
+@NotThreadSafe
+public final class FileAuthorizations {
+
+    private final Map<ByteString, Authorization> authorizations = new HashMap<>();
+
+    public void index(FileGroups fileGroups) {
+        for (FileChecksumStorageHostChunkLists group : fileGroups.getFileGroupsList()) {
+            for (FileChecksumChunkReferences file : group.getFileChecksumChunkReferencesList()) {
+                if (!file.hasFileSignature()) {
+                    continue;
+                }
+                List<StorageHostChunkList> containers = file.getChunkReferencesList()
+                        .stream()
+                        .map(ChunkReference::getContainerIndex)
+                        .distinct()
+                        .map(u -> group.getStorageHostChunkList(u.intValue()))
+                        .collect(toList());
+                authorizations.put(file.getFileSignature(), new Authorization(group, file, containers));
+            }
+        }
+    }
+
+    /**
+     * Returns the authorizations of the specified assets whose containers remain valid after the specified time, as
+     * file groups cut down to the requested files. Assets without a valid authorization are added to remaining.
+     *
+     * @param assets assets
+     * @param expiresAt container expiry function, epoch milliseconds
+     * @param validAfter epoch milliseconds
+     * @param consume if true, authorizations are removed once looked up, whether valid or not
+     * @param remaining assets without a valid authorization
+     * @return file groups, or empty if there are no valid authorizations
+     */
+    public Optional<FileGroups> reuse(Collection<Asset> assets, ToLongFunction<StorageHostChunkList> expiresAt,
+            long validAfter, boolean consume, Collection<Asset> remaining) {
+        Map<FileChecksumStorageHostChunkLists, List<FileChecksumChunkReferences>> reuse = new IdentityHashMap<>();
+        for (Asset asset : assets) {
+            Optional<Authorization> authorization = asset.fileSignature()
+                    .map(ByteString::copyFrom)
+                    .map(consume ? authorizations::remove : authorizations::get)
+                    .filter(u -> u.isValid(expiresAt, validAfter));
+            if (authorization.isPresent()) {
+                reuse.computeIfAbsent(authorization.get().group, u -> new ArrayList<>())
+                        .add(authorization.get().file);
+            } else {
+                remaining.add(asset);
+            }
+        }
+        if (reuse.isEmpty()) {
+            return Optional.empty();
+        }
+        FileGroups.Builder builder = FileGroups.newBuilder();
+        reuse.forEach((group, files) -> builder.addFileGroups(subset(group, files)));
+        return Optional.of(builder.build());
+    }
+
+    public int size() {
+        return authorizations.size();
+    }
+
+    /**
+     * Returns a file group limited to the specified files and the containers they reference, container indices
+     * remapped accordingly.
+     *
+     * @param group file group
+     * @param files files, members of the file group
+     * @return file group
+     */
+    static FileChecksumStorageHostChunkLists
+            subset(FileChecksumStorageHostChunkLists group, List<FileChecksumChunkReferences> files) {
+        Map<Long, Long> remap = new HashMap<>();
+        Set<Long> indices = new LinkedHashSet<>();
+        List<FileChecksumChunkReferences> subset = new ArrayList<>();
+        for (FileChecksumChunkReferences file : files) {
+            FileChecksumChunkReferences.Builder builder = file.toBuilder().clearChunkReferences();
+            for (ChunkReference reference : file.getChunkReferencesList()) {
+                long index = remap.computeIfAbsent(reference.getContainerIndex(), u -> {
+                    indices.add(u);
+                    return (long) indices.size() - 1;
+                });
+                builder.addChunkReferences(reference.toBuilder().setContainerIndex(index));
+            }
+            subset.add(builder.build());
+        }
+        List<StorageHostChunkList> containers = indices.stream()
+                .map(u -> group.getStorageHostChunkList(u.intValue()))
+                .collect(toList());
+        return FileChecksumStorageHostChunkLists.newBuilder()
+                .addAllStorageHostChunkList(containers)
+                .addAllFileChecksumChunkReferences(subset)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return "FileAuthorizations{" + "authorizations=" + authorizations.size() + '}';
+    }
+
+    @Immutable
+    static final class Authorization {
+
+        final FileChecksumStorageHostChunkLists group;
+        final FileChecksumChunkReferences file;
+        final List<StorageHostChunkList> containers;
+
+        Authorization(FileChecksumStorageHostChunkLists group, FileChecksumChunkReferences file,
+                List<StorageHostChunkList> containers) {
+            this.group = group;
+            this.file = file;
+            this.containers = containers;
+        }
+
+        boolean isValid(ToLongFunction<StorageHostChunkList> expiresAt, long validAfter) {
+            return containers.stream()
+                    .allMatch(u -> expiresAt.applyAsLong(u) > validAfter);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
+import com.github.horrorho.inflatabledonkey.io.IOSupplier;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Host aware dispatcher. Tasks are queued per host and run on a shared executor, with at most the specified number of
+ * workers in flight. Each host has an EWMA latency and throughput score. A host's concurrency limit is scaled by its
+ * throughput relative to the best host, so a slow host cannot occupy all workers. Free workers go to the host
+ * furthest below its limit. Hosts that fail are backed off exponentially, their queued tasks waiting out the backoff
+ * while other hosts proceed.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class HostDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostDispatcher.class);
+
+    private static final double ALPHA = 0.2;
+    private static final long DEFAULT_BACKOFF_BASE_MS = 1000;
+    private static final long DEFAULT_BACKOFF_MAX_MS = 60000;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "donkey-host-dispatcher-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private final Executor executor;
+    private final int workers;
+    private final int hostConcurrencyMax;
+    private final int capacity;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    @GuardedBy("lock")
+    private final Map<String, Host> hosts = new HashMap<>();
+    @GuardedBy("lock")
+    private int inFlight;
+    @GuardedBy("lock")
+    private int pending;
+    @GuardedBy("lock")
+    private long wakeAt = Long.MAX_VALUE;
+
+    public HostDispatcher(Executor executor, int workers, int hostConcurrencyMax, int capacity, long backoffBaseMs,
+            long backoffMaxMs) {
+        if (workers < 1 || hostConcurrencyMax < 1) {
+            throw new IllegalArgumentException("bad concurrency, workers: " + workers
+                    + " host concurrency max: " + hostConcurrencyMax);
+        }
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.workers = workers;
+        this.hostConcurrencyMax = hostConcurrencyMax;
+        this.capacity = capacity;
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+    }
+
+    public HostDispatcher(Executor executor, int workers, int hostConcurrencyMax, int capacity) {
+        this(executor, workers, hostConcurrencyMax, capacity, DEFAULT_BACKOFF_BASE_MS, DEFAULT_BACKOFF_MAX_MS);
+    }
+
+    /**
+     * Queues the task for the specified host. IOExceptions are counted against the host and complete the returned
+     * future with an UncheckedIOException.
+     *
+     * @param <T> result type
+     * @param hostname host
+     * @param task task
+     * @param bytes result length function, for throughput scoring
+     * @return future
+     */
+    public <T> CompletableFuture<T> submit(String hostname, IOSupplier<T> task, ToLongFunction<T> bytes) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        synchronized (lock) {
+            Host host = hosts.computeIfAbsent(hostname, Host::new);
+            host.queue.add(() -> run(host, task, bytes, future));
+            pending++;
+        }
+        pump();
+        return future;
+    }
+
+    /**
+     * Blocks while the number of queued, not yet running, tasks is at or above capacity.
+     */
+    public void awaitCapacity() {
+        synchronized (lock) {
+            while (pending >= capacity) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    throw new UncheckedInterruptedException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of queued, not yet running, tasks.
+     *
+     * @return pending tasks
+     */
+    public int pending() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * Reserves a worker for a transfer run outside the dispatcher, such as a hedge. The reservation counts against the
+     * host's concurrency limit and the in-flight total, and is denied if either is reached or the host is backed off.
+     *
+     * @param hostname host
+     * @return release hook, or empty if denied
+     */
+    public Optional<Runnable> reserve(String hostname) {
+        Host host;
+        synchronized (lock) {
+            host = hosts.computeIfAbsent(hostname, Host::new);
+            if (inFlight >= workers
+                    || host.backoffUntil > System.currentTimeMillis()
+                    || host.inFlight >= limit(host, best())) {
+                return Optional.empty();
+            }
+            host.inFlight++;
+            inFlight++;
+        }
+        return Optional.of(() -> {
+            released(host);
+            pump();
+        });
+    }
+
+    <T> void run(Host host, IOSupplier<T> task, ToLongFunction<T> bytes, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        try {
+            T t = task.get();
+            completed(host, start, bytes.applyAsLong(t));
+            future.complete(t);
+
+        } catch (IOException ex) {
+            failed(host);
+            future.completeExceptionally(new UncheckedIOException(ex));
+        } catch (RuntimeException | Error ex) {
+            // Not the host's fault.
+            released(host);
+            future.completeExceptionally(ex);
+        } finally {
+            pump();
+        }
+    }
+
+    void completed(Host host, long start, long bytes) {
+        double latencyMs = (System.nanoTime() - start) / 1e6;
+        synchronized (lock) {
+            if (bytes > 0) {
+                host.latencyMs = ewma(host.latencyMs, latencyMs);
+                host.throughput = ewma(host.throughput, bytes / Math.max(latencyMs, 1));
+            }
+            host.failures = 0;
+            release(host);
+        }
+    }
+
+    void failed(Host host) {
+        synchronized (lock) {
+            host.failures++;
+            long backoffMs = Math.min(backoffMaxMs, backoffBaseMs << Math.min(host.failures - 1, 30));
+            host.backoffUntil = System.currentTimeMillis() + backoffMs;
+            logger.debug("-- failed() - host: {} failures: {} backoff (ms): {}", host.name, host.failures, backoffMs);
+            release(host);
+        }
+    }
+
+    void released(Host host) {
+        synchronized (lock) {
+            release(host);
+        }
+    }
+
+    @GuardedBy("lock")
+    void release(Host host) {
+        host.inFlight--;
+        inFlight--;
+    }
+
+    static double ewma(double average, double sample) {
+        return Double.isNaN(average)
+                ? sample
+                : ALPHA * sample + (1 - ALPHA) * average;
+    }
+
+    void pump() {
+        List<Runnable> runnables = new ArrayList<>();
+        synchronized (lock) {
+            long now = System.currentTimeMillis();
+            double best = best();
+            while (inFlight < workers) {
+                Host host = hosts.values()
+                        .stream()
+                        .filter(u -> !u.queue.isEmpty() && u.backoffUntil <= now && u.inFlight < limit(u, best))
+                        .min(Comparator
+                                .comparingDouble((Host u) -> (double) u.inFlight / limit(u, best))
+                                .thenComparingDouble(u -> Double.isNaN(u.latencyMs) ? 0 : u.latencyMs))
+                        .orElse(null);
+                if (host == null) {
+                    break;
+                }
+                runnables.add(host.queue.poll());
+                host.inFlight++;
+                inFlight++;
+                pending--;
+            }
+            if (!runnables.isEmpty()) {
+                lock.notifyAll();
+            }
+            scheduleWake(now);
+        }
+        runnables.forEach(executor::execute);
+    }
+
+    @GuardedBy("lock")
+    double best() {
+        return hosts.values()
+                .stream()
+                .mapToDouble(u -> u.throughput)
+                .filter(u -> !Double.isNaN(u))
+                .max()
+                .orElse(Double.NaN);
+    }
+
+    @GuardedBy("lock")
+    int limit(Host host, double best) {
+        if (Double.isNaN(host.throughput) || Double.isNaN(best) || best <= 0) {
+            return hostConcurrencyMax;
+        }
+        return Math.max(1, (int) Math.ceil(hostConcurrencyMax * host.throughput / best));
+    }
+
+    @GuardedBy("lock")
+    void scheduleWake(long now) {
+        // Backed off hosts with queued tasks need a pump once their backoff expires.
+        long next = hosts.values()
+                .stream()
+                .filter(u -> !u.queue.isEmpty() && u.backoffUntil > now)
+                .mapToLong(u -> u.backoffUntil)
+                .min()
+                .orElse(Long.MAX_VALUE);
+        if (next == Long.MAX_VALUE || (wakeAt > now && wakeAt <= next)) {
+            return;
+        }
+        wakeAt = next;
+        TIMER.schedule(() -> {
+            synchronized (lock) {
+                wakeAt = Long.MAX_VALUE;
+            }
+            pump();
+        }, next - now, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return "HostDispatcher{"
+                    + "workers=" + workers
+                    + ", hostConcurrencyMax=" + hostConcurrencyMax
+                    + ", capacity=" + capacity
+                    + ", hosts=" + hosts.values()
+                    + ", inFlight=" + inFlight
+                    + ", pending=" + pending
+                    + '}';
+        }
+    }
+
+    @NotThreadSafe
+    static final class Host {
+
+        final String name;
+        final Deque<Runnable> queue = new ArrayDeque<>();
+        int inFlight;
+        double latencyMs = Double.NaN;
+        double throughput = Double.NaN;
+        int failures;
+        long backoffUntil;
+
+        Host(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "Host{"
+                    + "name=" + name
+                    + ", queued=" + queue.size()
+                    + ", inFlight=" + inFlight
+                    + ", latencyMs=" + String.format("%.1f", latencyMs)
+                    + ", throughput=" + String.format("%.1f", throughput)
+                    + ", failures=" + failures
+                    + ", backoffUntil=" + backoffUntil
+                    + '}';
+        }
+    }
+}
@@ -67,6 +67,22 @@ public final class ItemElements<T, U> {
         this(copy(itemToElements), BiMapSet.from(itemToElements));
     }
 
+    /**
+     * Adds items not already present.
+     *
+     * @param itemToElements items to add
+     */
+    public void putItems(Map<T, List<U>> itemToElements) {
+        itemToElements.forEach((k, v) -> {
+            if (this.itemToElements.containsKey(k)) {
+                logger.warn("-- putItems() - duplicate item: {}", k);
+                return;
+            }
+            this.itemToElements.put(k, new ArrayList<>(v));
+            biMap.put(k, v);
+        });
+    }
+
     public Set<T> items() {
         return biMap.keySet();
     }
@@ -0,0 +1,260 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.io.IOBiFunction;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.HostInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import com.github.horrorho.inflatabledonkey.util.BatchSetIterator;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+import javax.annotation.concurrent.Immutable;
+import org.apache.http.client.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Container locality aware asset batching. A preliminary authorization maps each asset to the storage containers it
+ * references. Assets sharing containers are clustered and clusters are packed into batches of roughly the byte
+ * threshold, so each container is fetched by as few batches as possible. The preliminary authorizations may be handed
+ * on to the download engine with a {@link PreliminaryAuthorizer}.
+ *
+ * @author Ahseya
+ */
+@Immutable
+public final class LocalityBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalityBatcher.class);
+
+    private final IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets;
+    private final ToIntFunction<Asset> size;
+    private final int threshold;
+
+    public LocalityBatcher(IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets,
+            ToIntFunction<Asset> size, int threshold) {
+        this.authorizeAssets = Objects.requireNonNull(authorizeAssets);
+        this.size = Objects.requireNonNull(size);
+        this.threshold = threshold;
+    }
+
+    public LocalityBatcher(ToIntFunction<Asset> size, int threshold) {
+        this(AuthorizeAssetsClient.backupd(), size, threshold);
+    }
+
+    /**
+     * Returns the specified assets as container locality batches. Falls back to plain size batching if the
+     * preliminary authorization fails.
+     *
+     * @param httpClient http client
+     * @param assets assets
+     * @return batches
+     */
+    public List<Set<Asset>> apply(HttpClient httpClient, Set<Asset> assets) {
+        logger.trace("<< apply() - assets: {}", assets.size());
+        if (assets.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            Map<Asset, Set<String>> assetContainers = assetContainers(httpClient, assets);
+            List<Set<Asset>> batches = batch(assetContainers, size, threshold);
+
+            if (logger.isDebugEnabled()) {
+                List<Set<Asset>> plain = BatchSetIterator.batchedSetList(assets, size, threshold);
+                logger.debug("-- apply() - container re-download ratio: {} (plain) {} (locality)",
+                        String.format("%.3f", redownloadRatio(plain, assetContainers)),
+                        String.format("%.3f", redownloadRatio(batches, assetContainers)));
+            }
+            logger.trace(">> apply() - batches: {}", batches.size());
+            return batches;
+
+        } catch (IOException ex) {
+            logger.warn("-- apply() - preliminary authorization failed, falling back to plain batching: {} {}",
+                    ex.getClass().getCanonicalName(), ex.getMessage());
+            return BatchSetIterator.batchedSetList(assets, size, threshold);
+        }
+    }
+
+    Map<Asset, Set<String>> assetContainers(HttpClient httpClient, Set<Asset> assets) throws IOException {
+        Set<Asset> valid = AssetPool.validate(assets);
+        Map<ByteString, Asset> fileSignatureToAsset = valid.stream()
+                .collect(toMap(u -> ByteString.copyFrom(u.fileSignature().get()), Function.identity()));
+
+        Map<Asset, Set<String>> assetContainers = new HashMap<>();
+        // Assets we can't authorize still need to be batched, AssetPool will deal with them.
+        assets.forEach(u -> assetContainers.put(u, new HashSet<>()));
+
+        authorizeAssets.apply(httpClient, fileSignatureToAsset.values())
+                .stream()
+                .map(VoodooFactory::from)
+                .flatMap(Collection::stream)
+                .forEach(voodoo -> voodoo.fileSignatures()
+                        .forEach(fileSignature -> {
+                            Asset asset = fileSignatureToAsset.get(fileSignature);
+                            if (asset == null) {
+                                return;
+                            }
+                            voodoo.containers(fileSignature)
+                                    .map(u -> u.stream().map(LocalityBatcher::key).collect(toSet()))
+                                    .ifPresent(assetContainers.get(asset)::addAll);
+                        }));
+        return assetContainers;
+    }
+
+    static String key(StorageHostChunkList container) {
+        HostInfo hostInfo = container.getHostInfo();
+        return hostInfo.getHostname() + "/" + hostInfo.getUri();
+    }
+
+    /**
+     * Batches items so that items sharing containers tend to share batches. Connected components of the item/
+     * container graph are packed, largest first, into batches that close once they reach the threshold. Components
+     * larger than the threshold are split in container order. As with {@link BatchSetIterator}, single items larger
+     * than the threshold are batched alone.
+     *
+     * @param <T> item type
+     * @param <K> container key type
+     * @param itemContainers item to referenced containers
+     * @param size item size function
+     * @param threshold batch size threshold
+     * @return batches
+     */
+    static <T, K extends Comparable<K>> List<Set<T>>
+            batch(Map<T, Set<K>> itemContainers, ToIntFunction<T> size, int threshold) {
+        List<Set<T>> batches = new ArrayList<>();
+        Set<T> batch = new HashSet<>();
+        long batchSize = 0;
+
+        for (List<T> component : components(itemContainers, size)) {
+            long componentSize = component.stream().mapToLong(size::applyAsInt).sum();
+            if (componentSize < threshold) {
+                batch.addAll(component);
+                if ((batchSize += componentSize) >= threshold) {
+                    batches.add(batch);
+                    batch = new HashSet<>();
+                    batchSize = 0;
+                }
+                continue;
+            }
+            component.sort(Comparator.comparing((T u) -> first(itemContainers.get(u)).orElse(null),
+                    Comparator.nullsFirst(Comparator.<K>naturalOrder())));
+            Set<T> split = new HashSet<>();
+            long splitSize = 0;
+            for (T item : component) {
+                split.add(item);
+                if ((splitSize += size.applyAsInt(item)) >= threshold) {
+                    batches.add(split);
+                    split = new HashSet<>();
+                    splitSize = 0;
+                }
+            }
+            if (!split.isEmpty()) {
+                batches.add(split);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    static <K extends Comparable<K>> Optional<K> first(Set<K> keys) {
+        return keys.stream().min(Comparator.naturalOrder());
+    }
+
+    static <T, K> List<List<T>> components(Map<T, Set<K>> itemContainers, ToIntFunction<T> size) {
+        List<T> items = new ArrayList<>(itemContainers.keySet());
+        int[] parent = new int[items.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        Map<K, Integer> owners = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            for (K key : itemContainers.get(items.get(i))) {
+                Integer owner = owners.putIfAbsent(key, i);
+                if (owner != null) {
+                    parent[root(parent, i)] = root(parent, owner);
+                }
+            }
+        }
+        Map<Integer, List<T>> components = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            components.computeIfAbsent(root(parent, i), u -> new ArrayList<>()).add(items.get(i));
+        }
+        List<List<T>> list = new ArrayList<>(components.values());
+        Collections.sort(list, Comparator.comparingLong(
+                (List<T> u) -> u.stream().mapToLong(size::applyAsInt).sum()).reversed());
+        return list;
+    }
+
+    static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Returns the container re-download ratio: total container fetches across all batches over distinct containers.
+     * A ratio of 1.0 indicates that no container is fetched by more than one batch.
+     *
+     * @param <T> item type
+     * @param <K> container key type
+     * @param batches batches
+     * @param itemContainers item to referenced containers
+     * @return re-download ratio, or 1.0 if there are no containers
+     */
+    static <T, K> double redownloadRatio(Collection<Set<T>> batches, Map<T, Set<K>> itemContainers) {
+        List<Set<K>> batchContainers = batches.stream()
+                .map(u -> u.stream()
+                        .map(itemContainers::get)
+                        .filter(Objects::nonNull)
+                        .flatMap(Collection::stream)
+                        .collect(toSet()))
+                .collect(toList());
+        long fetches = batchContainers.stream().mapToLong(Set::size).sum();
+        long distinct = batchContainers.stream().flatMap(Collection::stream).distinct().count();
+        return distinct == 0
+                ? 1.0
+                : (double) fetches / distinct;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.io.IOBiFunction;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.ToLongFunction;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.http.client.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands preliminary authorizations, such as those made by {@link LocalityBatcher}, on to the download engine. Each
+ * preliminary authorization is used at most once, for assets whose containers remain valid for at least the specified
+ * margin. Remaining assets, including those re-authorized ahead of container expiry, are authorized as usual.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class PreliminaryAuthorizer implements IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreliminaryAuthorizer.class);
+
+    private final IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets;
+    private final ToLongFunction<StorageHostChunkList> expiresAt;
+    private final long marginMs;
+    @GuardedBy("this")
+    private final FileAuthorizations authorizations = new FileAuthorizations();
+    @GuardedBy("this")
+    private long reused;
+    @GuardedBy("this")
+    private long authorized;
+
+    /**
+     * Constructs a PreliminaryAuthorizer.
+     *
+     * @param authorizeAssets delegate authorizer
+     * @param expiresAt container expiry function, epoch milliseconds
+     * @param marginMs minimum remaining container validity for reuse
+     */
+    public PreliminaryAuthorizer(IOBiFunction<HttpClient, Collection<Asset>, List<FileGroups>> authorizeAssets,
+            ToLongFunction<StorageHostChunkList> expiresAt, long marginMs) {
+        this.authorizeAssets = Objects.requireNonNull(authorizeAssets, "authorizeAssets");
+        this.expiresAt = Objects.requireNonNull(expiresAt, "expiresAt");
+        this.marginMs = marginMs;
+    }
+
+    /**
+     * Authorizes the specified assets, retaining the authorizations for the download engine.
+     *
+     * @param httpClient http client
+     * @param assets assets
+     * @return file groups
+     * @throws IOException
+     */
+    public List<FileGroups> preauthorize(HttpClient httpClient, Collection<Asset> assets) throws IOException {
+        List<FileGroups> list = authorizeAssets.apply(httpClient, assets);
+        synchronized (this) {
+            list.forEach(authorizations::index);
+            authorized += assets.size();
+        }
+        return list;
+    }
+
+    @Override
+    public List<FileGroups> apply(HttpClient httpClient, Collection<Asset> assets) throws IOException {
+        List<Asset> remaining = new ArrayList<>();
+        long validAfter = System.currentTimeMillis() + marginMs;
+        Optional<FileGroups> reuse;
+        synchronized (this) {
+            reuse = authorizations.reuse(assets, expiresAt, validAfter, true, remaining);
+            reused += assets.size() - remaining.size();
+            authorized += remaining.size();
+        }
+        logger.debug("-- apply() - assets: {} reused: {}", assets.size(), assets.size() - remaining.size());
+
+        List<FileGroups> fileGroupsList = new ArrayList<>();
+        if (!remaining.isEmpty()) {
+            fileGroupsList.addAll(authorizeAssets.apply(httpClient, remaining));
+        }
+        reuse.ifPresent(fileGroupsList::add);
+        return fileGroupsList;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PreliminaryAuthorizer{"
+                + "marginMs=" + marginMs
+                + ", retained=" + authorizations.size()
+                + ", reused=" + reused
+                + ", authorized=" + authorized
+                + ", authorizeAssets=" + authorizeAssets
+                + '}';
+    }
+}
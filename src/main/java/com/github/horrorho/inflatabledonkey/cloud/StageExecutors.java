@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Download stage executors. Each stage has its own fixed size executor with a bounded queue. When a stage's queue is
+ * full, work is run on the submitting thread, throttling the upstream stage. Fetches are scheduled per host by a
+ * {@link HostDispatcher} running on the fetch executor.
+ *
+ * @author Ahseya
+ */
+@Immutable
+public final class StageExecutors {
+
+    public static StageExecutors create(int authorizeThreads, int fetchThreads, int decryptThreads,
+            int assembleThreads, int queueCapacity, int hostConcurrencyMax) {
+        ExecutorService fetch = executor("fetch", fetchThreads, queueCapacity);
+        HostDispatcher hosts = new HostDispatcher(fetch, fetchThreads, hostConcurrencyMax, queueCapacity);
+        Metrics.instance().gauge("stage.hosts.pending", hosts::pending);
+        return new StageExecutors(
+                executor("authorize", authorizeThreads, queueCapacity),
+                fetch,
+                executor("decrypt", decryptThreads, queueCapacity),
+                executor("assemble", assembleThreads, queueCapacity),
+                hosts);
+    }
+
+    public static StageExecutors
+            create(int authorizeThreads, int fetchThreads, int decryptThreads, int assembleThreads, int queueCapacity) {
+        return create(authorizeThreads, fetchThreads, decryptThreads, assembleThreads, queueCapacity, fetchThreads);
+    }
+
+    /**
+     * Returns a bounded stage executor. Tasks submitted whilst the queue is full run on the submitting thread.
+     *
+     * @param stage stage name, for thread names and metrics
+     * @param threads thread count
+     * @param queueCapacity queue capacity
+     * @return executor
+     */
+    public static ExecutorService executor(String stage, int threads, int queueCapacity) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("bad " + stage + " thread count: " + threads);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory(stage),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        Metrics.instance().gauge("stage." + stage + ".queued", () -> executor.getQueue().size());
+        Metrics.instance().gauge("stage." + stage + ".active", executor::getActiveCount);
+        return executor;
+    }
+
+    static ThreadFactory threadFactory(String stage) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "donkey-" + stage + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final ExecutorService authorize;
+    private final ExecutorService fetch;
+    private final ExecutorService decrypt;
+    private final ExecutorService assemble;
+    private final HostDispatcher hosts;
+
+    StageExecutors(ExecutorService authorize, ExecutorService fetch, ExecutorService decrypt,
+            ExecutorService assemble, HostDispatcher hosts) {
+        this.authorize = authorize;
+        this.fetch = fetch;
+        this.decrypt = decrypt;
+        this.assemble = assemble;
+        this.hosts = hosts;
+    }
+
+    public ExecutorService authorize() {
+        return authorize;
+    }
+
+    public ExecutorService fetch() {
+        return fetch;
+    }
+
+    /**
+     * Returns the host aware dispatcher for the fetch stage.
+     *
+     * @return host dispatcher
+     */
+    public HostDispatcher hosts() {
+        return hosts;
+    }
+
+    public ExecutorService decrypt() {
+        return decrypt;
+    }
+
+    public ExecutorService assemble() {
+        return assemble;
+    }
+
+    public void shutdown() {
+        authorize.shutdown();
+        fetch.shutdown();
+        decrypt.shutdown();
+        assemble.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "StageExecutors{"
+                + "authorize=" + authorize
+                + ", fetch=" + fetch
+                + ", decrypt=" + decrypt
+                + ", assemble=" + assemble
+                + ", hosts=" + hosts
+                + '}';
+    }
+}
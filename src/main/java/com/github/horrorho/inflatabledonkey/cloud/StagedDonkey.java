@@ -0,0 +1,414 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.exception.ContainerExpiredException;
+import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
+import com.github.horrorho.inflatabledonkey.file.FileAssembler;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.http.client.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Staged download engine. Each asset batch flows through: authorize, fetch container, decrypt/ verify container,
+ * assemble/ finalize files. Stages run on separately sized executors with bounded queues, so blocking network I/O,
+ * crypto and disk writes do not compete for the same threads.
+ * <p>
+ * Assets are authorized in concurrent partitions, with each partition's containers dispatched as soon as its
+ * response is parsed. Each arrival is planned with {@link ContainerPlanner}, so only a minimal byte set of containers
+ * is fetched. Containers are dispatched in expiry order. Shortly before the next container expires, the remaining assets are
+ * re-authorized in the background and the fresh containers swapped into the queue. If re-authorization fails, the
+ * still valid containers are processed and the expired ones skipped, their assets re-authorized on the next pass.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class StagedDonkey implements DownloadEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(StagedDonkey.class);
+
+    private static final long DEFAULT_REAUTHORIZE_LEAD_MS = 10 * 60 * 1000;
+    private static final int DEFAULT_AUTHORIZE_PARTITION_SIZE = 128;
+    private static final long POLL_TIMEOUT_MS = 50;
+
+    private final Containers donkey;
+    private final StageExecutors stages;
+    private final long reauthorizeLeadMs;
+    private final int authorizePartitionSize;
+
+    StagedDonkey(Containers donkey, StageExecutors stages, long reauthorizeLeadMs, int authorizePartitionSize) {
+        this.donkey = Objects.requireNonNull(donkey, "donkey");
+        this.stages = Objects.requireNonNull(stages, "stages");
+        this.reauthorizeLeadMs = reauthorizeLeadMs;
+        this.authorizePartitionSize = authorizePartitionSize;
+    }
+
+    public StagedDonkey(Donkey donkey, StageExecutors stages, long reauthorizeLeadMs, int authorizePartitionSize) {
+        this(containers(donkey), stages, reauthorizeLeadMs, authorizePartitionSize);
+    }
+
+    public StagedDonkey(Donkey donkey, StageExecutors stages) {
+        this(donkey, stages, DEFAULT_REAUTHORIZE_LEAD_MS, DEFAULT_AUTHORIZE_PARTITION_SIZE);
+    }
+
+    @Override
+    public void apply(HttpClient httpClient, Set<Asset> assets, FileAssembler consumer) {
+        logger.trace("<< apply() - assets: {}", assets.size());
+        if (assets.isEmpty()) {
+            return;
+        }
+        AssetPool pool = donkey.pool(assets);
+
+        while (true) {
+            try {
+                process(httpClient, pool, consumer);
+                break;
+            } catch (ContainerExpiredException ex) {
+                // Lost the race with expiry, re-authorize the remaining pool.
+                logger.debug("-- apply() - ContainerExpiredException: {}", ex.getMessage());
+            } catch (IllegalArgumentException | IOException ex) {
+                logger.warn("-- apply() - {} {}", ex.getClass().getCanonicalName(), ex.getMessage());
+                break;
+            }
+        }
+        logger.trace(">> apply() - pool empty: {}", pool.isEmpty());
+    }
+
+    void process(HttpClient httpClient, AssetPool pool, FileAssembler consumer) throws IOException {
+        BlockingQueue<StorageHostChunkList> arrivals = new LinkedBlockingQueue<>();
+        CompletableFuture<Void> authorization = authorize(httpClient, pool, arrivals);
+        long authorizedAt = System.currentTimeMillis();
+
+        Queue<StorageHostChunkList> queue = new PriorityQueue<>(Comparator.comparingLong(donkey::expiresAt));
+        Map<StorageHostChunkList, Set<ByteString>> redundant = new LinkedHashMap<>();
+        Map<ByteString, CompletableFuture<Void>> dispatched = new HashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        BlockingQueue<StorageHostChunkList> refreshed = null;
+        CompletableFuture<Void> refresh = null;
+        boolean refreshFailed = false;
+        int expired = 0;
+
+        try {
+            while (true) {
+                boolean idle = queue.isEmpty() && refresh == null && !authorization.isDone();
+                plan(take(arrivals, idle), queue, redundant, dispatched);
+                flush(httpClient, pool, consumer, redundant, dispatched, futures, false);
+
+                StorageHostChunkList next = queue.peek();
+                long now = System.currentTimeMillis();
+
+                if (next == null && refresh == null) {
+                    if (authorization.isDone() && arrivals.isEmpty()) {
+                        flush(httpClient, pool, consumer, redundant, dispatched, futures, true);
+                        break;
+                    }
+                    // Waiting on authorization partitions.
+                    continue;
+                }
+
+                if (refresh == null && !refreshFailed && authorization.isDone()
+                        && now >= refreshAt(next, authorizedAt)) {
+                    // Re-authorize the remaining assets in the background while we continue with valid containers.
+                    logger.debug("-- process() - re-authorizing, undispatched containers: {}", queue.size());
+                    refreshed = new LinkedBlockingQueue<>();
+                    refresh = authorize(httpClient, pool, refreshed);
+                }
+
+                if (refresh != null && (next == null || refresh.isDone() || now >= donkey.expiresAt(next))) {
+                    try {
+                        await(refresh);
+                    } catch (IOException ex) {
+                        // Carry on with the containers we have.
+                        logger.warn("-- process() - re-authorization failed: {} {}",
+                                ex.getClass().getCanonicalName(), ex.getMessage());
+                        refresh = null;
+                        refreshFailed = true;
+                        continue;
+                    }
+                    refresh = null;
+                    authorizedAt = System.currentTimeMillis();
+                    queue.clear();
+                    redundant.clear();
+                    plan(take(refreshed, false), queue, redundant, dispatched);
+                    logger.debug("-- process() - re-authorized, containers: {}", queue.size() + redundant.size());
+                    continue;
+                }
+
+                if (refreshFailed && now >= donkey.expiresAt(next)) {
+                    // Its assets remain in the pool.
+                    queue.poll();
+                    expired++;
+                    continue;
+                }
+
+                stages.hosts().awaitCapacity();
+                queue.poll();
+                futures.add(dispatch(httpClient, next, pool, consumer, dispatched, false));
+            }
+        } finally {
+            // Don't leave work in flight.
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .handle((u, ex) -> null)
+                    .join();
+        }
+        await(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+        await(authorization);
+        if (expired > 0) {
+            throw new ContainerExpiredException("re-authorization failed, expired containers: " + expired);
+        }
+    }
+
+    CompletableFuture<Void>
+            authorize(HttpClient httpClient, AssetPool pool, Collection<StorageHostChunkList> arrivals) {
+        return pool.authorize(httpClient, stages.authorize(), authorizePartitionSize, arrivals::addAll);
+    }
+
+    static List<StorageHostChunkList> take(BlockingQueue<StorageHostChunkList> arrivals, boolean wait) {
+        List<StorageHostChunkList> list = new ArrayList<>();
+        if (wait) {
+            try {
+                StorageHostChunkList container = arrivals.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (container != null) {
+                    list.add(container);
+                }
+            } catch (InterruptedException ex) {
+                throw new UncheckedInterruptedException(ex);
+            }
+        }
+        arrivals.drainTo(list);
+        return list;
+    }
+
+    /**
+     * Plans the retrieval of newly arrived containers. Selected containers are queued for fetching. Redundant
+     * containers are held, together with the chunks they await from queued containers.
+     */
+    void plan(List<StorageHostChunkList> containers, Queue<StorageHostChunkList> queue,
+            Map<StorageHostChunkList, Set<ByteString>> redundant, Map<ByteString, CompletableFuture<Void>> dispatched) {
+        if (containers.isEmpty()) {
+            return;
+        }
+        Predicate<ByteString> covered = u -> dispatched.containsKey(u) || donkey.isStored(u);
+        ContainerPlanner.Plan plan = ContainerPlanner.plan(containers, covered);
+        queue.addAll(plan.selected());
+        plan.redundant().forEach(u -> redundant.put(u, checksums(u)
+                .stream()
+                .filter(covered.negate())
+                .collect(toSet())));
+    }
+
+    /**
+     * Dispatches held redundant containers once the queued containers they await have been dispatched.
+     */
+    void flush(HttpClient httpClient, AssetPool pool, FileAssembler consumer,
+            Map<StorageHostChunkList, Set<ByteString>> redundant, Map<ByteString, CompletableFuture<Void>> dispatched,
+            List<CompletableFuture<Void>> futures, boolean force) {
+        Iterator<Map.Entry<StorageHostChunkList, Set<ByteString>>> it = redundant.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<StorageHostChunkList, Set<ByteString>> entry = it.next();
+            if (force || dispatched.keySet().containsAll(entry.getValue())) {
+                futures.add(dispatch(httpClient, entry.getKey(), pool, consumer, dispatched, true));
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Dispatches the container to the fetch, decrypt and assemble stages. Redundant containers, including the
+     * re-authorized twins of dispatched containers, are deferred until the dispatched containers carrying their chunks
+     * complete. Their fetch is then typically skipped, but they are still assembled into the pool.
+     */
+    CompletableFuture<Void> dispatch(HttpClient httpClient, StorageHostChunkList container, AssetPool pool,
+            FileAssembler consumer, Map<ByteString, CompletableFuture<Void>> dispatched, boolean redundant) {
+        List<ByteString> checksums = checksums(container);
+        CompletableFuture<Void> future;
+        if (redundant) {
+            CompletableFuture<?>[] carriers = checksums.stream()
+                    .map(dispatched::get)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .toArray(CompletableFuture<?>[]::new);
+            future = CompletableFuture.allOf(carriers)
+                    .handle((u, ex) -> null)
+                    .thenCompose(u -> dispatch(httpClient, container, pool, consumer));
+        } else {
+            future = dispatch(httpClient, container, pool, consumer);
+        }
+        checksums.forEach(u -> dispatched.put(u, future));
+        return future;
+    }
+
+    CompletableFuture<Void>
+            dispatch(HttpClient httpClient, StorageHostChunkList container, AssetPool pool, FileAssembler consumer) {
+        return stages.hosts()
+                .submit(container.getHostInfo().getHostname(),
+                        () -> donkey.fetch(httpClient, container),
+                        u -> u.map(bs -> bs.length).orElse(0))
+                .exceptionally(StagedDonkey::fetchFailed)
+                .thenAcceptAsync(data -> data.ifPresent(bs -> donkey.decrypt(container, bs)), stages.decrypt())
+                .thenRunAsync(() -> donkey.assemble(container, pool, consumer), stages.assemble());
+    }
+
+    static Optional<byte[]> fetchFailed(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException
+                ? throwable.getCause()
+                : throwable;
+        if (cause instanceof UncheckedIOException) {
+            IOException ex = ((UncheckedIOException) cause).getCause();
+            logger.warn("-- fetchFailed() - {} {}", ex.getClass().getCanonicalName(), ex.getMessage());
+            return Optional.empty();
+        }
+        throw cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : new CompletionException(cause);
+    }
+
+    /**
+     * Returns the time at which the container's assets should be re-authorized: the re-authorization lead before
+     * expiry, but no earlier than halfway through the container's authorized lifetime.
+     *
+     * @param container container
+     * @param authorizedAt authorization time, epoch milliseconds
+     * @return re-authorization time, epoch milliseconds
+     */
+    long refreshAt(StorageHostChunkList container, long authorizedAt) {
+        long expiresAt = donkey.expiresAt(container);
+        return Math.max(expiresAt - reauthorizeLeadMs, authorizedAt + (expiresAt - authorizedAt) / 2);
+    }
+
+    static List<ByteString> checksums(StorageHostChunkList container) {
+        return container.getChunkInfoList()
+                .stream()
+                .map(ChunkInfo::getChunkChecksum)
+                .collect(toList());
+    }
+
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+
+        } catch (InterruptedException ex) {
+            throw new UncheckedInterruptedException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    static Containers containers(Donkey donkey) {
+        return new Containers() {
+            @Override
+            public AssetPool pool(Set<Asset> assets) {
+                return donkey.pool(assets);
+            }
+
+            @Override
+            public long expiresAt(StorageHostChunkList container) {
+                return donkey.expiresAt(container);
+            }
+
+            @Override
+            public boolean isStored(ByteString checksum) {
+                return donkey.isStored(checksum);
+            }
+
+            @Override
+            public Optional<byte[]> fetch(HttpClient httpClient, StorageHostChunkList container) throws IOException {
+                return donkey.fetch(httpClient, container);
+            }
+
+            @Override
+            public void decrypt(StorageHostChunkList container, byte[] data) {
+                donkey.decrypt(container, data);
+            }
+
+            @Override
+            public void assemble(StorageHostChunkList container, AssetPool pool, FileAssembler consumer) {
+                donkey.assemble(container, pool, consumer);
+            }
+        };
+    }
+
+    /**
+     * The container operations of the underlying {@link Donkey}, one per stage.
+     */
+    interface Containers {
+
+        AssetPool pool(Set<Asset> assets);
+
+        long expiresAt(StorageHostChunkList container);
+
+        boolean isStored(ByteString checksum);
+
+        Optional<byte[]> fetch(HttpClient httpClient, StorageHostChunkList container) throws IOException;
+
+        void decrypt(StorageHostChunkList container, byte[] data);
+
+        void assemble(StorageHostChunkList container, AssetPool pool, FileAssembler consumer);
+    }
+
+    @Override
+    public String toString() {
+        return "StagedDonkey{"
+                + "stages=" + stages
+                + ", reauthorizeLeadMs=" + reauthorizeLeadMs
+                + ", authorizePartitionSize=" + authorizePartitionSize
+                + '}';
+    }
+}
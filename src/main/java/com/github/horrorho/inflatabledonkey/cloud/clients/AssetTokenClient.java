@@ -23,6 +23,7 @@
  */
 package com.github.horrorho.inflatabledonkey.cloud.clients;
 
+import com.github.horrorho.inflatabledonkey.cache.RecordCache;
 import com.github.horrorho.inflatabledonkey.cloudkitty.CloudKitty;
 import com.github.horrorho.inflatabledonkey.cloudkitty.operations.QueryRetrieveRequestOperations;
 import com.github.horrorho.inflatabledonkey.data.backup.Asset;
@@ -32,11 +33,15 @@ import com.github.horrorho.inflatabledonkey.pcs.zone.PZFactory;
 import com.github.horrorho.inflatabledonkey.pcs.zone.ProtectionZone;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import static java.util.stream.Collectors.toList;
 import javax.annotation.concurrent.Immutable;
@@ -54,21 +59,22 @@ public final class AssetTokenClient {
 
     private static final Logger logger = LoggerFactory.getLogger(AssetTokenClient.class);
 
+    // Cached asset records are stale if their download token expires within this margin.
+    private static final Duration TOKEN_EXPIRATION_MARGIN = Duration.ofHours(1);
+
     public static List<Asset>
             apply(HttpClient httpClient, CloudKitty kitty, ProtectionZone zone, Map<AssetID, String> assetIDDomains)
             throws IOException {
-        List<String> nonEmptyAssets = assetIDDomains.entrySet()
-                .stream()
-                .filter(e -> e.getKey().size() > 0)
-                .map(e -> e.getKey().toString())
-                .collect(Collectors.toList());
-        logger.debug("-- apply() - non-empty asset id list size: {}", nonEmptyAssets.size());
-        
-        List<String> fieldTypes = Arrays.asList();
-        List<CloudKit.QueryRetrieveResponse> responses
-                = QueryRetrieveRequestOperations.get(kitty, httpClient, "PrivilegedBatchRecordFetch", "_defaultZone", fieldTypes, nonEmptyAssets);
+        return apply(httpClient, kitty, zone, assetIDDomains, RecordCache.disabled());
+    }
 
-        List<Asset> assets = assets(responses, assetIDDomains, zone);
+    public static List<Asset>
+            apply(HttpClient httpClient, CloudKitty kitty, ProtectionZone zone, Map<AssetID, String> assetIDDomains,
+                    RecordCache cache)
+            throws IOException {
+        // Assets are decoded as each response arrives, overlapping the remaining requests.
+        List<Asset> assets = Collections.synchronizedList(new ArrayList<>());
+        stream(httpClient, kitty, zone, assetIDDomains, cache, assets::addAll);
         if (logger.isDebugEnabled()) {
             // Normally valid for 48 hours.
             assets.stream()
@@ -83,18 +89,91 @@ public final class AssetTokenClient {
         return assets;
     }
 
-    static List<Asset> assets(List<CloudKit.QueryRetrieveResponse> responses, Map<AssetID, String> assetIDDomains, ProtectionZone zone) {
+    /**
+     * Streaming variant of {@link #apply}. Assets are passed to the consumer in pages as each response is decoded,
+     * possibly from multiple threads.
+     *
+     * @param httpClient http client
+     * @param kitty CloudKitty
+     * @param zone protection zone
+     * @param assetIDDomains asset ID domains
+     * @param consumer thread safe asset page consumer
+     * @throws IOException
+     */
+    public static void stream(HttpClient httpClient, CloudKitty kitty, ProtectionZone zone,
+            Map<AssetID, String> assetIDDomains, Consumer<List<Asset>> consumer) throws IOException {
+        stream(httpClient, kitty, zone, assetIDDomains, RecordCache.disabled(), consumer);
+    }
+
+    /**
+     * Streaming variant of {@link #apply}. Cached asset records with unexpired download tokens are passed to the
+     * consumer first, only missing or stale asset records are fetched.
+     *
+     * @param httpClient http client
+     * @param kitty CloudKitty
+     * @param zone protection zone
+     * @param assetIDDomains asset ID domains
+     * @param cache record cache
+     * @param consumer thread safe asset page consumer
+     * @throws IOException
+     */
+    public static void stream(HttpClient httpClient, CloudKitty kitty, ProtectionZone zone,
+            Map<AssetID, String> assetIDDomains, RecordCache cache, Consumer<List<Asset>> consumer)
+            throws IOException {
+        List<String> nonEmptyAssets = assetIDDomains.entrySet()
+                .stream()
+                .filter(e -> e.getKey().size() > 0)
+                .map(e -> e.getKey().toString())
+                .collect(Collectors.toList());
+        logger.debug("-- stream() - non-empty asset id list size: {}", nonEmptyAssets.size());
+
+        List<String> missing = new ArrayList<>();
+        List<CloudKit.Record> cached = new ArrayList<>();
+        nonEmptyAssets.forEach(u -> {
+            Optional<CloudKit.Record> record = cache.get("_defaultZone", u);
+            if (record.isPresent()) {
+                cached.add(record.get());
+            } else {
+                missing.add(u);
+            }
+        });
+        if (!cached.isEmpty()) {
+            List<Asset> assets = assets(cached, assetIDDomains, zone, RecordCache.disabled());
+            logger.debug("-- stream() - cached asset list size: {}", assets.size());
+            consumer.accept(assets);
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<String> fieldTypes = Arrays.asList();
+        QueryRetrieveRequestOperations.stream(kitty, httpClient, "PrivilegedBatchRecordFetch", "_defaultZone", fieldTypes, missing,
+                u -> consumer.accept(assets(records(Collections.singletonList(u)), assetIDDomains, zone, cache)));
+    }
+
+    static List<CloudKit.Record> records(List<CloudKit.QueryRetrieveResponse> responses) {
         return responses.stream()
                 .map(CloudKit.QueryRetrieveResponse::getQueryResultsList)
                 .flatMap(Collection::stream)
-                .collect(toList())
-                .parallelStream()
                 .filter(CloudKit.QueryRetrieveResponse.QueryResult::hasRecord)
                 .map(CloudKit.QueryRetrieveResponse.QueryResult::getRecord)
-                .map(u -> asset(u, assetIDDomains, zone))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toList());
+                .collect(toList());
+    }
+
+    static List<Asset>
+            assets(List<CloudKit.Record> records, Map<AssetID, String> assetIDDomains, ProtectionZone zone,
+                    RecordCache cache) {
+        return MetadataDecoder.instance().decode(records, u -> asset(u, assetIDDomains, zone, cache));
+    }
+
+    static Optional<Asset>
+            asset(CloudKit.Record record, Map<AssetID, String> assetIDDomains, ProtectionZone zone, RecordCache cache) {
+        Optional<Asset> asset = asset(record, assetIDDomains, zone);
+        // Asset records carry download tokens, cache them until shortly before the tokens expire.
+        asset.flatMap(Asset::downloadTokenExpiration)
+                .map(u -> u.minus(TOKEN_EXPIRATION_MARGIN))
+                .ifPresent(u -> cache.put("_defaultZone", record, u));
+        return asset;
     }
 
     static Optional<Asset> asset(CloudKit.Record record, Map<AssetID, String> assetIDDomains, ProtectionZone zone) {
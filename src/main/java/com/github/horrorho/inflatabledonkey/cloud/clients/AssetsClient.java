@@ -23,6 +23,7 @@
  */
 package com.github.horrorho.inflatabledonkey.cloud.clients;
 
+import com.github.horrorho.inflatabledonkey.cache.RecordCache;
 import com.github.horrorho.inflatabledonkey.cloudkitty.CloudKitty;
 import com.github.horrorho.inflatabledonkey.cloudkitty.operations.RecordRetrieveRequestOperations;
 import com.github.horrorho.inflatabledonkey.data.backup.Assets;
@@ -60,6 +61,13 @@ public final class AssetsClient {
     public static List<Assets>
             apply(HttpClient httpClient, CloudKitty kitty, ProtectionZone zone, Collection<Manifest> manifests)
             throws IOException {
+        return apply(httpClient, kitty, zone, manifests, RecordCache.disabled());
+    }
+
+    public static List<Assets>
+            apply(HttpClient httpClient, CloudKitty kitty, ProtectionZone zone, Collection<Manifest> manifests,
+                    RecordCache cache)
+            throws IOException {
 
         if (manifests.isEmpty()) {
             return Collections.emptyList();
@@ -68,9 +76,10 @@ public final class AssetsClient {
         List<String> manifestIDs = manifestIDs(manifests);
         logger.debug("-- apply() - manifest list size: {}", manifestIDs.size());
 
-        List<CloudKit.RecordRetrieveResponse> responses
-                = RecordRetrieveRequestOperations.get(kitty, httpClient, "_defaultZone", manifestIDs);
-        List<Assets> assetsList = assetsList(responses, zone);
+        // Manifest records are immutable.
+        List<CloudKit.Record> records = cache.immutable("_defaultZone", manifestIDs,
+                u -> records(RecordRetrieveRequestOperations.get(kitty, httpClient, "_defaultZone", u)));
+        List<Assets> assetsList = assetsList(records, zone);
 
         logger.debug("-- apply() - asset list size: {}", assetsList.size());
         return assetsList;
@@ -91,16 +100,18 @@ public final class AssetsClient {
                 .collect(Collectors.toList());
     }
 
-    static List<Assets> assetsList(List<CloudKit.RecordRetrieveResponse> responses, ProtectionZone zone) {
-        return groupByManifestID(responses)
-                .values()
+    static List<CloudKit.Record> records(List<CloudKit.RecordRetrieveResponse> responses) {
+        return responses
                 .stream()
-                .map(u -> assets(u, zone))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
+                .filter(CloudKit.RecordRetrieveResponse::hasRecord)
+                .map(CloudKit.RecordRetrieveResponse::getRecord)
                 .collect(Collectors.toList());
     }
 
+    static List<Assets> assetsList(List<CloudKit.Record> records, ProtectionZone zone) {
+        return MetadataDecoder.instance().decode(groupByManifestID(records).values(), u -> assets(u, zone));
+    }
+
     static Optional<Assets> assets(List<CloudKit.Record> records, ProtectionZone zone) {
         return AssetsFactory.from(records, zone(records, zone));
     }
@@ -118,10 +129,9 @@ public final class AssetsClient {
     }
 
     static Map<ManifestID, List<CloudKit.Record>>
-            groupByManifestID(Collection<CloudKit.RecordRetrieveResponse> responses) {
-        return responses
+            groupByManifestID(Collection<CloudKit.Record> records) {
+        return records
                 .stream()
-                .map(CloudKit.RecordRetrieveResponse::getRecord)
                 .filter(CloudKit.Record::hasRecordIdentifier)
                 .map(AssetsClient::manifestIDRecord)
                 .filter(Optional::isPresent)
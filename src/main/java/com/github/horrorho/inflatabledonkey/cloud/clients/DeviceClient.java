@@ -32,7 +32,6 @@ import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 import java.util.stream.Collectors;
 import javax.annotation.concurrent.Immutable;
 import org.apache.http.client.HttpClient;
@@ -62,12 +61,10 @@ public final class DeviceClient {
 
     static List<Device> devices(List<CloudKit.RecordRetrieveResponse> responses) {
         logger.debug("-- devices() - responses: {}", responses);
-        return responses
+        List<CloudKit.Record> records = responses
                 .stream()
                 .map(CloudKit.RecordRetrieveResponse::getRecord)
-                .map(DeviceFactory::from)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
                 .collect(Collectors.toList());
+        return MetadataDecoder.instance().decode(records, DeviceFactory::from);
     }
 }
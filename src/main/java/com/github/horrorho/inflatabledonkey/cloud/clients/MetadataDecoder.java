@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud.clients;
+
+import com.github.horrorho.inflatabledonkey.args.Property;
+import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metadata decoder. Decodes CloudKit records on a dedicated CPU pool, separate from the I/O pool used by
+ * CloudKitty, and tallies decode throughput. Throughput is measured over the time during which at least one decode
+ * was in progress, so concurrent decodes are not double counted.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class MetadataDecoder {
+
+    public static MetadataDecoder instance() {
+        return INSTANCE;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataDecoder.class);
+
+    private static final MetadataDecoder INSTANCE = new MetadataDecoder(new ForkJoinPool(
+            Property.METADATA_DECODE_THREADS.asInteger().orElse(Runtime.getRuntime().availableProcessors())));
+
+    private final ForkJoinPool forkJoinPool;
+    private final LongAdder decoded = new LongAdder();
+    @GuardedBy("this")
+    private int active;
+    @GuardedBy("this")
+    private long busySince;
+    @GuardedBy("this")
+    private long busyNanos;
+
+    MetadataDecoder(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = Objects.requireNonNull(forkJoinPool);
+    }
+
+    /**
+     * Decodes the items in parallel. Items that fail to decode are dropped.
+     *
+     * @param <T> item type
+     * @param <R> decoded type
+     * @param items items
+     * @param decoder decoder
+     * @return decoded items, order not guaranteed
+     */
+    public <T, R> List<R> decode(Collection<T> items, Function<? super T, Optional<R>> decoder) {
+        if (items.isEmpty()) {
+            return new ArrayList<>();
+        }
+        begin();
+        try {
+            long start = System.nanoTime();
+            List<R> list = forkJoinPool.submit(() -> items.parallelStream()
+                    .map(decoder)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toList()))
+                    .get();
+            long elapsed = System.nanoTime() - start;
+            decoded.add(items.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("-- decode() - items: {} decoded: {} ms: {} items/s: {}",
+                        items.size(), list.size(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                        rate(items.size(), elapsed));
+            }
+            return list;
+
+        } catch (InterruptedException ex) {
+            throw new UncheckedInterruptedException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            end();
+        }
+    }
+
+    synchronized void begin() {
+        if (active++ == 0) {
+            busySince = System.nanoTime();
+        }
+    }
+
+    synchronized void end() {
+        if (--active == 0) {
+            busyNanos += System.nanoTime() - busySince;
+        }
+    }
+
+    synchronized long busyNanos() {
+        return active == 0
+                ? busyNanos
+                : busyNanos + System.nanoTime() - busySince;
+    }
+
+    public int parallelism() {
+        return forkJoinPool.getParallelism();
+    }
+
+    public long decoded() {
+        return decoded.sum();
+    }
+
+    /**
+     * @return cumulative decode throughput over busy time, items per second
+     */
+    public long throughput() {
+        return rate(decoded.sum(), busyNanos());
+    }
+
+    static long rate(long items, long nanos) {
+        return nanos == 0
+                ? 0
+                : items * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataDecoder{"
+                + "parallelism=" + parallelism()
+                + ", decoded=" + decoded()
+                + ", throughput=" + throughput()
+                + '}';
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.github.horrorho.inflatabledonkey.cloud.clients;
 
+import com.github.horrorho.inflatabledonkey.cache.RecordCache;
 import com.github.horrorho.inflatabledonkey.cloudkitty.CloudKitty;
 import com.github.horrorho.inflatabledonkey.cloudkitty.operations.RecordRetrieveRequestOperations;
 import com.github.horrorho.inflatabledonkey.data.backup.Snapshot;
@@ -54,6 +55,13 @@ public final class SnapshotClient {
     public static List<Snapshot>
             snapshots(HttpClient httpClient, CloudKitty kitty, ProtectionZone zone, Collection<SnapshotID> snapshotIDs)
             throws IOException {
+        return snapshots(httpClient, kitty, zone, snapshotIDs, RecordCache.disabled());
+    }
+
+    public static List<Snapshot>
+            snapshots(HttpClient httpClient, CloudKitty kitty, ProtectionZone zone, Collection<SnapshotID> snapshotIDs,
+                    RecordCache cache)
+            throws IOException {
 
         if (snapshotIDs.isEmpty()) {
             return Collections.emptyList();
@@ -62,23 +70,25 @@ public final class SnapshotClient {
         List<String> snapshots = snapshotIDs.stream()
                 .map(Object::toString)
                 .collect(Collectors.toList());
-        List<CloudKit.RecordRetrieveResponse> responses
-                = RecordRetrieveRequestOperations.get(kitty, httpClient, "mbksync", snapshots);
-        return snapshots(responses, zone);
+        // Snapshot records are immutable.
+        List<CloudKit.Record> records = cache.immutable("mbksync", snapshots,
+                u -> records(RecordRetrieveRequestOperations.get(kitty, httpClient, "mbksync", u)));
+        return snapshots(records, zone);
     }
 
-    static List<Snapshot> snapshots(List<CloudKit.RecordRetrieveResponse> responses, ProtectionZone zone) {
-        logger.debug("-- snapshots() - responses: {}", responses);
+    static List<CloudKit.Record> records(List<CloudKit.RecordRetrieveResponse> responses) {
+        logger.debug("-- records() - responses: {}", responses);
         return responses
                 .stream()
                 .filter(CloudKit.RecordRetrieveResponse::hasRecord)
                 .map(CloudKit.RecordRetrieveResponse::getRecord)
-                .map(r -> manifests(r, zone))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
                 .collect(Collectors.toList());
     }
 
+    static List<Snapshot> snapshots(List<CloudKit.Record> records, ProtectionZone zone) {
+        return MetadataDecoder.instance().decode(records, r -> manifests(r, zone));
+    }
+
     static Optional<Snapshot> manifests(CloudKit.Record record, ProtectionZone zone) {
         return PZFactory.instance().create(zone, record.getProtectionInfo())
                 .flatMap(u -> SnapshotFactory.from(record, u));
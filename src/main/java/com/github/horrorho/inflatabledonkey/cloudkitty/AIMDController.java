@@ -0,0 +1,207 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloudkitty;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AIMD controller. Tunes operations per request and concurrent requests for a single CloudKit API.
+ * <p>
+ * Successful requests additively increase both while the request latency average is within the latency target. Once
+ * over the target the batch size is halved. Throttle responses (429/ 503) halve both, other failures halve the
+ * concurrency. The batch size is further capped so that responses, at the average response bytes per operation, stay
+ * within the response size limit.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+final class AIMDController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AIMDController.class);
+
+    private static final long DEFAULT_RESPONSE_BYTES_MAX = 16 * 1024 * 1024;
+
+    static boolean isThrottled(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof HttpResponseException) {
+                int statusCode = ((HttpResponseException) t).getStatusCode();
+                return statusCode == 429 || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE;
+            }
+        }
+        return false;
+    }
+
+    private final String api;
+    private final int batchSizeMin;
+    private final int batchSizeMax;
+    private final int concurrencyMax;
+    private final long latencyTargetNanos;
+    private final long responseBytesMax;
+
+    private double batchSize;
+    private double concurrency;
+    private long latencyNanos;  // EWMA
+    private double operationBytes;  // EWMA
+    private long throttled;
+    private long failed;
+
+    AIMDController(String api, int batchSizeMin, int batchSizeMax, int concurrency, int concurrencyMax,
+            long latencyTargetMs, long responseBytesMax) {
+        if (batchSizeMin <= 0 || batchSizeMax < batchSizeMin) {
+            throw new IllegalArgumentException("bad batch size range: " + batchSizeMin + " - " + batchSizeMax);
+        }
+        if (concurrency <= 0 || concurrencyMax < concurrency) {
+            throw new IllegalArgumentException("bad concurrency: " + concurrency + " max: " + concurrencyMax);
+        }
+        this.api = api;
+        this.batchSizeMin = batchSizeMin;
+        this.batchSizeMax = batchSizeMax;
+        this.concurrencyMax = concurrencyMax;
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMs);
+        this.responseBytesMax = responseBytesMax;
+        this.batchSize = batchSizeMax;
+        this.concurrency = concurrency;
+    }
+
+    AIMDController(String api, int batchSizeMin, int batchSizeMax, int concurrency, int concurrencyMax,
+            long latencyTargetMs) {
+        this(api, batchSizeMin, batchSizeMax, concurrency, concurrencyMax, latencyTargetMs,
+                DEFAULT_RESPONSE_BYTES_MAX);
+    }
+
+    synchronized int batchSize() {
+        return (int) batchSize;
+    }
+
+    synchronized int concurrency() {
+        return (int) concurrency;
+    }
+
+    /**
+     * Executes and measures a single request.
+     *
+     * @param <T> result type
+     * @param operations request operation count
+     * @param request request
+     * @return result
+     * @throws UncheckedIOException
+     */
+    <T> T measure(int operations, Supplier<T> request) throws UncheckedIOException {
+        return measure(operations, request, () -> 0, u -> 0);
+    }
+
+    /**
+     * Executes and measures a single request, excluding time spent downstream of the request, for example in
+     * streamed response consumers.
+     *
+     * @param <T> result type
+     * @param operations request operation count
+     * @param request request
+     * @param excludedNanos time to exclude, read on completion
+     * @param responseBytes response size function, or zero if unknown
+     * @return result
+     * @throws UncheckedIOException
+     */
+    <T> T measure(int operations, Supplier<T> request, LongSupplier excludedNanos, ToLongFunction<T> responseBytes)
+            throws UncheckedIOException {
+        long start = System.nanoTime();
+        try {
+            T t = request.get();
+            long nanos = Math.max(0, System.nanoTime() - start - excludedNanos.getAsLong());
+            onSuccess(operations, responseBytes.applyAsLong(t), nanos);
+            return t;
+
+        } catch (RuntimeException ex) {
+            if (isThrottled(ex)) {
+                onThrottled();
+            } else {
+                onFailure();
+            }
+            throw ex;
+        }
+    }
+
+    synchronized void onSuccess(int operations, long responseBytes, long nanos) {
+        latencyNanos = latencyNanos == 0
+                ? nanos
+                : (latencyNanos * 7 + nanos) / 8;
+        if (responseBytes > 0 && operations > 0) {
+            double bytes = (double) responseBytes / operations;
+            operationBytes = operationBytes == 0
+                    ? bytes
+                    : (operationBytes * 7 + bytes) / 8;
+        }
+        if (latencyNanos > latencyTargetNanos) {
+            batchSize = Math.max(batchSizeMin, batchSize / 2);
+            logger.debug("-- onSuccess() - slow, api: {} operations: {} ms: {} -> {}",
+                    api, operations, TimeUnit.NANOSECONDS.toMillis(nanos), this);
+            // The halved batch size is judged on its own requests.
+            latencyNanos = 0;
+            return;
+        }
+        // Additive increase, roughly +1 concurrency per window of requests.
+        concurrency = Math.min(concurrencyMax, concurrency + 1 / concurrency);
+        if (operations >= (int) batchSize) {
+            batchSize = Math.min(batchSizeMax, batchSize + Math.max(1, batchSizeMax / 16));
+        }
+        if (operationBytes * batchSize > responseBytesMax) {
+            batchSize = Math.max(batchSizeMin, Math.min(batchSize, responseBytesMax / operationBytes));
+        }
+    }
+
+    synchronized void onThrottled() {
+        throttled++;
+        batchSize = Math.max(batchSizeMin, batchSize / 2);
+        concurrency = Math.max(1, concurrency / 2);
+        logger.debug("-- onThrottled() - {}", this);
+    }
+
+    synchronized void onFailure() {
+        failed++;
+        concurrency = Math.max(1, concurrency / 2);
+        logger.debug("-- onFailure() - {}", this);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AIMDController{"
+                + "api=" + api
+                + ", batchSize=" + (int) batchSize
+                + ", concurrency=" + (int) concurrency
+                + ", latencyMs=" + TimeUnit.NANOSECONDS.toMillis(latencyNanos)
+                + ", operationBytes=" + (long) operationBytes
+                + ", throttled=" + throttled
+                + ", failed=" + failed
+                + '}';
+    }
+}
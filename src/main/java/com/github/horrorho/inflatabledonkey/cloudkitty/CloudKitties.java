@@ -23,12 +23,14 @@
  */
 package com.github.horrorho.inflatabledonkey.cloudkitty;
 
+import com.github.horrorho.inflatabledonkey.args.Property;
 import com.github.horrorho.inflatabledonkey.cloud.accounts.Account;
 import com.github.horrorho.inflatabledonkey.cloud.accounts.Token;
 import com.github.horrorho.inflatabledonkey.cloud.cloudkit.CKInit;
 import com.github.horrorho.inflatabledonkey.requests.ProtoBufsRequestFactory;
 import java.util.UUID;
 import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import javax.annotation.concurrent.Immutable;
 
 /**
@@ -62,6 +64,17 @@ public final class CloudKitties {
         RequestOperationHeaders requestOperationHeaders = new RequestOperationHeaders(container, bundle, deviceID, deviceHardwareID);
         ProtoBufsRequestFactory requestFactory
                 = new ProtoBufsRequestFactory(baseUrl, container, bundle, cloudKitUserId, cloudKitToken);
-        return new CloudKitty(requestOperationHeaders, requestFactory, forkJoinPool);
+        return new CloudKitty(requestOperationHeaders, requestFactory, forkJoinPool, controllerFactory(forkJoinPool));
+    }
+
+    static Function<String, AIMDController> controllerFactory(ForkJoinPool forkJoinPool) {
+        int batchSizeMin = Property.CLOUDKIT_BATCH_SIZE_MIN.asInteger().orElse(25);
+        int batchSizeMax = Property.CLOUDKIT_BATCH_SIZE_MAX.asInteger().orElse(400);
+        int concurrencyMax = Property.CLOUDKIT_CONCURRENCY_MAX.asInteger().orElse(16);
+        int concurrency = Math.min(forkJoinPool.getParallelism(), concurrencyMax);
+        long latencyTargetMs = Property.CLOUDKIT_LATENCY_TARGET_MS.asLong().orElse(15000L);
+        long responseBytesMax = Property.CLOUDKIT_RESPONSE_BYTES_MAX.asLong().orElse(16777216L);
+        return api -> new AIMDController(api, batchSizeMin, batchSizeMax, concurrency, concurrencyMax, latencyTargetMs,
+                responseBytesMax);
     }
 }
@@ -24,29 +24,40 @@
 package com.github.horrorho.inflatabledonkey.cloudkitty;
 
 import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
+import com.github.horrorho.inflatabledonkey.metrics.Counter;
+import com.github.horrorho.inflatabledonkey.metrics.Histogram;
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.RequestOperation;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.ResponseOperation;
 import com.github.horrorho.inflatabledonkey.protobuf.util.ProtobufAssistant;
 import com.github.horrorho.inflatabledonkey.requests.ProtoBufsRequestFactory;
+import com.github.horrorho.inflatabledonkey.responsehandler.DelimitedProtobufConsumerHandler;
 import com.github.horrorho.inflatabledonkey.responsehandler.DelimitedProtobufHandler;
-import com.github.horrorho.inflatabledonkey.util.ListUtils;
+import com.github.horrorho.inflatabledonkey.trace.CloudKitRequestEvent;
+import com.github.horrorho.inflatabledonkey.trace.Tracing;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import static java.util.stream.Collectors.toList;
-import java.util.stream.IntStream;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
@@ -55,7 +66,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Super basic concurrent CloudKit client. Requests over our limit (default: 400) are concurrently processed.
+ * Super basic concurrent CloudKit client. Requests are split into batches and concurrently processed, with batch sizes
+ * and concurrency tuned per API by an {@link AIMDController}.
  *
  * @author Ahseya
  */
@@ -64,28 +76,43 @@ public final class CloudKitty {
 
     private static final Logger logger = LoggerFactory.getLogger(CloudKitty.class);
 
+    private static final Histogram REQUEST_MS = Metrics.instance().histogram("cloudkit.request.ms");
+    private static final Histogram REQUEST_BYTES = Metrics.instance().histogram("cloudkit.request.bytes");
+    private static final Histogram RESPONSE_BYTES = Metrics.instance().histogram("cloudkit.response.bytes");
+    private static final Counter RESPONSE_OPERATIONS = Metrics.instance().counter("cloudkit.response.operations");
+    private static final Counter REQUEST_FAILURES = Metrics.instance().counter("cloudkit.request.failures");
+
     private static final ResponseHandler<List<ResponseOperation>> RESPONSE_HANDLER
             = new DelimitedProtobufHandler<>(ResponseOperation::parseFrom);
 
-    private static final int LIMIT = 400;   // TODO inject
+    private static final int LIMIT = 400;
 
     private final ResponseHandler<List<ResponseOperation>> responseHandler;
     private final Function<String, RequestOperation.Header> requestOperationHeaders;
     private final ProtoBufsRequestFactory requestFactory;
     private final ForkJoinPool forkJoinPool;
-    private final int limit;
+    private final Function<String, AIMDController> controllerFactory;
+    private final ConcurrentMap<String, AIMDController> controllers = new ConcurrentHashMap<>();
 
     CloudKitty(
             ResponseHandler<List<ResponseOperation>> responseHandler,
             Function<String, RequestOperation.Header> requestOperationHeaders,
             ProtoBufsRequestFactory requestFactory,
             ForkJoinPool forkJoinPool,
-            int limit) {
+            Function<String, AIMDController> controllerFactory) {
         this.responseHandler = Objects.requireNonNull(responseHandler);
         this.requestOperationHeaders = Objects.requireNonNull(requestOperationHeaders);
         this.requestFactory = Objects.requireNonNull(requestFactory);
         this.forkJoinPool = Objects.requireNonNull(forkJoinPool);
-        this.limit = limit;
+        this.controllerFactory = Objects.requireNonNull(controllerFactory);
+    }
+
+    CloudKitty(
+            Function<String, RequestOperation.Header> requestOperationHeaders,
+            ProtoBufsRequestFactory requestFactory,
+            ForkJoinPool forkJoinPool,
+            Function<String, AIMDController> controllerFactory) {
+        this(RESPONSE_HANDLER, requestOperationHeaders, requestFactory, forkJoinPool, controllerFactory);
     }
 
     CloudKitty(
@@ -93,7 +120,9 @@ public final class CloudKitty {
             ProtoBufsRequestFactory requestFactory,
             ForkJoinPool forkJoinPool,
             int limit) {
-        this(RESPONSE_HANDLER, requestOperationHeaders, requestFactory, forkJoinPool, limit);
+        // Fixed batch size and concurrency.
+        this(requestOperationHeaders, requestFactory, forkJoinPool, api -> new AIMDController(
+                api, limit, limit, forkJoinPool.getParallelism(), forkJoinPool.getParallelism(), Long.MAX_VALUE));
     }
 
     CloudKitty(
@@ -117,52 +146,196 @@ public final class CloudKitty {
 
     <T> List<T> execute(HttpClient httpClient, String api, RequestOperation.Header header, List<RequestOperation> requests,
             Function<ResponseOperation, T> field) throws IOException {
+        logger.debug("-- execute() - requests: {}", requests.size());
+        logger.trace("-- execute() - requests: {}", requests);
+
+        // Batch and concurrently pipeline requests, keyed by batch offset.
+        Map<Integer, List<ResponseOperation>> responses = new ConcurrentHashMap<>();
+        schedule(api, requests, Integer.MAX_VALUE, Integer.MAX_VALUE, (offset, batch, downstream) -> {
+            List<ResponseOperation> list = request(httpClient, api, header, batch);
+            responses.put(offset, list);
+            return responseBytes(list);
+        });
+
+        // Order responses to match requests.
+        List<T> reordered = new TreeMap<>(responses)
+                .values()
+                .stream()
+                .flatMap(Collection::stream)
+                .map(field)
+                .collect(Collectors.toList());
+
+        if (reordered.size() != requests.size()) {
+            logger.warn("-- execute() - requests: {} reordered: {}", requests.size(), reordered.size());
+            throw new IOException("CloudKitty execute, bad response");
+        }
+        return reordered;
+    }
+
+    /**
+     * Streaming variant of {@link #get(HttpClient, String, String, List, Function)}. Batched requests are
+     * concurrently processed. Response fields are passed to the consumer as they are decoded, in order within each
+     * request but otherwise unordered, possibly from multiple threads.
+     *
+     * @param <T> field type
+     * @param httpClient http client
+     * @param api api
+     * @param key operation key
+     * @param requests request operations
+     * @param field response field
+     * @param consumer thread safe response field consumer
+     * @throws IOException
+     */
+    public <T> void stream(HttpClient httpClient, String api, String key, List<RequestOperation> requests,
+            Function<ResponseOperation, T> field, Consumer<? super T> consumer) throws IOException {
+        logger.debug("-- stream() - requests: {}", requests.size());
+
+        RequestOperation.Header header = requestOperationHeaders.apply(key);
+        Consumer<ResponseOperation> fieldConsumer = u -> consumer.accept(field.apply(u));
+        schedule(api, requests, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                (offset, batch, downstream)
+                -> request(httpClient, api, header, batch, timed(fieldConsumer, downstream)));
+    }
+
+    /**
+     * Issues each request operation as an individual request, with at most {@code maxInFlight} requests outstanding,
+     * fewer if the API is throttled.
+     * Response fields are passed to the consumer as they are decoded, possibly from multiple threads.
+     *
+     * @param <T> field type
+     * @param httpClient http client
+     * @param api api
+     * @param key operation key
+     * @param requests request operations
+     * @param field response field
+     * @param maxInFlight maximum concurrent requests
+     * @param consumer thread safe response field consumer
+     * @throws IOException
+     */
+    public <T> void streamPartitioned(HttpClient httpClient, String api, String key, List<RequestOperation> requests,
+            Function<ResponseOperation, T> field, int maxInFlight, Consumer<? super T> consumer) throws IOException {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("bad maxInFlight: " + maxInFlight);
+        }
+        logger.debug("-- streamPartitioned() - requests: {} max in flight: {}", requests.size(), maxInFlight);
+
+        RequestOperation.Header header = requestOperationHeaders.apply(key);
+        Consumer<ResponseOperation> fieldConsumer = u -> consumer.accept(field.apply(u));
+        schedule(api, requests, 1, maxInFlight,
+                (offset, batch, downstream)
+                -> request(httpClient, api, header, batch, timed(fieldConsumer, downstream)));
+    }
+
+    static <T> Consumer<T> timed(Consumer<T> consumer, LongAdder nanos) {
+        return u -> {
+            long start = System.nanoTime();
+            try {
+                consumer.accept(u);
+            } finally {
+                nanos.add(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Splits the requests into batches and submits them to our pool, with the batch size and the number of batches in
+     * flight set by the API's controller and capped by the specified maximums. Batches are awaited in submission
+     * order, which allows pool threads to help rather than block when called from within the pool. The controller
+     * measures the request alone, time that the batch function reports as spent downstream is excluded.
+     *
+     * @param api api
+     * @param requests request operations
+     * @param batchSizeMax maximum operations per batch
+     * @param maxInFlight maximum batches in flight
+     * @param batchFunction batch function
+     * @throws IOException
+     */
+    void schedule(String api, List<RequestOperation> requests, int batchSizeMax, int maxInFlight,
+            BatchFunction batchFunction) throws IOException {
+        AIMDController controller = controllers.computeIfAbsent(api, controllerFactory);
+        Deque<ForkJoinTask<Long>> inFlight = new ArrayDeque<>();
         try {
-            logger.debug("-- execute() - requests: {}", requests.size());
-            logger.trace("-- execute() - requests: {}", requests);
-
-            // Split and concurrently pipeline requests over our limit.
-            List<List<RequestOperation>> split = ListUtils.split(requests, limit);
-            logger.debug("-- execute() - split: {}", split.size());
-
-            List<SimpleImmutableEntry<Integer, List<RequestOperation>>> list = IntStream.range(0, split.size())
-                    .mapToObj(i -> new SimpleImmutableEntry<>(i, split.get(i)))
-                    .collect(toList());
-
-            List<SimpleImmutableEntry<Integer, List<ResponseOperation>>> get
-                    = forkJoinPool.submit(() -> list.parallelStream()
-                    .map(u -> new SimpleImmutableEntry<>(u.getKey(), request(httpClient, api, header, u.getValue())))
-                    .collect(toList()))
-                            .get();
-
-            // Order responses to match requests.
-            List<T> reordered = get.stream()
-                    .sorted(Comparator.comparing(Map.Entry::getKey))
-                    .map(Map.Entry::getValue)
-                    .flatMap(Collection::stream)
-                    .map(field)
-                    .collect(Collectors.toList());
-
-            if (reordered.size() != requests.size()) {
-                logger.warn("-- execute() - requests: {} reordered: {}", requests.size(), reordered.size());
-                throw new IOException("CloudKitty execute, bad response");
+            int offset = 0;
+            int size = requests.size();
+            while (offset < size || !inFlight.isEmpty()) {
+                while (offset < size && inFlight.size() < Math.min(maxInFlight, controller.concurrency())) {
+                    int from = offset;
+                    int to = Math.min(size, from + Math.min(batchSizeMax, controller.batchSize()));
+                    List<RequestOperation> batch = requests.subList(from, to);
+                    LongAdder downstream = new LongAdder();
+                    inFlight.add(forkJoinPool.submit(() -> controller.measure(batch.size(),
+                            () -> batchFunction.apply(from, batch, downstream), downstream::sum, Long::longValue)));
+                    offset = to;
+                }
+                inFlight.remove().get();
             }
-            return reordered;
+            logger.debug("-- schedule() - requests: {} controller: {}", size, controller);
 
         } catch (InterruptedException ex) {
             throw new UncheckedInterruptedException(ex);
         } catch (ExecutionException ex) {
-            Throwable cause = ex.getCause();
-            if (cause instanceof RuntimeException) {
-                throw (RuntimeException) cause;
-            }
-            if (cause instanceof UncheckedIOException) {
-                throw ((UncheckedIOException) cause).getCause();
-            }
-            throw new RuntimeException(cause);
+            throw unwrap(ex);
+        } finally {
+            inFlight.forEach(u -> u.cancel(true));
         }
     }
 
+    /**
+     * Collecting variant of
+     * {@link #streamPartitioned(HttpClient, String, String, List, Function, int, Consumer)}.
+     *
+     * @param <T> field type
+     * @param httpClient http client
+     * @param api api
+     * @param key operation key
+     * @param requests request operations
+     * @param field response field
+     * @param maxInFlight maximum concurrent requests
+     * @return response fields, unordered
+     * @throws IOException
+     */
+    public <T> List<T> getPartitioned(HttpClient httpClient, String api, String key, List<RequestOperation> requests,
+            Function<ResponseOperation, T> field, int maxInFlight) throws IOException {
+        List<T> merged = Collections.synchronizedList(new ArrayList<>());
+        streamPartitioned(httpClient, api, key, requests, field, maxInFlight, merged::add);
+        return new ArrayList<>(merged);
+    }
+
+    IOException unwrap(ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof UncheckedIOException) {
+            return ((UncheckedIOException) cause).getCause();
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        throw new RuntimeException(cause);
+    }
+
+    long request(HttpClient httpClient, String api, RequestOperation.Header header, List<RequestOperation> requests,
+            Consumer<ResponseOperation> consumer) throws UncheckedIOException {
+        logger.debug("-- request() - streaming requests: {}", requests.size());
+
+        assert (!requests.isEmpty());
+        CloudKitRequestEvent event = Tracing.AVAILABLE ? new CloudKitRequestEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        byte[] data = encode(header, requests.iterator());
+        LongAdder responseBytes = new LongAdder();
+        long count = -1;
+        try {
+            count = client(httpClient, api, data, consumer, responseBytes);
+        } finally {
+            commit(event, api, requests.size(), data.length, count);
+        }
+        if (count != requests.size()) {
+            logger.warn("-- request() - requests: {} responses: {}", requests.size(), count);
+            throw new UncheckedIOException(new IOException("CloudKitty request, bad response"));
+        }
+        return responseBytes.sum();
+    }
+
     List<ResponseOperation>
             request(HttpClient httpClient, String api, RequestOperation.Header header, List<RequestOperation> requests)
             throws UncheckedIOException {
@@ -170,19 +343,38 @@ public final class CloudKitty {
         logger.debug("-- request() - requests: {}", requests.size());
 
         assert (!requests.isEmpty());
+        CloudKitRequestEvent event = Tracing.AVAILABLE ? new CloudKitRequestEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
         byte[] data = encode(header, requests.iterator());
-        List<ResponseOperation> responses = client(httpClient, api, data);
+        List<ResponseOperation> responses = null;
+        try {
+            responses = client(httpClient, api, data);
+        } finally {
+            commit(event, api, requests.size(), data.length, responses == null ? -1 : responses.size());
+        }
 
         logger.trace(">> request() - responses: {}", responses);
         return responses;
     }
 
+    static void commit(CloudKitRequestEvent event, String api, int operations, int requestBytes, long responses) {
+        if (event != null && event.shouldCommit()) {
+            event.api = api;
+            event.operations = operations;
+            event.requestBytes = requestBytes;
+            event.responses = responses;
+            event.commit();
+        }
+    }
+
     byte[] encode(RequestOperation.Header header, Iterator<RequestOperation> it) throws UncheckedIOException {
         try {
             assert (it.hasNext());
             ByteArrayOutputStream os = new ByteArrayOutputStream();
             CKProto.requestOperationWithHeader(it.next(), header).writeDelimitedTo(os);
-            for (int i = 1; it.hasNext() && i < limit; i++) {
+            while (it.hasNext()) {
                 it.next().writeDelimitedTo(os);
             }
             return os.toByteArray();
@@ -195,15 +387,67 @@ public final class CloudKitty {
     List<ResponseOperation> client(HttpClient httpClient, String api, byte[] data) {
         try {
             HttpUriRequest uriRequest = requestFactory.apply(api, UUID.randomUUID(), data);
+            long start = System.nanoTime();
             List<ResponseOperation> responses = httpClient.execute(uriRequest, responseHandler);
+            measured(start, data.length, responses.size(), responseBytes(responses));
             responses.forEach(ProtobufAssistant::logDebugUnknownFields);
             return responses;
         } catch (IOException ex) {
+            REQUEST_FAILURES.increment();
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    long client(HttpClient httpClient, String api, byte[] data, Consumer<ResponseOperation> consumer,
+            LongAdder responseBytes) {
+        try {
+            HttpUriRequest uriRequest = requestFactory.apply(api, UUID.randomUUID(), data);
+            ResponseHandler<Long> handler = new DelimitedProtobufConsumerHandler<>(ResponseOperation.PARSER, u -> {
+                ProtobufAssistant.logDebugUnknownFields(u);
+                responseBytes.add(u.getSerializedSize());
+                consumer.accept(u);
+            });
+            long start = System.nanoTime();
+            long count = httpClient.execute(uriRequest, handler);
+            measured(start, data.length, count, responseBytes.sum());
+            return count;
+        } catch (IOException ex) {
+            REQUEST_FAILURES.increment();
             throw new UncheckedIOException(ex);
         }
     }
 
+    void measured(long startNanos, int requestBytes, long responses, long responseBytes) {
+        REQUEST_MS.recordSince(startNanos);
+        REQUEST_BYTES.record(requestBytes);
+        RESPONSE_BYTES.record(responseBytes);
+        RESPONSE_OPERATIONS.add(responses);
+    }
+
+    static long responseBytes(List<ResponseOperation> responses) {
+        return responses.stream()
+                .mapToLong(ResponseOperation::getSerializedSize)
+                .sum();
+    }
+
     public String cloudKitUserId() {
         return requestFactory.cloudKitUserId();
     }
+
+    /**
+     * Batch function.
+     */
+    @FunctionalInterface
+    interface BatchFunction {
+
+        /**
+         * Issues a batch.
+         *
+         * @param offset batch offset
+         * @param batch request operations
+         * @param downstream accumulates nanoseconds spent downstream of the request, in response consumers
+         * @return response bytes
+         */
+        long apply(int offset, List<RequestOperation> batch, LongAdder downstream);
+    }
 }
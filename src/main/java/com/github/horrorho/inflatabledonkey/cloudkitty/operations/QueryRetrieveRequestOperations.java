@@ -23,6 +23,7 @@
  */
 package com.github.horrorho.inflatabledonkey.cloudkitty.operations;
 
+import com.github.horrorho.inflatabledonkey.args.Property;
 import com.github.horrorho.inflatabledonkey.cloudkitty.CKProto;
 import com.github.horrorho.inflatabledonkey.cloudkitty.CloudKitty;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.AssetsToDownload;
@@ -35,10 +36,13 @@ import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.RecordIdentifier;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.RequestOperation;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.RequestedFields;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.ResponseOperation;
+import com.github.horrorho.inflatabledonkey.util.ListUtils;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import static java.util.stream.Collectors.toList;
 import javax.annotation.concurrent.Immutable;
 import org.apache.http.client.HttpClient;
@@ -58,8 +62,52 @@ public final class QueryRetrieveRequestOperations {
     public static List<QueryRetrieveResponse>
             get(CloudKitty kitty, HttpClient httpClient, String type, String zone, List<String> requestedFields, Collection<String> recordNames)
             throws IOException {
-        List<RequestOperation> operations = operations(kitty.cloudKitUserId(), type, zone, requestedFields, recordNames);
-        return kitty.get(httpClient, API, KEY, operations, ResponseOperation::getQueryRetrieveResponse);
+        if (recordNames.size() <= PARTITION_SIZE) {
+            List<RequestOperation> operations = operations(kitty.cloudKitUserId(), type, zone, requestedFields, recordNames);
+            return kitty.get(httpClient, API, KEY, operations, ResponseOperation::getQueryRetrieveResponse);
+        }
+        // Large IN queries are split into size bounded queries, issued as concurrent individual requests.
+        List<RequestOperation> operations
+                = partitionedOperations(kitty.cloudKitUserId(), type, zone, requestedFields, recordNames);
+        logger.debug("-- get() - record names: {} partitions: {}", recordNames.size(), operations.size());
+        return kitty.getPartitioned(
+                httpClient, API, KEY, operations, ResponseOperation::getQueryRetrieveResponse, REQUESTS_IN_FLIGHT);
+    }
+
+    /**
+     * Streaming variant of {@link #get}. Responses are passed to the consumer as they are decoded, possibly from
+     * multiple threads.
+     *
+     * @param kitty CloudKitty
+     * @param httpClient http client
+     * @param type record type
+     * @param zone zone
+     * @param requestedFields requested fields
+     * @param recordNames record names
+     * @param consumer thread safe response consumer
+     * @throws IOException
+     */
+    public static void
+            stream(CloudKitty kitty, HttpClient httpClient, String type, String zone, List<String> requestedFields, Collection<String> recordNames,
+                    Consumer<QueryRetrieveResponse> consumer)
+            throws IOException {
+        if (recordNames.size() <= PARTITION_SIZE) {
+            List<RequestOperation> operations = operations(kitty.cloudKitUserId(), type, zone, requestedFields, recordNames);
+            kitty.stream(httpClient, API, KEY, operations, ResponseOperation::getQueryRetrieveResponse, consumer);
+            return;
+        }
+        List<RequestOperation> operations
+                = partitionedOperations(kitty.cloudKitUserId(), type, zone, requestedFields, recordNames);
+        logger.debug("-- stream() - record names: {} partitions: {}", recordNames.size(), operations.size());
+        kitty.streamPartitioned(
+                httpClient, API, KEY, operations, ResponseOperation::getQueryRetrieveResponse, REQUESTS_IN_FLIGHT, consumer);
+    }
+
+    static List<RequestOperation> partitionedOperations(String cloudKitUserId, String type, String zone, List<String> requestedFields, Collection<String> recordNames) {
+        return ListUtils.split(new ArrayList<>(recordNames), PARTITION_SIZE)
+                .stream()
+                .map(u -> operation(cloudKitUserId, type, zone, requestedFields, u))
+                .collect(toList());
     }
 
     static List<RequestOperation> operations(String cloudKitUserId, String type, String zone, List<String> requestedFields, Collection<String> recordNames) {
@@ -130,6 +178,10 @@ public final class QueryRetrieveRequestOperations {
                 .build();
     }
 
+    private static final int PARTITION_SIZE = Property.QUERY_PARTITION_SIZE.asInteger().orElse(1000);
+
+    private static final int REQUESTS_IN_FLIGHT = Property.QUERY_REQUESTS_IN_FLIGHT.asInteger().orElse(4);
+
     private static final String KEY = "CKDQueryOperation";
 
     private static final String API = "/query/retrieve";
@@ -24,9 +24,11 @@
 package com.github.horrorho.inflatabledonkey.data.backup;
 
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
+import com.github.horrorho.inflatabledonkey.util.Lazy;
 import java.time.Instant;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 import javax.annotation.concurrent.Immutable;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.encoders.Hex;
@@ -34,150 +36,152 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Asset. Compact representation, the CloudKit record is not retained. Only the fields required for download and
+ * assembly are kept, as primitives where possible. The key encryption key and encrypted attributes are unwrapped/
+ * decrypted lazily on first access, so assets discarded by cheap filters never pay for the crypto.
  *
  * @author Ahseya
  */
 @Immutable
-public final class Asset extends AbstractRecord {
+public final class Asset {
 
     private static final Logger logger = LoggerFactory.getLogger(Asset.class);
 
+    static final int NO_INT = Integer.MIN_VALUE;
+
+    static Optional<Integer> optional(int value) {
+        return value == NO_INT
+                ? Optional.empty()
+                : Optional.of(value);
+    }
+
     private final AssetID assetID;
-    private final Optional<Integer> protectionClass;
-    private final Optional<Long> size;
-    private final Optional<Integer> fileType;
-    private final Optional<Instant> downloadTokenExpiration;
-    private final Optional<String> dsPrsID;
-    private final Optional<String> contentBaseURL;
-    private final Optional<byte[]> fileChecksum;
-    private final Optional<byte[]> fileSignature;
-    private final Optional<byte[]> keyEncryptionKey;
-    private final Optional<AssetEncryptedAttributes> encryptedAttributes;
+    private final int protectionClass;
+    private final int fileType;
+    private final Lazy<Optional<byte[]>> keyEncryptionKey;
+    private final Lazy<Optional<AssetEncryptedAttributes>> encryptedAttributes;
     private final Optional<CloudKit.Asset> asset;
 
     Asset(
-            CloudKit.Record record,
             AssetID assetID,
-            Optional<Integer> protectionClass,
-            Optional<Long> size,
-            Optional<Integer> fileType,
-            Optional<Instant> downloadTokenExpiration,
-            Optional<String> dsPrsID,
-            Optional<String> contentBaseURL,
-            Optional<byte[]> fileChecksum,
-            Optional<byte[]> fileSignature,
-            Optional<byte[]> keyEncryptionKey,
-            Optional<AssetEncryptedAttributes> encryptedAttributes,
+            int protectionClass,
+            int fileType,
+            Supplier<Optional<byte[]>> keyEncryptionKey,
+            Supplier<Optional<AssetEncryptedAttributes>> encryptedAttributes,
             Optional<CloudKit.Asset> asset) {
-        super(record);
         this.assetID = Objects.requireNonNull(assetID);
-        this.protectionClass = Objects.requireNonNull(protectionClass);
-        this.size = Objects.requireNonNull(size);
-        this.fileType = Objects.requireNonNull(fileType);
-        this.downloadTokenExpiration = Objects.requireNonNull(downloadTokenExpiration);
-        this.dsPrsID = Objects.requireNonNull(dsPrsID);
-        this.contentBaseURL = Objects.requireNonNull(contentBaseURL);
-        this.fileChecksum = Objects.requireNonNull(fileChecksum);
-        this.fileSignature = Objects.requireNonNull(fileSignature);
-        this.keyEncryptionKey = Objects.requireNonNull(keyEncryptionKey);
-        this.encryptedAttributes = Objects.requireNonNull(encryptedAttributes);
+        this.protectionClass = protectionClass;
+        this.fileType = fileType;
+        this.keyEncryptionKey = Lazy.of(keyEncryptionKey);
+        this.encryptedAttributes = Lazy.of(encryptedAttributes);
         this.asset = Objects.requireNonNull(asset);
     }
 
+    public String name() {
+        return assetID.toString();
+    }
+
     public AssetID assetID() {
         return assetID;
     }
 
     public Optional<Integer> protectionClass() {
-        return protectionClass;
+        return optional(protectionClass);
     }
 
     public Optional<Long> size() {
-        return size;
+        return asset.filter(CloudKit.Asset::hasSize)
+                .map(CloudKit.Asset::getSize);
     }
 
     public Optional<Integer> fileType() {
-        return fileType;
+        return optional(fileType);
     }
 
     public Optional<Instant> downloadTokenExpiration() {
-        return downloadTokenExpiration;
+        return asset.filter(CloudKit.Asset::hasDownloadTokenExpiration)
+                .map(CloudKit.Asset::getDownloadTokenExpiration)
+                .map(Instant::ofEpochSecond);
     }
 
     public Optional<String> dsPrsID() {
-        return dsPrsID;
+        return asset.filter(CloudKit.Asset::hasOwner)
+                .map(CloudKit.Asset::getOwner);
     }
 
     public Optional<String> contentBaseURL() {
-        return contentBaseURL;
+        return asset.filter(CloudKit.Asset::hasContentBaseURL)
+                .map(CloudKit.Asset::getContentBaseURL);
     }
 
     public Optional<byte[]> fileChecksum() {
-        return fileChecksum.map(bs -> Arrays.copyOf(bs, bs.length));
+        return asset.filter(CloudKit.Asset::hasSignature)
+                .map(u -> u.getSignature().toByteArray());
     }
 
     public Optional<byte[]> fileSignature() {
-        return fileSignature.map(bs -> Arrays.copyOf(bs, bs.length));
+        return asset.filter(CloudKit.Asset::hasReferenceSignature)
+                .map(u -> u.getReferenceSignature().toByteArray());
     }
 
     public Optional<byte[]> keyEncryptionKey() {
-        return keyEncryptionKey.map(bs -> Arrays.copyOf(bs, bs.length));
+        return keyEncryptionKey.get().map(bs -> Arrays.copyOf(bs, bs.length));
     }
 
     public Optional<String> domain() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::domain);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::domain);
     }
 
     public Optional<String> relativePath() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::relativePath);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::relativePath);
     }
 
     public Optional<Instant> modified() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::modified);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::modified);
     }
 
     public Optional<Instant> birth() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::birth);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::birth);
     }
 
     public Optional<Instant> statusChanged() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::statusChanged);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::statusChanged);
     }
 
     public Optional<Integer> userID() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::userID);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::userID);
     }
 
     public Optional<Integer> groupID() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::groupID);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::groupID);
     }
 
     public Optional<Integer> mode() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::mode);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::mode);
     }
 
     public Optional<byte[]> encryptionKey() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::encryptionKey);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::encryptionKey);
     }
 
     public Optional<Long> attributeSize() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::size);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::size);
     }
 
     public Optional<byte[]> attributeChecksum() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::checksum);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::checksum);
     }
 
     public Optional<Long> sizeBeforeCopy() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::sizeBeforeCopy);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::sizeBeforeCopy);
     }
 
     public Optional<Integer> contentCompressionMethod() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::contentCompressionMethod);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::contentCompressionMethod);
     }
 
     public Optional<Integer> contentEncodingMethod() {
-        return encryptedAttributes.flatMap(AssetEncryptedAttributes::contentEncodingMethod);
+        return encryptedAttributes.get().flatMap(AssetEncryptedAttributes::contentEncodingMethod);
     }
 
     public Optional<CloudKit.Asset> asset() {
@@ -188,14 +192,14 @@ public final class Asset extends AbstractRecord {
     public String toString() {
         return "Asset{"
                 + "assetID=" + assetID
-                + ",protectionClass=" + protectionClass
-                + ", size=" + size
-                + ", fileType=" + fileType
-                + ", downloadTokenExpiration=" + downloadTokenExpiration
-                + ", contentBaseURL=" + contentBaseURL
-                + ", fileChecksum=" + fileChecksum.map(Hex::toHexString)
-                + ", fileSignature=" + fileSignature.map(Hex::toHexString)
-                + ", keyEncryptionKey=" + keyEncryptionKey.map(Hex::toHexString)
+                + ", protectionClass=" + protectionClass()
+                + ", size=" + size()
+                + ", fileType=" + fileType()
+                + ", downloadTokenExpiration=" + downloadTokenExpiration()
+                + ", contentBaseURL=" + contentBaseURL()
+                + ", fileChecksum=" + fileChecksum().map(Hex::toHexString)
+                + ", fileSignature=" + fileSignature().map(Hex::toHexString)
+                + ", keyEncryptionKey=" + (keyEncryptionKey.isEvaluated() ? keyEncryptionKey().map(Hex::toHexString) : "<lazy>")
                 + ", encryptedAttributes=" + encryptedAttributes
                 + ", asset=" + asset
                 + '}';
@@ -26,9 +26,9 @@ package com.github.horrorho.inflatabledonkey.data.backup;
 import com.github.horrorho.inflatabledonkey.pcs.zone.ProtectionZone;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
 import com.google.protobuf.ByteString;
-import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 import javax.annotation.concurrent.Immutable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,48 +54,58 @@ public final class AssetFactory {
 
     static Asset from(AssetID assetID, String domain, CloudKit.Record record, ProtectionZone zone) {
         List<CloudKit.Record.Field> records = record.getRecordFieldList();
-        Optional<Integer> protectionClass = protectionClass(records);
-        Optional<Integer> fileType = fileType(records);
-        Optional<AssetEncryptedAttributes> encryptedAttributes = encryptedAttributes(records)
+        int protectionClass = protectionClass(records).orElse(Asset.NO_INT);
+        int fileType = fileType(records).orElse(Asset.NO_INT);
+        // Domains are shared by many assets.
+        String internedDomain = domain.intern();
+        // Decrypted/ unwrapped on demand. Only the encrypted bytes are captured, not the record.
+        Optional<byte[]> encryptedAttributesData = encryptedAttributes(records);
+        Supplier<Optional<AssetEncryptedAttributes>> encryptedAttributes = () -> encryptedAttributesData
                 .flatMap(u -> zone.decrypt(u, ENCRYPTED_ATTRIBUTES))
-                .flatMap(u -> AssetEncryptedAttributesFactory.from(u, domain));
+                .flatMap(u -> AssetEncryptedAttributesFactory.from(u, internedDomain));
         Optional<CloudKit.Asset> asset = asset(records);
-        Optional<byte[]> keyEncryptionKey = asset.filter(CloudKit.Asset::hasProtectionInfo)
-
-                .map(u -> u.getProtectionInfo().getProtectionInfo().toByteArray())
-                .flatMap(zone::unwrapKey);
-        Optional<byte[]> fileChecksum = asset.filter(CloudKit.Asset::hasSignature)
-                .map(u -> u.getSignature().toByteArray());
-        Optional<byte[]> fileSignature = asset.filter(CloudKit.Asset::hasReferenceSignature)
-                .map(u -> u.getReferenceSignature().toByteArray());
-        Optional<String> contentBaseURL = asset.filter(CloudKit.Asset::hasContentBaseURL)
-                .map(CloudKit.Asset::getContentBaseURL);
-        Optional<String> dsPrsID = asset.filter(CloudKit.Asset::hasOwner)
-                .map(CloudKit.Asset::getOwner);
-        Optional<Long> fileSize = asset.filter(CloudKit.Asset::hasSize)
-                .map(CloudKit.Asset::getSize);
-        Optional<Instant> downloadTokenExpiration = asset.filter(CloudKit.Asset::hasDownloadTokenExpiration)
-                .map(CloudKit.Asset::getDownloadTokenExpiration)
-                .map(Instant::ofEpochSecond);
+        Optional<byte[]> protectionInfo = asset.filter(CloudKit.Asset::hasProtectionInfo)
+                .map(u -> u.getProtectionInfo().getProtectionInfo().toByteArray());
+        Supplier<Optional<byte[]>> keyEncryptionKey = () -> protectionInfo.flatMap(zone::unwrapKey);
 
         Asset newAsset = new Asset(
-                record,
                 assetID,
                 protectionClass,
-                fileSize,
                 fileType,
-                downloadTokenExpiration,
-                dsPrsID,
-                contentBaseURL,
-                fileChecksum,
-                fileSignature,
                 keyEncryptionKey,
                 encryptedAttributes,
-                asset);
+                asset.map(AssetFactory::compact));
         logger.debug("-- from() - asset: {}", newAsset);
         return newAsset;
     }
 
+    static CloudKit.Asset compact(CloudKit.Asset asset) {
+        // Retain only the fields required to authorize and download the asset.
+        CloudKit.Asset.Builder builder = CloudKit.Asset.newBuilder();
+        if (asset.hasSignature()) {
+            builder.setSignature(asset.getSignature());
+        }
+        if (asset.hasReferenceSignature()) {
+            builder.setReferenceSignature(asset.getReferenceSignature());
+        }
+        if (asset.hasDownloadToken()) {
+            builder.setDownloadToken(asset.getDownloadToken());
+        }
+        if (asset.hasContentBaseURL()) {
+            builder.setContentBaseURL(asset.getContentBaseURL().intern());
+        }
+        if (asset.hasOwner()) {
+            builder.setOwner(asset.getOwner().intern());
+        }
+        if (asset.hasSize()) {
+            builder.setSize(asset.getSize());
+        }
+        if (asset.hasDownloadTokenExpiration()) {
+            builder.setDownloadTokenExpiration(asset.getDownloadTokenExpiration());
+        }
+        return builder.build();
+    }
+
     static Optional<Integer> protectionClass(List<CloudKit.Record.Field> records) {
         return records.stream()
                 .filter(u -> u
@@ -30,7 +30,13 @@ import com.github.horrorho.inflatabledonkey.io.DirectoryAssistant;
 import com.github.horrorho.inflatabledonkey.io.IOFunction;
 import com.github.horrorho.inflatabledonkey.io.IOSupplier;
 import com.github.horrorho.inflatabledonkey.io.IOSupplierSequenceStream;
+import com.github.horrorho.inflatabledonkey.metrics.Counter;
+import com.github.horrorho.inflatabledonkey.metrics.Histogram;
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
+import com.github.horrorho.inflatabledonkey.trace.AssetAssemblyEvent;
+import com.github.horrorho.inflatabledonkey.trace.Tracing;
 import com.github.horrorho.ragingmoose.LZFSEInputStream;
+import com.github.horrorho.ragingmoose.LZFSEParallelInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -40,6 +46,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiConsumer;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
@@ -59,22 +66,72 @@ import org.slf4j.LoggerFactory;
 public final class FileAssembler
         implements BiConsumer<Asset, Optional<List<Chunk>>>, BiPredicate<Asset, Optional<List<Chunk>>> {
 
+    /**
+     * Returns a FileAssembler that notifies the specified consumer of each asset successfully written, together with
+     * its output path.
+     *
+     * @param fileKeys file keys
+     * @param outputFolder output folder
+     * @param decompression executor for parallel decompression of large assets, if empty large assets are decompressed
+     * on the calling thread
+     * @param written written consumer, may be called concurrently
+     * @return FileAssembler
+     */
+    public static FileAssembler create(Function<byte[], Optional<XFileKey>> fileKeys, Path outputFolder,
+            Optional<ExecutorService> decompression, BiConsumer<Asset, Path> written) {
+        return new FileAssembler(fileKeys, XFileKeyMutatorFactory.defaults(), new FilePath(outputFolder),
+                decompression, written);
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(FileAssembler.class);
 
     private static final boolean QUIET = Property.QUIET.asBoolean().orElse(false);
 
+    private static final long PARALLEL_DECOMPRESSION_THRESHOLD
+            = Property.FILE_DECOMPRESSION_PARALLEL_THRESHOLD.asLong().orElse(16777216L);
+
+    private static final int PARALLEL_DECOMPRESSION_BLOCKS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final Histogram ASSEMBLE_MS = Metrics.instance().histogram("file.assemble.ms");
+    private static final Counter ASSEMBLE_BYTES = Metrics.instance().counter("file.assemble.bytes");
+    private static final Counter ASSEMBLE_FAILURES = Metrics.instance().counter("file.assemble.failures");
+
     private final Function<byte[], Optional<XFileKey>> fileKeys;
     private final UnaryOperator<Optional<XFileKey>> mutator;
     private final FilePath filePath;
+    private final Optional<ExecutorService> decompression;
+    private final BiConsumer<Asset, Path> written;
 
     public FileAssembler(
             Function<byte[], Optional<XFileKey>> fileKeys,
             UnaryOperator<Optional<XFileKey>> mutator,
-            FilePath filePath) {
+            FilePath filePath,
+            Optional<ExecutorService> decompression,
+            BiConsumer<Asset, Path> written) {
 
         this.fileKeys = Objects.requireNonNull(fileKeys, "fileKeys");
         this.mutator = Objects.requireNonNull(mutator, "mutator");
         this.filePath = Objects.requireNonNull(filePath, "filePath");
+        this.decompression = Objects.requireNonNull(decompression, "decompression");
+        this.written = Objects.requireNonNull(written, "written");
+    }
+
+    public FileAssembler(
+            Function<byte[], Optional<XFileKey>> fileKeys,
+            UnaryOperator<Optional<XFileKey>> mutator,
+            FilePath filePath,
+            BiConsumer<Asset, Path> written) {
+
+        this(fileKeys, mutator, filePath, Optional.empty(), written);
+    }
+
+    public FileAssembler(
+            Function<byte[], Optional<XFileKey>> fileKeys,
+            UnaryOperator<Optional<XFileKey>> mutator,
+            FilePath filePath) {
+
+        this(fileKeys, mutator, filePath, (asset, path) -> {
+        });
     }
 
     public FileAssembler(Function<byte[], Optional<XFileKey>> fileKeys, Path outputFolder) {
@@ -94,9 +151,16 @@ public final class FileAssembler
         logger.trace("<< test() - asset: {} chunks: {}",
                 asset, chunks.map(List::size).map(Object::toString).orElse("NULL"));
 
+        long start = System.nanoTime();
         boolean success = chunks.isPresent()
                 ? assemble(asset, chunks.get())
                 : fail(asset);
+        ASSEMBLE_MS.recordSince(start);
+        if (success) {
+            ASSEMBLE_BYTES.add(asset.size().orElse(0L));
+        } else {
+            ASSEMBLE_FAILURES.increment();
+        }
 
         logger.trace(">> test() - success: {}", success);
         return success;
@@ -111,12 +175,13 @@ public final class FileAssembler
     }
 
     boolean assemble(Asset asset, List<Chunk> chunks) {
-        return filePath.apply(asset)
+        Optional<Path> path = filePath.apply(asset)
                 .filter(DirectoryAssistant::createParent)
-                .filter(path -> assemble(path, asset, chunks))
-                .filter(path -> FileTruncater.truncate(path, asset))
-                .map(path -> FileTimestamp.set(path, asset))
-                .orElse(false);
+                .filter(u -> assemble(u, asset, chunks))
+                .filter(u -> FileTruncater.truncate(u, asset))
+                .filter(u -> FileTimestamp.set(u, asset));
+        path.ifPresent(u -> written.accept(asset, u));
+        return path.isPresent();
     }
 
     boolean assemble(Path path, Asset asset, List<Chunk> chunks) {
@@ -125,9 +190,33 @@ public final class FileAssembler
                 .ifPresent(u -> logger.info("-- assemble() - asset: {} content compression method: {}", info, u));
         asset.contentEncodingMethod()
                 .ifPresent(u -> logger.info("-- assemble() - asset: {} content encoding method: {}", info, u));
+        Optional<IOFunction<InputStream, InputStream>> decompress
+                = decompressor(info, asset.contentCompressionMethod(), asset.size());
         return asset.encryptionKey()
-                .map(u -> decrypt(path, info, chunks, u, asset.fileChecksum(), asset.contentCompressionMethod()))
-                .orElseGet(() -> write(path, info, chunks, Optional.empty(), asset.fileChecksum(), asset.contentCompressionMethod()));
+                .map(u -> decrypt(path, info, chunks, u, asset.fileChecksum(), decompress))
+                .orElseGet(() -> write(path, info, chunks, Optional.empty(), asset.fileChecksum(), decompress));
+    }
+
+    Optional<IOFunction<InputStream, InputStream>> decompressor(
+            String info,
+            Optional<Integer> compression,
+            Optional<Long> size) {
+        if (!compression.isPresent()) {
+            return Optional.empty();
+        }
+        if (compression.get() != 2) {
+            logger.warn("-- decompressor() - unsupported compression: {} -> {}", info, compression.get());
+            return Optional.empty();
+        }
+        // Large assets, typically databases, decode the LZFSE entropy stage across multiple cores.
+        if (decompression.isPresent()
+                && PARALLEL_DECOMPRESSION_BLOCKS > 1
+                && size.orElse(0L) >= PARALLEL_DECOMPRESSION_THRESHOLD) {
+            logger.debug("-- decompressor() - parallel: {}", info);
+            ExecutorService executor = decompression.get();
+            return Optional.of(u -> new LZFSEParallelInputStream(u, executor, PARALLEL_DECOMPRESSION_BLOCKS));
+        }
+        return Optional.of(LZFSEInputStream::new);
     }
 
     boolean decrypt(Path path,
@@ -135,11 +224,11 @@ public final class FileAssembler
             List<Chunk> chunks,
             byte[] encryptionKey,
             Optional<byte[]> signature,
-            Optional<Integer> compression) {
+            Optional<IOFunction<InputStream, InputStream>> decompress) {
         return fileKeys.apply(encryptionKey)
                 .map(Optional::of)
                 .map(mutator)
-                .map(u -> write(path, info, chunks, u, signature, compression))
+                .map(u -> write(path, info, chunks, u, signature, decompress))
                 .orElseGet(() -> {
                     logger.warn("-- decrypt() - failed to unwrap encryption key");
                     return false;
@@ -150,23 +239,15 @@ public final class FileAssembler
             String info,
             List<Chunk> chunks, Optional<XFileKey> keyCipher,
             Optional<byte[]> signature,
-            Optional<Integer> compression) {
+            Optional<IOFunction<InputStream, InputStream>> decompress) {
         logger.debug("-- write() - path: {} key cipher: {} signature: 0x{}",
                 path, keyCipher, signature.map(Hex::toHexString).orElse("NULL"));
 
-        boolean status = true;
-        Optional<IOFunction<InputStream, InputStream>> decompress;
-        if (compression.isPresent()) {
-            if (compression.get() == 2) {
-                decompress = Optional.of(LZFSEInputStream::new);
-            } else {
-                logger.warn("-- write() - unsupported compression: {} -> {}", info, compression.get());
-                decompress = Optional.empty();
-            }
-        } else {
-            decompress = Optional.empty();
+        AssetAssemblyEvent event = Tracing.AVAILABLE ? new AssetAssemblyEvent() : null;
+        if (event != null) {
+            event.begin();
         }
-
+        boolean status = true;
         try (OutputStream out = Files.newOutputStream(path);
                 InputStream in = chunkStream(chunks)) {
             status &= FileStreamWriter.copy(in, out, keyCipher, signature, decompress);
@@ -184,12 +265,30 @@ public final class FileAssembler
                     System.out.println(">> " + info);
                 }
             }
-            return status;
 
         } catch (IOException | DataLengthException | IllegalStateException ex) {
             logger.warn("-- write() - error: ", ex);
-            return false;
+            status = false;
+        }
+        commit(event, path, keyCipher, decompress.isPresent(), status);
+        return status;
+    }
+
+    void commit(AssetAssemblyEvent event, Path path, Optional<XFileKey> keyCipher, boolean decompressed,
+            boolean success) {
+        if (event == null || !event.shouldCommit()) {
+            return;
+        }
+        event.path = path.toString();
+        try {
+            event.size = Files.size(path);
+        } catch (IOException ex) {
+            event.size = -1;
         }
+        event.cipherMode = keyCipher.map(u -> u.ciphers().toString()).orElse("");
+        event.decompressed = decompressed;
+        event.success = success;
+        event.commit();
     }
 
     InputStream chunkStream(List<Chunk> chunks) throws IOException {
@@ -211,6 +310,7 @@ public final class FileAssembler
 
     @Override
     public String toString() {
-        return "FileAssembler{" + "fileKeys=" + fileKeys + ", mutator=" + mutator + ", filePath=" + filePath + '}';
+        return "FileAssembler{" + "fileKeys=" + fileKeys + ", mutator=" + mutator + ", filePath=" + filePath
+                + ", written=" + written + '}';
     }
 }
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.governor;
+
+import com.github.horrorho.inflatabledonkey.requests.Headers;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * HttpClient governed under a single lane. CloudKit requests, identified by their container header, draw a request
+ * token before execution. Other response entities, chunk containers in the main, draw byte tokens as they are read.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+final class GovernedHttpClient implements HttpClient {
+
+    private static final String CLOUDKIT_HEADER = Headers.XCLOUDKITCONTAINERID.toString();
+
+    private final HttpClient httpClient;
+    private final Governor governor;
+    private final String lane;
+
+    GovernedHttpClient(HttpClient httpClient, Governor governor, String lane) {
+        this.httpClient = Objects.requireNonNull(httpClient, "httpClient");
+        this.governor = Objects.requireNonNull(governor, "governor");
+        this.lane = Objects.requireNonNull(lane, "lane");
+    }
+
+    @Deprecated
+    @Override
+    @SuppressWarnings("deprecation")
+    public org.apache.http.params.HttpParams getParams() {
+        return httpClient.getParams();
+    }
+
+    @Deprecated
+    @Override
+    @SuppressWarnings("deprecation")
+    public org.apache.http.conn.ClientConnectionManager getConnectionManager() {
+        return httpClient.getConnectionManager();
+    }
+
+    @Override
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        return execute(request, (HttpContext) null);
+    }
+
+    @Override
+    public HttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException {
+        boolean cloudKit = acquire(request);
+        return meter(cloudKit, httpClient.execute(request, context));
+    }
+
+    @Override
+    public HttpResponse execute(HttpHost target, HttpRequest request) throws IOException {
+        return execute(target, request, (HttpContext) null);
+    }
+
+    @Override
+    public HttpResponse execute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+        boolean cloudKit = acquire(request);
+        return meter(cloudKit, httpClient.execute(target, request, context));
+    }
+
+    @Override
+    public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> responseHandler) throws IOException {
+        return execute(request, responseHandler, null);
+    }
+
+    @Override
+    public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> responseHandler, HttpContext context)
+            throws IOException {
+        return handle(execute(request, context), responseHandler);
+    }
+
+    @Override
+    public <T> T execute(HttpHost target, HttpRequest request, ResponseHandler<? extends T> responseHandler)
+            throws IOException {
+        return execute(target, request, responseHandler, null);
+    }
+
+    @Override
+    public <T> T execute(HttpHost target, HttpRequest request, ResponseHandler<? extends T> responseHandler,
+            HttpContext context) throws IOException {
+        return handle(execute(target, request, context), responseHandler);
+    }
+
+    boolean acquire(HttpRequest request) {
+        if (!request.containsHeader(CLOUDKIT_HEADER)) {
+            return false;
+        }
+        governor.acquireRequest(lane);
+        return true;
+    }
+
+    HttpResponse meter(boolean cloudKit, HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (!cloudKit && entity != null) {
+            response.setEntity(new MeteredEntity(entity));
+        }
+        return response;
+    }
+
+    <T> T handle(HttpResponse response, ResponseHandler<? extends T> responseHandler) throws IOException {
+        // As CloseableHttpClient, the entity is consumed and the response closed.
+        try {
+            T result = responseHandler.handleResponse(response);
+            EntityUtils.consume(response.getEntity());
+            return result;
+        } catch (IOException | RuntimeException ex) {
+            try {
+                EntityUtils.consume(response.getEntity());
+            } catch (IOException suppressed) {
+                ex.addSuppressed(suppressed);
+            }
+            throw ex;
+        } finally {
+            if (response instanceof Closeable) {
+                ((Closeable) response).close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GovernedHttpClient{"
+                + "lane=" + lane
+                + '}';
+    }
+
+    @NotThreadSafe
+    final class MeteredEntity extends HttpEntityWrapper {
+
+        MeteredEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new MeteredInputStream(super.getContent());
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            try (InputStream inputStream = getContent()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = inputStream.read(buffer)) != -1) {
+                    outStream.write(buffer, 0, n);
+                }
+            }
+        }
+    }
+
+    @NotThreadSafe
+    final class MeteredInputStream extends FilterInputStream {
+
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                governor.acquireBytes(lane, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                governor.acquireBytes(lane, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                governor.acquireBytes(lane, skipped);
+            }
+            return skipped;
+        }
+    }
+}
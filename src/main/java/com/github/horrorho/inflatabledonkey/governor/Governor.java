@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.governor;
+
+import com.github.horrorho.inflatabledonkey.util.RateSchedule;
+import com.github.horrorho.inflatabledonkey.util.TokenBucket;
+import java.time.LocalTime;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.http.client.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bandwidth and request rate governor. Chunk container bytes and CloudKit requests draw on separate token buckets,
+ * their rates following time of day schedules. Each lane, typically a snapshot, has its own governed
+ * {@link HttpClient}, with lanes sharing each bucket round robin.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class Governor implements GovernorMBean {
+
+    public static final String OBJECT_NAME = "com.github.horrorho.inflatabledonkey:type=Governor";
+
+    /**
+     * Returns a governor with its schedules applied periodically.
+     *
+     * @param bytesSchedule chunk container bytes per second schedule
+     * @param requestsSchedule CloudKit requests per second schedule
+     * @param burstSeconds bucket capacity, in seconds at the prevailing rate
+     * @return governor
+     */
+    public static Governor create(RateSchedule bytesSchedule, RateSchedule requestsSchedule, double burstSeconds) {
+        Governor governor = new Governor(bytesSchedule, requestsSchedule, burstSeconds);
+        TIMER.scheduleAtFixedRate(governor::update, SCHEDULE_PERIOD_S, SCHEDULE_PERIOD_S, TimeUnit.SECONDS);
+        return governor;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(Governor.class);
+
+    private static final long SCHEDULE_PERIOD_S = 15;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "donkey-governor-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TokenBucket bytes;
+    private final TokenBucket requests;
+    private volatile RateSchedule bytesSchedule;
+    private volatile RateSchedule requestsSchedule;
+
+    Governor(RateSchedule bytesSchedule, RateSchedule requestsSchedule, double burstSeconds) {
+        this.bytesSchedule = Objects.requireNonNull(bytesSchedule, "bytesSchedule");
+        this.requestsSchedule = Objects.requireNonNull(requestsSchedule, "requestsSchedule");
+        LocalTime now = LocalTime.now();
+        this.bytes = new TokenBucket(bytesSchedule.rate(now), burstSeconds);
+        this.requests = new TokenBucket(requestsSchedule.rate(now), burstSeconds);
+    }
+
+    /**
+     * Returns an HttpClient governed under the specified lane.
+     *
+     * @param httpClient delegate
+     * @param lane lane
+     * @return governed HttpClient
+     */
+    public HttpClient client(HttpClient httpClient, String lane) {
+        return new GovernedHttpClient(httpClient, this, lane);
+    }
+
+    void acquireBytes(String lane, long n) {
+        bytes.acquire(lane, n);
+    }
+
+    void acquireRequest(String lane) {
+        requests.acquire(lane, 1);
+    }
+
+    void update() {
+        LocalTime now = LocalTime.now();
+        double bytesRate = bytesSchedule.rate(now);
+        double requestsRate = requestsSchedule.rate(now);
+        if (bytesRate != bytes.rate() || requestsRate != requests.rate()) {
+            logger.info("-- update() - bytes rate: {} requests rate: {}", bytesRate, requestsRate);
+        }
+        bytes.rate(bytesRate);
+        requests.rate(requestsRate);
+    }
+
+    @Override
+    public String getBytesSchedule() {
+        return bytesSchedule.toString();
+    }
+
+    @Override
+    public void setBytesSchedule(String schedule) {
+        bytesSchedule = RateSchedule.parse(schedule);
+        update();
+    }
+
+    @Override
+    public String getRequestsSchedule() {
+        return requestsSchedule.toString();
+    }
+
+    @Override
+    public void setRequestsSchedule(String schedule) {
+        requestsSchedule = RateSchedule.parse(schedule);
+        update();
+    }
+
+    @Override
+    public double getBytesRate() {
+        return bytes.rate();
+    }
+
+    @Override
+    public double getRequestsRate() {
+        return requests.rate();
+    }
+
+    @Override
+    public long getBytesGranted() {
+        return bytes.granted();
+    }
+
+    @Override
+    public long getRequestsGranted() {
+        return requests.granted();
+    }
+
+    @Override
+    public int getWaiting() {
+        return bytes.waiting() + requests.waiting();
+    }
+
+    @Override
+    public String toString() {
+        return "Governor{"
+                + "bytesSchedule=" + bytesSchedule
+                + ", requestsSchedule=" + requestsSchedule
+                + ", bytes=" + bytes
+                + ", requests=" + requests
+                + '}';
+    }
+}
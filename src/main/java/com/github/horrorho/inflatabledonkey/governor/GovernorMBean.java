@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.governor;
+
+/**
+ * Governor management interface. Schedules may be replaced at runtime.
+ *
+ * @author Ahseya
+ */
+public interface GovernorMBean {
+
+    String getBytesSchedule();
+
+    /**
+     * Replaces the chunk container bytes schedule, see {@link com.github.horrorho.inflatabledonkey.util.RateSchedule}.
+     *
+     * @param schedule schedule, bytes per second
+     * @throws IllegalArgumentException if the schedule is malformed
+     */
+    void setBytesSchedule(String schedule);
+
+    String getRequestsSchedule();
+
+    /**
+     * Replaces the CloudKit requests schedule, see {@link com.github.horrorho.inflatabledonkey.util.RateSchedule}.
+     *
+     * @param schedule schedule, requests per second
+     * @throws IllegalArgumentException if the schedule is malformed
+     */
+    void setRequestsSchedule(String schedule);
+
+    double getBytesRate();
+
+    double getRequestsRate();
+
+    long getBytesGranted();
+
+    long getRequestsGranted();
+
+    int getWaiting();
+}
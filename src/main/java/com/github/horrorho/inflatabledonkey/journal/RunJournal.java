@@ -0,0 +1,584 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.journal;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.data.backup.AssetID;
+import com.github.horrorho.inflatabledonkey.data.backup.Device;
+import com.github.horrorho.inflatabledonkey.data.backup.Snapshot;
+import com.github.horrorho.inflatabledonkey.metrics.Histogram;
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import static java.util.stream.Collectors.toList;
+import java.util.zip.CRC32;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import org.bouncycastle.util.encoders.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only run journal, allowing an interrupted run to resume.
+ * <p>
+ * Records the selected snapshots, each snapshot's filtered asset IDs, the batches submitted, the assets written (by
+ * output path and file signature) and the authorizations received. Snapshots are keyed by their relative output
+ * path. Each line carries a CRC32, replay stopping at the first bad line, so a torn final write is discarded. The
+ * journal is forced to disk after run, selection and snapshot entries. Batches, asset completions and authorizations
+ * are frequent, they are written through to the operating system without forcing, surviving a process crash but not
+ * necessarily a system crash. At worst a resumed run fetches their assets again.
+ * <p>
+ * The run entry carries a fingerprint of the account and selection/ filter arguments. An interrupted run is only
+ * resumed if requested and its fingerprint matches, otherwise the journal is truncated on open, starting a new run.
+ * <p>
+ * On snapshot completion the journal is compacted, discarding the completed snapshot's entries and all
+ * authorizations. On run completion it is truncated.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class RunJournal {
+
+    /**
+     * Opens the journal.
+     *
+     * @param file journal file
+     * @param resume if false, any interrupted run is discarded
+     * @param fingerprint account and selection/ filter arguments, an interrupted run with a differing fingerprint is
+     * discarded
+     * @return journal
+     * @throws IOException
+     */
+    public static RunJournal open(Path file, boolean resume, String fingerprint) throws IOException {
+        create(file);
+        List<String> lines = new ArrayList<>();
+        long valid = read(file, lines);
+        Replay replay = new Replay();
+        lines.forEach(replay::apply);
+
+        boolean matches = fingerprint.equals(replay.fingerprint);
+        if (resume && replay.isInterrupted() && !matches) {
+            logger.warn("-- open() - interrupted run has a differing account or arguments, discarding");
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        RunJournal journal;
+        if (resume && replay.isInterrupted() && matches) {
+            channel.truncate(valid);
+            channel.position(valid);
+            journal = new RunJournal(file, channel, replay, fingerprint, true);
+            logger.info("-- open() - resuming run, snapshots: {}", replay.selection);
+        } else {
+            journal = new RunJournal(file, channel, new Replay(), fingerprint, false);
+            journal.reset();
+        }
+        return journal;
+    }
+
+    static void create(Path file) throws IOException {
+        if (Files.exists(file)) {
+            return;
+        }
+        try {
+            // Authorizations carry container access tokens.
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException ex) {
+            Files.createFile(file);
+        }
+    }
+
+    static long read(Path file, List<String> lines) throws IOException {
+        byte[] bs = Files.readAllBytes(file);
+        int from = 0;
+        for (int i = 0; i < bs.length; i++) {
+            if (bs[i] != '\n') {
+                continue;
+            }
+            Optional<String> line = verify(new String(bs, from, i - from, UTF_8));
+            if (!line.isPresent()) {
+                logger.warn("-- read() - bad journal entry at: {}, discarding remainder", from);
+                break;
+            }
+            lines.add(line.get());
+            from = i + 1;
+        }
+        return from;
+    }
+
+    static Optional<String> verify(String line) {
+        int tab = line.indexOf('\t');
+        if (tab == -1) {
+            return Optional.empty();
+        }
+        String entry = line.substring(tab + 1);
+        return line.substring(0, tab).equals(crc(entry))
+                ? Optional.of(entry)
+                : Optional.empty();
+    }
+
+    static String crc(String entry) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(entry.getBytes(UTF_8));
+        return Long.toHexString(crc32.getValue());
+    }
+
+    static String encode(String s) {
+        return Base64.getEncoder().encodeToString(s.getBytes(UTF_8));
+    }
+
+    static String decode(String s) {
+        return new String(Base64.getDecoder().decode(s), UTF_8);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(RunJournal.class);
+
+    private static final Histogram FORCE_MS = Metrics.instance().histogram("journal.force.ms");
+
+    static final String RUN = "RUN";
+    static final String SELECT = "SELECT";
+    static final String PENDING = "PENDING";
+    static final String PENDING_END = "PENDING_END";
+    static final String BATCH = "BATCH";
+    static final String BATCH_DONE = "BATCH_DONE";
+    static final String ASSET = "ASSET";
+    static final String AUTHORIZED = "AUTHORIZED";
+    static final String CLOCK = "CLOCK";
+    static final String SNAPSHOT_DONE = "SNAPSHOT_DONE";
+    static final String RUN_DONE = "RUN_DONE";
+
+    private final Path file;
+    @GuardedBy("this")
+    private FileChannel channel;
+    @GuardedBy("this")
+    private Replay replay;
+    private final String fingerprint;
+    private final boolean resumed;
+
+    RunJournal(Path file, FileChannel channel, Replay replay, String fingerprint, boolean resumed) {
+        this.file = file;
+        this.channel = channel;
+        this.replay = replay;
+        this.fingerprint = fingerprint;
+        this.resumed = resumed;
+    }
+
+    /**
+     * Returns true if this journal resumed an interrupted run.
+     *
+     * @return true if resumed
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Returns the snapshot IDs selected by the run.
+     *
+     * @return snapshot IDs
+     */
+    public synchronized Set<String> selection() {
+        return new LinkedHashSet<>(replay.selection);
+    }
+
+    /**
+     * Discards the journaled run, starting a new run.
+     */
+    public synchronized void reset() {
+        try {
+            channel.truncate(0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        replay = new Replay();
+        write(true, RUN, Long.toString(System.currentTimeMillis()), encode(fingerprint));
+    }
+
+    public synchronized void select(Device device, Snapshot snapshot) {
+        write(true, SELECT, device.deviceID().toString(), snapshot.snapshotID().toString());
+    }
+
+    /**
+     * Returns the journaled state of the specified snapshot, if its filtered asset IDs were recorded.
+     *
+     * @param key snapshot key
+     * @return resume state
+     */
+    public synchronized Optional<Resume> resume(String key) {
+        return Optional.ofNullable(replay.snapshots.get(key))
+                .filter(u -> u.pendingEnd)
+                .map(Resume::new);
+    }
+
+    public synchronized void pending(String key, Map<AssetID, String> assetIDDomains) {
+        assetIDDomains.forEach((k, v) -> write(false, PENDING, key, k.toString(), encode(v)));
+        write(true, PENDING_END, key, Integer.toString(assetIDDomains.size()));
+    }
+
+    /**
+     * Records a batch as submitted.
+     *
+     * @param key snapshot key
+     * @param assets batch
+     * @return batch id
+     */
+    public synchronized int batch(String key, Collection<Asset> assets) {
+        int id = replay.nextBatch;
+        StringBuilder ids = new StringBuilder();
+        assets.forEach(u -> ids.append(ids.length() == 0 ? "" : ",").append(u.assetID()));
+        write(false, BATCH, key, Integer.toString(id), ids.toString());
+        return id;
+    }
+
+    public synchronized void batchDone(String key, int id) {
+        write(false, BATCH_DONE, key, Integer.toString(id));
+    }
+
+    /**
+     * Records an asset as written.
+     *
+     * @param key snapshot key
+     * @param asset asset
+     * @param path output path, relative to the snapshot output folder
+     */
+    public synchronized void written(String key, Asset asset, String path) {
+        write(false, ASSET, key, asset.assetID().toString(), encode(path), signature(asset));
+    }
+
+    public synchronized boolean isWritten(String key, Asset asset, String path) {
+        SnapshotState state = replay.snapshots.get(key);
+        return state != null && state.files.contains(path + "\t" + signature(asset));
+    }
+
+    public synchronized void authorized(FileGroups fileGroups, long serverClockOffset) {
+        // Not replayed, the authorizer holds its own authorizations.
+        replay.serverClockOffset = Optional.of(serverClockOffset);
+        append(false, AUTHORIZED, Long.toString(serverClockOffset),
+                Base64.getEncoder().encodeToString(fileGroups.toByteArray()));
+    }
+
+    /**
+     * Returns the authorizations journaled by the run, oldest first.
+     *
+     * @return authorizations
+     */
+    public synchronized List<FileGroups> authorizations() {
+        return new ArrayList<>(replay.authorizations);
+    }
+
+    /**
+     * Returns the most recently journaled server clock offset.
+     *
+     * @return offset, milliseconds
+     */
+    public synchronized Optional<Long> serverClockOffset() {
+        return replay.serverClockOffset;
+    }
+
+    public synchronized void snapshotDone(String key) {
+        write(true, SNAPSHOT_DONE, key);
+        compact();
+    }
+
+    public synchronized void runDone() {
+        try {
+            channel.truncate(0);
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        replay = new Replay();
+    }
+
+    /**
+     * Rewrites the journal, retaining the run, selection and incomplete snapshot entries. Authorizations are
+     * discarded, their server clock offset is retained. The compacted journal replaces the existing journal
+     * atomically.
+     */
+    @GuardedBy("this")
+    void compact() {
+        try {
+            List<String> lines = new ArrayList<>();
+            read(file, lines);
+            List<String> retained = lines.stream()
+                    .filter(this::retain)
+                    .collect(toList());
+            replay.serverClockOffset.ifPresent(u -> retained.add(CLOCK + "\t" + u));
+
+            Replay compacted = new Replay();
+            StringBuilder sb = new StringBuilder();
+            retained.forEach(u -> {
+                compacted.apply(u);
+                sb.append(crc(u)).append('\t').append(u).append('\n');
+            });
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.deleteIfExists(temp);
+            create(temp);
+            try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(UTF_8));
+                while (buffer.hasRemaining()) {
+                    tempChannel.write(buffer);
+                }
+                tempChannel.force(false);
+            }
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            logger.debug("-- compact() - entries: {} > {}", lines.size(), retained.size());
+            replay = compacted;
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @GuardedBy("this")
+    boolean retain(String entry) {
+        String[] fields = entry.split("\t", -1);
+        switch (fields[0]) {
+            case PENDING:
+            case BATCH:
+            case BATCH_DONE:
+            case ASSET:
+                SnapshotState state = replay.snapshots.get(fields[1]);
+                return state == null || !state.done;
+            case AUTHORIZED:
+            case CLOCK:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    static String signature(Asset asset) {
+        return asset.fileSignature()
+                .map(Hex::toHexString)
+                .orElse("");
+    }
+
+    @GuardedBy("this")
+    void write(boolean force, String... fields) {
+        replay.apply(String.join("\t", fields));
+        append(force, fields);
+    }
+
+    @GuardedBy("this")
+    void append(boolean force, String... fields) {
+        String entry = String.join("\t", fields);
+        ByteBuffer buffer = ByteBuffer.wrap((crc(entry) + "\t" + entry + "\n").getBytes(UTF_8));
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                long start = System.nanoTime();
+                channel.force(false);
+                FORCE_MS.recordSince(start);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RunJournal{"
+                + "resumed=" + resumed
+                + ", selection=" + replay.selection
+                + ", snapshots=" + replay.snapshots.size()
+                + ", authorizations=" + replay.authorizations.size()
+                + '}';
+    }
+
+    /**
+     * Journaled snapshot state.
+     */
+    @Immutable
+    public static final class Resume {
+
+        private final boolean done;
+        private final Map<AssetID, String> outstanding;
+        private final List<Set<AssetID>> batches;
+
+        Resume(SnapshotState state) {
+            Map<AssetID, String> map = new LinkedHashMap<>(state.pending);
+            map.keySet().removeAll(state.written);
+            Map<Integer, Set<AssetID>> batchMap = new LinkedHashMap<>();
+            map.keySet().forEach(u -> {
+                Integer batch = state.batches.get(u);
+                if (batch != null) {
+                    batchMap.computeIfAbsent(batch, k -> new HashSet<>()).add(u);
+                }
+            });
+            this.done = state.done;
+            this.outstanding = Collections.unmodifiableMap(map);
+            this.batches = Collections.unmodifiableList(new ArrayList<>(batchMap.values()));
+        }
+
+        /**
+         * Returns true if the snapshot was completed.
+         *
+         * @return true if completed
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Returns the asset IDs and domains not yet written.
+         *
+         * @return outstanding asset ID domains
+         */
+        public Map<AssetID, String> outstanding() {
+            return outstanding;
+        }
+
+        /**
+         * Returns the outstanding asset IDs of each interrupted batch.
+         *
+         * @return batches
+         */
+        public List<Set<AssetID>> batches() {
+            return batches;
+        }
+
+        @Override
+        public String toString() {
+            return "Resume{"
+                    + "done=" + done
+                    + ", outstanding=" + outstanding.size()
+                    + ", batches=" + batches.size()
+                    + '}';
+        }
+    }
+
+    @NotThreadSafe
+    static final class SnapshotState {
+
+        final Map<AssetID, String> pending = new LinkedHashMap<>();
+        final Set<AssetID> written = new HashSet<>();
+        final Set<String> files = new HashSet<>();
+        final Map<AssetID, Integer> batches = new HashMap<>();
+        boolean pendingEnd;
+        boolean done;
+    }
+
+    @NotThreadSafe
+    static final class Replay {
+
+        final Set<String> selection = new LinkedHashSet<>();
+        final Map<String, SnapshotState> snapshots = new HashMap<>();
+        final List<FileGroups> authorizations = new ArrayList<>();
+        Optional<Long> serverClockOffset = Optional.empty();
+        String fingerprint;
+        int nextBatch;
+        boolean run;
+        boolean runDone;
+
+        boolean isInterrupted() {
+            return run && !runDone && !selection.isEmpty();
+        }
+
+        void apply(String entry) {
+            String[] fields = entry.split("\t", -1);
+            try {
+                switch (fields[0]) {
+                    case RUN:
+                        run = true;
+                        fingerprint = fields.length > 2 ? decode(fields[2]) : null;
+                        break;
+                    case SELECT:
+                        selection.add(fields[2]);
+                        break;
+                    case PENDING:
+                        AssetID.from(fields[2])
+                                .ifPresent(u -> state(fields[1]).pending.put(u, decode(fields[3])));
+                        break;
+                    case PENDING_END:
+                        state(fields[1]).pendingEnd = true;
+                        break;
+                    case BATCH:
+                        int id = Integer.parseInt(fields[2]);
+                        nextBatch = Math.max(nextBatch, id + 1);
+                        SnapshotState state = state(fields[1]);
+                        for (String assetID : fields[3].split(",")) {
+                            AssetID.from(assetID).ifPresent(u -> state.batches.put(u, id));
+                        }
+                        break;
+                    case BATCH_DONE:
+                        break;
+                    case ASSET:
+                        AssetID.from(fields[2]).ifPresent(state(fields[1]).written::add);
+                        state(fields[1]).files.add(decode(fields[3]) + "\t" + fields[4]);
+                        break;
+                    case AUTHORIZED:
+                        serverClockOffset = Optional.of(Long.parseLong(fields[1]));
+                        authorizations.add(FileGroups.parseFrom(Base64.getDecoder().decode(fields[2])));
+                        break;
+                    case CLOCK:
+                        serverClockOffset = Optional.of(Long.parseLong(fields[1]));
+                        break;
+                    case SNAPSHOT_DONE:
+                        state(fields[1]).done = true;
+                        break;
+                    case RUN_DONE:
+                        runDone = true;
+                        break;
+                    default:
+                        logger.warn("-- apply() - unknown journal entry: {}", fields[0]);
+                }
+            } catch (InvalidProtocolBufferException | RuntimeException ex) {
+                logger.warn("-- apply() - bad journal entry: {} {}", fields[0], ex.getMessage());
+            }
+        }
+
+        SnapshotState state(String key) {
+            return snapshots.computeIfAbsent(key, u -> new SnapshotState());
+        }
+    }
+}
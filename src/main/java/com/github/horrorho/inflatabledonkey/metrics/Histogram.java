@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Histogram with power of two buckets. Recording is lock free and allocation free. Percentiles are approximate,
+ * reported as the upper bound of the bucket in which they fall, capped at the maximum recorded value.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the specified value.
+     *
+     * @param value value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucket(v));
+        count.increment();
+        sum.add(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    /**
+     * Records the milliseconds elapsed since the specified {@link System#nanoTime()}.
+     *
+     * @param startNanos start time
+     */
+    public void recordSince(long startNanos) {
+        record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    static int bucket(long value) {
+        return value == 0
+                ? 0
+                : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0
+                ? 0
+                : (double) sum() / n;
+    }
+
+    /**
+     * Returns the approximate value at the specified percentile.
+     *
+     * @param percentile percentile, 0 to 100
+     * @return value, or 0 if nothing has been recorded
+     */
+    public long percentile(double percentile) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += buckets.get(i);
+        }
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(max(), (1L << i) - 1);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{"
+                + "count=" + count()
+                + ", mean=" + mean()
+                + ", max=" + max()
+                + '}';
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics registry. Counters, histograms and gauges are created on first use and keyed by name. Exported as a read
+ * only dynamic MBean, each histogram contributing its count, mean, percentiles and maximum, and optionally dumped
+ * periodically to a JSON file.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class Metrics implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "com.github.horrorho.inflatabledonkey:type=Metrics";
+
+    public static Metrics instance() {
+        return INSTANCE;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    // ObjectMapper thread safe if we don't modify its configuration.
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "donkey-metrics-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    Metrics() {
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, u -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, u -> new Histogram());
+    }
+
+    /**
+     * Registers a gauge, replacing any existing gauge of the same name.
+     *
+     * @param name name
+     * @param gauge thread safe gauge
+     */
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, Objects.requireNonNull(gauge, "gauge"));
+    }
+
+    /**
+     * Returns the current value of every metric, ordered by name.
+     *
+     * @return metric values
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new TreeMap<>();
+        counters.forEach((k, v) -> snapshot.put(k, v.count()));
+        histograms.forEach((k, v) -> {
+            snapshot.put(k + ".count", v.count());
+            snapshot.put(k + ".mean", v.mean());
+            snapshot.put(k + ".p50", v.percentile(50));
+            snapshot.put(k + ".p90", v.percentile(90));
+            snapshot.put(k + ".p99", v.percentile(99));
+            snapshot.put(k + ".max", v.max());
+        });
+        gauges.forEach((k, v) -> {
+            try {
+                snapshot.put(k, v.getAsLong());
+            } catch (RuntimeException ex) {
+                logger.debug("-- snapshot() - gauge: {} exception: {}", k, ex.getMessage());
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Periodically dumps the metrics to the specified file as JSON. The file is replaced atomically where supported.
+     *
+     * @param file file
+     * @param periodSeconds period, seconds
+     */
+    public void dump(Path file, long periodSeconds) {
+        TIMER.scheduleAtFixedRate(() -> {
+            try {
+                write(file);
+            } catch (IOException ex) {
+                logger.warn("-- dump() - unable to write metrics: {}", ex.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes the metrics to the specified file as JSON.
+     *
+     * @param file file
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("timestamp", System.currentTimeMillis());
+        json.put("metrics", snapshot());
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        OBJECT_MAPPER.writeValue(temp.toFile(), json);
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("read only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> snapshot = snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = snapshot.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        MBeanAttributeInfo[] attributes = snapshot().entrySet()
+                .stream()
+                .map(u -> new MBeanAttributeInfo(
+                        u.getKey(), u.getValue().getClass().getName(), u.getKey(), true, false, false))
+                .toArray(MBeanAttributeInfo[]::new);
+        return new MBeanInfo(Metrics.class.getName(), "InflatableDonkey metrics", attributes, null, null, null);
+    }
+
+    @Override
+    public String toString() {
+        return "Metrics{"
+                + "counters=" + counters.size()
+                + ", histograms=" + histograms.size()
+                + ", gauges=" + gauges.size()
+                + '}';
+    }
+}
@@ -29,6 +29,8 @@ import com.github.horrorho.inflatabledonkey.data.der.ProtectionInfo;
 import com.github.horrorho.inflatabledonkey.pcs.key.Key;
 import com.github.horrorho.inflatabledonkey.pcs.key.KeyID;
 import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -36,20 +38,28 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import static java.util.stream.Collectors.toList;
 import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.util.encoders.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * ProtectionZoneFactory.
+ * <p>
+ * Derived protection zones are cached by parent zone and protection info, so key unwrapping runs once per distinct
+ * zone rather than once per record. Zones are derived outside the cache, concurrent first requests for the same zone
+ * may each derive it, but the first result is retained.
  *
  * @author Ahseya
  */
-@Immutable
+@ThreadSafe
 public final class PZFactory {
 
     public static PZFactory instance() {
@@ -65,10 +75,13 @@ public final class PZFactory {
                     PZAssistant.instance(),
                     PZAssistantLight.instance());
 
+    private static final int CACHE_SIZE_MAX = 4096;
+
     private final PZKeyDerivationFunction kdf;
     private final PZKeyUnwrap unwrapKey;
     private final PZAssistant assistant;
     private final PZAssistantLight assistantLight;
+    private final ConcurrentMap<ZoneKey, Optional<ProtectionZone>> cache = new ConcurrentHashMap<>();
 
     public PZFactory(
             PZKeyDerivationFunction kdf,
@@ -86,12 +99,26 @@ public final class PZFactory {
     }
 
     public Optional<ProtectionZone> create(ProtectionZone base, CloudKit.ProtectionInfo protectionInfo) {
-        return protectionInfo.hasProtectionInfo() && protectionInfo.hasProtectionInfoTag()
-                ? create(
-                        base.keys(),
-                        protectionInfo.getProtectionInfoTag(),
-                        protectionInfo.getProtectionInfo().toByteArray())
-                : Optional.empty();
+        if (!protectionInfo.hasProtectionInfo() || !protectionInfo.hasProtectionInfoTag()) {
+            return Optional.empty();
+        }
+        String protectionInfoTag = protectionInfo.getProtectionInfoTag();
+        byte[] protectionInfoData = protectionInfo.getProtectionInfo().toByteArray();
+        ZoneKey key = new ZoneKey(base, protectionInfoTag, protectionInfoData);
+        Optional<ProtectionZone> cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        // Unwrapping is expensive, we don't hold the map's bin lock whilst deriving.
+        Optional<ProtectionZone> zone = create(base.keys(), protectionInfoTag, protectionInfoData);
+        if (cache.size() >= CACHE_SIZE_MAX) {
+            logger.debug("-- create() - cache cleared, size: {}", cache.size());
+            cache.clear();
+        }
+        Optional<ProtectionZone> previous = cache.putIfAbsent(key, zone);
+        return previous == null
+                ? zone
+                : previous;
     }
 
     Optional<ProtectionZone>
@@ -146,4 +173,49 @@ public final class PZFactory {
                         },
                         LinkedHashMap::new));
     }
+
+    /**
+     * Parent zone identity, protection info tag and protection info digest. The tag is length prefixed, so tag and
+     * data boundaries are unambiguous.
+     */
+    @Immutable
+    static final class ZoneKey {
+
+        static ByteBuffer digest(String protectionInfoTag, byte[] protectionInfoData) {
+            SHA256Digest digest = new SHA256Digest();
+            byte[] tag = protectionInfoTag.getBytes(UTF_8);
+            byte[] length = ByteBuffer.allocate(4).putInt(tag.length).array();
+            digest.update(length, 0, length.length);
+            digest.update(tag, 0, tag.length);
+            digest.update(protectionInfoData, 0, protectionInfoData.length);
+            byte[] out = new byte[digest.getDigestSize()];
+            digest.doFinal(out, 0);
+            return ByteBuffer.wrap(out);
+        }
+
+        private final ProtectionZone base;
+        private final ByteBuffer digest;
+
+        ZoneKey(ProtectionZone base, String protectionInfoTag, byte[] protectionInfoData) {
+            this.base = Objects.requireNonNull(base);
+            this.digest = digest(protectionInfoTag, protectionInfoData);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(base) + digest.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final ZoneKey other = (ZoneKey) obj;
+            return base == other.base && digest.equals(other.digest);
+        }
+    }
 }
@@ -0,0 +1,81 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.responsehandler;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.function.Consumer;
+import javax.annotation.concurrent.Immutable;
+import org.apache.http.HttpEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming delimited Protobuf response handler. Messages are parsed directly from the response stream and passed to
+ * the consumer as they are decoded. Returns the number of messages consumed.
+ *
+ * @author Ahseya
+ * @param <T>
+ */
+@Immutable
+public class DelimitedProtobufConsumerHandler<T extends Message> extends DonkeyResponseHandler<Long> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DelimitedProtobufConsumerHandler.class);
+
+    private final Parser<T> parser;
+    private final Consumer<? super T> consumer;
+
+    public DelimitedProtobufConsumerHandler(Parser<T> parser, Consumer<? super T> consumer) {
+        this.parser = Objects.requireNonNull(parser, "parser");
+        this.consumer = Objects.requireNonNull(consumer, "consumer");
+    }
+
+    @Override
+    public Long handleEntity(HttpEntity entity) throws IOException {
+        try (InputStream in = entity.getContent()) {
+            return apply(in);
+        }
+    }
+
+    long apply(InputStream in) throws IOException {
+        long count = 0;
+        CodedInputStream stream = CodedInputStream.newInstance(in);
+        int size;
+        while (!stream.isAtEnd() && (size = stream.readRawVarint32()) != 0) {
+            int limit = stream.pushLimit(size);
+            T message = parser.parseFrom(stream);
+            stream.popLimit(limit);
+            // Any size limit applies per message, not to the response as a whole.
+            stream.resetSizeCounter();
+            consumer.accept(message);
+            count++;
+        }
+        logger.trace("-- apply() - count: {}", count);
+        return count;
+    }
+}
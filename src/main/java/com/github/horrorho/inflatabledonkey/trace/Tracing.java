@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.trace;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * JDK Flight Recorder event constants. Events are recorded with, for example:
+ * <pre>
+ * java -XX:StartFlightRecording=duration=30m,filename=donkey.jfr -jar InflatableDonkey.jar ...
+ * </pre>
+ * When not recording, events are disabled and {@code begin()}, {@code shouldCommit()} and {@code commit()} reduce to
+ * trivial checks. Event fields that are costly to compute are only populated when {@code shouldCommit()} is true.
+ * <p>
+ * The {@code jdk.jfr} API requires JDK 8u262 or later. Events are only instantiated if {@link #AVAILABLE}, otherwise
+ * call sites hold a null event and tracing is skipped, so earlier runtimes never load the event classes.
+ *
+ * @author Ahseya
+ */
+@Immutable
+public final class Tracing {
+
+    public static final String PREFIX = "com.github.horrorho.inflatabledonkey.";
+    public static final String CATEGORY = "InflatableDonkey";
+
+    /**
+     * True if the runtime provides the {@code jdk.jfr} API.
+     */
+    public static final boolean AVAILABLE = available();
+
+    static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Tracing.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    private Tracing() {
+    }
+}
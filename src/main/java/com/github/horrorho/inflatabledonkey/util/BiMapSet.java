@@ -92,6 +92,16 @@ public class BiMapSet<K, V> {
         return set(key, kToVSet);
     }
 
+    public void put(K key, Collection<V> values) {
+        if (key == null || values.contains(null)) {
+            throw new NullPointerException("BiMapSet, null values not permitted");
+        }
+        values.forEach(v -> {
+            kToVSet.computeIfAbsent(key, u -> new HashSet<>()).add(v);
+            vToKSet.computeIfAbsent(v, u -> new HashSet<>()).add(key);
+        });
+    }
+
     public Set<V> removeKey(K key) {
         return remove(key, vToKSet, kToVSet);
     }
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.util;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Lazy. Memoizing supplier, the delegate is invoked at most once.
+ *
+ * @author Ahseya
+ * @param <T> value type
+ */
+@ThreadSafe
+public final class Lazy<T> implements Supplier<T> {
+
+    public static <T> Lazy<T> of(Supplier<T> supplier) {
+        return new Lazy<>(supplier);
+    }
+
+    private volatile Supplier<T> supplier;
+    private T value;
+
+    Lazy(Supplier<T> supplier) {
+        this.supplier = Objects.requireNonNull(supplier, "supplier");
+    }
+
+    @Override
+    public T get() {
+        if (supplier != null) {
+            synchronized (this) {
+                if (supplier != null) {
+                    value = Objects.requireNonNull(supplier.get());
+                    supplier = null;
+                }
+            }
+        }
+        return value;
+    }
+
+    public boolean isEvaluated() {
+        return supplier == null;
+    }
+
+    @Override
+    public String toString() {
+        return isEvaluated()
+                ? "Lazy{" + value + '}'
+                : "Lazy{unevaluated}";
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.util;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Time of day rate schedule. Parsed from either a single rate or comma separated {@code HH:mm-HH:mm=rate} windows,
+ * e.g. {@code 22:00-06:00=10485760,06:00-22:00=1048576}. Windows may wrap midnight, the first matching window
+ * applies. Times outside all windows are unlimited, as are non-positive rates.
+ *
+ * @author Ahseya
+ */
+@Immutable
+public final class RateSchedule {
+
+    public static RateSchedule unlimited() {
+        return UNLIMITED;
+    }
+
+    private static final RateSchedule UNLIMITED = new RateSchedule("", Collections.emptyList());
+
+    /**
+     * Parses the schedule.
+     *
+     * @param schedule schedule
+     * @return schedule
+     * @throws IllegalArgumentException if the schedule is malformed
+     */
+    public static RateSchedule parse(String schedule) {
+        String trimmed = schedule.trim();
+        if (trimmed.isEmpty()) {
+            return UNLIMITED;
+        }
+        List<Window> windows = new ArrayList<>();
+        try {
+            if (!trimmed.contains("=")) {
+                windows.add(new Window(LocalTime.MIN, LocalTime.MIN, Double.parseDouble(trimmed)));
+            } else {
+                for (String window : trimmed.split(",")) {
+                    String[] split = window.trim().split("[-=]");
+                    if (split.length != 3) {
+                        throw new IllegalArgumentException("bad schedule window: " + window);
+                    }
+                    windows.add(new Window(time(split[0]), time(split[1]), Double.parseDouble(split[2].trim())));
+                }
+            }
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("bad schedule: " + schedule, ex);
+        }
+        return new RateSchedule(trimmed, windows);
+    }
+
+    static LocalTime time(String time) {
+        String trimmed = time.trim();
+        return trimmed.equals("24:00")
+                ? LocalTime.MIN
+                : LocalTime.parse(trimmed);
+    }
+
+    private final String schedule;
+    private final List<Window> windows;
+
+    RateSchedule(String schedule, List<Window> windows) {
+        this.schedule = Objects.requireNonNull(schedule, "schedule");
+        this.windows = Collections.unmodifiableList(new ArrayList<>(windows));
+    }
+
+    /**
+     * Returns the rate at the specified time.
+     *
+     * @param time time
+     * @return rate, non-positive if unlimited
+     */
+    public double rate(LocalTime time) {
+        return windows.stream()
+                .filter(u -> u.contains(time))
+                .mapToDouble(u -> u.rate)
+                .findFirst()
+                .orElse(0);
+    }
+
+    @Override
+    public String toString() {
+        return schedule;
+    }
+
+    @Immutable
+    static final class Window {
+
+        final LocalTime from;
+        final LocalTime to;
+        final double rate;
+
+        Window(LocalTime from, LocalTime to, double rate) {
+            this.from = Objects.requireNonNull(from, "from");
+            this.to = Objects.requireNonNull(to, "to");
+            this.rate = rate;
+        }
+
+        boolean contains(LocalTime time) {
+            if (from.equals(to)) {
+                return true;
+            }
+            return from.isBefore(to)
+                    ? !time.isBefore(from) && time.isBefore(to)
+                    : !time.isBefore(from) || time.isBefore(to);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * ServerClock. Tracks the most recently observed server/ machine clock offset, allowing server timestamps to be
+ * interpreted against inaccurate machine clocks without rewriting them.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class ServerClock {
+
+    public static ServerClock instance() {
+        return INSTANCE;
+    }
+
+    private static final ServerClock INSTANCE = new ServerClock();
+
+    private final AtomicLong offset = new AtomicLong();
+
+    /**
+     * Updates the offset.
+     *
+     * @param offset server time minus machine time, milliseconds
+     */
+    public void update(long offset) {
+        this.offset.set(offset);
+    }
+
+    public long offset() {
+        return offset.get();
+    }
+
+    /**
+     * Converts a server timestamp to machine time.
+     *
+     * @param timestamp server timestamp, epoch milliseconds
+     * @return machine timestamp, epoch milliseconds
+     */
+    public long local(long timestamp) {
+        return timestamp - offset.get();
+    }
+
+    /**
+     * Converts a machine timestamp to server time.
+     *
+     * @param timestamp machine timestamp, epoch milliseconds
+     * @return server timestamp, epoch milliseconds
+     */
+    public long server(long timestamp) {
+        return timestamp + offset.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ServerClock{" + "offset=" + offset + '}';
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.util;
+
+import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
+import com.github.horrorho.inflatabledonkey.io.IOSupplier;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SingleFlight. Coalesces concurrent calls for the same key into a single in-flight call, with all callers sharing
+ * its result. If the in-flight call fails, the failure is propagated to its waiters, each of which retries, up to the
+ * specified number of attempts, by joining or leading a new flight.
+ *
+ * @author Ahseya
+ * @param <K> key type
+ * @param <V> value type
+ */
+@ThreadSafe
+public final class SingleFlight<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final LongAdder led = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final int attempts;
+
+    public SingleFlight(int attempts) {
+        if (attempts < 1) {
+            throw new IllegalArgumentException("attempts must be positive: " + attempts);
+        }
+        this.attempts = attempts;
+    }
+
+    public V apply(K key, IOSupplier<V> supplier) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                led.increment();
+                return lead(key, flight, supplier);
+            }
+            coalesced.increment();
+            try {
+                return existing.get();
+
+            } catch (InterruptedException ex) {
+                throw new UncheckedInterruptedException(ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (attempt >= attempts) {
+                    throw rethrow(cause);
+                }
+                logger.debug("-- apply() - in-flight call failed, retrying: {} attempt: {}", cause, attempt);
+            }
+        }
+    }
+
+    V lead(K key, CompletableFuture<V> flight, IOSupplier<V> supplier) throws IOException {
+        // Deregister before completing, so that retrying waiters don't rejoin a failed flight.
+        V value;
+        try {
+            value = supplier.get();
+
+        } catch (Throwable ex) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(ex);
+            throw ex;
+        }
+        flights.remove(key, flight);
+        flight.complete(value);
+        return value;
+    }
+
+    static IOException rethrow(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Returns the number of calls that led a flight.
+     *
+     * @return led calls
+     */
+    public long led() {
+        return led.sum();
+    }
+
+    /**
+     * Returns the number of calls that joined an existing flight.
+     *
+     * @return coalesced calls
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight{"
+                + "inFlight=" + flights.size()
+                + ", led=" + led
+                + ", coalesced=" + coalesced
+                + ", attempts=" + attempts
+                + '}';
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.util;
+
+import com.github.horrorho.inflatabledonkey.exception.UncheckedInterruptedException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Token bucket with fair sharing between lanes. Waiting lanes are served round robin, each in turn granted its oldest
+ * request. A grant may overdraw the bucket, the debt delaying subsequent grants, so requests larger than the bucket
+ * are not starved. A non-positive rate is unlimited.
+ *
+ * @author Ahseya
+ */
+@ThreadSafe
+public final class TokenBucket {
+
+    private static final long MAX_WAIT_MS = 1000;
+
+    private final Object lock = new Object();
+    private final double burstSeconds;
+    @GuardedBy("lock")
+    private final Map<String, Deque<Waiter>> waiting = new LinkedHashMap<>();
+    @GuardedBy("lock")
+    private double rate;
+    @GuardedBy("lock")
+    private double tokens;
+    @GuardedBy("lock")
+    private long refilledAt = System.nanoTime();
+    @GuardedBy("lock")
+    private long granted;
+
+    public TokenBucket(double rate, double burstSeconds) {
+        if (burstSeconds <= 0) {
+            throw new IllegalArgumentException("bad burst seconds: " + burstSeconds);
+        }
+        this.burstSeconds = burstSeconds;
+        this.rate = rate;
+        this.tokens = capacity();
+    }
+
+    /**
+     * Blocks until the units are granted.
+     *
+     * @param lane lane
+     * @param units units
+     */
+    public void acquire(String lane, long units) {
+        synchronized (lock) {
+            if (rate <= 0 && waiting.isEmpty()) {
+                granted += units;
+                return;
+            }
+            Waiter waiter = new Waiter(units);
+            waiting.computeIfAbsent(lane, u -> new ArrayDeque<>()).add(waiter);
+            try {
+                while (!grant(waiter)) {
+                    long waitMs = rate <= 0
+                            ? 1
+                            : Math.min(MAX_WAIT_MS, (long) Math.ceil(-tokens * 1000 / rate));
+                    lock.wait(Math.max(1, waitMs));
+                }
+            } catch (InterruptedException ex) {
+                Deque<Waiter> queue = waiting.get(lane);
+                if (queue != null && queue.remove(waiter) && queue.isEmpty()) {
+                    waiting.remove(lane);
+                }
+                throw new UncheckedInterruptedException(ex);
+            }
+        }
+    }
+
+    @GuardedBy("lock")
+    boolean grant(Waiter waiter) {
+        refill();
+        boolean any = false;
+        Iterator<Map.Entry<String, Deque<Waiter>>> it = waiting.entrySet().iterator();
+        while (it.hasNext() && (rate <= 0 || tokens >= 0)) {
+            Map.Entry<String, Deque<Waiter>> entry = it.next();
+            Waiter head = entry.getValue().poll();
+            head.granted = true;
+            granted += head.units;
+            if (rate > 0) {
+                tokens -= head.units;
+            }
+            any = true;
+            it.remove();
+            if (!entry.getValue().isEmpty()) {
+                // Back of the rotation.
+                waiting.put(entry.getKey(), entry.getValue());
+                it = waiting.entrySet().iterator();
+            }
+        }
+        if (any) {
+            lock.notifyAll();
+        }
+        return waiter.granted;
+    }
+
+    @GuardedBy("lock")
+    void refill() {
+        long now = System.nanoTime();
+        if (rate > 0) {
+            tokens = Math.min(capacity(), tokens + rate * (now - refilledAt) / TimeUnit.SECONDS.toNanos(1));
+        }
+        refilledAt = now;
+    }
+
+    @GuardedBy("lock")
+    double capacity() {
+        return Math.max(1, rate * burstSeconds);
+    }
+
+    /**
+     * Sets the rate. Waiting requests are re-evaluated against the new rate.
+     *
+     * @param rate units per second, non-positive for unlimited
+     */
+    public void rate(double rate) {
+        synchronized (lock) {
+            refill();
+            this.rate = rate;
+            tokens = rate > 0
+                    ? Math.min(capacity(), tokens)
+                    : 0;
+            lock.notifyAll();
+        }
+    }
+
+    public double rate() {
+        synchronized (lock) {
+            return rate;
+        }
+    }
+
+    public long granted() {
+        synchronized (lock) {
+            return granted;
+        }
+    }
+
+    public int waiting() {
+        synchronized (lock) {
+            return waiting.values()
+                    .stream()
+                    .mapToInt(Deque::size)
+                    .sum();
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return "TokenBucket{"
+                    + "rate=" + rate
+                    + ", burstSeconds=" + burstSeconds
+                    + ", tokens=" + tokens
+                    + ", granted=" + granted
+                    + ", lanes=" + waiting.size()
+                    + '}';
+        }
+    }
+
+    @NotThreadSafe
+    static final class Waiter {
+
+        final long units;
+        boolean granted;
+
+        Waiter(long units) {
+            this.units = units;
+        }
+    }
+}
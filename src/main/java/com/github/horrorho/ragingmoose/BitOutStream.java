@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import static java.lang.Long.toHexString;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Low level bit out stream. Counterpart to {@link BitInStream}.
+ * <p>
+ * Writes are little endian and require 8 bytes of slack beyond the final position of the underlying buffer.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class BitOutStream {
+    // flush() keeps accumNBits below 8, write() callers are limited to 56 bits between flushes.
+
+    private final ByteBuffer out;
+    private long accum;
+    private int accumNBits;
+
+    BitOutStream(ByteBuffer out) {
+        this.out = Objects.requireNonNull(out);
+    }
+
+    void write(long bits, int n) {
+        accum |= bits << accumNBits;
+        accumNBits += n;
+    }
+
+    @Nonnull
+    BitOutStream flush() {
+        int nBits = accumNBits & -8;
+        out.putLong(out.position(), accum);
+        out.position(out.position() + (nBits >>> 3));
+        accum >>>= nBits;
+        accumNBits -= nBits;
+        return this;
+    }
+
+    int finish() {
+        int nBits = accumNBits + 7 & -8;
+        out.putLong(out.position(), accum);
+        out.position(out.position() + (nBits >>> 3));
+        accum = 0;
+        accumNBits -= nBits;
+        return accumNBits;
+    }
+
+    @Override
+    public String toString() {
+        return "BitOutStream{"
+                + "out=" + out
+                + ", accum=0x" + toHexString(accum)
+                + ", accumNBits=" + accumNBits
+                + '}';
+    }
+}
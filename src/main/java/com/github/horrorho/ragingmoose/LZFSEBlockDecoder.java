@@ -41,30 +41,30 @@ import javax.annotation.concurrent.NotThreadSafe;
 @ParametersAreNonnullByDefault
 class LZFSEBlockDecoder extends LMDBlockDecoder implements LZFSEConstants {
 
-    private static final byte[] L_EXTRA_BITS = {
+    static final byte[] L_EXTRA_BITS = {
         0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2, 3, 5, 8
     };
 
-    private static final int[] L_BASE_VALUE = {
+    static final int[] L_BASE_VALUE = {
         0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 20, 28, 60
     };
 
-    private static final byte[] M_EXTRA_BITS = {
+    static final byte[] M_EXTRA_BITS = {
         0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3, 5, 8, 11
     };
 
-    private static final int[] M_BASE_VALUE = {
+    static final int[] M_BASE_VALUE = {
         0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 24, 56, 312
     };
 
-    private static final byte[] D_EXTRA_BITS = {
+    static final byte[] D_EXTRA_BITS = {
         0,  0,  0,  0,  1,  1,  1,  1,  2,  2,  2,  2,  3,  3,  3,  3,
         4,  4,  4,  4,  5,  5,  5,  5,  6,  6,  6,  6,  7,  7,  7,  7,
         8,  8,  8,  8,  9,  9,  9,  9,  10, 10, 10, 10, 11, 11, 11, 11,
         12, 12, 12, 12, 13, 13, 13, 13, 14, 14, 14, 14, 15, 15, 15, 15
     };
 
-    private static final int[] D_BASE_VALUE = {
+    static final int[] D_BASE_VALUE = {
         0,      1,      2,      3,     4,     6,     8,     10,    12,    16,
         20,     24,     28,     36,    44,    52,    60,    76,    92,    108,
         124,    156,    188,    220,   252,   316,   380,   444,   508,   636,
@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.D_BASE_VALUE;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.D_EXTRA_BITS;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.L_BASE_VALUE;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.L_EXTRA_BITS;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.M_BASE_VALUE;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.M_EXTRA_BITS;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Accumulates L, M, D values and literals and encodes them as a single compressed v2 block.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class LZFSEBlockEncoder implements LZFSEConstants {
+
+    static int symbol(int[] baseValue, int value) {
+        int i = Arrays.binarySearch(baseValue, value);
+        return i < 0
+                ? -i - 2
+                : i;
+    }
+
+    static byte[] symbols(int[] baseValue, int maxValue) {
+        byte[] symbols = new byte[maxValue + 1];
+        for (int i = 0; i <= maxValue; i++) {
+            symbols[i] = (byte) symbol(baseValue, i);
+        }
+        return symbols;
+    }
+
+    static int dSymbol(int d) {
+        // D symbols form groups of 4 with base values 4 * (2^e - 1) and e extra bits.
+        int e = 31 - Integer.numberOfLeadingZeros((d >>> 2) + 1);
+        return (e << 2) + (d - (4 << e) + 4 >>> e);
+    }
+
+    private static final byte[] L_SYMBOLS = symbols(L_BASE_VALUE, ENCODE_MAX_L_VALUE);
+
+    private static final byte[] M_SYMBOLS = symbols(M_BASE_VALUE, ENCODE_MAX_M_VALUE);
+
+    static void writeV2Tables(ByteBuffer bb, short[]... tables) {
+        int accum = 0;
+        int accumNBits = 0;
+        for (short[] table : tables) {
+            for (short value : table) {
+                int nBits = nBits(value);
+                accum |= bits(value) << accumNBits;
+                accumNBits += nBits;
+                while (accumNBits >= 8) {
+                    bb.put((byte) accum);
+                    accum >>>= 8;
+                    accumNBits -= 8;
+                }
+            }
+        }
+        if (accumNBits > 0) {
+            bb.put((byte) accum);
+        }
+    }
+
+    static int nBits(int value) {
+        return value < 8
+                ? FREQ_NBITS_TABLE[value]
+                : value < 24 ? 8 : 14;
+    }
+
+    private static final byte[] FREQ_NBITS_TABLE = new byte[]{
+        2, 2, 3, 3, 5, 5, 5, 5
+    };
+
+    static int bits(int value) {
+        return value < 8
+                ? FREQ_BITS_TABLE[value]
+                : value < 24 ? 0x07 | value - 8 << 4 : 0x0F | value - 24 << 4;
+    }
+
+    private static final byte[] FREQ_BITS_TABLE = new byte[]{
+        0, 2, 1, 5, 3, 11, 19, 27
+    };
+
+    private static final int V2_SIZE = 32 + (ENCODE_SYMBOLS * 14 + 7) / 8;
+
+    private static final int LITERAL_PAYLOAD_SIZE = (LITERALS_PER_BLOCK + 4) * 10 / 8 + 16;
+
+    private static final int LMD_PAYLOAD_SIZE = MATCHES_PER_BLOCK * 54 / 8 + 16;
+
+    private final byte[] literals = new byte[LITERALS_PER_BLOCK + 4];
+    private final int[] lValues = new int[MATCHES_PER_BLOCK];
+    private final int[] mValues = new int[MATCHES_PER_BLOCK];
+    private final int[] dValues = new int[MATCHES_PER_BLOCK];
+    private final byte[] lSymbols = new byte[MATCHES_PER_BLOCK];
+    private final byte[] mSymbols = new byte[MATCHES_PER_BLOCK];
+    private final byte[] dSymbols = new byte[MATCHES_PER_BLOCK];
+
+    private final int[] literalCounts = new int[ENCODE_LITERAL_SYMBOLS];
+    private final int[] lCounts = new int[ENCODE_L_SYMBOLS];
+    private final int[] mCounts = new int[ENCODE_M_SYMBOLS];
+    private final int[] dCounts = new int[ENCODE_D_SYMBOLS];
+
+    private final short[] literalFreq = new short[ENCODE_LITERAL_SYMBOLS];
+    private final short[] lFreq = new short[ENCODE_L_SYMBOLS];
+    private final short[] mFreq = new short[ENCODE_M_SYMBOLS];
+    private final short[] dFreq = new short[ENCODE_D_SYMBOLS];
+
+    private final TANSEncoder literalEncoder = new TANSEncoder(ENCODE_LITERAL_SYMBOLS, ENCODE_LITERAL_STATES);
+    private final TANSEncoder lEncoder = new TANSEncoder(ENCODE_L_SYMBOLS, ENCODE_L_STATES);
+    private final TANSEncoder mEncoder = new TANSEncoder(ENCODE_M_SYMBOLS, ENCODE_M_STATES);
+    private final TANSEncoder dEncoder = new TANSEncoder(ENCODE_D_SYMBOLS, ENCODE_D_STATES);
+
+    private final ByteBuffer header = ByteBuffer.allocate(V2_SIZE).order(LITTLE_ENDIAN);
+    private final ByteBuffer literalPayload = ByteBuffer.allocate(LITERAL_PAYLOAD_SIZE).order(LITTLE_ENDIAN);
+    private final ByteBuffer lmdPayload = ByteBuffer.allocate(LMD_PAYLOAD_SIZE).order(LITTLE_ENDIAN);
+
+    private int nLiterals;
+    private int nMatches;
+    private int nRawBytes;
+
+    boolean hasCapacity(int l) {
+        return nMatches < MATCHES_PER_BLOCK && nLiterals + l <= LITERALS_PER_BLOCK;
+    }
+
+    boolean isEmpty() {
+        return nMatches == 0;
+    }
+
+    int nRawBytes() {
+        return nRawBytes;
+    }
+
+    int nBlockBytes() {
+        return header.remaining() + literalPayload.remaining() + lmdPayload.remaining();
+    }
+
+    void push(byte[] src, int pos, int l, int m, int d) {
+        System.arraycopy(src, pos, literals, nLiterals, l);
+        nLiterals += l;
+        lValues[nMatches] = l;
+        mValues[nMatches] = m;
+        dValues[nMatches] = d;
+        nMatches++;
+        nRawBytes += l + m;
+    }
+
+    @Nonnull
+    LZFSEBlockEncoder encode() {
+        // Decoding uses 4 interleaved literal states.
+        while ((nLiterals & 3) != 0) {
+            literals[nLiterals] = literals[nLiterals - 1];
+            nLiterals++;
+        }
+        count();
+
+        TANSEncoder.normalize(literalCounts, literalFreq, ENCODE_LITERAL_STATES);
+        TANSEncoder.normalize(lCounts, lFreq, ENCODE_L_STATES);
+        TANSEncoder.normalize(mCounts, mFreq, ENCODE_M_STATES);
+        TANSEncoder.normalize(dCounts, dFreq, ENCODE_D_STATES);
+
+        literalEncoder.init(literalFreq);
+        lEncoder.init(lFreq);
+        mEncoder.init(mFreq);
+        dEncoder.init(dFreq);
+
+        // Literals, in reverse.
+        literalPayload.clear();
+        BitOutStream out = new BitOutStream(literalPayload);
+        int literalState0 = 0;
+        int literalState1 = 0;
+        int literalState2 = 0;
+        int literalState3 = 0;
+        for (int i = nLiterals - 4; i >= 0; i -= 4) {
+            literalState3 = literalEncoder.encode(literalState3, literals[i + 3] & 0xFF, out);
+            literalState2 = literalEncoder.encode(literalState2, literals[i + 2] & 0xFF, out);
+            literalState1 = literalEncoder.encode(literalState1, literals[i + 1] & 0xFF, out);
+            literalState0 = literalEncoder.encode(literalState0, literals[i + 0] & 0xFF, out);
+            out.flush();
+        }
+        int literalBits = out.finish();
+        int nLiteralPayloadBytes = literalPayload.position();
+        literalPayload.flip();
+
+        // L, M, D, in reverse. Extra bits precede state bits as the decoder reads them in the opposite order.
+        lmdPayload.clear();
+        out = new BitOutStream(lmdPayload);
+        int lState = 0;
+        int mState = 0;
+        int dState = 0;
+        for (int i = nMatches - 1; i >= 0; i--) {
+            int d = dSymbols[i];
+            out.write(dValues[i] - D_BASE_VALUE[d], D_EXTRA_BITS[d]);
+            dState = dEncoder.encode(dState, d, out);
+
+            int m = mSymbols[i];
+            out.write(mValues[i] - M_BASE_VALUE[m], M_EXTRA_BITS[m]);
+            mState = mEncoder.encode(mState, m, out);
+
+            int l = lSymbols[i];
+            out.write(lValues[i] - L_BASE_VALUE[l], L_EXTRA_BITS[l]);
+            lState = lEncoder.encode(lState, l, out);
+
+            out.flush();
+        }
+        int lmdBits = out.finish();
+        int nLmdPayloadBytes = lmdPayload.position();
+        lmdPayload.flip();
+
+        header.clear();
+        header.putInt(COMPRESSEDV2_BLOCK_MAGIC);
+        header.putInt(nRawBytes);
+        header.position(32);
+        writeV2Tables(header, lFreq, mFreq, dFreq, literalFreq);
+        int headerSize = header.position();
+
+        long v0 = nLiterals
+                | (long) nLiteralPayloadBytes << 20
+                | (long) nMatches << 40
+                | (long) (literalBits + 7) << 60;
+        long v1 = literalState0
+                | (long) literalState1 << 10
+                | (long) literalState2 << 20
+                | (long) literalState3 << 30
+                | (long) nLmdPayloadBytes << 40
+                | (long) (lmdBits + 7) << 60;
+        long v2 = headerSize
+                | (long) lState << 32
+                | (long) mState << 42
+                | (long) dState << 52;
+        header.putLong(8, v0);
+        header.putLong(16, v1);
+        header.putLong(24, v2);
+        header.flip();
+
+        return this;
+    }
+
+    void count() {
+        Arrays.fill(literalCounts, 0);
+        Arrays.fill(lCounts, 0);
+        Arrays.fill(mCounts, 0);
+        Arrays.fill(dCounts, 0);
+
+        for (int i = 0; i < nLiterals; i++) {
+            literalCounts[literals[i] & 0xFF]++;
+        }
+
+        // D values of 0 repeat the previous distance, which is reset per block.
+        int previous = -1;
+        for (int i = 0; i < nMatches; i++) {
+            if (dValues[i] == previous) {
+                dValues[i] = 0;
+            } else {
+                previous = dValues[i];
+            }
+            lSymbols[i] = L_SYMBOLS[lValues[i]];
+            mSymbols[i] = M_SYMBOLS[mValues[i]];
+            dSymbols[i] = (byte) dSymbol(dValues[i]);
+            lCounts[lSymbols[i]]++;
+            mCounts[mSymbols[i]]++;
+            dCounts[dSymbols[i]]++;
+        }
+    }
+
+    void write(@WillNotClose WritableByteChannel ch) throws IOException {
+        IO.writeFully(ch, header);
+        IO.writeFully(ch, literalPayload);
+        IO.writeFully(ch, lmdPayload);
+    }
+
+    @Nonnull
+    LZFSEBlockEncoder clear() {
+        nLiterals = 0;
+        nMatches = 0;
+        nRawBytes = 0;
+        header.clear().limit(0);
+        literalPayload.clear().limit(0);
+        lmdPayload.clear().limit(0);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "LZFSEBlockEncoder{"
+                + "nLiterals=" + nLiterals
+                + ", nMatches=" + nMatches
+                + ", nRawBytes=" + nRawBytes
+                + '}';
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.D_BASE_VALUE;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.D_EXTRA_BITS;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.L_BASE_VALUE;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.L_EXTRA_BITS;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.M_BASE_VALUE;
+import static com.github.horrorho.ragingmoose.LZFSEBlockDecoder.M_EXTRA_BITS;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import java.nio.channels.ReadableByteChannel;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Entropy stage of a compressed block. Decodes the literals and the raw L, M, D values of a block up front, without
+ * touching the {@link MatchBuffer}, so that several blocks may be decoded concurrently. Distances are left unresolved,
+ * a zero D value still denotes a repeated distance.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class LZFSEBlockEntropyDecoder implements LZFSEConstants {
+
+    private final LZFSEValueDecoder lValueDecoder;
+    private final LZFSEValueDecoder mValueDecoder;
+    private final LZFSEValueDecoder dValueDecoder;
+
+    private final LZFSELiteralDecoder literalDecoder;
+
+    private byte[] literals = new byte[LITERALS_PER_BLOCK + 64];
+    private int[] lValues = new int[MATCHES_PER_BLOCK];
+    private int[] mValues = new int[MATCHES_PER_BLOCK];
+    private int[] dValues = new int[MATCHES_PER_BLOCK];
+    private int nMatches;
+
+    @Nullable
+    private ByteBuffer bb;
+
+    LZFSEBlockEntropyDecoder() throws LZFSEDecoderException {
+        this.lValueDecoder = new LZFSEValueDecoder(ENCODE_L_STATES);
+        this.mValueDecoder = new LZFSEValueDecoder(ENCODE_M_STATES);
+        this.dValueDecoder = new LZFSEValueDecoder(ENCODE_D_STATES);
+        this.literalDecoder = new LZFSELiteralDecoder(ENCODE_LITERAL_STATES);
+    }
+
+    @Nonnull
+    LZFSEBlockEntropyDecoder decode(LZFSEBlockHeader bh, @WillNotClose ReadableByteChannel ch)
+            throws LZFSEDecoderException, IOException {
+        initArrays(bh.nLiterals(), bh.nMatches());
+
+        lValueDecoder.load(bh.lFreq(), L_EXTRA_BITS, L_BASE_VALUE)
+                .state(bh.lState());
+        mValueDecoder.load(bh.mFreq(), M_EXTRA_BITS, M_BASE_VALUE)
+                .state(bh.mState());
+        dValueDecoder.load(bh.dFreq(), D_EXTRA_BITS, D_BASE_VALUE)
+                .state(bh.dState());
+        literalDecoder.load(bh.literalFreq())
+                .state(bh.literalState0(), bh.literalState1(), bh.literalState2(), bh.literalState3())
+                .nLiteralPayloadBytes(bh.nLiteralPayloadBytes())
+                .nLiterals(bh.nLiterals())
+                .literalBits(bh.literalBits())
+                .decodeInto(ch, literals);
+
+        initBuffer(bh.nLmdPayloadBytes());
+        IO.readFully(ch, bb);
+        BitInStream in = new BitInStream(bb)
+                .init(bh.lmdBits());
+
+        nMatches = bh.nMatches();
+        for (int i = 0; i < nMatches; i++) {
+            in.fill();
+            lValues[i] = lValueDecoder.decode(in);
+            mValues[i] = mValueDecoder.decode(in);
+            dValues[i] = dValueDecoder.decode(in);
+        }
+        return this;
+    }
+
+    byte[] literals() {
+        return literals;
+    }
+
+    int[] lValues() {
+        return lValues;
+    }
+
+    int[] mValues() {
+        return mValues;
+    }
+
+    int[] dValues() {
+        return dValues;
+    }
+
+    int nMatches() {
+        return nMatches;
+    }
+
+    void initArrays(int nLiterals, int nMatches) {
+        if (literals.length < nLiterals + 64) {
+            literals = new byte[nLiterals + 64];
+        }
+        if (lValues.length < nMatches) {
+            lValues = new int[nMatches];
+            mValues = new int[nMatches];
+            dValues = new int[nMatches];
+        }
+    }
+
+    void initBuffer(int nLmdPayloadBytes) {
+        int capacity = 32 + nLmdPayloadBytes;
+        if (bb == null || bb.capacity() < capacity) {
+            bb = ByteBuffer.allocate(capacity).order(LITTLE_ENDIAN);
+        } else {
+            bb.limit(capacity);
+        }
+        bb.position(32);
+    }
+
+    @Override
+    public String toString() {
+        return "LZFSEBlockEntropyDecoder{"
+                + "lValueDecoder=" + lValueDecoder
+                + ", mValueDecoder=" + mValueDecoder
+                + ", dValueDecoder=" + dValueDecoder
+                + ", literalDecoder=" + literalDecoder
+                + ", literals.length=" + literals.length
+                + ", nMatches=" + nMatches
+                + '}';
+    }
+}
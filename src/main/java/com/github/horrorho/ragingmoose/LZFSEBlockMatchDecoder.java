@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Match stage of a compressed block. Replays the literals and L, M, D values previously decoded by a
+ * {@link LZFSEBlockEntropyDecoder} against the shared {@link MatchBuffer}.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class LZFSEBlockMatchDecoder extends LMDBlockDecoder {
+
+    @Nullable
+    private LZFSEBlockEntropyDecoder entropy;
+    private int pos;
+    private int index;
+
+    LZFSEBlockMatchDecoder(MatchBuffer mb) {
+        super(mb);
+    }
+
+    @Nonnull
+    LZFSEBlockMatchDecoder init(LZFSEBlockEntropyDecoder entropy) {
+        this.entropy = entropy;
+        pos = 0;
+        index = 0;
+        return this;
+    }
+
+    @Override
+    byte literal() {
+        return entropy.literals()[pos++];
+    }
+
+    @Override
+    boolean lmd() {
+        if (index < entropy.nMatches()) {
+            l(entropy.lValues()[index]);
+            m(entropy.mValues()[index]);
+            d(entropy.dValues()[index]);
+            index++;
+            return true;
+
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LZFSEBlockMatchDecoder{" + "entropy=" + entropy + ", pos=" + pos + ", index=" + index + '}';
+    }
+}
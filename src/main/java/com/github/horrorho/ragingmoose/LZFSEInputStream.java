@@ -129,6 +129,11 @@ public class LZFSEInputStream extends InputStream implements LZFSEConstants {
         }
     }
 
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
     void next() throws IOException {
         int magic = magic();
         switch (magic) {
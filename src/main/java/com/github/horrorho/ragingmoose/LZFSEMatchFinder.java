@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Hash table match finder. Each bucket holds the {@link LZFSEConstants#ENCODE_HASH_WIDTH} most recent positions
+ * sharing a 4 byte prefix hash.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+class LZFSEMatchFinder implements LZFSEConstants {
+
+    static final int MIN_MATCH = 4;
+
+    static int value(byte[] src, int pos) {
+        return src[pos] & 0xFF
+                | (src[pos + 1] & 0xFF) << 8
+                | (src[pos + 2] & 0xFF) << 16
+                | (src[pos + 3] & 0xFF) << 24;
+    }
+
+    static int hash(int value) {
+        return value * 0x9E3779B1 >>> 32 - ENCODE_HASH_BITS;
+    }
+
+    private final int[] positions = new int[ENCODE_HASH_VALUES * ENCODE_HASH_WIDTH];
+    private final int[] values = new int[ENCODE_HASH_VALUES * ENCODE_HASH_WIDTH];
+
+    private int matchPos;
+    private int matchLength;
+    private int matchDistance;
+
+    LZFSEMatchFinder() {
+        clear();
+    }
+
+    @Nonnull
+    LZFSEMatchFinder clear() {
+        Arrays.fill(positions, -1);
+        return this;
+    }
+
+    @Nonnull
+    LZFSEMatchFinder shift(int n) {
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = positions[i] < n
+                    ? -1
+                    : positions[i] - n;
+        }
+        return this;
+    }
+
+    /**
+     * Inserts the specified position and searches for the longest match. Matches are extended backwards up to
+     * {@code literalPos}.
+     *
+     * @param src source buffer
+     * @param pos position, {@code pos + MIN_MATCH <= end}
+     * @param literalPos start of pending literals
+     * @param end end of source data
+     * @param floor lowest referable position
+     * @param maxDistance maximum match distance
+     * @return true if a match was found
+     */
+    boolean find(byte[] src, int pos, int literalPos, int end, int floor, int maxDistance) {
+        int value = value(src, pos);
+        int bucket = hash(value) * ENCODE_HASH_WIDTH;
+
+        matchLength = 0;
+        for (int i = bucket, n = bucket + ENCODE_HASH_WIDTH; i < n; i++) {
+            int candidate = positions[i];
+            if (candidate < floor || pos - candidate > maxDistance || values[i] != value) {
+                continue;
+            }
+            int length = MIN_MATCH;
+            while (pos + length < end && src[candidate + length] == src[pos + length]) {
+                length++;
+            }
+            if (length > matchLength) {
+                matchPos = pos;
+                matchLength = length;
+                matchDistance = pos - candidate;
+                if (length >= ENCODE_GOOD_MATCH) {
+                    break;
+                }
+            }
+        }
+        insert(bucket, pos, value);
+
+        if (matchLength == 0) {
+            return false;
+        }
+        while (matchPos > literalPos
+                && matchPos - matchDistance > floor
+                && src[matchPos - 1] == src[matchPos - 1 - matchDistance]) {
+            matchPos--;
+            matchLength++;
+        }
+        return true;
+    }
+
+    void insert(byte[] src, int pos) {
+        int value = value(src, pos);
+        insert(hash(value) * ENCODE_HASH_WIDTH, pos, value);
+    }
+
+    void insert(int bucket, int pos, int value) {
+        for (int i = bucket + ENCODE_HASH_WIDTH - 1; i > bucket; i--) {
+            positions[i] = positions[i - 1];
+            values[i] = values[i - 1];
+        }
+        positions[bucket] = pos;
+        values[bucket] = value;
+    }
+
+    int matchPos() {
+        return matchPos;
+    }
+
+    int matchLength() {
+        return matchLength;
+    }
+
+    int matchDistance() {
+        return matchDistance;
+    }
+
+    @Override
+    public String toString() {
+        return "LZFSEMatchFinder{"
+                + "matchPos=" + matchPos
+                + ", matchLength=" + matchLength
+                + ", matchDistance=" + matchDistance
+                + '}';
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * LZFSE encoder. Counterpart to {@link LZFSEInputStream}.
+ * <p>
+ * Inputs below {@link LZFSEConstants#ENCODE_LZVN_THRESHOLD} bytes are encoded as a single LZVN block. Larger inputs
+ * are encoded as compressed v2 blocks. Blocks that fail to compress are stored uncompressed.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class LZFSEOutputStream extends OutputStream implements LZFSEConstants {
+
+    private static final int HISTORY_SIZE = MATCH_BUFFER_SIZE;
+    private static final int WINDOW_SIZE = 4 * MATCH_BUFFER_SIZE;
+    private static final int SKIP_SHIFT = 6;
+
+    private final ByteBuffer word = ByteBuffer.allocate(8).order(LITTLE_ENDIAN);
+    private final byte[] buf = new byte[HISTORY_SIZE + WINDOW_SIZE];
+    private final LZFSEMatchFinder finder = new LZFSEMatchFinder();
+    private final WritableByteChannel ch;
+
+    @Nullable
+    private LZFSEBlockEncoder lzfseBlockEncoder;
+    @Nullable
+    private LZVNBlockEncoder lzvnBlockEncoder;
+
+    private int end;
+    private int literalPos;
+    private int blockPos;
+    private int floor;
+
+    private boolean streaming = false;
+    private boolean finished = false;
+
+    public LZFSEOutputStream(OutputStream os) {
+        this(Channels.newChannel(os));
+    }
+
+    public LZFSEOutputStream(WritableByteChannel ch) {
+        this.ch = Objects.requireNonNull(ch);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        check();
+        try {
+            if (end == buf.length) {
+                encode();
+            }
+            buf[end++] = (byte) b;
+
+        } catch (RuntimeException ex) {
+            throw new LZFSEEncoderException("internal error", ex);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len + off > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        check();
+        try {
+            while (len > 0) {
+                if (end == buf.length) {
+                    encode();
+                }
+                int n = Math.min(len, buf.length - end);
+                System.arraycopy(b, off, buf, end, n);
+                end += n;
+                off += n;
+                len -= n;
+            }
+        } catch (RuntimeException ex) {
+            throw new LZFSEEncoderException("internal error", ex);
+        }
+    }
+
+    /**
+     * Encodes any buffered data and writes the end of stream block without closing the underlying channel.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        try {
+            if (streaming || end >= ENCODE_LZVN_THRESHOLD) {
+                encode();
+            } else if (end > 0) {
+                small();
+            }
+            magic(ENDOFSTREAM_BLOCK_MAGIC);
+            finished = true;
+
+        } catch (RuntimeException ex) {
+            throw new LZFSEEncoderException("internal error", ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            ch.close();
+        }
+    }
+
+    void check() throws IOException {
+        if (finished) {
+            throw new IOException("stream finished");
+        }
+    }
+
+    void encode() throws IOException {
+        int pos = literalPos;
+        while (pos + LZFSEMatchFinder.MIN_MATCH <= end) {
+            if (finder.find(buf, pos, literalPos, end, floor, ENCODE_MAX_D_VALUE)) {
+                int matchPos = finder.matchPos();
+                int matchEnd = matchPos + finder.matchLength();
+                match(matchPos - literalPos, finder.matchLength(), finder.matchDistance());
+                for (int i = pos + 1, n = Math.min(matchEnd, end - LZFSEMatchFinder.MIN_MATCH + 1); i < n; i++) {
+                    finder.insert(buf, i);
+                }
+                pos = matchEnd;
+            } else {
+                // Accelerate through incompressible runs.
+                pos += 1 + (pos - literalPos >>> SKIP_SHIFT);
+            }
+        }
+        literals(end - literalPos);
+        block();
+        slide();
+        streaming = true;
+    }
+
+    void match(int l, int m, int d) throws IOException {
+        while (l > ENCODE_MAX_L_VALUE) {
+            lmd(ENCODE_MAX_L_VALUE, 0, 1);
+            l -= ENCODE_MAX_L_VALUE;
+        }
+        while (m > ENCODE_MAX_M_VALUE) {
+            lmd(l, ENCODE_MAX_M_VALUE, d);
+            m -= ENCODE_MAX_M_VALUE;
+            l = 0;
+        }
+        lmd(l, m, d);
+    }
+
+    void literals(int n) throws IOException {
+        while (n > 0) {
+            int l = Math.min(n, ENCODE_MAX_L_VALUE);
+            lmd(l, 0, 1);
+            n -= l;
+        }
+    }
+
+    void lmd(int l, int m, int d) throws IOException {
+        LZFSEBlockEncoder encoder = lzfseBlockEncoder();
+        if (!encoder.hasCapacity(l)) {
+            block();
+        }
+        if (m > 0 && literalPos + l - d < floor) {
+            // Match references history that was stored as a raw block and is not visible to the decoder.
+            literals(l + m);
+            return;
+        }
+        encoder.push(buf, literalPos, l, m, d);
+        literalPos += l + m;
+    }
+
+    void block() throws IOException {
+        LZFSEBlockEncoder encoder = lzfseBlockEncoder();
+        if (encoder.isEmpty()) {
+            return;
+        }
+        int nRawBytes = encoder.nRawBytes();
+        if (encoder.encode().nBlockBytes() < nRawBytes + 8) {
+            encoder.write(ch);
+        } else {
+            raw(blockPos, nRawBytes);
+            floor = blockPos + nRawBytes;
+        }
+        blockPos += nRawBytes;
+        encoder.clear();
+    }
+
+    void small() throws IOException {
+        LZVNBlockEncoder encoder = lzvnBlockEncoder();
+        if (encoder.encode(buf, 0, end, end + 8 - 1)) {
+            encoder.write(ch);
+        } else {
+            raw(0, end);
+        }
+    }
+
+    void raw(int pos, int n) throws IOException {
+        word.clear();
+        word.putInt(UNCOMPRESSED_BLOCK_MAGIC)
+                .putInt(n)
+                .flip();
+        IO.writeFully(ch, word);
+        IO.writeFully(ch, ByteBuffer.wrap(buf, pos, n));
+    }
+
+    void magic(int magic) throws IOException {
+        word.clear();
+        word.putInt(magic)
+                .flip();
+        IO.writeFully(ch, word);
+    }
+
+    void slide() {
+        int shift = end - HISTORY_SIZE;
+        if (shift <= 0) {
+            return;
+        }
+        System.arraycopy(buf, shift, buf, 0, HISTORY_SIZE);
+        finder.shift(shift);
+        end -= shift;
+        literalPos -= shift;
+        blockPos -= shift;
+        floor = Math.max(0, floor - shift);
+    }
+
+    @Nonnull
+    LZFSEBlockEncoder lzfseBlockEncoder() {
+        if (lzfseBlockEncoder == null) {
+            lzfseBlockEncoder = new LZFSEBlockEncoder();
+        }
+        return lzfseBlockEncoder;
+    }
+
+    @Nonnull
+    LZVNBlockEncoder lzvnBlockEncoder() {
+        if (lzvnBlockEncoder == null) {
+            lzvnBlockEncoder = new LZVNBlockEncoder(finder);
+        }
+        return lzvnBlockEncoder;
+    }
+}
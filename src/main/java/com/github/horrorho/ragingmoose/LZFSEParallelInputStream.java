@@ -0,0 +1,354 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import static java.lang.Integer.toHexString;
+import java.nio.ByteBuffer;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Two stage parallel decoder. Compressed block payloads are read ahead and their entropy stage (literals and L, M, D
+ * values) is decoded concurrently on the supplied executor. The match stage is inherently sequential and is applied
+ * in stream order on the reading thread. LZVN and raw blocks are read ahead but otherwise decoded sequentially.
+ * <p>
+ * Up to {@code nBlocks} blocks are held in flight, each block costing approximately 200 KB.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public class LZFSEParallelInputStream extends InputStream implements LZFSEConstants {
+
+    private final ByteBuffer word = ByteBuffer.allocate(4).order(LITTLE_ENDIAN);
+    private final ArrayDeque<Block> blocks = new ArrayDeque<>();
+    private final ArrayDeque<Block> free = new ArrayDeque<>();
+    private final ReadableByteChannel ch;
+    private final ExecutorService executor;
+    private final int nBlocks;
+
+    private boolean eos = false;
+    private boolean eosBlock = false;
+
+    @Nullable
+    private MatchBuffer mb;
+    @Nullable
+    private LZFSEBlockMatchDecoder lzfseBlockDecoder;
+    @Nullable
+    private LZVNBlockDecoder lzvnBlockDecoder;
+    @Nullable
+    private RawBlockDecoder rawBlockDecoder;
+
+    @Nullable
+    private Block block;
+    @Nullable
+    private BlockDecoder decoder;
+
+    public LZFSEParallelInputStream(InputStream is, ExecutorService executor, int nBlocks) {
+        this(Channels.newChannel(is), executor, nBlocks);
+    }
+
+    public LZFSEParallelInputStream(ReadableByteChannel ch, ExecutorService executor, int nBlocks) {
+        if (nBlocks < 1) {
+            throw new IllegalArgumentException("bad nBlocks: " + nBlocks);
+        }
+        this.ch = Objects.requireNonNull(ch);
+        this.executor = Objects.requireNonNull(executor);
+        this.nBlocks = nBlocks;
+    }
+
+    @Override
+    public int available() {
+        return eos ? 0 : 1;
+    }
+
+    @Override
+    public int read() throws IOException {
+        try {
+            while (!eos) {
+                if (decoder == null) {
+                    next();
+                } else {
+                    int b = decoder.read();
+                    if (b == -1) {
+                        decoder = null;
+                    } else {
+                        return b;
+                    }
+                }
+            }
+            return -1;
+
+        } catch (RuntimeException ex) {
+            throw new LZFSEDecoderException("internal error", ex);
+        }
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len + off > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        try {
+            while (!eos) {
+                if (decoder == null) {
+                    next();
+                } else {
+                    int n = decoder.read(b, off, len);
+                    if (n == 0) {
+                        decoder = null;
+                    } else {
+                        return n;
+                    }
+                }
+            }
+            return -1;
+
+        } catch (RuntimeException ex) {
+            throw new LZFSEDecoderException("internal error", ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        blocks.stream()
+                .map(u -> u.future)
+                .filter(Objects::nonNull)
+                .forEach(u -> u.cancel(false));
+        blocks.clear();
+        eos = true;
+        ch.close();
+    }
+
+    void next() throws IOException {
+        if (block != null) {
+            free.add(block);
+            block = null;
+        }
+        fill();
+
+        Block b = blocks.poll();
+        switch (b.magic) {
+            case COMPRESSEDV2_BLOCK_MAGIC:
+            case COMPRESSEDV1_BLOCK_MAGIC:
+                decoder = lzfseBlockDecoder()
+                        .init(await(b));
+                break;
+            case COMPRESSEDLZVN_BLOCK_MAGIC:
+                decoder = lzvnBlockDecoder()
+                        .init(b.lzvnBlockHeader(), b.payload());
+                break;
+            case UNCOMPRESSED_BLOCK_MAGIC:
+                decoder = rawBlockDecoder()
+                        .init(b.rawBlockHeader(), b.payload());
+                break;
+            case ENDOFSTREAM_BLOCK_MAGIC:
+                eos = true;
+                decoder = null;
+                break;
+            default:
+                throw new IllegalStateException("bad magic: 0x" + toHexString(b.magic));
+        }
+        block = b;
+    }
+
+    void fill() throws IOException {
+        while (!eosBlock && blocks.size() < nBlocks) {
+            Block b = free.isEmpty()
+                    ? new Block()
+                    : free.poll();
+            b.magic = magic();
+            switch (b.magic) {
+                case COMPRESSEDV2_BLOCK_MAGIC:
+                    b.lzfseBlockHeader().loadV2(ch);
+                    lzfseBlock(b);
+                    break;
+                case COMPRESSEDV1_BLOCK_MAGIC:
+                    b.lzfseBlockHeader().loadV1(ch);
+                    lzfseBlock(b);
+                    break;
+                case COMPRESSEDLZVN_BLOCK_MAGIC:
+                    b.load(ch, b.lzvnBlockHeader().load(ch).nPayloadBytes());
+                    break;
+                case UNCOMPRESSED_BLOCK_MAGIC:
+                    b.load(ch, b.rawBlockHeader().load(ch).nRawBytes());
+                    break;
+                case ENDOFSTREAM_BLOCK_MAGIC:
+                    eosBlock = true;
+                    break;
+                default:
+                    throw new LZFSEDecoderException("bad block: 0x" + toHexString(b.magic));
+            }
+            blocks.add(b);
+        }
+    }
+
+    void lzfseBlock(Block b) throws IOException {
+        LZFSEBlockHeader bh = b.lzfseBlockHeader;
+        b.load(ch, bh.nLiteralPayloadBytes() + bh.nLmdPayloadBytes());
+        LZFSEBlockEntropyDecoder entropy = b.lzfseBlockEntropyDecoder();
+        ReadableByteChannel payload = b.payload();
+        b.future = executor.submit(() -> entropy.decode(bh, payload));
+    }
+
+    @Nonnull
+    LZFSEBlockEntropyDecoder await(Block b) throws IOException {
+        try {
+            return b.future.get();
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new LZFSEDecoderException("internal error", cause);
+
+        } finally {
+            b.future = null;
+        }
+    }
+
+    @Nonnull
+    LZFSEBlockMatchDecoder lzfseBlockDecoder() {
+        if (lzfseBlockDecoder == null) {
+            lzfseBlockDecoder = new LZFSEBlockMatchDecoder(matchBuffer());
+        }
+        return lzfseBlockDecoder;
+    }
+
+    @Nonnull
+    LZVNBlockDecoder lzvnBlockDecoder() {
+        if (lzvnBlockDecoder == null) {
+            lzvnBlockDecoder = new LZVNBlockDecoder(matchBuffer());
+        }
+        return lzvnBlockDecoder;
+    }
+
+    @Nonnull
+    RawBlockDecoder rawBlockDecoder() {
+        if (rawBlockDecoder == null) {
+            rawBlockDecoder = new RawBlockDecoder();
+        }
+        return rawBlockDecoder;
+    }
+
+    @Nonnull
+    MatchBuffer matchBuffer() {
+        if (mb == null) {
+            mb = new MatchBuffer(MATCH_BUFFER_SIZE);
+        }
+        return mb;
+    }
+
+    int magic() throws IOException {
+        word.rewind();
+        IO.readFully(ch, word).rewind();
+        return word.getInt();
+    }
+
+    @NotThreadSafe
+    static final class Block {
+
+        int magic;
+        byte[] bs = new byte[0];
+        int length;
+
+        @Nullable
+        LZFSEBlockHeader lzfseBlockHeader;
+        @Nullable
+        LZVNBlockHeader lzvnBlockHeader;
+        @Nullable
+        RawBlockHeader rawBlockHeader;
+        @Nullable
+        LZFSEBlockEntropyDecoder lzfseBlockEntropyDecoder;
+        @Nullable
+        Future<LZFSEBlockEntropyDecoder> future;
+
+        void load(ReadableByteChannel ch, int length) throws IOException {
+            if (bs.length < length) {
+                bs = new byte[length];
+            }
+            IO.readFully(ch, ByteBuffer.wrap(bs, 0, length));
+            this.length = length;
+        }
+
+        @Nonnull
+        ReadableByteChannel payload() {
+            return Channels.newChannel(new ByteArrayInputStream(bs, 0, length));
+        }
+
+        @Nonnull
+        LZFSEBlockHeader lzfseBlockHeader() {
+            if (lzfseBlockHeader == null) {
+                lzfseBlockHeader = new LZFSEBlockHeader();
+            }
+            return lzfseBlockHeader;
+        }
+
+        @Nonnull
+        LZVNBlockHeader lzvnBlockHeader() {
+            if (lzvnBlockHeader == null) {
+                lzvnBlockHeader = new LZVNBlockHeader();
+            }
+            return lzvnBlockHeader;
+        }
+
+        @Nonnull
+        RawBlockHeader rawBlockHeader() {
+            if (rawBlockHeader == null) {
+                rawBlockHeader = new RawBlockHeader();
+            }
+            return rawBlockHeader;
+        }
+
+        @Nonnull
+        LZFSEBlockEntropyDecoder lzfseBlockEntropyDecoder() throws LZFSEDecoderException {
+            if (lzfseBlockEntropyDecoder == null) {
+                lzfseBlockEntropyDecoder = new LZFSEBlockEntropyDecoder();
+            }
+            return lzfseBlockEntropyDecoder;
+        }
+    }
+}
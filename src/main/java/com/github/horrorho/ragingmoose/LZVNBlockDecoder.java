@@ -95,6 +95,7 @@ final class LZVNBlockDecoder extends LMDBlockDecoder {
         l = 0;
         m = 0;
         d = -1;
+        neos = true;
 
         return this;
     }
@@ -173,7 +174,7 @@ final class LZVNBlockDecoder extends LMDBlockDecoder {
 
     boolean medD(int opc) {
         // 101LLMMM DDDDDDMM DDDDDDDD LITERAL
-        int s = bb.getShort();
+        int s = bb.getShort() & 0xFFFF;
         l(opc >>> 3 & 0x03);
         m(((opc & 0x7) << 2 | (s & 0x03)) + 3);
         d(s >>> 2);
@@ -0,0 +1,214 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Encodes small inputs as a single LZVN block. Counterpart to {@link LZVNBlockDecoder}.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+final class LZVNBlockEncoder implements LZFSEConstants {
+
+    private static final int MAX_D = 0xFFFF;
+    private static final int MAX_SML_D = 0x05FF;
+    private static final int MAX_MED_D = 0x3FFF;
+    private static final int MAX_MED_M = 34;
+    private static final int MAX_LRG_L = 16 + 0xFF;
+    private static final int MAX_LRG_M = 16 + 0xFF;
+
+    // Maximum match length encodable alongside 0 - 3 literals in sml/ pre/ lrg distance opcodes.
+    private static final int[] MAX_M = {10, 8, 6, 4};
+
+    private static final int HEADER_SIZE = 12;
+
+    private final LZFSEMatchFinder finder;
+    private ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE).order(LITTLE_ENDIAN);
+    private int d;
+
+    LZVNBlockEncoder(LZFSEMatchFinder finder) {
+        this.finder = Objects.requireNonNull(finder);
+    }
+
+    /**
+     * Encodes src[from, to).
+     *
+     * @param src source buffer
+     * @param from start position
+     * @param to end position
+     * @param limit block size limit
+     * @return false if the encoded block would not be smaller than limit
+     */
+    boolean encode(byte[] src, int from, int to, int limit) {
+        if (limit < HEADER_SIZE + 8) {
+            return false;
+        }
+        initBuffer(limit);
+        bb.position(HEADER_SIZE);
+        finder.clear();
+        d = -1;
+
+        int literalPos = from;
+        int pos = from;
+        while (pos + LZFSEMatchFinder.MIN_MATCH <= to) {
+            if (finder.find(src, pos, literalPos, to, from, MAX_D)) {
+                int matchPos = finder.matchPos();
+                int matchEnd = matchPos + finder.matchLength();
+                if (bb.remaining() < size(matchPos - literalPos) + 3 + 2 * (finder.matchLength() / MAX_LRG_M + 1)) {
+                    return false;
+                }
+                match(src, literalPos, matchPos - literalPos, finder.matchLength(), finder.matchDistance());
+                for (int i = pos + 1, n = Math.min(matchEnd, to - LZFSEMatchFinder.MIN_MATCH + 1); i < n; i++) {
+                    finder.insert(src, i);
+                }
+                literalPos = matchEnd;
+                pos = matchEnd;
+            } else {
+                pos++;
+            }
+        }
+        if (bb.remaining() < size(to - literalPos) + 8) {
+            return false;
+        }
+        literals(src, literalPos, to - literalPos);
+        eos();
+
+        int nPayloadBytes = bb.position() - HEADER_SIZE;
+        bb.putInt(0, COMPRESSEDLZVN_BLOCK_MAGIC);
+        bb.putInt(4, to - from);
+        bb.putInt(8, nPayloadBytes);
+        bb.flip();
+        return true;
+    }
+
+    static int size(int n) {
+        // Upper bound, literal opcodes and literal bytes.
+        return n + 2 * (n / MAX_LRG_L + 1);
+    }
+
+    void write(@WillNotClose WritableByteChannel ch) throws IOException {
+        IO.writeFully(ch, bb);
+    }
+
+    void initBuffer(int capacity) {
+        if (bb.capacity() < capacity) {
+            bb = ByteBuffer.allocate(capacity).order(LITTLE_ENDIAN);
+        } else {
+            bb.limit(capacity);
+        }
+        bb.position(0);
+    }
+
+    void match(byte[] src, int pos, int l, int m, int d) {
+        if (l > 3) {
+            literals(src, pos, l);
+            pos += l;
+            l = 0;
+        }
+
+        int m0;
+        if (d == this.d) {
+            if (l == 0) {
+                matches(m);
+                return;
+            }
+            // LLMMM110
+            m0 = Math.min(m, MAX_M[l]);
+            bb.put((byte) (l << 6 | m0 - 3 << 3 | 0x06));
+
+        } else if (d <= MAX_SML_D) {
+            // LLMMMDDD DDDDDDDD
+            m0 = Math.min(m, MAX_M[l]);
+            bb.put((byte) (l << 6 | m0 - 3 << 3 | d >>> 8));
+            bb.put((byte) d);
+
+        } else if (d <= MAX_MED_D) {
+            // 101LLMMM DDDDDDMM DDDDDDDD
+            m0 = Math.min(m, MAX_MED_M);
+            bb.put((byte) (0xA0 | l << 3 | m0 - 3 >>> 2));
+            bb.putShort((short) (d << 2 | m0 - 3 & 0x03));
+
+        } else {
+            // LLMMM111 DDDDDDDD DDDDDDDD
+            m0 = Math.min(m, MAX_M[l]);
+            bb.put((byte) (l << 6 | m0 - 3 << 3 | 0x07));
+            bb.putShort((short) d);
+        }
+        bb.put(src, pos, l);
+        this.d = d;
+        matches(m - m0);
+    }
+
+    void literals(byte[] src, int pos, int n) {
+        while (n > 0) {
+            int l = Math.min(n, MAX_LRG_L);
+            if (l < 16) {
+                // 1110LLLL
+                bb.put((byte) (0xE0 | l));
+            } else {
+                // 11100000 LLLLLLLL
+                bb.put((byte) 0xE0);
+                bb.put((byte) (l - 16));
+            }
+            bb.put(src, pos, l);
+            pos += l;
+            n -= l;
+        }
+    }
+
+    void matches(int n) {
+        while (n > 0) {
+            int m = Math.min(n, MAX_LRG_M);
+            if (m < 16) {
+                // 1111MMMM
+                bb.put((byte) (0xF0 | m));
+            } else {
+                // 11110000 MMMMMMMM
+                bb.put((byte) 0xF0);
+                bb.put((byte) (m - 16));
+            }
+            n -= m;
+        }
+    }
+
+    void eos() {
+        // 00000110 + padding
+        bb.putLong(0x06);
+    }
+
+    @Override
+    public String toString() {
+        return "LZVNBlockEncoder{" + "bb=" + bb + ", d=" + d + '}';
+    }
+}
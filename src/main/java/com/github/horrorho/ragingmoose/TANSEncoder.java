@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * tANS - asymmetric numeral systems tabled variant, encoder. Counterpart to {@link TANS}.
+ * <p>
+ * States are encoded in reverse. The final encoder state is the initial decoder state.
+ *
+ * @author Ayesha
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+final class TANSEncoder {
+
+    static void normalize(int[] counts, short[] freq, int nStates) {
+        long total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long step = total == 0
+                ? 0
+                : (1L << 31) / total;
+        int shift = Integer.numberOfLeadingZeros(nStates) - 1;
+
+        int remaining = nStates;
+        int max = 0;
+        int maxSymbol = 0;
+        for (int i = 0; i < counts.length; i++) {
+            int f = (int) ((counts[i] * step >>> shift) + 1 >>> 1);
+            if (f == 0 && counts[i] != 0) {
+                f = 1;
+            }
+            freq[i] = (short) f;
+            remaining -= f;
+            if (f > max) {
+                max = f;
+                maxSymbol = i;
+            }
+        }
+
+        if (-remaining < max >>> 2) {
+            freq[maxSymbol] += remaining;
+        } else {
+            adjust(freq, -remaining);
+        }
+    }
+
+    static void adjust(short[] freq, int overrun) {
+        for (int shift = 3; overrun != 0; shift--) {
+            for (int i = 0; i < freq.length && overrun != 0; i++) {
+                if (freq[i] > 1) {
+                    int n = Math.min(freq[i] - 1 >>> shift, overrun);
+                    freq[i] -= n;
+                    overrun -= n;
+                }
+            }
+        }
+    }
+
+    private final int nStates;
+    private final int[] s0;
+    private final int[] k;
+    private final int[] delta0;
+    private final int[] delta1;
+
+    TANSEncoder(int nSymbols, int nStates) {
+        this.nStates = nStates;
+        this.s0 = new int[nSymbols];
+        this.k = new int[nSymbols];
+        this.delta0 = new int[nSymbols];
+        this.delta1 = new int[nSymbols];
+    }
+
+    @Nonnull
+    TANSEncoder init(short[] freq) {
+        int nZero = Integer.numberOfLeadingZeros(nStates);
+        for (int i = 0, offset = 0; i < freq.length; i++) {
+            int f = freq[i];
+            if (f == 0) {
+                continue;
+            }
+            int n = Integer.numberOfLeadingZeros(f) - nZero;
+            s0[i] = (f << n) - nStates;
+            k[i] = n;
+            delta0[i] = offset - f + (nStates >>> n);
+            delta1[i] = n == 0
+                    ? 0
+                    : offset - f + (nStates >>> n - 1);
+            offset += f;
+        }
+        return this;
+    }
+
+    int encode(int state, int symbol, BitOutStream out) {
+        int nBits;
+        int delta;
+        if (state >= s0[symbol]) {
+            nBits = k[symbol];
+            delta = delta0[symbol];
+        } else {
+            nBits = k[symbol] - 1;
+            delta = delta1[symbol];
+        }
+        out.write(state & (1 << nBits) - 1, nBits);
+        return delta + (state >>> nBits);
+    }
+
+    @Override
+    public String toString() {
+        return "TANSEncoder{" + "nStates=" + nStates + ", nSymbols=" + s0.length + '}';
+    }
+}
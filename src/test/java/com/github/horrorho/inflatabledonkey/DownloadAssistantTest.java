@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.data.backup.AssetFactory;
+import com.github.horrorho.inflatabledonkey.pcs.zone.PZFactory;
+import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * DownloadAssistantTest.
+ *
+ * @author Ahseya
+ */
+public class DownloadAssistantTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    static Asset asset(int n) {
+        CloudKit.Record record = CloudKit.Record.newBuilder()
+                .setRecordIdentifier(CloudKit.RecordIdentifier.newBuilder()
+                        .setValue(CloudKit.Identifier.newBuilder().setName("F:uuid:aGFzaA==:" + n + ":1")))
+                .build();
+        return AssetFactory.from(record, "domain", PZFactory.instance().create(Collections.emptyList())).get();
+    }
+
+    @Test
+    public void testPagesExceedSlots() throws Exception {
+        // Pages are streamed from the pool's sole worker, as CloudKit stream consumers are.
+        ForkJoinPool pool = new ForkJoinPool(1);
+        AtomicInteger batches = new AtomicInteger();
+        DownloadAssistant assistant = new DownloadAssistant(
+                (client, u) -> Collections.singletonList(u),
+                new KeyBagManager((client, u) -> Optional.empty()),
+                pool,
+                (client, assets, consumer) -> batches.addAndGet(assets.size()),
+                folder.getRoot().toPath());
+        try (CloseableHttpClient httpClient = HttpClients.createMinimal()) {
+            DownloadAssistant.Session session = assistant.session(httpClient, Paths.get("snapshot"));
+            int pages = 16;
+            pool.submit(() -> {
+                for (int i = 1; i <= pages; i++) {
+                    session.accept(Collections.singleton(asset(i)));
+                }
+            }).get(10, TimeUnit.SECONDS);
+            session.await();
+            assertThat(batches.get(), is(pages));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
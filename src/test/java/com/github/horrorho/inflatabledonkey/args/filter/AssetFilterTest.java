@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.args.filter;
+
+import com.github.horrorho.inflatabledonkey.data.backup.AssetID;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.function.Predicate;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * AssetFilterTest. Size limits are in KiB, AssetID sizes in bytes.
+ *
+ * @author Ahseya
+ */
+@RunWith(JUnitParamsRunner.class)
+public class AssetFilterTest {
+
+    static AssetFilter sizeFilter(Optional<Integer> sizeMax, Optional<Integer> sizeMin) {
+        return new AssetFilter(Optional.empty(), Optional.empty(), Collections.emptyList(), Collections.emptyList(),
+                sizeMax, sizeMin, Optional.empty(), Optional.empty());
+    }
+
+    static Optional<Integer> kib(int kib) {
+        return kib < 0
+                ? Optional.empty()
+                : Optional.of(kib);
+    }
+
+    static AssetID file(long size) {
+        return AssetID.from("F:uuid:aGFzaA==:" + size + ":1").get();
+    }
+
+    static AssetID directory() {
+        return AssetID.from("F:uuid:aGFzaA==:D").get();
+    }
+
+    @Test
+    @Parameters({
+        // sizeMax KiB | sizeMin KiB | size bytes | expected, -1 no limit
+        "-1, -1, 1, true",
+        "1, -1, 1023, true",
+        "1, -1, 1024, true",
+        "1, -1, 1025, false",
+        "-1, 1, 1023, false",
+        "-1, 1, 1024, true",
+        "-1, 1, 1025, true",
+        "2, 1, 1023, false",
+        "2, 1, 2048, true",
+        "2, 1, 2049, false",
+        "2097152, -1, 2147483649, false",
+        "2097152, -1, 2147483648, true"
+    })
+    public void testSize(int sizeMax, int sizeMin, long size, boolean expected) {
+        AssetFilter filter = sizeFilter(kib(sizeMax), kib(sizeMin));
+        assertThat(filter.filterAssetIDSize(file(size)), is(expected));
+        assertThat(filter.filterSize(size), is(expected));
+    }
+
+    @Test
+    @Parameters({
+        "-1, 1",
+        "1, -1",
+        "1, 1",
+        "0, -1"
+    })
+    public void testSizeZero(int sizeMax, int sizeMin) {
+        // Directories and empty files are deferred to the attribute size.
+        AssetFilter filter = sizeFilter(kib(sizeMax), kib(sizeMin));
+        assertTrue(filter.filterAssetIDSize(file(0)));
+        assertTrue(filter.filterAssetIDSize(directory()));
+        assertThat(filter.filterSize(0), is(sizeMin <= 0));
+    }
+
+    @Test
+    public void testAssetIDAgreesWithAttributeSize() {
+        AssetFilter filter = sizeFilter(Optional.of(4), Optional.of(2));
+        for (long size = 1; size <= 5 * 1024; size++) {
+            assertThat("size: " + size, filter.filterAssetIDSize(file(size)), is(filter.filterSize(size)));
+        }
+    }
+
+    @Test
+    public void testFilterPlan() {
+        AssetFilter filter = sizeFilter(Optional.of(1), Optional.of(1));
+        Predicate<AssetID> assetIDFilter = FilterPlan.of(new AssetsFilter(Optional.empty()), filter).assetIDFilter();
+        assertTrue(assetIDFilter.test(directory()));
+        assertTrue(assetIDFilter.test(file(0)));
+        assertTrue(assetIDFilter.test(file(1024)));
+        assertFalse(assetIDFilter.test(file(1023)));
+        assertFalse(assetIDFilter.test(file(1025)));
+    }
+}
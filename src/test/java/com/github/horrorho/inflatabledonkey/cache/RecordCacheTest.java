@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cache;
+
+import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import static org.hamcrest.CoreMatchers.is;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * RecordCacheTest.
+ *
+ * @author Ayesha
+ */
+public class RecordCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    static CloudKit.Record record(String name, String etag) {
+        return CloudKit.Record.newBuilder()
+                .setEtag(etag)
+                .setRecordIdentifier(CloudKit.RecordIdentifier.newBuilder()
+                        .setValue(CloudKit.Identifier.newBuilder().setName(name)))
+                .build();
+    }
+
+    @Test
+    public void testPutGet() throws IOException {
+        Path root = folder.getRoot().toPath();
+        RecordCache cache = RecordCache.create(root, "password".getBytes(UTF_8));
+        CloudKit.Record record = record("A", "1");
+
+        cache.put("zone", record, RecordCache.IMMUTABLE);
+        assertThat(cache.get("zone", "A"), is(Optional.of(record)));
+        assertThat(cache.get("other", "A"), is(Optional.empty()));
+
+        RecordCache wrongPassword = RecordCache.create(root, "wrong".getBytes(UTF_8));
+        assertThat(wrongPassword.get("zone", "A"), is(Optional.empty()));
+    }
+
+    @Test
+    public void testStale() throws IOException {
+        RecordCache cache = RecordCache.create(folder.getRoot().toPath(), "password".getBytes(UTF_8));
+        cache.put("zone", record("A", "1"), Instant.now().minusSeconds(1));
+        assertThat(cache.get("zone", "A"), is(Optional.empty()));
+    }
+
+    @Test
+    public void testImmutableFetchesMissing() throws IOException {
+        RecordCache cache = RecordCache.create(folder.getRoot().toPath(), "password".getBytes(UTF_8));
+        cache.put("zone", record("A", "1"), RecordCache.IMMUTABLE);
+
+        List<String> fetched = new ArrayList<>();
+        List<CloudKit.Record> records = cache.immutable("zone", Arrays.asList("A", "B"), u -> {
+            fetched.addAll(u);
+            return Arrays.asList(record("B", "2"));
+        });
+        assertThat(fetched, is(Arrays.asList("B")));
+        assertThat(records.size(), is(2));
+        assertTrue(cache.get("zone", "B").isPresent());
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        RecordCache cache = RecordCache.disabled();
+        cache.put("zone", record("A", "1"), RecordCache.IMMUTABLE);
+        assertThat(cache.get("zone", "A"), is(Optional.empty()));
+    }
+}
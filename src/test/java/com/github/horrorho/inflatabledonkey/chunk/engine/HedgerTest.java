@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.chunk.engine;
+
+import com.github.horrorho.inflatabledonkey.metrics.Metrics;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * HedgerTest.
+ *
+ * @author Ahseya
+ */
+public class HedgerTest {
+
+    @Test
+    public void testHedgeWins() throws Exception {
+        Hedger hedger = new Hedger(50, 1, 10, 4, 16, 2);
+        prime(hedger, 4);
+        long hedges = Metrics.instance().counter("chunk.hedge.hedges").count();
+        long wins = Metrics.instance().counter("chunk.hedge.wins").count();
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = hedger.apply("host", 1000, hook -> {
+            if (attempts.incrementAndGet() > 1) {
+                return "hedge";
+            }
+            return stall(hook);
+        }, u -> 1000);
+
+        assertThat(result, is("hedge"));
+        assertThat(attempts.get(), is(2));
+        assertThat(hedger.hedges(), is(1));
+        assertThat(hedger.wins(), is(1));
+        assertTrue(Metrics.instance().counter("chunk.hedge.hedges").count() > hedges);
+        assertTrue(Metrics.instance().counter("chunk.hedge.wins").count() > wins);
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        Hedger hedger = new Hedger(50, 0, 10, 4, 16, 2);
+        prime(hedger, 4);
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = hedger.apply("host", 1000, hook -> {
+            attempts.incrementAndGet();
+            return pause("primary", 100);
+        }, u -> 1000);
+
+        assertThat(result, is("primary"));
+        assertThat(attempts.get(), is(1));
+        assertThat(hedger.hedges(), is(0));
+    }
+
+    @Test
+    public void testAdmissionDenied() throws Exception {
+        Hedger hedger = new Hedger(50, 1, 10, 4, 16, 2, host -> Optional.empty());
+        prime(hedger, 4);
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = hedger.apply("host", 1000, hook -> {
+            attempts.incrementAndGet();
+            return pause("primary", 100);
+        }, u -> 1000);
+
+        assertThat(result, is("primary"));
+        assertThat(attempts.get(), is(1));
+        assertThat(hedger.hedges(), is(0));
+    }
+
+    @Test
+    public void testAdmissionReleased() throws Exception {
+        AtomicInteger admitted = new AtomicInteger();
+        Hedger hedger = new Hedger(50, 1, 10, 4, 16, 2, host -> {
+            admitted.incrementAndGet();
+            return Optional.of(admitted::decrementAndGet);
+        });
+        prime(hedger, 4);
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = hedger.apply("host", 1000, hook -> {
+            if (attempts.incrementAndGet() > 1) {
+                return "hedge";
+            }
+            return stall(hook);
+        }, u -> 1000);
+
+        assertThat(result, is("hedge"));
+        assertThat(hedger.hedges(), is(1));
+        for (int i = 0; i < 100 && admitted.get() != 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(admitted.get(), is(0));
+    }
+
+    static void prime(Hedger hedger, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            hedger.apply("host", 1000, hook -> "prime", u -> 1000);
+        }
+    }
+
+    static String pause(String result, long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return result;
+    }
+
+    static String stall(Consumer<Runnable> hook) throws IOException {
+        CountDownLatch aborted = new CountDownLatch(1);
+        hook.accept(aborted::countDown);
+        try {
+            aborted.await();
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+        throw new IOException("aborted");
+    }
+}
@@ -119,6 +119,82 @@ public class DiskChunkStoreTest {
         assertFalse("temp folder is empty", Files.list(TEMP).findFirst().isPresent());
     }
 
+    @Test
+    @Parameters(method = "parametersForTest")
+    public void testCompressed(byte[] data) throws IOException {
+        Supplier<Digest> digests = SHA1Digest::new;
+        DiskChunkStore store = new DiskChunkStore(digests, ChunkDigests::test, CACHE, TEMP, true);
+
+        byte[] checksum = digest(digests, data);
+        write(store, checksum, data);
+
+        assertTrue("compressed file", Files.exists(store.compressedPath(checksum)));
+        assertFalse("no uncompressed file", Files.exists(store.path(checksum)));
+        assertTrue("contains", store.contains(checksum));
+        assertArrayEquals("data match", data, read(store, checksum));
+
+        assertFalse("duplicate OutputStream not present", store.outputStream(checksum).isPresent());
+
+        assertTrue("was deleted", store.delete(checksum));
+        assertFalse("chunk not present", store.chunk(checksum).isPresent());
+        assertFalse("temp folder is empty", Files.list(TEMP).findFirst().isPresent());
+    }
+
+    @Test
+    public void testMixed() throws IOException {
+        Supplier<Digest> digests = SHA1Digest::new;
+        DiskChunkStore plain = new DiskChunkStore(digests, ChunkDigests::test, CACHE, TEMP, false);
+        DiskChunkStore compressed = new DiskChunkStore(digests, ChunkDigests::test, CACHE, TEMP, true);
+
+        byte[] dataA = "plain plain plain plain plain plain".getBytes(StandardCharsets.UTF_8);
+        byte[] dataB = "compressed compressed compressed compressed".getBytes(StandardCharsets.UTF_8);
+        byte[] checksumA = digest(digests, dataA);
+        byte[] checksumB = digest(digests, dataB);
+
+        write(plain, checksumA, dataA);
+        write(compressed, checksumB, dataB);
+
+        assertTrue("uncompressed file", Files.exists(plain.path(checksumA)));
+        assertTrue("compressed file", Files.exists(compressed.compressedPath(checksumB)));
+
+        // Either store reads either format.
+        assertArrayEquals("plain/ plain", dataA, read(plain, checksumA));
+        assertArrayEquals("compressed/ plain", dataA, read(compressed, checksumA));
+        assertArrayEquals("plain/ compressed", dataB, read(plain, checksumB));
+        assertArrayEquals("compressed/ compressed", dataB, read(compressed, checksumB));
+
+        // An existing chunk in the other format is not rewritten.
+        assertFalse("plain duplicate", compressed.outputStream(checksumA).isPresent());
+        assertFalse("compressed duplicate", plain.outputStream(checksumB).isPresent());
+        assertFalse("no compressed copy", Files.exists(compressed.compressedPath(checksumA)));
+        assertFalse("no uncompressed copy", Files.exists(plain.path(checksumB)));
+
+        assertTrue("plain deleted", compressed.delete(checksumA));
+        assertTrue("compressed deleted", plain.delete(checksumB));
+        assertFalse(plain.contains(checksumA));
+        assertFalse(compressed.contains(checksumB));
+    }
+
+    static void write(DiskChunkStore store, byte[] checksum, byte[] data) throws IOException {
+        Optional<OutputStream> chunkOutputStream = store.outputStream(checksum);
+        assertTrue("OutputStream present", chunkOutputStream.isPresent());
+        try (OutputStream os = chunkOutputStream.get()) {
+            os.write(data);
+        }
+    }
+
+    static byte[] read(DiskChunkStore store, byte[] checksum) throws IOException {
+        Chunk chunk = store.chunk(checksum)
+                .orElseThrow(() -> new AssertionError("chunk not present"));
+        assertArrayEquals("checksum match", checksum, chunk.checksum());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream is = chunk.inputStream()
+                .orElseThrow(() -> new IllegalStateException("chunk deleted"))) {
+            IOUtils.copy(is, baos);
+        }
+        return baos.toByteArray();
+    }
+
     public static Object[] parametersForTest() {
         return new Object[]{
             new Object[]{"".getBytes(StandardCharsets.UTF_8)},
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import com.google.protobuf.ByteString;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * ContainerPlannerTest.
+ *
+ * @author Ahseya
+ */
+public class ContainerPlannerTest {
+
+    static ByteString checksum(int i) {
+        return ByteString.copyFrom(new byte[]{(byte) i});
+    }
+
+    // Chunk i has length i.
+    static StorageHostChunkList container(int... chunks) {
+        StorageHostChunkList.Builder builder = StorageHostChunkList.newBuilder();
+        Arrays.stream(chunks)
+                .mapToObj(u -> ChunkInfo.newBuilder()
+                        .setChunkChecksum(checksum(u))
+                        .setChunkLength(u)
+                        .buildPartial())
+                .forEach(builder::addChunkInfo);
+        return builder.buildPartial();
+    }
+
+    @Test
+    public void testSharedChunk() {
+        // Chunk 100 is carried by a small and a large container.
+        StorageHostChunkList large = container(100, 90, 80);
+        StorageHostChunkList small = container(100, 10);
+        ContainerPlanner.Plan plan = ContainerPlanner.plan(Arrays.asList(large, small), u -> !u.equals(checksum(100)));
+        assertThat(plan.selected(), is(Collections.singletonList(small)));
+        assertThat(plan.redundant(), is(Collections.singletonList(large)));
+        assertThat(plan.selectedBytes(), is(110L));
+    }
+
+    @Test
+    public void testCover() {
+        StorageHostChunkList a = container(10, 20);
+        StorageHostChunkList b = container(20, 30);
+        StorageHostChunkList c = container(10, 20, 30);
+        StorageHostChunkList d = container(40);
+        Set<ByteString> stored = new HashSet<>(Arrays.asList(checksum(10)));
+        ContainerPlanner.Plan plan = ContainerPlanner.plan(Arrays.asList(a, b, c, d), stored::contains);
+        assertThat(plan.selected(), is(Arrays.asList(b, d)));
+        assertThat(plan.redundant(), is(Arrays.asList(a, c)));
+    }
+
+    @Test
+    public void testCovered() {
+        ContainerPlanner.Plan plan = ContainerPlanner.plan(Arrays.asList(container(1, 2)), u -> true);
+        assertTrue(plan.selected().isEmpty());
+        assertThat(plan.redundant().size(), is(1));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.hamcrest.CoreMatchers.is;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * HostDispatcherTest. Hosts are simulated by tasks with their own latency and failure behaviour.
+ *
+ * @author Ahseya
+ */
+public class HostDispatcherTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Test
+    public void testHostConcurrencyLimit() {
+        HostDispatcher dispatcher = new HostDispatcher(executor, 8, 2, 64);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int n = i;
+            futures.add(dispatcher.submit("a", () -> {
+                max.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                sleep(5);
+                concurrent.decrementAndGet();
+                return n;
+            }, u -> 1));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertThat(futures.get(i).join(), is(i));
+        }
+        assertTrue(max.get() <= 2);
+    }
+
+    @Test
+    public void testReserve() {
+        HostDispatcher dispatcher = new HostDispatcher(executor, 8, 2, 64);
+        Optional<Runnable> first = dispatcher.reserve("a");
+        Optional<Runnable> second = dispatcher.reserve("a");
+        assertTrue(first.isPresent());
+        assertTrue(second.isPresent());
+        assertFalse(dispatcher.reserve("a").isPresent());
+        assertTrue(dispatcher.reserve("b").isPresent());
+
+        first.get().run();
+        assertTrue(dispatcher.reserve("a").isPresent());
+    }
+
+    @Test
+    public void testBackoff() {
+        HostDispatcher dispatcher = new HostDispatcher(executor, 8, 8, 64, 200, 1000);
+        CompletableFuture<Integer> failed = dispatcher.submit("bad", () -> {
+            throw new IOException("down");
+        }, u -> 1);
+        try {
+            failed.join();
+            fail();
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof UncheckedIOException);
+        }
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<Long> retried = dispatcher.submit("bad", System::currentTimeMillis, u -> 1);
+        CompletableFuture<Long> healthy = dispatcher.submit("good", System::currentTimeMillis, u -> 1);
+
+        assertTrue(healthy.join() - start < 200);
+        assertTrue(retried.join() - start >= 150);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.util.BatchSetIterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * LocalityBatcherTest.
+ *
+ * @author Ahseya
+ */
+public class LocalityBatcherTest {
+
+    static final ToIntFunction<Integer> SIZE = u -> 10;
+
+    // Items i, i + containers, i + 2 * containers... share container i.
+    static Map<Integer, Set<Integer>> itemContainers(int containers, int itemsPerContainer) {
+        Map<Integer, Set<Integer>> map = new HashMap<>();
+        for (int i = 0; i < containers * itemsPerContainer; i++) {
+            map.put(i, Collections.singleton(i % containers));
+        }
+        return map;
+    }
+
+    static void assertPartition(List<Set<Integer>> batches, Set<Integer> items) {
+        Set<Integer> all = new HashSet<>();
+        batches.forEach(u -> u.forEach(v -> assertTrue(all.add(v))));
+        assertThat(all, is(items));
+    }
+
+    @Test
+    public void testClustered() {
+        Map<Integer, Set<Integer>> itemContainers = itemContainers(50, 5);
+        List<Set<Integer>> batches = LocalityBatcher.batch(itemContainers, SIZE, 100);
+        assertPartition(batches, itemContainers.keySet());
+        batches.forEach(u -> assertTrue(u.size() * 10 <= 100));
+
+        List<Set<Integer>> plain = BatchSetIterator.batchedSetList(itemContainers.keySet(), SIZE, 100);
+        double before = LocalityBatcher.redownloadRatio(plain, itemContainers);
+        double after = LocalityBatcher.redownloadRatio(batches, itemContainers);
+        assertThat(after, is(1.0));
+        assertTrue(before > after);
+    }
+
+    @Test
+    public void testSplitOversizedComponent() {
+        Map<Integer, Set<Integer>> itemContainers = itemContainers(2, 25);
+        // Chain both containers into a single component.
+        itemContainers.put(-1, new HashSet<>(Arrays.asList(0, 1)));
+        List<Set<Integer>> batches = LocalityBatcher.batch(itemContainers, SIZE, 100);
+        assertPartition(batches, itemContainers.keySet());
+        batches.forEach(u -> assertTrue(u.size() * 10 <= 100));
+        assertThat(batches.size(), is(6));
+    }
+}
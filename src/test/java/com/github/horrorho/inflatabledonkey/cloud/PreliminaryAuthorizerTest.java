@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.data.backup.AssetFactory;
+import com.github.horrorho.inflatabledonkey.pcs.zone.PZFactory;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkReference;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileChecksumChunkReferences;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileChecksumStorageHostChunkLists;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.HostInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import org.apache.http.client.HttpClient;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * PreliminaryAuthorizerTest.
+ *
+ * @author Ahseya
+ */
+public class PreliminaryAuthorizerTest {
+
+    static final long HOUR_MS = 60 * 60 * 1000;
+
+    static ByteString signature(int n) {
+        return ByteString.copyFrom(new byte[]{(byte) n});
+    }
+
+    static Asset asset(int n) {
+        CloudKit.Record record = CloudKit.Record.newBuilder()
+                .setRecordIdentifier(CloudKit.RecordIdentifier.newBuilder()
+                        .setValue(CloudKit.Identifier.newBuilder().setName("F:uuid:aGFzaA==:" + n + ":1")))
+                .addRecordField(CloudKit.Record.Field.newBuilder()
+                        .setIdentifier(CloudKit.Record.Field.Identifier.newBuilder().setName("contents"))
+                        .setValue(CloudKit.Record.Field.Value.newBuilder()
+                                .setAssetValue(CloudKit.Asset.newBuilder().setReferenceSignature(signature(n)))))
+                .buildPartial();
+        return AssetFactory.from(record, "domain", PZFactory.instance().create(Collections.emptyList())).get();
+    }
+
+    // A single file group, with each file's sole chunk in a shared container.
+    static FileGroups fileGroups(long expiry, Collection<Asset> assets) {
+        StorageHostChunkList.Builder container = StorageHostChunkList.newBuilder()
+                .setHostInfo(HostInfo.newBuilder()
+                        .setHostname("host")
+                        .setPort(443)
+                        .setMethod("GET")
+                        .setUri("uri")
+                        .setTransportProtocol("https")
+                        .setTransportProtocolVersion("1.1")
+                        .setScheme("https")
+                        .setExpiry(expiry))
+                .setStorageContainerKey("key")
+                .setStorageContainerAuthorizationToken("token");
+        FileChecksumStorageHostChunkLists.Builder group = FileChecksumStorageHostChunkLists.newBuilder();
+        int i = 0;
+        for (Asset asset : assets) {
+            ByteString signature = ByteString.copyFrom(asset.fileSignature().get());
+            container.addChunkInfo(ChunkInfo.newBuilder().setChunkChecksum(signature).setChunkLength(1));
+            group.addFileChecksumChunkReferences(FileChecksumChunkReferences.newBuilder()
+                    .setFileChecksum(signature)
+                    .setFileSignature(signature)
+                    .addChunkReferences(ChunkReference.newBuilder().setContainerIndex(0).setChunkIndex(i++)));
+        }
+        return FileGroups.newBuilder()
+                .addFileGroups(group.addStorageHostChunkList(container))
+                .buildPartial();
+    }
+
+    static List<ByteString> signatures(List<FileGroups> fileGroupsList) {
+        return fileGroupsList.stream()
+                .flatMap(u -> u.getFileGroupsList().stream())
+                .flatMap(u -> u.getFileChecksumChunkReferencesList().stream())
+                .map(FileChecksumChunkReferences::getFileSignature)
+                .collect(toList());
+    }
+
+    static final class Delegate {
+
+        final List<Collection<Asset>> requests = new ArrayList<>();
+        final long expiry;
+
+        Delegate(long expiry) {
+            this.expiry = expiry;
+        }
+
+        List<FileGroups> apply(HttpClient httpClient, Collection<Asset> assets) throws IOException {
+            requests.add(assets);
+            return Collections.singletonList(fileGroups(expiry, assets));
+        }
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        Delegate delegate = new Delegate(System.currentTimeMillis() + HOUR_MS);
+        PreliminaryAuthorizer authorizer
+                = new PreliminaryAuthorizer(delegate::apply, u -> u.getHostInfo().getExpiry(), 60000);
+        authorizer.preauthorize(null, Arrays.asList(asset(1), asset(2)));
+        assertThat(delegate.requests.size(), is(1));
+
+        List<FileGroups> list = authorizer.apply(null, Arrays.asList(asset(2)));
+        assertThat(signatures(list), is(Arrays.asList(signature(2))));
+        FileChecksumStorageHostChunkLists group = list.get(0).getFileGroups(0);
+        assertThat(group.getStorageHostChunkListCount(), is(1));
+        assertThat(group.getFileChecksumChunkReferences(0).getChunkReferences(0).getContainerIndex(), is(0L));
+
+        assertThat(signatures(authorizer.apply(null, Arrays.asList(asset(1)))), is(Arrays.asList(signature(1))));
+        assertThat(delegate.requests.size(), is(1));
+
+        // Each preliminary authorization is used once.
+        assertThat(signatures(authorizer.apply(null, Arrays.asList(asset(1)))), is(Arrays.asList(signature(1))));
+        assertThat(delegate.requests.size(), is(2));
+    }
+
+    @Test
+    public void testExpiring() throws IOException {
+        Delegate delegate = new Delegate(System.currentTimeMillis() + 1000);
+        PreliminaryAuthorizer authorizer
+                = new PreliminaryAuthorizer(delegate::apply, u -> u.getHostInfo().getExpiry(), 60000);
+        authorizer.preauthorize(null, Arrays.asList(asset(1), asset(2)));
+
+        List<FileGroups> list = authorizer.apply(null, Arrays.asList(asset(1), asset(2)));
+        assertThat(delegate.requests.size(), is(2));
+        assertThat(delegate.requests.get(1).size(), is(2));
+        assertThat(signatures(list), is(Arrays.asList(signature(1), signature(2))));
+    }
+}
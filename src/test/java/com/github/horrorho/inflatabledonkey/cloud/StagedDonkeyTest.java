@@ -0,0 +1,290 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloud;
+
+import com.github.horrorho.inflatabledonkey.data.backup.Asset;
+import com.github.horrorho.inflatabledonkey.exception.ContainerExpiredException;
+import com.github.horrorho.inflatabledonkey.file.FileAssembler;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.ChunkInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.HostInfo;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.StorageHostChunkList;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import org.apache.http.client.HttpClient;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * StagedDonkeyTest. Containers are fetched, decrypted and assembled by a fake that records each stage.
+ *
+ * @author Ahseya
+ */
+public class StagedDonkeyTest {
+
+    static final long HOUR_MS = 60 * 60 * 1000;
+
+    private final StageExecutors stages = StageExecutors.create(1, 2, 1, 1, 16, 2);
+
+    @After
+    public void tearDown() {
+        stages.shutdown();
+    }
+
+    static StorageHostChunkList container(String uri, long expiresAt, int... chunks) {
+        StorageHostChunkList.Builder builder = StorageHostChunkList.newBuilder()
+                .setHostInfo(HostInfo.newBuilder()
+                        .setHostname("host")
+                        .setUri(uri)
+                        .setExpiry(expiresAt)
+                        .buildPartial());
+        Arrays.stream(chunks)
+                .mapToObj(u -> ChunkInfo.newBuilder()
+                        .setChunkChecksum(ByteString.copyFrom(new byte[]{(byte) u}))
+                        .setChunkLength(u)
+                        .buildPartial())
+                .forEach(builder::addChunkInfo);
+        return builder.buildPartial();
+    }
+
+    static String uri(StorageHostChunkList container) {
+        return container.getHostInfo().getUri();
+    }
+
+    /**
+     * Pool that hands out queued authorizations, each either a list of containers or an IOException.
+     */
+    static final class FakePool extends AssetPool {
+
+        final Deque<Object> authorizations = new ArrayDeque<>();
+
+        FakePool(Object... authorizations) {
+            super((client, assets) -> Collections.emptyList(), VoodooChunkEncryptionKeyMapper.defaultInstance(),
+                    Collections.emptySet());
+            this.authorizations.addAll(Arrays.asList(authorizations));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized CompletableFuture<Void> authorize(HttpClient httpClient, Executor executor,
+                int partitionSize, Consumer<Collection<StorageHostChunkList>> consumer) {
+            Object authorization = authorizations.remove();
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            if (authorization instanceof IOException) {
+                future.completeExceptionally(new UncheckedIOException((IOException) authorization));
+            } else {
+                consumer.accept((List<StorageHostChunkList>) authorization);
+                future.complete(null);
+            }
+            return future;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+    }
+
+    /**
+     * Fetches fail for containers listed in failures, once each. Decryption stores the container's chunks.
+     */
+    static class FakeContainers implements StagedDonkey.Containers {
+
+        final Set<ByteString> store = ConcurrentHashMap.newKeySet();
+        final Set<String> failures = ConcurrentHashMap.newKeySet();
+        final List<String> fetched = new CopyOnWriteArrayList<>();
+        final List<String> assembled = new CopyOnWriteArrayList<>();
+
+        @Override
+        public AssetPool pool(Set<Asset> assets) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long expiresAt(StorageHostChunkList container) {
+            return container.getHostInfo().getExpiry();
+        }
+
+        @Override
+        public boolean isStored(ByteString checksum) {
+            return store.contains(checksum);
+        }
+
+        @Override
+        public Optional<byte[]> fetch(HttpClient httpClient, StorageHostChunkList container) throws IOException {
+            if (StagedDonkey.checksums(container).stream().allMatch(this::isStored)) {
+                return Optional.empty();
+            }
+            fetched.add(uri(container));
+            if (failures.remove(uri(container))) {
+                throw new IOException("fetch failed: " + uri(container));
+            }
+            return Optional.of(new byte[container.getChunkInfoCount()]);
+        }
+
+        @Override
+        public void decrypt(StorageHostChunkList container, byte[] data) {
+            store.addAll(StagedDonkey.checksums(container));
+        }
+
+        @Override
+        public void assemble(StorageHostChunkList container, AssetPool pool, FileAssembler consumer) {
+            assembled.add(uri(container));
+        }
+    }
+
+    @Test
+    public void testRefreshSwap() throws IOException {
+        long now = System.currentTimeMillis();
+        // The first authorization has already expired, its re-authorized twin replaces it.
+        FakePool pool = new FakePool(
+                Arrays.asList(container("a", now - 1, 1, 2)),
+                Arrays.asList(container("b", now + HOUR_MS, 1, 2)));
+        FakeContainers containers = new FakeContainers();
+
+        new StagedDonkey(containers, stages, 60000, 128).process(null, pool, null);
+
+        assertThat(containers.fetched, is(Arrays.asList("b")));
+        assertThat(containers.assembled, is(Arrays.asList("b")));
+        assertTrue(pool.authorizations.isEmpty());
+    }
+
+    @Test
+    public void testRefreshFailure() throws IOException {
+        long now = System.currentTimeMillis();
+        FakePool pool = new FakePool(
+                Arrays.asList(container("a", now - 1, 1), container("b", now + HOUR_MS, 2)),
+                new IOException("refresh failed"));
+        FakeContainers containers = new FakeContainers();
+
+        try {
+            new StagedDonkey(containers, stages, 60000, 128).process(null, pool, null);
+            fail("expected ContainerExpiredException");
+        } catch (ContainerExpiredException ex) {
+            // The expired container is left for the next pass.
+        }
+        assertThat(containers.fetched, is(Arrays.asList("b")));
+        assertThat(containers.assembled, is(Arrays.asList("b")));
+    }
+
+    @Test
+    public void testRedundantAfterCarrierFails() throws IOException {
+        long now = System.currentTimeMillis();
+        FakePool pool = new FakePool(
+                Arrays.asList(container("a", now + HOUR_MS, 1, 2), container("b", now + HOUR_MS, 1, 2)));
+        // Whichever container is selected as the carrier fails, the redundant twin is then fetched in its place.
+        FakeContainers containers = new FakeContainers() {
+            @Override
+            public Optional<byte[]> fetch(HttpClient httpClient, StorageHostChunkList container)
+                    throws IOException {
+                if (fetched.isEmpty()) {
+                    failures.add(uri(container));
+                } else {
+                    failures.clear();
+                }
+                return super.fetch(httpClient, container);
+            }
+        };
+
+        new StagedDonkey(containers, stages, 60000, 128).process(null, pool, null);
+
+        assertThat(containers.fetched.size(), is(2));
+        assertThat(containers.assembled.size(), is(2));
+        assertThat(containers.store.size(), is(2));
+    }
+
+    @Test
+    public void testRedundantSkippedAfterCarrier() throws IOException {
+        long now = System.currentTimeMillis();
+        FakePool pool = new FakePool(
+                Arrays.asList(container("a", now + HOUR_MS, 1, 2), container("b", now + HOUR_MS, 1, 2)));
+        FakeContainers containers = new FakeContainers();
+
+        new StagedDonkey(containers, stages, 60000, 128).process(null, pool, null);
+
+        assertThat(containers.fetched.size(), is(1));
+        assertThat(containers.assembled, hasItems("a", "b"));
+    }
+
+    @Test
+    public void testFetchFailedPropagation() throws IOException {
+        long now = System.currentTimeMillis();
+        FakePool pool = new FakePool(Arrays.asList(container("a", now + HOUR_MS, 1)));
+        FakeContainers containers = new FakeContainers() {
+            @Override
+            public Optional<byte[]> fetch(HttpClient httpClient, StorageHostChunkList container) {
+                throw new ContainerExpiredException("expired: " + uri(container));
+            }
+        };
+
+        try {
+            new StagedDonkey(containers, stages, 60000, 128).process(null, pool, null);
+            fail("expected ContainerExpiredException");
+        } catch (ContainerExpiredException ex) {
+            assertThat(ex.getMessage(), is("expired: a"));
+        }
+        assertTrue(containers.assembled.isEmpty());
+    }
+
+    @Test
+    public void testFetchFailed() {
+        IOException io = new IOException("io");
+        assertThat(StagedDonkey.fetchFailed(new CompletionException(new UncheckedIOException(io))),
+                is(Optional.empty()));
+        assertThat(StagedDonkey.fetchFailed(new UncheckedIOException(io)), is(Optional.empty()));
+
+        IllegalStateException ise = new IllegalStateException();
+        try {
+            StagedDonkey.fetchFailed(new CompletionException(ise));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException ex) {
+            assertSame(ise, ex);
+        }
+
+        Exception checked = new Exception();
+        try {
+            StagedDonkey.fetchFailed(checked);
+            fail("expected CompletionException");
+        } catch (CompletionException ex) {
+            assertSame(checked, ex.getCause());
+        }
+    }
+}
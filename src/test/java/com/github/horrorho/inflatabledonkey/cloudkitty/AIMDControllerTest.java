@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.cloudkitty;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.HttpResponseException;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * AIMDControllerTest.
+ *
+ * @author Ahseya
+ */
+public class AIMDControllerTest {
+
+    static AIMDController controller() {
+        return new AIMDController("test", 25, 400, 4, 16, 1000);
+    }
+
+    @Test
+    public void testAdditiveIncrease() {
+        AIMDController controller = controller();
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess(controller.batchSize(), 0, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertThat(controller.batchSize(), is(400));
+        assertTrue(controller.concurrency() > 4);
+        assertTrue(controller.concurrency() <= 16);
+    }
+
+    @Test
+    public void testThrottled() {
+        AIMDController controller = controller();
+        UncheckedIOException ex = new UncheckedIOException(new HttpResponseException(503, "throttled"));
+        try {
+            controller.measure(400, () -> {
+                throw ex;
+            });
+            fail();
+        } catch (UncheckedIOException e) {
+            assertSame(ex, e);
+        }
+        assertThat(controller.batchSize(), is(200));
+        assertThat(controller.concurrency(), is(2));
+    }
+
+    @Test
+    public void testFailure() {
+        AIMDController controller = controller();
+        try {
+            controller.measure(400, () -> {
+                throw new UncheckedIOException(new IOException("failed"));
+            });
+            fail();
+        } catch (UncheckedIOException e) {
+        }
+        assertThat(controller.batchSize(), is(400));
+        assertThat(controller.concurrency(), is(2));
+    }
+
+    @Test
+    public void testSlow() {
+        AIMDController controller = controller();
+        controller.onSuccess(400, 0, TimeUnit.SECONDS.toNanos(2));
+        assertThat(controller.batchSize(), is(200));
+        controller.onSuccess(200, 0, TimeUnit.SECONDS.toNanos(2));
+        controller.onSuccess(100, 0, TimeUnit.SECONDS.toNanos(2));
+        controller.onSuccess(50, 0, TimeUnit.SECONDS.toNanos(2));
+        assertThat(controller.batchSize(), is(25));
+    }
+
+    @Test
+    public void testDownstreamExcluded() {
+        // Slow streamed consumers are not the API's fault.
+        AIMDController controller = controller();
+        long downstream = TimeUnit.MILLISECONDS.toNanos(1200);
+        controller.measure(400, () -> {
+            try {
+                Thread.sleep(1100);
+                return null;
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }, () -> downstream, u -> 0);
+        assertThat(controller.batchSize(), is(400));
+    }
+
+    @Test
+    public void testLatencyAverage() {
+        // A single slow request among fast ones is smoothed out.
+        AIMDController controller = controller();
+        for (int i = 0; i < 10; i++) {
+            controller.onSuccess(400, 0, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        controller.onSuccess(400, 0, TimeUnit.SECONDS.toNanos(2));
+        assertThat(controller.batchSize(), is(400));
+
+        // Sustained slow requests are not.
+        for (int i = 0; i < 4; i++) {
+            controller.onSuccess(400, 0, TimeUnit.SECONDS.toNanos(2));
+        }
+        assertThat(controller.batchSize(), is(200));
+    }
+
+    @Test
+    public void testResponseBytes() {
+        // 4 KiB per operation, capped at 400 KiB per response.
+        AIMDController controller = new AIMDController("test", 25, 400, 4, 16, 1000, 400 * 1024);
+        controller.onSuccess(400, 400 * 4096, TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(controller.batchSize(), is(100));
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess(controller.batchSize(), controller.batchSize() * 4096,
+                    TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertThat(controller.batchSize(), is(100));
+    }
+}
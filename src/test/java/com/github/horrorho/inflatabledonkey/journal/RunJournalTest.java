@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.journal;
+
+import com.github.horrorho.inflatabledonkey.data.backup.AssetID;
+import com.github.horrorho.inflatabledonkey.protobuf.ChunkServer.FileGroups;
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import static org.hamcrest.CoreMatchers.is;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * RunJournalTest.
+ *
+ * @author Ahseya
+ */
+public class RunJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    static RunJournal interrupted(Path file, Map<AssetID, String> pending) throws IOException {
+        RunJournal journal = RunJournal.open(file, true, "fingerprint");
+        journal.write(true, RunJournal.SELECT, "device", "snapshot");
+        journal.pending("key", pending);
+        return journal;
+    }
+
+    static Map<AssetID, String> pending() {
+        Map<AssetID, String> pending = new LinkedHashMap<>();
+        pending.put(AssetID.from("F:uuid:aGFzaEE=:10:1").get(), "DomainA");
+        pending.put(AssetID.from("F:uuid:aGFzaEI=:20:1").get(), "Domain\tB");
+        return pending;
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("journal");
+        Map<AssetID, String> pending = pending();
+        interrupted(file, pending);
+
+        RunJournal journal = RunJournal.open(file, true, "fingerprint");
+        assertTrue(journal.isResumed());
+        assertThat(journal.selection(), is(Collections.singleton("snapshot")));
+        assertThat(journal.resume("key").get().outstanding(), is(pending));
+        assertFalse(journal.resume("other").isPresent());
+
+        journal.snapshotDone("key");
+        journal.runDone();
+        assertFalse(RunJournal.open(file, true, "fingerprint").isResumed());
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("journal");
+        interrupted(file, pending());
+        Files.write(file, "0\tSNAPSHOT_DONE\tke".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+        RunJournal journal = RunJournal.open(file, true, "fingerprint");
+        assertTrue(journal.isResumed());
+        assertFalse(journal.resume("key").get().isDone());
+    }
+
+    @Test
+    public void testFingerprintMismatch() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("journal");
+        interrupted(file, pending());
+
+        RunJournal journal = RunJournal.open(file, true, "other");
+        assertFalse(journal.isResumed());
+        assertTrue(journal.selection().isEmpty());
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("journal");
+        RunJournal journal = interrupted(file, pending());
+        journal.authorized(FileGroups.getDefaultInstance(), 1000);
+        journal.pending("next", pending());
+        long size = Files.size(file);
+
+        journal.snapshotDone("key");
+        assertTrue(Files.size(file) < size);
+        journal.pending("last", pending());
+
+        RunJournal resumed = RunJournal.open(file, true, "fingerprint");
+        assertTrue(resumed.isResumed());
+        assertTrue(resumed.resume("key").get().isDone());
+        assertTrue(resumed.resume("key").get().outstanding().isEmpty());
+        assertThat(resumed.resume("next").get().outstanding(), is(pending()));
+        assertThat(resumed.resume("last").get().outstanding(), is(pending()));
+        assertTrue(resumed.authorizations().isEmpty());
+        assertThat(resumed.serverClockOffset(), is(Optional.of(1000L)));
+
+        resumed.runDone();
+        assertThat(Files.size(file), is(0L));
+    }
+
+    @Test
+    public void testDiscard() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("journal");
+        interrupted(file, pending());
+
+        RunJournal journal = RunJournal.open(file, false, "fingerprint");
+        assertFalse(journal.isResumed());
+        assertTrue(journal.selection().isEmpty());
+        assertFalse(journal.resume("key").isPresent());
+    }
+}
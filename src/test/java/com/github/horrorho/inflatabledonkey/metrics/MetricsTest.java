@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import javax.management.AttributeNotFoundException;
+import static org.hamcrest.CoreMatchers.is;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * MetricsTest.
+ *
+ * @author Ahseya
+ */
+public class MetricsTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.count(), is(100L));
+        assertThat(histogram.max(), is(100L));
+        assertEquals(50.5, histogram.mean(), 0.001);
+        // Power of two buckets, 50 falls within 32 to 63.
+        assertThat(histogram.percentile(50), is(63L));
+        assertThat(histogram.percentile(100), is(100L));
+        assertThat(new Histogram().percentile(50), is(0L));
+    }
+
+    @Test
+    public void testSnapshot() throws AttributeNotFoundException {
+        Metrics metrics = new Metrics();
+        metrics.counter("a").add(3);
+        metrics.counter("a").increment();
+        metrics.histogram("b").record(7);
+        metrics.gauge("c", () -> 42);
+
+        Map<String, Number> snapshot = metrics.snapshot();
+        assertThat(snapshot.get("a"), is(4L));
+        assertThat(snapshot.get("b.count"), is(1L));
+        assertThat(snapshot.get("b.max"), is(7L));
+        assertThat(snapshot.get("c"), is(42L));
+        assertThat(metrics.getAttribute("a"), is(4L));
+        assertThat(metrics.getMBeanInfo().getAttributes().length, is(snapshot.size()));
+    }
+
+    @Test(expected = AttributeNotFoundException.class)
+    public void testMissingAttribute() throws AttributeNotFoundException {
+        new Metrics().getAttribute("missing");
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        Metrics metrics = new Metrics();
+        metrics.counter("a").add(2);
+        Path file = folder.getRoot().toPath().resolve("metrics.json");
+        metrics.write(file);
+
+        JsonNode json = new ObjectMapper().readTree(file.toFile());
+        assertThat(json.get("metrics").get("a").asLong(), is(2L));
+        assertTrue(json.has("timestamp"));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.pcs.zone;
+
+import com.github.horrorho.inflatabledonkey.crypto.ec.ECAssistant;
+import com.github.horrorho.inflatabledonkey.crypto.ec.ECurves;
+import com.github.horrorho.inflatabledonkey.protobuf.CloudKit;
+import com.google.protobuf.ByteString;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.encoders.Hex;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * PZFactoryTest. Unwraps are counted by the light assistant's digest supplier.
+ *
+ * @author Ahseya
+ */
+public class PZFactoryTest {
+
+    static byte[] light(int wrappedKey) {
+        // Curve generator x coordinate as the compact public key.
+        byte[] x = ECAssistant.x9ECParameters(ECurves.defaultCurve()).getG().normalize().getAffineXCoord()
+                .getEncoded();
+        return ByteBuffer.allocate(1 + x.length + 4 + 2)
+                .put((byte) -1)
+                .put(x)
+                .putInt(wrappedKey)
+                .put(new byte[2])
+                .array();
+    }
+
+    static CloudKit.ProtectionInfo protectionInfo(String tag, byte[] data) {
+        return CloudKit.ProtectionInfo.newBuilder()
+                .setProtectionInfoTag(tag)
+                .setProtectionInfo(ByteString.copyFrom(data))
+                .build();
+    }
+
+    @Test
+    public void testUnwrapOncePerZone() {
+        AtomicInteger unwraps = new AtomicInteger();
+        PZAssistantLight assistantLight = new PZAssistantLight(() -> {
+            unwraps.incrementAndGet();
+            return new SHA256Digest();
+        }, ECurves.defaultCurve(), Hex.decode("4561676C6544616E6365"), 0x10);
+        PZFactory factory = new PZFactory(PZKeyDerivationFunction.instance(), PZKeyUnwrap.instance(),
+                PZAssistant.instance(), assistantLight);
+        ProtectionZone base = factory.create(Collections.emptyList());
+        ProtectionZone other = factory.create(Collections.emptyList());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(factory.create(base, protectionInfo("tag", light(1))).isPresent());
+        }
+        assertThat(unwraps.get(), is(1));
+
+        factory.create(base, protectionInfo("tag", light(2)));
+        factory.create(base, protectionInfo("tag2", light(1)));
+        factory.create(other, protectionInfo("tag", light(1)));
+        assertThat(unwraps.get(), is(4));
+
+        factory.create(base, protectionInfo("tag", light(2)));
+        factory.create(other, protectionInfo("tag", light(1)));
+        assertThat(unwraps.get(), is(4));
+    }
+
+    @Test
+    public void testDigestBoundary() {
+        assertNotEquals(
+                PZFactory.ZoneKey.digest("ab", new byte[]{'c'}),
+                PZFactory.ZoneKey.digest("a", new byte[]{'b', 'c'}));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.responsehandler;
+
+import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.QueryRetrieveResponse;
+import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.Record;
+import com.github.horrorho.inflatabledonkey.protobuf.CloudKit.ResponseOperation;
+import com.google.protobuf.ByteString;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * DelimitedProtobufConsumerHandlerTest.
+ *
+ * @author Ahseya
+ */
+public class DelimitedProtobufConsumerHandlerTest {
+
+    static ResponseOperation responseOperation(int i, int length) {
+        byte[] bs = new byte[length];
+        bs[0] = (byte) i;
+        Record.Field.Value value = Record.Field.Value.newBuilder()
+                .setBytesValue(ByteString.copyFrom(bs))
+                .build();
+        Record record = Record.newBuilder()
+                .addRecordField(Record.Field.newBuilder().setValue(value))
+                .build();
+        return ResponseOperation.newBuilder()
+                .setQueryRetrieveResponse(QueryRetrieveResponse.newBuilder()
+                        .addQueryResults(QueryRetrieveResponse.QueryResult.newBuilder().setRecord(record)))
+                .build();
+    }
+
+    @Test
+    public void testApply() throws IOException {
+        int n = 64;
+        int length = 65536;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(n * (length + 64));
+        for (int i = 0; i < n; i++) {
+            responseOperation(i, length).writeDelimitedTo(baos);
+        }
+
+        List<ResponseOperation> list = new ArrayList<>();
+        long count = new DelimitedProtobufConsumerHandler<>(ResponseOperation.PARSER, list::add)
+                .apply(new ByteArrayInputStream(baos.toByteArray()));
+
+        assertEquals("count", n, count);
+        assertEquals("list", n, list.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(responseOperation(i, length), list.get(i));
+        }
+    }
+}
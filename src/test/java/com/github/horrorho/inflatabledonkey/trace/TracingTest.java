@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.trace;
+
+import com.github.horrorho.inflatabledonkey.chunk.store.ChunkDigests;
+import com.github.horrorho.inflatabledonkey.chunk.store.disk.DiskChunkStore;
+import java.io.IOException;
+import java.io.OutputStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Path;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.bouncycastle.crypto.digests.SHA1Digest;
+import org.bouncycastle.util.encoders.Hex;
+import static org.hamcrest.CoreMatchers.is;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * TracingTest.
+ *
+ * @author Ahseya
+ */
+public class TracingTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChunkCommit() throws IOException {
+        Path root = folder.getRoot().toPath();
+        DiskChunkStore store = new DiskChunkStore(SHA1Digest::new, ChunkDigests::test, root.resolve("cache"),
+                root.resolve("temp"));
+        byte[] data = "chunk data".getBytes(UTF_8);
+        SHA1Digest digest = new SHA1Digest();
+        byte[] checksum = new byte[digest.getDigestSize()];
+        digest.update(data, 0, data.length);
+        digest.doFinal(checksum, 0);
+
+        Path dump = root.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ChunkCommitEvent.class);
+            recording.start();
+            try (OutputStream os = store.outputStream(checksum).get()) {
+                os.write(data);
+            }
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump)
+                .stream()
+                .filter(u -> u.getEventType().getName().equals(Tracing.PREFIX + "ChunkCommit"))
+                .collect(toList());
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getLong("bytes"), is((long) data.length));
+        assertThat(events.get(0).getString("checksum"), is(Hex.toHexString(checksum)));
+        assertFalse(events.get(0).getBoolean("compressed"));
+    }
+}
@@ -122,6 +122,16 @@ public class BiMapSetTest {
         return new Object[]{nullMap, nullKey, nullValue, nullKeyValue};
     }
 
+    @Test
+    public void testPut() {
+        Map<String, Set<Integer>> odd = new HashMap<>();
+        odd.put("odd", set(1, 3, 5, 9));
+        BiMapSet<String, Integer> oneSet = BiMapSet.from(odd);
+        numbers.forEach(oneSet::put);
+        assertThat(oneSet.kToVSet, is(oneStringToNumber));
+        assertThat(oneSet.vToKSet, is(oneNumberToString));
+    }
+
     @Test
     public void testKeySet() {
         BiMapSet<String, Integer> oneSet = BiMapSet.from(numbers);
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.util;
+
+import java.time.LocalTime;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * RateScheduleTest.
+ *
+ * @author Ahseya
+ */
+@RunWith(JUnitParamsRunner.class)
+public class RateScheduleTest {
+
+    static final String SCHEDULE = "22:00-06:00=1000, 06:00-18:00=10";
+
+    @Test
+    @Parameters({
+        "22:00, 1000",
+        "23:59, 1000",
+        "05:59, 1000",
+        "06:00, 10",
+        "17:59, 10",
+        "18:00, 0",
+        "21:59, 0"})
+    public void testRate(String time, double rate) {
+        assertEquals(rate, RateSchedule.parse(SCHEDULE).rate(LocalTime.parse(time)), 0);
+    }
+
+    @Test
+    public void testConstant() {
+        assertEquals(512, RateSchedule.parse("512").rate(LocalTime.NOON), 0);
+        assertEquals(512, RateSchedule.parse("00:00-24:00=512").rate(LocalTime.MIDNIGHT), 0);
+        assertEquals(0, RateSchedule.parse("").rate(LocalTime.NOON), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformed() {
+        RateSchedule.parse("22:00=1000");
+    }
+}
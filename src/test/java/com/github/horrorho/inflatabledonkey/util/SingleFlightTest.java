@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.util;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * SingleFlightTest.
+ *
+ * @author Ahseya
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testCoalesced() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>(2);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch joined = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> leader = executor.submit(() -> flights.apply("key", () -> {
+                calls.incrementAndGet();
+                joined.countDown();
+                while (flights.coalesced() == 0) {
+                    Thread.yield();
+                }
+                return 42;
+            }));
+            joined.await();
+            assertThat(flights.apply("key", () -> -1), is(42));
+            assertThat(leader.get(), is(42));
+            assertThat(calls.get(), is(1));
+            assertThat(flights.led(), is(1L));
+            assertThat(flights.coalesced(), is(1L));
+
+            assertThat(flights.apply("key", () -> 43), is(43));
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureRetried() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>(2);
+        CountDownLatch joined = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> leader = executor.submit(() -> flights.apply("key", () -> {
+                joined.countDown();
+                while (flights.coalesced() == 0) {
+                    Thread.yield();
+                }
+                throw new IOException("failed");
+            }));
+            joined.await();
+            assertThat(flights.apply("key", () -> 42), is(42));
+            try {
+                leader.get();
+                fail();
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof IOException);
+            }
+            assertThat(flights.led(), is(2L));
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
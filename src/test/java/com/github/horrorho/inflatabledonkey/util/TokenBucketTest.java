@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Ahseya.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.inflatabledonkey.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * TokenBucketTest.
+ *
+ * @author Ahseya
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void testRate() {
+        TokenBucket bucket = new TokenBucket(10000, 0.1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            bucket.acquire("lane", 1000);
+        }
+        // Full bucket, then overdrawn twice.
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("elapsed: " + elapsedMs, elapsedMs >= 180);
+        assertThat(bucket.granted(), is(4000L));
+    }
+
+    @Test
+    public void testUnlimited() {
+        TokenBucket bucket = new TokenBucket(0, 1);
+        bucket.acquire("lane", Long.MAX_VALUE / 2);
+        bucket.acquire("lane", Long.MAX_VALUE / 2);
+        assertThat(bucket.waiting(), is(0));
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 0.01);
+        bucket.acquire("prime", 50);
+
+        List<String> granted = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (String lane : Arrays.asList("a", "a", "a", "b")) {
+            Thread thread = new Thread(() -> {
+                bucket.acquire(lane, 10);
+                granted.add(lane);
+            });
+            threads.add(thread);
+            thread.start();
+            while (bucket.waiting() < threads.size()) {
+                Thread.sleep(1);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(granted, is(Arrays.asList("a", "b", "a", "a")));
+    }
+}
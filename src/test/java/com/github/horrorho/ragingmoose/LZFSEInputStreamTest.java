@@ -31,6 +31,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -40,6 +44,7 @@ import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -102,6 +107,35 @@ public class LZFSEInputStreamTest {
         assertArrayEquals("SHA-256", digest, _digest);
     }
 
+    /**
+     * Consecutive bvxn blocks.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void lzvnBlocksTest() throws IOException {
+        byte[] data = LZFSEOutputStreamTest.generate("words", 3000);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        WritableByteChannel ch = Channels.newChannel(baos);
+        LZVNBlockEncoder encoder = new LZVNBlockEncoder(new LZFSEMatchFinder());
+        for (int i = 0; i < 3; i++) {
+            assertTrue("encode", encoder.encode(data, 0, data.length, data.length));
+            encoder.write(ch);
+        }
+        IO.writeFully(ch, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, 0x24787662));
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (InputStream is = new LZFSEInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            copy(is, decoded, buffer);
+        }
+        byte[] expected = new byte[data.length * 3];
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(data, 0, expected, i * data.length, data.length);
+        }
+        assertArrayEquals(expected, decoded.toByteArray());
+    }
+
     /**
      * Tcgen data into LZFSE external compressor into RagingMoose decompressor.
      *
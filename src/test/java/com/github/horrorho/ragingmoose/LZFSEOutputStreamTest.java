@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import static com.github.horrorho.ragingmoose.ProcessAssistant.copy;
+import static com.github.horrorho.ragingmoose.ProcessAssistant.firstInPath;
+import static com.github.horrorho.ragingmoose.ProcessAssistant.newPipedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import javax.annotation.Nullable;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Ayesha
+ */
+@RunWith(JUnitParamsRunner.class)
+public class LZFSEOutputStreamTest {
+
+    private final static int[] LENGTHS = new int[]{
+        // bvx-
+        0, 1, 7,
+        // bvxn
+        256, 1023, 2046, 4093,
+        // bvx2
+        5120, 8191, 16282, 32765, 65532, 131067, 262138, 524281, 1000000, 3000000
+    };
+
+    @Nullable
+    private static final String LZFSE = firstInPath("lzfse", "lzfse.exe").orElse(null);
+
+    private final byte[] buffer = new byte[16384];
+
+    static byte[] encode(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream os = new LZFSEOutputStream(baos)) {
+            os.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    static byte[] generate(String type, int length) {
+        Random random = new Random(length);
+        byte[] bs = new byte[length];
+        switch (type) {
+            case "zeros":
+                break;
+            case "ascending":
+                for (int i = 0; i < length; i++) {
+                    bs[i] = (byte) i;
+                }
+                break;
+            case "random":
+                random.nextBytes(bs);
+                break;
+            case "random16":
+                for (int i = 0; i < length; i++) {
+                    bs[i] = (byte) random.nextInt(16);
+                }
+                break;
+            case "copies":
+                // Repeated random strings, distances beyond the LZVN/ medium distance limits.
+                byte[] s = new byte[20000];
+                random.nextBytes(s);
+                for (int i = 0; i < length; i++) {
+                    bs[i] = s[i % s.length];
+                }
+                break;
+            case "words":
+                words(random, bs, 0, length);
+                break;
+            case "mixed":
+                // Incompressible runs interleaved with text, exercises uncompressed block fallback.
+                for (int i = 0; i < length; i += 65536) {
+                    int n = Math.min(65536, length - i);
+                    if ((i >>> 16) % 3 == 0) {
+                        byte[] r = new byte[n];
+                        random.nextBytes(r);
+                        System.arraycopy(r, 0, bs, i, n);
+                    } else {
+                        words(random, bs, i, n);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(type);
+        }
+        return bs;
+    }
+
+    static void words(Random random, byte[] bs, int off, int len) {
+        String[] vocabulary = new String[256];
+        Random v = new Random(0);
+        for (int i = 0; i < vocabulary.length; i++) {
+            char[] cs = new char[1 + v.nextInt(9)];
+            for (int j = 0; j < cs.length; j++) {
+                cs[j] = (char) ('a' + v.nextInt(26));
+            }
+            vocabulary[i] = new String(cs) + ' ';
+        }
+        for (int i = off, n = off + len; i < n;) {
+            String word = vocabulary[random.nextInt(vocabulary.length)];
+            for (int j = 0; j < word.length() && i < n; j++) {
+                bs[i++] = (byte) word.charAt(j);
+            }
+        }
+    }
+
+    @Test
+    @Parameters(method = "types")
+    public void roundTripTest(String type) throws IOException {
+        for (int len : LENGTHS) {
+            byte[] data = generate(type, len);
+            byte[] encoded = encode(data);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (InputStream is = new LZFSEInputStream(new ByteArrayInputStream(encoded))) {
+                copy(is, baos, buffer);
+            }
+            assertArrayEquals(type + ":" + len, data, baos.toByteArray());
+            // Block header and end of stream overhead bound.
+            assertTrue(type + ":" + len + " expansion", encoded.length <= len + 8 * (len / LZFSEConstants.LITERALS_PER_BLOCK + 4) + 4);
+        }
+    }
+
+    @Test
+    public void roundTripByteTest() throws IOException {
+        byte[] data = generate("words", 100000);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream os = new LZFSEOutputStream(baos)) {
+            for (byte b : data) {
+                os.write(b);
+            }
+        }
+        byte[] encoded = baos.toByteArray();
+        assertArrayEquals("write(int)", encode(data), encoded);
+
+        byte[] decoded = new byte[data.length];
+        try (InputStream is = new LZFSEInputStream(new ByteArrayInputStream(encoded))) {
+            for (int i = 0; i < decoded.length; i++) {
+                decoded[i] = (byte) is.read();
+            }
+            assertEquals("eos", -1, is.read());
+        }
+        assertArrayEquals("read()", data, decoded);
+    }
+
+    /**
+     * RagingMoose compressor into LZFSE external decompressor.
+     *
+     * @param type
+     * @throws IOException
+     */
+    @Ignore
+    @Test
+    @Parameters(method = "types")
+    public void externalTest(String type) throws IOException {
+        assumeTrue("lzfse", LZFSE != null);
+
+        ProcessBuilder decode = new ProcessBuilder(LZFSE, "-decode");
+
+        for (int len : LENGTHS) {
+            byte[] data = generate(type, len);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (InputStream is = newPipedInputStream(decode, new ByteArrayInputStream(encode(data)))) {
+                copy(is, baos, buffer);
+            }
+            assertArrayEquals(type + ":" + len, data, baos.toByteArray());
+        }
+    }
+
+    Object types() {
+        return new Object[]{
+            new Object[]{"zeros"},
+            new Object[]{"ascending"},
+            new Object[]{"random"},
+            new Object[]{"random16"},
+            new Object[]{"copies"},
+            new Object[]{"words"},
+            new Object[]{"mixed"}
+        };
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Ayesha.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.horrorho.ragingmoose;
+
+import static com.github.horrorho.ragingmoose.LZFSEOutputStreamTest.encode;
+import static com.github.horrorho.ragingmoose.LZFSEOutputStreamTest.generate;
+import static com.github.horrorho.ragingmoose.ProcessAssistant.copy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.AfterClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ *
+ * @author Ayesha
+ */
+@RunWith(JUnitParamsRunner.class)
+public class LZFSEParallelInputStreamTest {
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4);
+
+    private final byte[] buffer = new byte[16384];
+
+    @AfterClass
+    public static void tearDownClass() {
+        EXECUTOR.shutdown();
+    }
+
+    @Test
+    @Parameters({"1", "2", "8"})
+    public void defaultTest(int nBlocks) throws IOException, NoSuchAlgorithmException, DigestException {
+        InputStream is = this.getClass().getClassLoader().getResourceAsStream("lzfse.test");
+        assertNotNull("lzfse.test", is);
+
+        byte[] digest = new byte[32];
+        is.read(digest);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream dis = new LZFSEParallelInputStream(is, EXECUTOR, nBlocks)) {
+            copy(dis, baos, buffer);
+        }
+
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] _digest = md.digest(baos.toByteArray());
+
+        assertArrayEquals("SHA-256", digest, _digest);
+    }
+
+    @Test
+    @Parameters({"copies", "words", "mixed"})
+    public void roundTripTest(String type) throws IOException {
+        byte[] data = generate(type, 3000000);
+        byte[] encoded = encode(data);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream is = new LZFSEParallelInputStream(new ByteArrayInputStream(encoded), EXECUTOR, 4)) {
+            copy(is, baos, buffer);
+        }
+        assertArrayEquals(type, data, baos.toByteArray());
+    }
+
+    @Test
+    public void readByteTest() throws IOException {
+        byte[] data = generate("words", 200000);
+
+        byte[] decoded = new byte[data.length];
+        try (InputStream is = new LZFSEParallelInputStream(new ByteArrayInputStream(encode(data)), EXECUTOR, 2)) {
+            for (int i = 0; i < decoded.length; i++) {
+                decoded[i] = (byte) is.read();
+            }
+            assertEquals("eos", -1, is.read());
+        }
+        assertArrayEquals("read()", data, decoded);
+    }
+}